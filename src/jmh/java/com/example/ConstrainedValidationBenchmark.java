@@ -0,0 +1,48 @@
+package com.example;
+
+import org.openjdk.jmh.annotations.*;
+import org.opendaylight.yangtools.yang.model.api.EffectiveModelContext;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Validation of the same document against a schema without data tree constraints, which
+ * writes into the validate-only writer, and against one with a must condition on each
+ * list entry, for which the NormalizedNode tree is built to check it on.
+ */
+@State(Scope.Benchmark)
+@Warmup(time = 2)
+@Measurement(time = 2)
+public class ConstrainedValidationBenchmark {
+    @Param({"1000", "100000"})
+    public int fanOut;
+
+    @Param({"false", "true"})
+    public boolean constrained;
+
+    private final YangValidatorEngine engine = new YangValidatorEngine();
+    private EffectiveModelContext context;
+    private byte[] document;
+
+    @Setup
+    public void setUp() throws IOException {
+        Path module = Files.createTempFile("nested", ".yang");
+        try {
+            Files.writeString(module, SampleDocuments.nestedModule(2, constrained));
+            context = engine.loadSchema(List.of(module));
+        } finally {
+            Files.delete(module);
+        }
+        document = SampleDocuments.nestedList(2, fanOut, 8).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public ValidationResult validDocument() throws IOException, XMLStreamException {
+        return engine.validate(context, XmlSource.of(document), 1);
+    }
+}
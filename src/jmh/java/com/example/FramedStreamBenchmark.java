@@ -0,0 +1,53 @@
+package com.example;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Messages per second through the NETCONF framed stream mode, a stream of small valid
+ * documents validated one after another.
+ */
+@State(Scope.Benchmark)
+@OperationsPerInvocation(FramedStreamBenchmark.MESSAGES)
+@Fork(jvmArgsAppend = "-Dorg.slf4j.simpleLogger.log.com.example.FramedMessageValidator=warn")
+public class FramedStreamBenchmark {
+    static final int MESSAGES = 1000;
+
+    @Param({"END_OF_MESSAGE", "CHUNKED"})
+    public String framing;
+
+    private FramedMessageValidator validator;
+    private byte[] stream;
+
+    @Setup
+    public void setUp() throws IOException {
+        YangValidatorEngine engine = new YangValidatorEngine();
+        validator = new FramedMessageValidator(engine,
+                engine.loadSchema(List.of(Path.of(SampleDocuments.MODULE_PATH))), ValidationBudget.DEFAULT);
+        byte[] message = SampleDocuments.network(10).getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream framed = new ByteArrayOutputStream();
+        for (int i = 0; i < MESSAGES; i++) {
+            if (framing.equals("CHUNKED")) {
+                framed.write(("\n#" + message.length + "\n").getBytes(StandardCharsets.US_ASCII));
+                framed.write(message);
+                framed.write("\n##\n".getBytes(StandardCharsets.US_ASCII));
+            } else {
+                framed.write(message);
+                framed.write("]]>]]>".getBytes(StandardCharsets.US_ASCII));
+            }
+        }
+        stream = framed.toByteArray();
+    }
+
+    @Benchmark
+    public long messages() throws IOException {
+        return validator.validate(new ByteArrayInputStream(stream), OutputStream.nullOutputStream());
+    }
+}
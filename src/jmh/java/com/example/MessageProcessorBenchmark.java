@@ -0,0 +1,30 @@
+package com.example;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Error message translation, for repeated and for distinct messages.
+ */
+@State(Scope.Benchmark)
+public class MessageProcessorBenchmark {
+    private static final String[] MESSAGES = {
+            "Value '234' does not match regular expression '[0-9][0-9]'",
+            "Schema for node with name bogus and namespace http://example.com/sample does not exist in parent network",
+            "Duplicate element \"name\" in namespace \"http://example.com/sample\" with parent \"network\" in XML input",
+            "Invalid value 'XXX' for enum type. Allowed values are: [LAN, WAN, VPN]",
+    };
+
+    private int counter;
+
+    @Benchmark
+    public String repeatedMessage() {
+        return MessageProcessor.processMessage(MESSAGES[counter++ & 3]);
+    }
+
+    @Benchmark
+    public String distinctMessage() {
+        // Row and column make every message unique, so the cache never hits
+        return MessageProcessor.processMessage("ParseError at [row,col]:[" + counter++
+                + ",5]\nMessage: Element content can not contain child START_ELEMENT when using Typed Access methods");
+    }
+}
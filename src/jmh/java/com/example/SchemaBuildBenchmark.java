@@ -0,0 +1,32 @@
+package com.example;
+
+import org.openjdk.jmh.annotations.*;
+import org.opendaylight.yangtools.yang.model.api.EffectiveModelContext;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Assembling the schema from scratch compared to a cache hit in the engine.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+public class SchemaBuildBenchmark {
+    private final List<Path> yangFiles = List.of(Path.of(SampleDocuments.MODULE_PATH));
+    private final YangValidatorEngine warmEngine = new YangValidatorEngine();
+
+    @Setup
+    public void setUp() {
+        warmEngine.loadSchema(yangFiles);
+    }
+
+    @Benchmark
+    public EffectiveModelContext buildEffectiveModel() {
+        return new YangValidatorEngine().loadSchema(yangFiles);
+    }
+
+    @Benchmark
+    public EffectiveModelContext cachedEffectiveModel() {
+        return warmEngine.loadSchema(yangFiles);
+    }
+}
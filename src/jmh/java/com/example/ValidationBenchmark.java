@@ -0,0 +1,61 @@
+package com.example;
+
+import org.openjdk.jmh.annotations.*;
+import org.opendaylight.yangtools.yang.model.api.EffectiveModelContext;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * End to end XmlParserStream validation against a warm schema, over the number of list
+ * entries, how deep the list is nested and the size of each entry's value.
+ */
+@State(Scope.Benchmark)
+public class ValidationBenchmark {
+    @Param({"10", "1000", "100000"})
+    public int fanOut;
+
+    @Param({"2", "16"})
+    public int depth;
+
+    // Characters of text in each list entry, so the document grows without more elements
+    @Param({"8", "1024"})
+    public int size;
+
+    private final YangValidatorEngine engine = new YangValidatorEngine();
+    private EffectiveModelContext context;
+    private byte[] validDocument;
+    private byte[] invalidDocument;
+
+    @Setup
+    public void setUp() throws IOException {
+        Path module = Files.createTempFile("nested", ".yang");
+        try {
+            Files.writeString(module, SampleDocuments.nestedModule(depth));
+            context = engine.loadSchema(List.of(module));
+        } finally {
+            Files.delete(module);
+        }
+        String xmlText = SampleDocuments.nestedList(depth, fanOut, size);
+        validDocument = xmlText.getBytes(StandardCharsets.UTF_8);
+        // The last entry's count is out of its range
+        int last = xmlText.lastIndexOf("<count>");
+        invalidDocument = (xmlText.substring(0, last) + "<count>2000000</count>"
+                + xmlText.substring(xmlText.indexOf("</count>", last) + "</count>".length()))
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public ValidationResult validDocument() throws IOException, XMLStreamException {
+        return engine.validate(context, XmlSource.of(validDocument), 1);
+    }
+
+    @Benchmark
+    public ValidationResult invalidDocument() throws IOException, XMLStreamException {
+        return engine.validate(context, XmlSource.of(invalidDocument), 1);
+    }
+}
@@ -0,0 +1,65 @@
+package com.example;
+
+import com.ctc.wstx.stax.WstxInputFactory;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Cost of XPath tracking compared to reading the same document with plain Woodstox.
+ */
+@State(Scope.Benchmark)
+public class XPathTrackerBenchmark {
+    @Param({"10", "1000", "100000"})
+    public int fanOut;
+
+    @Param({"2", "16"})
+    public int depth;
+
+    private final XMLInputFactory factory = new WstxInputFactory();
+    private String xmlText;
+    private byte[] xmlBytes;
+
+    @Setup
+    public void setUp() {
+        xmlText = SampleDocuments.nested(depth, fanOut);
+        xmlBytes = xmlText.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public void rawWoodstox(Blackhole blackhole) throws XMLStreamException {
+        XMLStreamReader reader = factory.createXMLStreamReader(new ByteArrayInputStream(xmlBytes));
+        while (reader.hasNext()) {
+            blackhole.consume(reader.next());
+        }
+        reader.close();
+    }
+
+    @Benchmark
+    public void trackCurrentXPath(Blackhole blackhole) throws XMLStreamException {
+        XPathXMLStreamReader reader = new XPathXMLStreamReader(
+                factory.createXMLStreamReader(new ByteArrayInputStream(xmlBytes)), false);
+        while (reader.hasNext()) {
+            blackhole.consume(reader.next());
+        }
+        reader.close();
+    }
+
+    @Benchmark
+    public XPathLocationIndex createLocationIndex() throws XMLStreamException {
+        return XPathCreator.createLocationIndex(xmlText);
+    }
+
+    @Benchmark
+    public void createLocationIndexAndAllXPaths(Blackhole blackhole) throws XMLStreamException {
+        XPathLocationIndex locationIndex = XPathCreator.createLocationIndex(xmlText);
+        for (int ordinal = 0; ordinal < locationIndex.size(); ordinal++) {
+            blackhole.consume(locationIndex.getXPath(ordinal));
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.example;
+
+import org.opendaylight.yangtools.yang.model.api.EffectiveModelContext;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Validates many documents concurrently against one schema.
+ * All workers share the engine's input factory and the immutable schema context.
+ */
+public class BatchValidator {
+    private final YangValidatorEngine engine;
+    private final EffectiveModelContext context;
+    private final ValidationBudget budget;
+    private final ValidationResultCache cache;
+
+    public BatchValidator(YangValidatorEngine engine, EffectiveModelContext context, int maxErrors) {
+        this(engine, context, maxErrors, null);
+    }
+
+    /**
+     * @param cache results of documents seen before, or null to validate every document
+     */
+    public BatchValidator(YangValidatorEngine engine, EffectiveModelContext context, int maxErrors,
+                          ValidationResultCache cache) {
+        this(engine, context, ValidationBudget.DEFAULT.withMaxErrors(maxErrors), cache);
+    }
+
+    /**
+     * @param budget limits applying to each document on its own
+     * @param cache  results of documents seen before, or null to validate every document
+     */
+    public BatchValidator(YangValidatorEngine engine, EffectiveModelContext context, ValidationBudget budget,
+                          ValidationResultCache cache) {
+        this.engine = engine;
+        this.context = context;
+        this.budget = budget;
+        this.cache = cache;
+    }
+
+    /**
+     * Validates the files on the given executor.
+     *
+     * @return the result of each file, in the order the files were given
+     */
+    public Map<Path, ValidationResult> validate(List<Path> files, ExecutorService executor)
+            throws InterruptedException {
+        Map<Path, Future<ValidationResult>> futures = new LinkedHashMap<>();
+        for (Path file : files) {
+            futures.put(file, executor.submit(() -> validate(file)));
+        }
+
+        Map<Path, ValidationResult> results = new LinkedHashMap<>();
+        for (Map.Entry<Path, Future<ValidationResult>> entry : futures.entrySet()) {
+            try {
+                results.put(entry.getKey(), entry.getValue().get());
+            } catch (ExecutionException e) {
+                results.put(entry.getKey(), failure(e.getCause()));
+            }
+        }
+        return results;
+    }
+
+    private ValidationResult validate(Path file) {
+        try {
+            XmlSource source = XmlSource.of(file);
+            return cache != null ? cache.validate(context, source, budget)
+                    : engine.validate(context, source, budget);
+        } catch (Exception e) {
+            return failure(e);
+        }
+    }
+
+    private static ValidationResult failure(Throwable e) {
+        return new ValidationResult(List.of(new ValidationError(0, 0, "/",
+                "Failed to read document: " + e.getMessage())));
+    }
+
+    /**
+     * Expands the inputs into the files to validate. An input is a file, a directory whose
+     * .xml files are all validated, or a glob pattern such as configs/**&#47;*.xml.
+     */
+    public static List<Path> findFiles(List<String> inputs) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String input : inputs) {
+            if (isGlob(input)) {
+                files.addAll(findMatching(input));
+            } else if (Files.isDirectory(Path.of(input))) {
+                try (Stream<Path> paths = Files.walk(Path.of(input))) {
+                    paths.filter(Files::isRegularFile)
+                            .filter(path -> path.getFileName().toString().endsWith(".xml"))
+                            .sorted()
+                            .forEach(files::add);
+                }
+            } else {
+                files.add(Path.of(input));
+            }
+        }
+        return files;
+    }
+
+    private static boolean isGlob(String input) {
+        return input.chars().anyMatch(c -> "*?[{".indexOf(c) >= 0);
+    }
+
+    private static List<Path> findMatching(String glob) throws IOException {
+        // Walk from the deepest directory before the first wildcard
+        int wildcard = 0;
+        while ("*?[{".indexOf(glob.charAt(wildcard)) < 0) {
+            wildcard++;
+        }
+        int separator = glob.lastIndexOf('/', wildcard);
+        Path base = separator < 0 ? Path.of("") : Path.of(glob.substring(0, separator + 1));
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + glob);
+
+        try (Stream<Path> paths = Files.walk(base)) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(matcher::matches)
+                    .sorted()
+                    .toList();
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.example;
+
+import org.opendaylight.yangtools.yang.model.api.EffectiveModelContext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Validation of a document whose bytes are pushed as they arrive, e.g. by a NIO event loop
+ * reading many uploads, instead of pulled from a stream by a thread that blocks until the
+ * whole document is there. Parsing, XPath tracking and validation advance as chunks are
+ * fed, on a virtual thread that waits for the next chunk without holding a platform thread,
+ * so the caller's thread never blocks and at most a few chunks per document are buffered.
+ * The YANG parser can only pull its input, so it needs a thread to wait on; a virtual one
+ * is the cheapest, and keeps the parser limits and locations of a regular validation.
+ * <p>
+ * The document is read once, so with more than one error allowed, errors after the first
+ * one the parser fails on are only collected for invalid leaf values.
+ */
+public class ByteFeedValidation {
+    /**
+     * Bytes waiting to be parsed above which {@link #feed(ByteBuffer)} asks the caller to
+     * stop reading until the parser catches up.
+     */
+    public static final int MAX_PENDING_BYTES = 64 * 1024;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition fed = lock.newCondition();
+    private final ArrayDeque<ByteBuffer> chunks = new ArrayDeque<>();
+    private final CompletableFuture<ValidationResult> result = new CompletableFuture<>();
+    private final Runnable onDrained;
+    private int pendingBytes;
+    private boolean ended;
+    private boolean cancelled;
+    private boolean finished;
+    // Set when feed() returned false, until onDrained has run
+    private boolean waitingForDrain;
+
+    private ByteFeedValidation(Runnable onDrained) {
+        this.onDrained = onDrained;
+    }
+
+    /**
+     * Starts validating a document that is yet to be fed.
+     *
+     * @param onDrained run on the validation thread when the parser has consumed all the
+     *                  input after {@link #feed(ByteBuffer)} returned false, or has stopped
+     *                  reading it, so the caller can resume; it must not block
+     */
+    public static ByteFeedValidation start(YangValidatorEngine engine, EffectiveModelContext context,
+                                           ValidationBudget budget, Runnable onDrained) {
+        ByteFeedValidation validation = new ByteFeedValidation(onDrained);
+        Thread.ofVirtual().name("byte-feed-validation").start(() -> validation.run(engine, context, budget));
+        return validation;
+    }
+
+    private void run(YangValidatorEngine engine, EffectiveModelContext context, ValidationBudget budget) {
+        ValidationResult validated;
+        try {
+            validated = engine.validate(context, XmlSource.of(new FeedInputStream()), budget);
+        } catch (Exception e) {
+            validated = new ValidationResult(List.of(new ValidationError(0, 0, "/",
+                    "Failed to read document: " + e.getMessage())));
+        }
+        boolean drained;
+        lock.lock();
+        try {
+            // Input fed after the parser stopped is dropped
+            finished = true;
+            chunks.clear();
+            pendingBytes = 0;
+            drained = waitingForDrain;
+            waitingForDrain = false;
+        } finally {
+            lock.unlock();
+        }
+        result.complete(validated);
+        if (drained && onDrained != null) {
+            onDrained.run();
+        }
+    }
+
+    /**
+     * Hands over the remaining bytes of the chunk. They are copied, so the buffer can be
+     * reused as soon as this returns, and this never blocks.
+     *
+     * @return false once {@link #MAX_PENDING_BYTES} are waiting to be parsed: the caller
+     * should stop reading until onDrained runs
+     * @throws IllegalStateException after {@link #endOfInput()}
+     */
+    public boolean feed(ByteBuffer chunk) {
+        ByteBuffer copy = ByteBuffer.allocate(chunk.remaining()).put(chunk).flip();
+        lock.lock();
+        try {
+            if (ended) {
+                throw new IllegalStateException("Input already ended");
+            }
+            if (finished || !copy.hasRemaining()) {
+                return true;
+            }
+            chunks.add(copy);
+            pendingBytes += copy.remaining();
+            fed.signal();
+            if (pendingBytes >= MAX_PENDING_BYTES) {
+                waitingForDrain = true;
+                return false;
+            }
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Marks the end of the document.
+     */
+    public void endOfInput() {
+        lock.lock();
+        try {
+            ended = true;
+            fed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Abandons the document, e.g. when its upload was aborted or stalled: the parser fails
+     * on its next read and the result holds that error. The budget's timeout is only checked
+     * between elements, so waiting for input that never comes is the caller's to end.
+     */
+    public void cancel() {
+        lock.lock();
+        try {
+            cancelled = true;
+            chunks.clear();
+            pendingBytes = 0;
+            fed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if the parser is waiting for input: everything fed has been consumed
+     */
+    public boolean needsInput() {
+        lock.lock();
+        try {
+            return pendingBytes == 0 && !ended && !finished;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Completed once the document has been validated, which can be before the end of the
+     * input if it fails.
+     */
+    public CompletableFuture<ValidationResult> getResult() {
+        return result;
+    }
+
+    /**
+     * The parser's side of the feed, waiting for chunks on the validation thread.
+     */
+    private class FeedInputStream extends InputStream {
+        @Override
+        public int read() throws IOException {
+            byte[] single = new byte[1];
+            return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            boolean drained;
+            int read;
+            lock.lock();
+            try {
+                while (chunks.isEmpty() && !ended && !cancelled) {
+                    fed.awaitUninterruptibly();
+                }
+                if (cancelled) {
+                    throw new IOException("Input cancelled");
+                }
+                if (chunks.isEmpty()) {
+                    return -1;
+                }
+                ByteBuffer chunk = chunks.peek();
+                read = Math.min(length, chunk.remaining());
+                chunk.get(buffer, offset, read);
+                if (!chunk.hasRemaining()) {
+                    chunks.poll();
+                }
+                pendingBytes -= read;
+                drained = waitingForDrain && pendingBytes == 0;
+                if (drained) {
+                    waitingForDrain = false;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (drained && onDrained != null) {
+                onDrained.run();
+            }
+            return read;
+        }
+
+        @Override
+        public int available() {
+            lock.lock();
+            try {
+                return pendingBytes;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
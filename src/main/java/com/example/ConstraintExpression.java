@@ -0,0 +1,1058 @@
+package com.example;
+
+import org.opendaylight.yangtools.yang.common.Empty;
+import org.opendaylight.yangtools.yang.common.QName;
+import org.opendaylight.yangtools.yang.common.QNameModule;
+import org.opendaylight.yangtools.yang.common.UnresolvedQName;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeIdentifierWithPredicates;
+import org.opendaylight.yangtools.yang.data.api.schema.ChoiceNode;
+import org.opendaylight.yangtools.yang.data.api.schema.DataContainerChild;
+import org.opendaylight.yangtools.yang.data.api.schema.DataContainerNode;
+import org.opendaylight.yangtools.yang.data.api.schema.LeafNode;
+import org.opendaylight.yangtools.yang.data.api.schema.LeafSetEntryNode;
+import org.opendaylight.yangtools.yang.data.api.schema.LeafSetNode;
+import org.opendaylight.yangtools.yang.data.api.schema.MapNode;
+import org.opendaylight.yangtools.yang.data.api.schema.NormalizedNode;
+import org.opendaylight.yangtools.yang.data.api.schema.UnkeyedListNode;
+import org.opendaylight.yangtools.yang.data.spi.node.ImmutableNodes;
+import org.opendaylight.yangtools.yang.model.api.DataNodeContainer;
+import org.opendaylight.yangtools.yang.model.api.DataSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.EffectiveModelContext;
+import org.opendaylight.yangtools.yang.model.api.IdentitySchemaNode;
+import org.opendaylight.yangtools.yang.model.api.LeafListSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.ListSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.Module;
+import org.opendaylight.yangtools.yang.model.api.TypedDataSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.type.EnumTypeDefinition;
+import org.opendaylight.yangtools.yang.xpath.api.YangBinaryExpr;
+import org.opendaylight.yangtools.yang.xpath.api.YangBinaryOperator;
+import org.opendaylight.yangtools.yang.xpath.api.YangBooleanConstantExpr;
+import org.opendaylight.yangtools.yang.xpath.api.YangExpr;
+import org.opendaylight.yangtools.yang.xpath.api.YangFilterExpr;
+import org.opendaylight.yangtools.yang.xpath.api.YangFunction;
+import org.opendaylight.yangtools.yang.xpath.api.YangFunctionCallExpr;
+import org.opendaylight.yangtools.yang.xpath.api.YangLiteralExpr;
+import org.opendaylight.yangtools.yang.xpath.api.YangLocationPath;
+import org.opendaylight.yangtools.yang.xpath.api.YangNaryExpr;
+import org.opendaylight.yangtools.yang.xpath.api.YangNegateExpr;
+import org.opendaylight.yangtools.yang.xpath.api.YangNumberExpr;
+import org.opendaylight.yangtools.yang.xpath.api.YangPathExpr;
+import org.opendaylight.yangtools.yang.xpath.api.YangQNameExpr;
+import org.opendaylight.yangtools.yang.xpath.api.YangXPathAxis;
+import org.opendaylight.yangtools.yang.xpath.api.YangXPathExpression;
+import org.opendaylight.yangtools.yang.xpath.api.YangXPathNodeType;
+
+import javax.xml.xpath.XPathExpressionException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A must or when expression of a schema, compiled once into a tree of evaluators that run
+ * over a {@link Node} view of a NormalizedNode tree. Covers XPath 1.0 as YANG uses it:
+ * location paths on the child, parent, self, ancestor, descendant and sibling axes with
+ * predicates, comparisons, arithmetic and the core and YANG functions. Expressions using
+ * anything else, i.e. deref(), id(), lang(), variables or the following and preceding axes,
+ * are rejected when compiled.
+ */
+public class ConstraintExpression {
+    private static final Map<QName, YangFunction> FUNCTIONS = new HashMap<>();
+
+    static {
+        for (YangFunction function : YangFunction.values()) {
+            FUNCTIONS.put(function.getIdentifier(), function);
+        }
+    }
+
+    private final String text;
+    private final Evaluator root;
+
+    private ConstraintExpression(String text, Evaluator root) {
+        this.text = text;
+        this.root = root;
+    }
+
+    /**
+     * @param text   the expression as written in the module, for messages
+     * @param module the module the expression is defined in, which names without a prefix
+     *               belong to
+     * @throws IllegalArgumentException if the expression uses something not evaluated
+     */
+    static ConstraintExpression compile(YangXPathExpression.QualifiedBound xpath, String text, QNameModule module,
+                                        Environment environment) {
+        return new ConstraintExpression(text, new Compiler(xpath, module, environment).compile(xpath.getRootExpr()));
+    }
+
+    /**
+     * Evaluates the expression as a boolean.
+     *
+     * @param context the context node
+     * @param current the node returned by current(), the one the constraint applies to
+     */
+    boolean test(Node context, Node current) {
+        return toBoolean(root.evaluate(new Frame(context, 1, 1, current)));
+    }
+
+    String getText() {
+        return text;
+    }
+
+    /**
+     * What evaluation needs to know about the schema: module prefixes, to give identityref
+     * values and node names their lexical form, and identities, for derived-from().
+     */
+    static class Environment {
+        private final EffectiveModelContext context;
+        private final Map<QNameModule, String> prefixes = new HashMap<>();
+        private final Map<QName, IdentitySchemaNode> identities = new HashMap<>();
+        // Default values of leaves outside choices, by the schema of their parent
+        private final Map<DataNodeContainer, List<LeafNode<?>>> defaults = new IdentityHashMap<>();
+
+        Environment(EffectiveModelContext context) {
+            this.context = context;
+            for (Module module : context.getModules()) {
+                prefixes.put(module.getQNameModule(), module.getPrefix());
+                for (IdentitySchemaNode identity : module.getIdentities()) {
+                    identities.put(identity.getQName(), identity);
+                }
+            }
+        }
+
+        void addDefault(DataNodeContainer parent, QName leaf, Object value) {
+            defaults.computeIfAbsent(parent, key -> new ArrayList<>()).add(ImmutableNodes.leafNode(leaf, value));
+        }
+
+        String prefixed(QName name) {
+            String prefix = prefixes.get(name.getModule());
+            return prefix == null ? name.getLocalName() : prefix + ":" + name.getLocalName();
+        }
+
+        boolean isDerived(QName identity, QName base, boolean orSelf) {
+            if (orSelf && identity.equals(base)) {
+                return true;
+            }
+            ArrayDeque<IdentitySchemaNode> pending = new ArrayDeque<>();
+            IdentitySchemaNode start = identities.get(identity);
+            if (start != null) {
+                pending.add(start);
+            }
+            while (!pending.isEmpty()) {
+                for (IdentitySchemaNode parent : pending.poll().getBaseIdentities()) {
+                    if (parent.getQName().equals(base)) {
+                        return true;
+                    }
+                    pending.add(parent);
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Lexical form of a leaf value as it would appear in XML.
+         */
+        String lexical(Object value) {
+            if (value instanceof String string) {
+                return string;
+            } else if (value instanceof QName qname) {
+                return prefixed(qname);
+            } else if (value instanceof Set<?> bits) {
+                StringBuilder joined = new StringBuilder();
+                for (Object bit : bits) {
+                    if (!joined.isEmpty()) {
+                        joined.append(' ');
+                    }
+                    joined.append(bit);
+                }
+                return joined.toString();
+            } else if (value instanceof byte[] bytes) {
+                return Base64.getEncoder().encodeToString(bytes);
+            } else if (value instanceof Empty) {
+                return "";
+            }
+            return String.valueOf(value);
+        }
+    }
+
+    /**
+     * Element of the data tree as XPath sees it: containers, list and leaf-list entries,
+     * leaves and anydata, with lists, leaf-lists and choices left out so that their entries
+     * and cases are children of the enclosing node. Children are wrapped on first use and
+     * indexed by name, so a child step is a lookup and count() of a list is its size.
+     * Leaves left out of the document that have a default are present with their default,
+     * as they are to XPath.
+     */
+    static class Node {
+        private final NormalizedNode data;
+        private final Node parent;
+        // Null for the document root
+        private final DataSchemaNode schema;
+        private final DataNodeContainer container;
+        private final Environment environment;
+        // Position among the siblings of the same name, from 0
+        private final int index;
+        private final boolean isDefault;
+        private List<Node> children;
+        private Map<QName, List<Node>> childrenByName;
+
+        private Node(NormalizedNode data, Node parent, DataSchemaNode schema, DataNodeContainer container,
+                     Environment environment, int index, boolean isDefault) {
+            this.data = data;
+            this.parent = parent;
+            this.schema = schema;
+            this.container = container;
+            this.environment = environment;
+            this.index = index;
+            this.isDefault = isDefault;
+        }
+
+        /**
+         * @param data the data under the document root, as read by the YANG parser
+         */
+        static Node root(NormalizedNode data, Environment environment) {
+            return new Node(data, null, null, environment.context, environment, 0, false);
+        }
+
+        QName getName() {
+            return data.name().getNodeType();
+        }
+
+        Node getParent() {
+            return parent;
+        }
+
+        DataSchemaNode getSchema() {
+            return schema;
+        }
+
+        int getIndex() {
+            return index;
+        }
+
+        /**
+         * True for a leaf that is not in the document but has a default.
+         */
+        boolean isDefault() {
+            return isDefault;
+        }
+
+        /**
+         * @return the value of a leaf or leaf-list entry, null for other nodes
+         */
+        Object getValue() {
+            if (data instanceof LeafNode<?> leaf) {
+                return leaf.body();
+            }
+            return data instanceof LeafSetEntryNode<?> entry ? entry.body() : null;
+        }
+
+        List<Node> getChildren() {
+            if (children == null) {
+                wrapChildren();
+            }
+            return children;
+        }
+
+        /**
+         * @return the children of the given name, not to be modified
+         */
+        List<Node> getChildren(QName name) {
+            if (childrenByName == null) {
+                wrapChildren();
+            }
+            List<Node> named = childrenByName.get(name);
+            return named == null ? List.of() : named;
+        }
+
+        String getStringValue() {
+            Object value = getValue();
+            if (value != null) {
+                return environment.lexical(value);
+            }
+            // Concatenated text of the descendants
+            StringBuilder text = new StringBuilder();
+            appendText(text);
+            return text.toString();
+        }
+
+        private void appendText(StringBuilder text) {
+            Object value = getValue();
+            if (value != null) {
+                text.append(environment.lexical(value));
+            } else {
+                for (Node child : getChildren()) {
+                    child.appendText(text);
+                }
+            }
+        }
+
+        /**
+         * XPath of the node the way the document reader writes it: list entries by their keys,
+         * keyless list and leaf-list entries by their position.
+         */
+        String getXPath() {
+            if (parent == null) {
+                return "";
+            }
+            StringBuilder path = new StringBuilder(parent.getXPath()).append('/').append(getName().getLocalName());
+            if (data.name() instanceof NodeIdentifierWithPredicates keys && keys.size() > 0) {
+                for (Map.Entry<QName, Object> key : keys.entrySet()) {
+                    String value = environment.lexical(key.getValue());
+                    char quote = value.indexOf('\'') < 0 ? '\'' : '"';
+                    path.append('[').append(key.getKey().getLocalName()).append('=').append(quote).append(value)
+                            .append(quote).append(']');
+                }
+            } else if (schema instanceof LeafListSchemaNode leafList && !leafList.isUserOrdered()) {
+                // The data tree does not keep the document order of these, only their values
+                String value = getStringValue();
+                char quote = value.indexOf('\'') < 0 ? '\'' : '"';
+                path.append("[.=").append(quote).append(value).append(quote).append(']');
+            } else if (schema instanceof LeafListSchemaNode || schema instanceof ListSchemaNode) {
+                path.append('[').append(index).append(']');
+            }
+            return path.toString();
+        }
+
+        /**
+         * @return true if entries of this list or leaf-list are in document order
+         */
+        boolean isOrdered() {
+            return schema instanceof ListSchemaNode list ? list.isUserOrdered() || list.getKeyDefinition().isEmpty()
+                    : !(schema instanceof LeafListSchemaNode leafList) || leafList.isUserOrdered();
+        }
+
+        private void wrapChildren() {
+            List<Node> wrapped = new ArrayList<>();
+            Map<QName, List<Node>> byName = new LinkedHashMap<>();
+            if (data instanceof DataContainerNode dataContainer) {
+                wrap(dataContainer.body(), wrapped, byName);
+                List<LeafNode<?>> leafDefaults = container == null ? null : environment.defaults.get(container);
+                if (leafDefaults != null) {
+                    for (LeafNode<?> leafDefault : leafDefaults) {
+                        QName name = leafDefault.name().getNodeType();
+                        if (!byName.containsKey(name)) {
+                            add(new Node(leafDefault, this, childSchema(name), null, environment, 0, true),
+                                    wrapped, byName);
+                        }
+                    }
+                }
+            }
+            children = wrapped;
+            childrenByName = byName;
+        }
+
+        private void wrap(Collection<DataContainerChild> body, List<Node> wrapped, Map<QName, List<Node>> byName) {
+            for (DataContainerChild child : body) {
+                if (child instanceof ChoiceNode choice) {
+                    wrap(choice.body(), wrapped, byName);
+                    continue;
+                }
+                DataSchemaNode childSchema = childSchema(child.name().getNodeType());
+                DataNodeContainer childContainer = childSchema instanceof DataNodeContainer nested ? nested : null;
+                Collection<? extends NormalizedNode> entries;
+                if (child instanceof MapNode map) {
+                    entries = map.body();
+                } else if (child instanceof LeafSetNode<?> leafSet) {
+                    entries = leafSet.body();
+                } else if (child instanceof UnkeyedListNode list) {
+                    entries = list.body();
+                } else {
+                    add(new Node(child, this, childSchema, childContainer, environment, 0, false), wrapped, byName);
+                    continue;
+                }
+                int position = 0;
+                for (NormalizedNode entry : entries) {
+                    add(new Node(entry, this, childSchema, childContainer, environment, position++, false),
+                            wrapped, byName);
+                }
+            }
+        }
+
+        private DataSchemaNode childSchema(QName name) {
+            return container == null ? null : container.findDataTreeChild(name).orElse(null);
+        }
+
+        private static void add(Node node, List<Node> wrapped, Map<QName, List<Node>> byName) {
+            wrapped.add(node);
+            byName.computeIfAbsent(node.getName(), key -> new ArrayList<>()).add(node);
+        }
+    }
+
+    /**
+     * Evaluation context: the context node, its position and the size of the node-set it
+     * was taken from, and the node current() returns.
+     */
+    private static class Frame {
+        final Node node;
+        final int position;
+        final int size;
+        final Node current;
+
+        Frame(Node node, int position, int size, Node current) {
+            this.node = node;
+            this.position = position;
+            this.size = size;
+            this.current = current;
+        }
+    }
+
+    /**
+     * Compiled expression, returning a Boolean, a Double, a String or a List of nodes.
+     */
+    private interface Evaluator {
+        Object evaluate(Frame frame);
+    }
+
+    /**
+     * Compiled step of a location path.
+     */
+    private static class Step {
+        final YangXPathAxis axis;
+        // Null to select elements of any name
+        final QName name;
+        final Evaluator[] predicates;
+
+        Step(YangXPathAxis axis, QName name, Evaluator[] predicates) {
+            this.axis = axis;
+            this.name = name;
+            this.predicates = predicates;
+        }
+
+        List<Node> select(List<Node> input, Frame frame) {
+            if (input.size() == 1) {
+                return select(input.get(0), frame);
+            }
+            List<Node> selected = new ArrayList<>();
+            Set<Node> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (Node node : input) {
+                for (Node found : select(node, frame)) {
+                    if (seen.add(found)) {
+                        selected.add(found);
+                    }
+                }
+            }
+            return selected;
+        }
+
+        private List<Node> select(Node node, Frame frame) {
+            List<Node> selected;
+            switch (axis) {
+                case CHILD:
+                    // The indexed children, shared and never modified
+                    selected = name != null ? node.getChildren(name) : node.getChildren();
+                    break;
+                case PARENT:
+                    selected = node.getParent() != null && matches(node.getParent())
+                            ? List.of(node.getParent()) : List.of();
+                    break;
+                case SELF:
+                    selected = matches(node) ? List.of(node) : List.of();
+                    break;
+                case ANCESTOR:
+                case ANCESTOR_OR_SELF:
+                    selected = new ArrayList<>();
+                    for (Node ancestor = axis == YangXPathAxis.ANCESTOR
+                            ? node.getParent() : node; ancestor != null; ancestor = ancestor.getParent()) {
+                        if (matches(ancestor)) {
+                            selected.add(ancestor);
+                        }
+                    }
+                    break;
+                case DESCENDANT:
+                case DESCENDANT_OR_SELF:
+                    selected = new ArrayList<>();
+                    if (axis == YangXPathAxis.DESCENDANT_OR_SELF
+                            && matches(node)) {
+                        selected.add(node);
+                    }
+                    addDescendants(node, selected);
+                    break;
+                case FOLLOWING_SIBLING:
+                case PRECEDING_SIBLING:
+                    selected = new ArrayList<>();
+                    if (node.getParent() != null) {
+                        List<Node> siblings = node.getParent().getChildren();
+                        int at = siblings.indexOf(node);
+                        boolean following = axis
+                                == YangXPathAxis.FOLLOWING_SIBLING;
+                        for (int i = following ? at + 1 : at - 1; i >= 0 && i < siblings.size();
+                             i += following ? 1 : -1) {
+                            if (matches(siblings.get(i))) {
+                                selected.add(siblings.get(i));
+                            }
+                        }
+                    }
+                    break;
+                default:
+                    // Attributes and namespaces are not part of the data tree
+                    selected = List.of();
+            }
+            for (Evaluator predicate : predicates) {
+                selected = filter(selected, predicate, frame.current);
+            }
+            return selected;
+        }
+
+        private void addDescendants(Node node, List<Node> selected) {
+            for (Node child : node.getChildren()) {
+                if (matches(child)) {
+                    selected.add(child);
+                }
+                addDescendants(child, selected);
+            }
+        }
+
+        private boolean matches(Node node) {
+            return name == null || (node.getParent() != null && name.equals(node.getName()));
+        }
+    }
+
+    /**
+     * Translates the expression tree of the YANG parser into evaluators.
+     */
+    private static class Compiler {
+        private final YangXPathExpression.QualifiedBound xpath;
+        private final QNameModule module;
+        private final Environment environment;
+
+        Compiler(YangXPathExpression.QualifiedBound xpath, QNameModule module, Environment environment) {
+            this.xpath = xpath;
+            this.module = module;
+            this.environment = environment;
+        }
+
+        Evaluator compile(YangExpr expr) {
+            if (expr instanceof YangBooleanConstantExpr constant) {
+                Boolean value = constant.getValue();
+                return frame -> value;
+            } else if (expr instanceof YangLiteralExpr literal) {
+                String value = literal.getLiteral();
+                return frame -> value;
+            } else if (expr instanceof YangNumberExpr number) {
+                Double value = number.getNumber().doubleValue();
+                return frame -> value;
+            } else if (expr instanceof YangQNameExpr.Resolved qname) {
+                String value = environment.prefixed(qname.getQName());
+                return frame -> value;
+            } else if (expr instanceof YangQNameExpr.Unresolved qname
+                    && qname.getQName() instanceof UnresolvedQName.Unqualified localName) {
+                String value = environment.prefixed(QName.create(module, localName.getLocalName()));
+                return frame -> value;
+            } else if (expr instanceof YangNegateExpr negate) {
+                Evaluator operand = compile(negate.getSubExpr());
+                return frame -> -toNumber(operand.evaluate(frame));
+            } else if (expr instanceof YangBinaryExpr binary) {
+                return compileBinary(binary);
+            } else if (expr instanceof YangNaryExpr nary) {
+                return compileNary(nary);
+            } else if (expr instanceof YangFunctionCallExpr call) {
+                return compileFunction(call);
+            } else if (expr instanceof YangLocationPath path) {
+                Step[] steps = compileSteps(path);
+                if (path.isAbsolute()) {
+                    return frame -> selectPath(List.of(rootOf(frame.node)), steps, frame);
+                }
+                return frame -> selectPath(List.of(frame.node), steps, frame);
+            } else if (expr instanceof YangPathExpr pathExpr) {
+                Evaluator filter = compile(pathExpr.getFilterExpr());
+                Step[] steps = pathExpr.getLocationPath().map(this::compileSteps).orElse(new Step[0]);
+                return frame -> selectPath(toNodes(filter.evaluate(frame)), steps, frame);
+            } else if (expr instanceof YangFilterExpr filterExpr) {
+                Evaluator inner = compile(filterExpr.getExpr());
+                Evaluator[] predicates = compilePredicates(filterExpr.getPredicates());
+                return frame -> {
+                    List<Node> nodes = toNodes(inner.evaluate(frame));
+                    for (Evaluator predicate : predicates) {
+                        nodes = filter(nodes, predicate, frame.current);
+                    }
+                    return nodes;
+                };
+            }
+            throw new IllegalArgumentException("Unsupported expression " + expr);
+        }
+
+        private Step[] compileSteps(YangLocationPath path) {
+            List<Step> steps = new ArrayList<>();
+            for (YangLocationPath.Step step : path.getSteps()) {
+                switch (step.getAxis()) {
+                    case FOLLOWING:
+                    case PRECEDING:
+                        throw new IllegalArgumentException("Unsupported axis " + step.getAxis());
+                    default:
+                        break;
+                }
+                QName name;
+                if (step instanceof YangLocationPath.ResolvedQNameStep qnameStep) {
+                    name = qnameStep.getQName();
+                } else if (step instanceof YangLocationPath.UnresolvedQNameStep unresolved
+                        && unresolved.getQName() instanceof UnresolvedQName.Unqualified localName) {
+                    name = QName.create(module, localName.getLocalName());
+                } else if (step instanceof YangLocationPath.NodeTypeStep nodeTypeStep
+                        && nodeTypeStep.getNodeType() != YangXPathNodeType.NODE) {
+                    throw new IllegalArgumentException("Unsupported node type " + nodeTypeStep.getNodeType());
+                } else if (step instanceof YangLocationPath.QNameStep) {
+                    throw new IllegalArgumentException("Unresolved name in " + step);
+                } else {
+                    // node(), * or an abbreviated . or ..
+                    name = null;
+                }
+                steps.add(new Step(step.getAxis(), name, compilePredicates(step.getPredicates())));
+            }
+            return steps.toArray(new Step[0]);
+        }
+
+        private Evaluator[] compilePredicates(Set<YangExpr> predicates) {
+            Evaluator[] compiled = new Evaluator[predicates.size()];
+            int i = 0;
+            for (YangExpr predicate : predicates) {
+                compiled[i++] = compile(predicate);
+            }
+            return compiled;
+        }
+
+        private Evaluator compileBinary(YangBinaryExpr binary) {
+            Evaluator left = compile(binary.getLeftExpr());
+            Evaluator right = compile(binary.getRightExpr());
+            YangBinaryOperator operator = binary.getOperator();
+            switch (operator) {
+                case PLUS:
+                    return frame -> toNumber(left.evaluate(frame)) + toNumber(right.evaluate(frame));
+                case MINUS:
+                    return frame -> toNumber(left.evaluate(frame)) - toNumber(right.evaluate(frame));
+                case MUL:
+                    return frame -> toNumber(left.evaluate(frame)) * toNumber(right.evaluate(frame));
+                case DIV:
+                    return frame -> toNumber(left.evaluate(frame)) / toNumber(right.evaluate(frame));
+                case MOD:
+                    return frame -> toNumber(left.evaluate(frame)) % toNumber(right.evaluate(frame));
+                default:
+                    return frame -> compare(operator, left.evaluate(frame), right.evaluate(frame));
+            }
+        }
+
+        private Evaluator compileNary(YangNaryExpr nary) {
+            List<Evaluator> operands = new ArrayList<>();
+            for (YangExpr operand : nary.getExpressions()) {
+                operands.add(compile(operand));
+            }
+            switch (nary.getOperator()) {
+                case AND:
+                    return frame -> {
+                        for (Evaluator operand : operands) {
+                            if (!toBoolean(operand.evaluate(frame))) {
+                                return false;
+                            }
+                        }
+                        return true;
+                    };
+                case OR:
+                    return frame -> {
+                        for (Evaluator operand : operands) {
+                            if (toBoolean(operand.evaluate(frame))) {
+                                return true;
+                            }
+                        }
+                        return false;
+                    };
+                default:
+                    return frame -> {
+                        List<Node> union = new ArrayList<>();
+                        Set<Node> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+                        for (Evaluator operand : operands) {
+                            for (Node node : toNodes(operand.evaluate(frame))) {
+                                if (seen.add(node)) {
+                                    union.add(node);
+                                }
+                            }
+                        }
+                        return union;
+                    };
+            }
+        }
+
+        private Evaluator compileFunction(YangFunctionCallExpr call) {
+            YangFunction function = FUNCTIONS.get(call.getName());
+            if (function == null) {
+                throw new IllegalArgumentException("Unsupported function " + call.getName().getLocalName() + "()");
+            }
+            List<YangExpr> arguments = call.getArguments();
+            Evaluator[] args = new Evaluator[arguments.size()];
+            // Identities and patterns are compiled here when given as literals
+            if (function != YangFunction.DERIVED_FROM && function != YangFunction.DERIVED_FROM_OR_SELF
+                    && function != YangFunction.RE_MATCH) {
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = compile(arguments.get(i));
+                }
+            }
+            switch (function) {
+                case TRUE:
+                    return frame -> true;
+                case FALSE:
+                    return frame -> false;
+                case NOT:
+                    return frame -> !toBoolean(args[0].evaluate(frame));
+                case BOOLEAN:
+                    return frame -> toBoolean(args[0].evaluate(frame));
+                case COUNT:
+                    return frame -> (double) toNodes(args[0].evaluate(frame)).size();
+                case CURRENT:
+                    return frame -> List.of(frame.current);
+                case POSITION:
+                    return frame -> (double) frame.position;
+                case LAST:
+                    return frame -> (double) frame.size;
+                case STRING:
+                    return args.length == 0 ? frame -> frame.node.getStringValue()
+                            : frame -> toStringValue(args[0].evaluate(frame));
+                case NUMBER:
+                    return args.length == 0 ? frame -> toNumber(frame.node.getStringValue())
+                            : frame -> toNumber(args[0].evaluate(frame));
+                case CONCAT:
+                    return frame -> {
+                        StringBuilder joined = new StringBuilder();
+                        for (Evaluator arg : args) {
+                            joined.append(toStringValue(arg.evaluate(frame)));
+                        }
+                        return joined.toString();
+                    };
+                case CONTAINS:
+                    return frame -> toStringValue(args[0].evaluate(frame))
+                            .contains(toStringValue(args[1].evaluate(frame)));
+                case STARTS_WITH:
+                    return frame -> toStringValue(args[0].evaluate(frame))
+                            .startsWith(toStringValue(args[1].evaluate(frame)));
+                case SUBSTRING_BEFORE:
+                    return frame -> {
+                        String string = toStringValue(args[0].evaluate(frame));
+                        int at = string.indexOf(toStringValue(args[1].evaluate(frame)));
+                        return at < 0 ? "" : string.substring(0, at);
+                    };
+                case SUBSTRING_AFTER:
+                    return frame -> {
+                        String string = toStringValue(args[0].evaluate(frame));
+                        String separator = toStringValue(args[1].evaluate(frame));
+                        int at = string.indexOf(separator);
+                        return at < 0 ? "" : string.substring(at + separator.length());
+                    };
+                case SUBSTRING:
+                    return frame -> substring(toStringValue(args[0].evaluate(frame)),
+                            toNumber(args[1].evaluate(frame)),
+                            args.length > 2 ? toNumber(args[2].evaluate(frame)) : Double.POSITIVE_INFINITY);
+                case STRING_LENGTH:
+                    return frame -> {
+                        String string = args.length == 0 ? frame.node.getStringValue()
+                                : toStringValue(args[0].evaluate(frame));
+                        return (double) string.codePointCount(0, string.length());
+                    };
+                case NORMALIZE_SPACE:
+                    return frame -> (args.length == 0 ? frame.node.getStringValue()
+                            : toStringValue(args[0].evaluate(frame))).trim().replaceAll("[ \t\r\n]+", " ");
+                case TRANSLATE:
+                    return frame -> translate(toStringValue(args[0].evaluate(frame)),
+                            toStringValue(args[1].evaluate(frame)), toStringValue(args[2].evaluate(frame)));
+                case SUM:
+                    return frame -> {
+                        double sum = 0;
+                        for (Node node : toNodes(args[0].evaluate(frame))) {
+                            sum += toNumber(node.getStringValue());
+                        }
+                        return sum;
+                    };
+                case FLOOR:
+                    return frame -> Math.floor(toNumber(args[0].evaluate(frame)));
+                case CEILING:
+                    return frame -> Math.ceil(toNumber(args[0].evaluate(frame)));
+                case ROUND:
+                    return frame -> round(toNumber(args[0].evaluate(frame)));
+                case LOCAL_NAME:
+                case NAME:
+                case NAMESPACE_URI:
+                    return frame -> {
+                        Node node = args.length == 0 ? frame.node : first(toNodes(args[0].evaluate(frame)));
+                        if (node == null || node.getParent() == null) {
+                            return "";
+                        }
+                        QName name = node.getName();
+                        return function == YangFunction.LOCAL_NAME ? name.getLocalName()
+                                : function == YangFunction.NAME ? environment.prefixed(name)
+                                : name.getNamespace().toString();
+                    };
+                case BIT_IS_SET:
+                    return frame -> {
+                        Node node = first(toNodes(args[0].evaluate(frame)));
+                        return node != null && node.getValue() instanceof Set<?> bits
+                                && bits.contains(toStringValue(args[1].evaluate(frame)));
+                    };
+                case ENUM_VALUE:
+                    return frame -> enumValue(first(toNodes(args[0].evaluate(frame))));
+                case DERIVED_FROM:
+                case DERIVED_FROM_OR_SELF:
+                    return compileDerivedFrom(arguments, function == YangFunction.DERIVED_FROM_OR_SELF);
+                case RE_MATCH:
+                    return compileReMatch(arguments);
+                default:
+                    throw new IllegalArgumentException("Unsupported function " + call.getName().getLocalName() + "()");
+            }
+        }
+
+        private Evaluator compileDerivedFrom(List<YangExpr> arguments, boolean orSelf) {
+            Evaluator nodes = compile(arguments.get(0));
+            QName base = resolveIdentity(arguments.get(1));
+            return frame -> {
+                for (Node node : toNodes(nodes.evaluate(frame))) {
+                    if (node.getValue() instanceof QName identity && environment.isDerived(identity, base, orSelf)) {
+                        return true;
+                    }
+                }
+                return false;
+            };
+        }
+
+        private QName resolveIdentity(YangExpr expr) {
+            YangExpr resolved = expr;
+            if (expr instanceof YangLiteralExpr literal) {
+                try {
+                    resolved = xpath.interpretAsQName(literal);
+                } catch (XPathExpressionException e) {
+                    throw new IllegalArgumentException("Invalid identity " + literal.getLiteral(), e);
+                }
+            }
+            if (resolved instanceof YangQNameExpr.Resolved qname) {
+                return qname.getQName();
+            } else if (resolved instanceof YangQNameExpr.Unresolved qname
+                    && qname.getQName() instanceof UnresolvedQName.Unqualified localName) {
+                return QName.create(module, localName.getLocalName());
+            }
+            throw new IllegalArgumentException("Unsupported identity argument " + expr);
+        }
+
+        private Evaluator compileReMatch(List<YangExpr> arguments) {
+            Evaluator string = compile(arguments.get(0));
+            if (arguments.get(1) instanceof YangLiteralExpr literal) {
+                Pattern pattern = compilePattern(literal.getLiteral());
+                return frame -> pattern.matcher(toStringValue(string.evaluate(frame))).matches();
+            }
+            Evaluator regex = compile(arguments.get(1));
+            return frame -> {
+                try {
+                    return compilePattern(toStringValue(regex.evaluate(frame)))
+                            .matcher(toStringValue(string.evaluate(frame))).matches();
+                } catch (IllegalArgumentException e) {
+                    return false;
+                }
+            };
+        }
+
+        private static Pattern compilePattern(String regex) {
+            // XML Schema regular expressions are implicitly anchored; the syntax YANG modules
+            // use is shared with Java's
+            try {
+                return Pattern.compile(regex);
+            } catch (PatternSyntaxException e) {
+                throw new IllegalArgumentException("Unsupported regular expression " + regex, e);
+            }
+        }
+    }
+
+    private static List<Node> selectPath(List<Node> start, Step[] steps, Frame frame) {
+        List<Node> nodes = start;
+        for (Step step : steps) {
+            if (nodes.isEmpty()) {
+                break;
+            }
+            nodes = step.select(nodes, frame);
+        }
+        return nodes;
+    }
+
+    private static List<Node> filter(List<Node> nodes, Evaluator predicate, Node current) {
+        List<Node> kept = new ArrayList<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            Object value = predicate.evaluate(new Frame(nodes.get(i), i + 1, nodes.size(), current));
+            if (value instanceof Double position ? position == i + 1 : toBoolean(value)) {
+                kept.add(nodes.get(i));
+            }
+        }
+        return kept;
+    }
+
+    private static Node rootOf(Node node) {
+        Node root = node;
+        while (root.getParent() != null) {
+            root = root.getParent();
+        }
+        return root;
+    }
+
+    private static Node first(List<Node> nodes) {
+        return nodes.isEmpty() ? null : nodes.get(0);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Node> toNodes(Object value) {
+        if (value instanceof List<?> nodes) {
+            return (List<Node>) nodes;
+        }
+        throw new IllegalStateException("Not a node-set: " + value);
+    }
+
+    static boolean toBoolean(Object value) {
+        if (value instanceof Boolean bool) {
+            return bool;
+        } else if (value instanceof Double number) {
+            return number != 0 && !number.isNaN();
+        } else if (value instanceof String string) {
+            return !string.isEmpty();
+        }
+        return !((List<?>) value).isEmpty();
+    }
+
+    private static double toNumber(Object value) {
+        if (value instanceof Double number) {
+            return number;
+        } else if (value instanceof Boolean bool) {
+            return bool ? 1 : 0;
+        }
+        String string = value instanceof String text ? text : toStringValue(value);
+        String trimmed = string.trim();
+        // XPath numbers have no exponent, sign other than minus, or special values
+        if (trimmed.isEmpty() || !trimmed.matches("-?([0-9]+(\\.[0-9]*)?|\\.[0-9]+)")) {
+            return Double.NaN;
+        }
+        return Double.parseDouble(trimmed);
+    }
+
+    private static String toStringValue(Object value) {
+        if (value instanceof String string) {
+            return string;
+        } else if (value instanceof Boolean bool) {
+            return bool.toString();
+        } else if (value instanceof Double number) {
+            if (number.isNaN()) {
+                return "NaN";
+            } else if (number.isInfinite()) {
+                return number > 0 ? "Infinity" : "-Infinity";
+            } else if (number == Math.rint(number) && Math.abs(number) < 1e15) {
+                return Long.toString(number.longValue());
+            }
+            return BigDecimal.valueOf(number).stripTrailingZeros().toPlainString();
+        }
+        Node node = first(toNodes(value));
+        return node == null ? "" : node.getStringValue();
+    }
+
+    /**
+     * XPath 1.0 comparison: a node-set compares true if any of its nodes does.
+     */
+    private static boolean compare(YangBinaryOperator operator, Object left, Object right) {
+        if (left instanceof List<?> || right instanceof List<?>) {
+            if (left instanceof Boolean || right instanceof Boolean) {
+                return compareAtomic(operator, toBoolean(left), toBoolean(right));
+            }
+            if (left instanceof List<?>) {
+                for (Node node : toNodes(left)) {
+                    if (compare(operator, node.getStringValue(), right)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            for (Node node : toNodes(right)) {
+                if (compareAtomic(operator, left, node.getStringValue())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return compareAtomic(operator, left, right);
+    }
+
+    private static boolean compareAtomic(YangBinaryOperator operator, Object left, Object right) {
+        switch (operator) {
+            case EQUALS:
+            case NOT_EQUALS:
+                boolean equal;
+                if (left instanceof Boolean || right instanceof Boolean) {
+                    equal = toBoolean(left) == toBoolean(right);
+                } else if (left instanceof Double || right instanceof Double) {
+                    equal = toNumber(left) == toNumber(right);
+                } else {
+                    equal = toStringValue(left).equals(toStringValue(right));
+                }
+                return operator == YangBinaryOperator.EQUALS ? equal : !equal;
+            case GT:
+                return toNumber(left) > toNumber(right);
+            case GTE:
+                return toNumber(left) >= toNumber(right);
+            case LT:
+                return toNumber(left) < toNumber(right);
+            case LTE:
+                return toNumber(left) <= toNumber(right);
+            default:
+                throw new IllegalStateException("Not a comparison: " + operator);
+        }
+    }
+
+    private static double round(double number) {
+        return Double.isNaN(number) || Double.isInfinite(number) ? number : Math.floor(number + 0.5);
+    }
+
+    private static String substring(String string, double start, double length) {
+        double first = round(start);
+        double end = first + round(length);
+        StringBuilder result = new StringBuilder();
+        int position = 1;
+        for (int i = 0; i < string.length(); i += Character.charCount(string.codePointAt(i))) {
+            if (position >= first && position < end) {
+                result.appendCodePoint(string.codePointAt(i));
+            }
+            position++;
+        }
+        return result.toString();
+    }
+
+    private static String translate(String string, String from, String to) {
+        StringBuilder result = new StringBuilder(string.length());
+        for (int i = 0; i < string.length(); i++) {
+            int at = from.indexOf(string.charAt(i));
+            if (at < 0) {
+                result.append(string.charAt(i));
+            } else if (at < to.length()) {
+                result.append(to.charAt(at));
+            }
+        }
+        return result.toString();
+    }
+
+    private static Object enumValue(Node node) {
+        if (node != null && node.getValue() instanceof String name
+                && node.getSchema() instanceof TypedDataSchemaNode typed
+                && typed.getType() instanceof EnumTypeDefinition enumType) {
+            for (EnumTypeDefinition.EnumPair pair : enumType.getValues()) {
+                if (pair.getName().equals(name)) {
+                    return (double) pair.getValue();
+                }
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Value of a leaf for comparing with others of the same leaf, e.g. in unique sets:
+     * binary values compare by content.
+     */
+    static Object comparable(Object value) {
+        return value instanceof byte[] bytes ? ByteBuffer.wrap(bytes) : value;
+    }
+}
@@ -0,0 +1,742 @@
+package com.example;
+
+import org.opendaylight.yangtools.yang.common.QName;
+import org.opendaylight.yangtools.yang.common.QNameModule;
+import org.opendaylight.yangtools.yang.data.api.schema.NormalizedNode;
+import org.opendaylight.yangtools.yang.model.api.AnydataSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.AnyxmlSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.AugmentationSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.AugmentationTarget;
+import org.opendaylight.yangtools.yang.model.api.CaseSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.ChoiceSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.ContainerSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.DataNodeContainer;
+import org.opendaylight.yangtools.yang.model.api.DataSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.EffectiveModelContext;
+import org.opendaylight.yangtools.yang.model.api.EffectiveStatementEquivalent;
+import org.opendaylight.yangtools.yang.model.api.ElementCountConstraint;
+import org.opendaylight.yangtools.yang.model.api.ElementCountConstraintAware;
+import org.opendaylight.yangtools.yang.model.api.LeafSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.ListSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.MandatoryAware;
+import org.opendaylight.yangtools.yang.model.api.Module;
+import org.opendaylight.yangtools.yang.model.api.MustConstraintAware;
+import org.opendaylight.yangtools.yang.model.api.MustDefinition;
+import org.opendaylight.yangtools.yang.model.api.WhenConditionAware;
+import org.opendaylight.yangtools.yang.model.api.meta.DeclaredStatement;
+import org.opendaylight.yangtools.yang.model.api.meta.EffectiveStatement;
+import org.opendaylight.yangtools.yang.model.api.stmt.DefaultEffectiveStatement;
+import org.opendaylight.yangtools.yang.model.api.stmt.SchemaNodeIdentifier;
+import org.opendaylight.yangtools.yang.model.api.stmt.UniqueEffectiveStatement;
+import org.opendaylight.yangtools.yang.model.api.stmt.WhenEffectiveStatement;
+import org.opendaylight.yangtools.yang.xpath.api.YangXPathExpression;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Constraints of a schema on the data tree as a whole, which the YANG parser does not check:
+ * must and when expressions, mandatory leaves and choices, min-elements, max-elements and
+ * unique. They are compiled once per schema, expressions into {@link ConstraintExpression}s,
+ * and evaluated over the NormalizedNode tree of a document that parsed without errors.
+ * Children are indexed by name, so element counts are list sizes and unique values are
+ * checked with one hash lookup per entry, linear in the size of the list.
+ * <p>
+ * Mandatory nodes and min-elements of top level nodes are only required from modules with
+ * data in the document, and those of state data and of nodes with a when condition are not
+ * required at all, as the document may hold configuration only. Expressions that fail to
+ * compile, e.g. calling deref(), are left unchecked; a document with data they apply to
+ * gets a warning for each, see {@link Violation#isUnchecked()}.
+ */
+public class DataTreeConstraintPlan {
+    private static final Logger LOG = LoggerFactory.getLogger(DataTreeConstraintPlan.class);
+    // A power of two, so reading the clock costs little per node
+    private static final int DEADLINE_CHECK_INTERVAL = 64;
+
+    private final ConstraintExpression.Environment environment;
+    private final Map<DataSchemaNode, NodeRules> rules;
+    // Schema nodes with rules on them or on a descendant, the only ones visited
+    private final Set<DataSchemaNode> checkedSubtrees;
+    private final List<ChildCheck> rootChecks;
+    private final int constraintCount;
+    private final int uncheckedCount;
+
+    private DataTreeConstraintPlan(ConstraintExpression.Environment environment, Map<DataSchemaNode, NodeRules> rules,
+                                   Set<DataSchemaNode> checkedSubtrees, List<ChildCheck> rootChecks,
+                                   int constraintCount, int uncheckedCount) {
+        this.environment = environment;
+        this.rules = rules;
+        this.checkedSubtrees = checkedSubtrees;
+        this.rootChecks = rootChecks;
+        this.constraintCount = constraintCount;
+        this.uncheckedCount = uncheckedCount;
+    }
+
+    /**
+     * A constraint the data does not meet, or one that applies to the data but could not be
+     * compiled.
+     */
+    public static class Violation {
+        private final String xpath;
+        private final List<String> locationXPaths;
+        private final String message;
+        private final boolean unchecked;
+
+        Violation(String xpath, ConstraintExpression.Node location, String message, boolean unchecked) {
+            this.xpath = xpath;
+            this.message = message;
+            this.unchecked = unchecked;
+            this.locationXPaths = new ArrayList<>();
+            for (ConstraintExpression.Node node = location; node != null; node = node.getParent()) {
+                locationXPaths.add(node.getXPath());
+            }
+        }
+
+        public String getXPath() {
+            return xpath;
+        }
+
+        /**
+         * XPaths of the element to report the violation at, then of its ancestors, innermost
+         * first, for when the element cannot be found in the document.
+         */
+        public List<String> getLocationXPaths() {
+            return locationXPaths;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * True if the constraint could not be compiled, so the data may or may not meet it.
+         */
+        public boolean isUnchecked() {
+            return unchecked;
+        }
+    }
+
+    /**
+     * What is checked on the data nodes of one schema node.
+     */
+    private static class NodeRules {
+        final List<Must> musts = new ArrayList<>();
+        ConstraintExpression when;
+        final List<Unique> uniques = new ArrayList<>();
+        // Checks on the children of a container or list entry
+        final List<ChildCheck> childChecks = new ArrayList<>();
+        // Must and when expressions that could not be compiled, as reported
+        final List<String> unchecked = new ArrayList<>();
+
+        boolean isEmpty() {
+            return musts.isEmpty() && when == null && uniques.isEmpty() && childChecks.isEmpty()
+                    && unchecked.isEmpty();
+        }
+    }
+
+    private static class Must {
+        final ConstraintExpression expression;
+        // The error-message of the must statement, or null
+        final String errorMessage;
+
+        Must(ConstraintExpression expression, String errorMessage) {
+            this.expression = expression;
+            this.errorMessage = errorMessage;
+        }
+    }
+
+    private static class Unique {
+        // Descendant leaves of each entry, as paths of child names
+        final List<List<QName>> leaves;
+        final String text;
+
+        Unique(List<List<QName>> leaves, String text) {
+            this.leaves = leaves;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Condition on the children of a node: that a case of a choice or a module is present,
+     * and the conditions of the enclosing choices.
+     */
+    private static class Guard {
+        final QName[] members;
+        final Guard parent;
+
+        Guard(Collection<QName> members, Guard parent) {
+            this.members = members.toArray(new QName[0]);
+            this.parent = parent;
+        }
+
+        boolean holds(ConstraintExpression.Node node) {
+            return (parent == null || parent.holds(node)) && anyPresent(node, members);
+        }
+    }
+
+    /**
+     * Check on the children of a node, applied only while its guard holds.
+     */
+    private abstract static class ChildCheck {
+        final Guard guard;
+
+        ChildCheck(Guard guard) {
+            this.guard = guard;
+        }
+
+        abstract void check(ConstraintExpression.Node node, Checker checker);
+
+        /**
+         * Checks an enclosing non-presence container that is not in the document, whose
+         * mandatory descendants are missing with it.
+         *
+         * @param xpath the XPath the container would have
+         */
+        void checkAbsent(String xpath, ConstraintExpression.Node location, Checker checker) {
+        }
+    }
+
+    private static class Required extends ChildCheck {
+        final QName[] names;
+        // The mandatory leaf, anydata or choice
+        final QName name;
+        final boolean choice;
+
+        Required(Collection<QName> names, QName name, boolean choice, Guard guard) {
+            super(guard);
+            this.names = names.toArray(new QName[0]);
+            this.name = name;
+            this.choice = choice;
+        }
+
+        @Override
+        void check(ConstraintExpression.Node node, Checker checker) {
+            if (!anyPresent(node, names)) {
+                reportMissing(node.getXPath(), node, checker);
+            }
+        }
+
+        @Override
+        void checkAbsent(String xpath, ConstraintExpression.Node location, Checker checker) {
+            if (guard == null) {
+                reportMissing(xpath, location, checker);
+            }
+        }
+
+        private void reportMissing(String xpath, ConstraintExpression.Node location, Checker checker) {
+            if (choice) {
+                checker.report(xpath.isEmpty() ? "/" : xpath, location, "Missing mandatory choice " + name);
+            } else {
+                checker.report(xpath + "/" + name.getLocalName(), location, "Missing mandatory node " + name);
+            }
+        }
+    }
+
+    private static class Count extends ChildCheck {
+        final QName name;
+        final int min;
+        final int max;
+
+        Count(QName name, int min, int max, Guard guard) {
+            super(guard);
+            this.name = name;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        void check(ConstraintExpression.Node node, Checker checker) {
+            List<ConstraintExpression.Node> entries = node.getChildren(name);
+            if (entries.size() < min) {
+                checker.report(node.getXPath() + "/" + name.getLocalName(), entries.isEmpty() ? node : entries.get(0),
+                        "Too few entries in " + name + ": " + entries.size() + " of at least " + min);
+            } else if (entries.size() > max) {
+                // Only the entries of an ordered list have a first one over the limit
+                ConstraintExpression.Node surplus = entries.get(max);
+                boolean ordered = surplus.isOrdered();
+                checker.report(ordered ? surplus.getXPath() : node.getXPath() + "/" + name.getLocalName(),
+                        ordered ? surplus : node,
+                        "Too many entries in " + name + ": " + entries.size() + " of at most " + max);
+            }
+        }
+
+        @Override
+        void checkAbsent(String xpath, ConstraintExpression.Node location, Checker checker) {
+            if (guard == null && min > 0) {
+                checker.report(xpath + "/" + name.getLocalName(), location,
+                        "Too few entries in " + name + ": 0 of at least " + min);
+            }
+        }
+    }
+
+    /**
+     * Non-presence container with mandatory descendants, which are missing if it is.
+     */
+    private static class AbsentContainer extends ChildCheck {
+        final QName name;
+        final List<ChildCheck> checks;
+
+        AbsentContainer(QName name, List<ChildCheck> checks, Guard guard) {
+            super(guard);
+            this.name = name;
+            this.checks = checks;
+        }
+
+        @Override
+        void check(ConstraintExpression.Node node, Checker checker) {
+            if (node.getChildren(name).isEmpty()) {
+                checkDescendants(node.getXPath(), node, checker);
+            }
+        }
+
+        @Override
+        void checkAbsent(String xpath, ConstraintExpression.Node location, Checker checker) {
+            if (guard == null) {
+                checkDescendants(xpath, location, checker);
+            }
+        }
+
+        private void checkDescendants(String xpath, ConstraintExpression.Node location, Checker checker) {
+            for (ChildCheck check : checks) {
+                check.checkAbsent(xpath + "/" + name.getLocalName(), location, checker);
+            }
+        }
+    }
+
+    /**
+     * When condition of a choice, case or augment, which holds for all the nodes it brings
+     * in, with their parent as context node.
+     */
+    private static class GroupWhen extends ChildCheck {
+        final QName[] members;
+        // Null if the condition could not be compiled
+        final ConstraintExpression when;
+        final String unchecked;
+
+        GroupWhen(Collection<QName> members, ConstraintExpression when, String unchecked, Guard guard) {
+            super(guard);
+            this.members = members.toArray(new QName[0]);
+            this.when = when;
+            this.unchecked = unchecked;
+        }
+
+        @Override
+        void check(ConstraintExpression.Node node, Checker checker) {
+            for (QName member : members) {
+                List<ConstraintExpression.Node> present = node.getChildren(member);
+                if (!present.isEmpty() && !present.get(0).isDefault()) {
+                    if (when == null) {
+                        checker.reportUnchecked(present.get(0), unchecked);
+                    } else if (!when.test(node, node)) {
+                        checker.reportWhen(present.get(0), when);
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    public static DataTreeConstraintPlan compile(EffectiveModelContext context) {
+        long start = System.nanoTime();
+        Compiler compiler = new Compiler(new ConstraintExpression.Environment(context));
+        List<ChildCheck> rootChecks = new ArrayList<>();
+        for (Module module : context.getModules()) {
+            // Only modules with data in the document require their top level nodes
+            Guard moduleGuard = new Guard(memberNames(module.getChildNodes()), null);
+            compiler.addChildChecks(null, module.getChildNodes(), moduleGuard, rootChecks);
+        }
+        DataTreeConstraintPlan plan = new DataTreeConstraintPlan(compiler.environment, compiler.rules,
+                compiler.checkedSubtrees, rootChecks, compiler.constraintCount, compiler.skippedCount);
+        ValidationMetrics.get().recordPhase(ValidationPhase.PLAN_COMPILE, start);
+        LOG.debug("Compiled {} data tree constraints, {} left unchecked", compiler.constraintCount,
+                compiler.skippedCount);
+        return plan;
+    }
+
+    /**
+     * True if the schema has no constraint on the data tree, checked or not, so documents
+     * need no tree.
+     */
+    public boolean isEmpty() {
+        return constraintCount == 0 && uncheckedCount == 0;
+    }
+
+    /**
+     * Number of constraints checked.
+     */
+    public int size() {
+        return constraintCount;
+    }
+
+    /**
+     * Checks the data of a document.
+     *
+     * @param data          the data under the document root, as read by the YANG parser
+     * @param maxViolations number of violations after which checking stops
+     * @param deadline      System.nanoTime() after which checking fails, 0 for none
+     * @return the violations, followed by one for each unchecked constraint that applies to
+     * the data checked, which do not count towards maxViolations
+     * @throws ValidationTimeoutException once the deadline has passed
+     */
+    public List<Violation> check(NormalizedNode data, int maxViolations, long deadline)
+            throws ValidationTimeoutException {
+        Checker checker = new Checker(maxViolations, deadline);
+        ConstraintExpression.Node root = ConstraintExpression.Node.root(data, environment);
+        for (ChildCheck check : rootChecks) {
+            if (!checker.isFull() && (check.guard == null || check.guard.holds(root))) {
+                check.check(root, checker);
+            }
+        }
+        checker.visitChildren(root);
+        checker.violations.addAll(checker.unchecked);
+        return checker.violations;
+    }
+
+    /**
+     * State of checking one document.
+     */
+    private class Checker {
+        final List<Violation> violations = new ArrayList<>();
+        final List<Violation> unchecked = new ArrayList<>();
+        // Each unchecked constraint is reported once, at the first data it applies to
+        final Set<String> reportedUnchecked = Collections.newSetFromMap(new IdentityHashMap<>());
+        final int maxViolations;
+        final long deadline;
+        int visited;
+
+        Checker(int maxViolations, long deadline) {
+            this.maxViolations = maxViolations;
+            this.deadline = deadline;
+        }
+
+        boolean isFull() {
+            return violations.size() >= maxViolations;
+        }
+
+        void visit(ConstraintExpression.Node node) throws ValidationTimeoutException {
+            if (deadline != 0 && (++visited & (DEADLINE_CHECK_INTERVAL - 1)) == 0 && System.nanoTime() - deadline > 0) {
+                throw new ValidationTimeoutException("Validation timed out");
+            }
+            if (isFull() || node.isDefault()) {
+                return;
+            }
+            NodeRules nodeRules = rules.get(node.getSchema());
+            if (nodeRules != null) {
+                for (String constraint : nodeRules.unchecked) {
+                    reportUnchecked(node, constraint);
+                }
+                if (nodeRules.when != null && !nodeRules.when.test(node, node)) {
+                    reportWhen(node, nodeRules.when);
+                }
+                // Entries of a list are compared with each other once, from the first
+                if (node.getIndex() == 0) {
+                    for (Unique unique : nodeRules.uniques) {
+                        checkUnique(node.getParent().getChildren(node.getName()), unique);
+                    }
+                }
+                for (Must must : nodeRules.musts) {
+                    if (!isFull() && !must.expression.test(node, node)) {
+                        report(node.getXPath(), node, "Must condition violated in " + node.getName() + ": "
+                                + (must.errorMessage != null ? must.errorMessage : must.expression.getText()));
+                    }
+                }
+                for (ChildCheck check : nodeRules.childChecks) {
+                    if (!isFull() && (check.guard == null || check.guard.holds(node))) {
+                        check.check(node, this);
+                    }
+                }
+            }
+            visitChildren(node);
+        }
+
+        void visitChildren(ConstraintExpression.Node node) throws ValidationTimeoutException {
+            for (ConstraintExpression.Node child : node.getChildren()) {
+                if (checkedSubtrees.contains(child.getSchema())) {
+                    visit(child);
+                }
+            }
+        }
+
+        private void checkUnique(List<ConstraintExpression.Node> entries, Unique unique) {
+            Map<List<Object>, ConstraintExpression.Node> seen = HashMap.newHashMap(entries.size());
+            for (ConstraintExpression.Node entry : entries) {
+                List<Object> values = new ArrayList<>(unique.leaves.size());
+                for (List<QName> path : unique.leaves) {
+                    Object value = valueAt(entry, path);
+                    if (value == null) {
+                        // Only entries with all the leaves are compared
+                        values = null;
+                        break;
+                    }
+                    values.add(ConstraintExpression.comparable(value));
+                }
+                if (values == null) {
+                    continue;
+                }
+                ConstraintExpression.Node first = seen.putIfAbsent(values, entry);
+                if (first != null && !isFull()) {
+                    String firstPath = first.getXPath();
+                    report(entry.getXPath(), entry, "Unique constraint violated in " + entry.getName() + ": "
+                            + unique.text + " as in " + firstPath.substring(firstPath.lastIndexOf('/') + 1));
+                }
+            }
+        }
+
+        void reportWhen(ConstraintExpression.Node node, ConstraintExpression when) {
+            report(node.getXPath(), node, "When condition false for " + node.getName() + ": " + when.getText());
+        }
+
+        void report(String xpath, ConstraintExpression.Node location, String message) {
+            if (!isFull()) {
+                violations.add(new Violation(xpath, location, message, false));
+            }
+        }
+
+        void reportUnchecked(ConstraintExpression.Node node, String constraint) {
+            if (reportedUnchecked.add(constraint)) {
+                unchecked.add(new Violation(node.getXPath(), node, "Constraint not checked for "
+                        + node.getName().getLocalName() + ": " + constraint, true));
+            }
+        }
+    }
+
+    /**
+     * Walks the schema, compiling the rules of every data node.
+     */
+    private static class Compiler {
+        final ConstraintExpression.Environment environment;
+        final Map<DataSchemaNode, NodeRules> rules = new IdentityHashMap<>();
+        final Set<DataSchemaNode> checkedSubtrees = Collections.newSetFromMap(new IdentityHashMap<>());
+        int constraintCount;
+        int skippedCount;
+
+        Compiler(ConstraintExpression.Environment environment) {
+            this.environment = environment;
+        }
+
+        void compileNode(DataSchemaNode node) {
+            if (rules.containsKey(node)) {
+                return;
+            }
+            NodeRules nodeRules = new NodeRules();
+            // Guards against schemas reached again through the children below
+            rules.put(node, nodeRules);
+            if (node instanceof MustConstraintAware mustAware) {
+                for (MustDefinition must : mustAware.getMustConstraints()) {
+                    ConstraintExpression expression = compileExpression(must.getXpath(),
+                            sourceText(must.asEffectiveStatement(), must.getXpath()), node.getQName().getModule(), node,
+                            "must", nodeRules.unchecked);
+                    if (expression != null) {
+                        nodeRules.musts.add(new Must(expression, must.getErrorMessage().orElse(null)));
+                    }
+                }
+            }
+            nodeRules.when = compileWhen(node, node.getQName().getModule(), node, nodeRules.unchecked);
+            if (node instanceof ListSchemaNode list) {
+                for (UniqueEffectiveStatement unique : list.getUniqueConstraints()) {
+                    List<List<QName>> leaves = new ArrayList<>();
+                    for (SchemaNodeIdentifier.Descendant leaf : unique.argument()) {
+                        leaves.add(leaf.getNodeIdentifiers());
+                    }
+                    DeclaredStatement<?> declared = unique.getDeclared();
+                    nodeRules.uniques.add(new Unique(leaves, declared != null ? declared.rawArgument()
+                            : unique.argument().toString()));
+                    constraintCount++;
+                }
+            }
+            if (node instanceof DataNodeContainer container) {
+                addChildChecks(container, container.getChildNodes(), null, nodeRules.childChecks);
+                if (node instanceof AugmentationTarget target) {
+                    for (AugmentationSchemaNode augmentation : target.getAvailableAugmentations()) {
+                        Set<QName> members = memberNames(augmentation.getChildNodes());
+                        if (!members.isEmpty()) {
+                            addGroupWhen(augmentation, members.iterator().next().getModule(), node, members, null,
+                                    nodeRules.childChecks);
+                        }
+                    }
+                }
+            }
+            if (nodeRules.isEmpty()) {
+                rules.remove(node);
+            }
+            if (!nodeRules.isEmpty() || node instanceof DataNodeContainer container
+                    && hasCheckedChild(container.getChildNodes())) {
+                checkedSubtrees.add(node);
+            }
+        }
+
+        private boolean hasCheckedChild(Collection<? extends DataSchemaNode> children) {
+            for (DataSchemaNode child : children) {
+                if (checkedSubtrees.contains(child)) {
+                    return true;
+                }
+                if (child instanceof ChoiceSchemaNode choice) {
+                    for (CaseSchemaNode caseNode : choice.getCases()) {
+                        if (hasCheckedChild(caseNode.getChildNodes())) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Adds the checks on the given children of a node.
+         *
+         * @param parent the schema of the node, null for the document root
+         */
+        void addChildChecks(DataNodeContainer parent, Collection<? extends DataSchemaNode> children, Guard guard,
+                            List<ChildCheck> checks) {
+            for (DataSchemaNode child : children) {
+                boolean required = child.effectiveConfig().orElse(true) && child.getWhenCondition().isEmpty();
+                if (child instanceof ChoiceSchemaNode choice) {
+                    Set<QName> members = memberNames(List.of(choice));
+                    addGroupWhen(choice, choice.getQName().getModule(), choice, members, guard, checks);
+                    if (choice.isMandatory() && required) {
+                        checks.add(new Required(members, choice.getQName(), true, guard));
+                        constraintCount++;
+                    }
+                    for (CaseSchemaNode caseNode : choice.getCases()) {
+                        Set<QName> caseMembers = memberNames(caseNode.getChildNodes());
+                        addGroupWhen(caseNode, caseNode.getQName().getModule(), caseNode, caseMembers, guard, checks);
+                        addChildChecks(parent, caseNode.getChildNodes(), new Guard(caseMembers, guard), checks);
+                    }
+                    continue;
+                }
+                compileNode(child);
+                if (required && child instanceof MandatoryAware mandatory && mandatory.isMandatory()
+                        && (child instanceof LeafSchemaNode || child instanceof AnydataSchemaNode
+                        || child instanceof AnyxmlSchemaNode)) {
+                    checks.add(new Required(List.of(child.getQName()), child.getQName(), false, guard));
+                    constraintCount++;
+                }
+                if (child instanceof ElementCountConstraintAware counted) {
+                    Optional<ElementCountConstraint> count = counted.getElementCountConstraint();
+                    Integer min = count.map(ElementCountConstraint::getMinElements).orElse(null);
+                    Integer max = count.map(ElementCountConstraint::getMaxElements).orElse(null);
+                    if ((min != null && min > 0 && required) || max != null) {
+                        checks.add(new Count(child.getQName(), required && min != null ? min : 0,
+                                max != null ? max : Integer.MAX_VALUE, guard));
+                        constraintCount++;
+                    }
+                }
+                if (required && child instanceof ContainerSchemaNode container && !container.isPresenceContainer()) {
+                    NodeRules containerRules = rules.get(child);
+                    if (containerRules != null && !containerRules.childChecks.isEmpty()) {
+                        checks.add(new AbsentContainer(child.getQName(), containerRules.childChecks, guard));
+                    }
+                }
+                if (parent != null && guard == null && child instanceof LeafSchemaNode leaf
+                        && child.getWhenCondition().isEmpty()) {
+                    // The leaf's own default, or its type's
+                    Optional<?> defaultValue = leaf.asEffectiveStatement()
+                            .findFirstEffectiveSubstatementArgument(DefaultEffectiveStatement.class);
+                    if (defaultValue.isEmpty()) {
+                        defaultValue = leaf.getType().getDefaultValue();
+                    }
+                    defaultValue.ifPresent(value -> environment.addDefault(parent, leaf.getQName(), value));
+                }
+            }
+        }
+
+        private void addGroupWhen(WhenConditionAware group, QNameModule module, Object owner, Set<QName> members,
+                                  Guard guard, List<ChildCheck> checks) {
+            List<String> unchecked = new ArrayList<>(1);
+            ConstraintExpression when = compileWhen(group, module, owner, unchecked);
+            if (when != null || !unchecked.isEmpty()) {
+                checks.add(new GroupWhen(members, when, unchecked.isEmpty() ? null : unchecked.get(0), guard));
+            }
+        }
+
+        private ConstraintExpression compileWhen(WhenConditionAware node, QNameModule module, Object owner,
+                                                 List<String> unchecked) {
+            Optional<? extends YangXPathExpression.QualifiedBound> when = node.getWhenCondition();
+            if (when.isEmpty()) {
+                return null;
+            }
+            String text = node instanceof EffectiveStatementEquivalent<?> equivalent
+                    ? sourceText(equivalent.asEffectiveStatement().findFirstEffectiveSubstatement(
+                            WhenEffectiveStatement.class).orElse(null), when.orElseThrow())
+                    : when.orElseThrow().toString();
+            return compileExpression(when.orElseThrow(), text, module, owner, "when", unchecked);
+        }
+
+        /**
+         * @return the compiled expression, or null after adding what could not be compiled
+         * to unchecked
+         */
+        private ConstraintExpression compileExpression(YangXPathExpression.QualifiedBound xpath, String text,
+                                                       QNameModule module, Object owner, String keyword,
+                                                       List<String> unchecked) {
+            try {
+                ConstraintExpression expression = ConstraintExpression.compile(xpath, text, module, environment);
+                constraintCount++;
+                return expression;
+            } catch (IllegalArgumentException e) {
+                skippedCount++;
+                LOG.warn("Not checking \"{}\" of {}: {}", text, owner, e.getMessage());
+                unchecked.add(keyword + " \"" + text + "\" (" + e.getMessage() + ")");
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Names of the data nodes the given schema nodes bring into their parent, through
+     * choices and cases.
+     */
+    private static Set<QName> memberNames(Collection<? extends DataSchemaNode> nodes) {
+        Set<QName> names = new LinkedHashSet<>();
+        for (DataSchemaNode node : nodes) {
+            if (node instanceof ChoiceSchemaNode choice) {
+                for (CaseSchemaNode caseNode : choice.getCases()) {
+                    names.addAll(memberNames(caseNode.getChildNodes()));
+                }
+            } else {
+                names.add(node.getQName());
+            }
+        }
+        return names;
+    }
+
+    private static boolean anyPresent(ConstraintExpression.Node node, QName[] names) {
+        for (QName name : names) {
+            List<ConstraintExpression.Node> present = node.getChildren(name);
+            if (!present.isEmpty() && !present.get(0).isDefault()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Object valueAt(ConstraintExpression.Node entry, List<QName> path) {
+        ConstraintExpression.Node node = entry;
+        for (QName name : path) {
+            List<ConstraintExpression.Node> children = node.getChildren(name);
+            if (children.isEmpty()) {
+                return null;
+            }
+            node = children.get(0);
+        }
+        return node.getValue();
+    }
+
+    /**
+     * The expression as written in the module, if the statement was declared.
+     */
+    private static String sourceText(EffectiveStatement<?, ?> statement, YangXPathExpression.QualifiedBound xpath) {
+        DeclaredStatement<?> declared = statement == null ? null : statement.getDeclared();
+        return declared != null ? declared.rawArgument() : xpath.toString();
+    }
+}
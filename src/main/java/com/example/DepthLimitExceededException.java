@@ -0,0 +1,16 @@
+package com.example;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Thrown by {@link XPathXMLStreamReader} at the start of an element nested deeper than
+ * {@link ValidationBudget#getMaxDepth()}.
+ */
+public class DepthLimitExceededException extends XMLStreamException {
+    private static final long serialVersionUID = 1L;
+
+    public DepthLimitExceededException(int maxDepth) {
+        // Without a location, which would be added to the message; the reader has it
+        super("Maximum Element Depth limit (" + maxDepth + ") Exceeded");
+    }
+}
@@ -0,0 +1,16 @@
+package com.example;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Thrown by {@link XPathXMLStreamReader} at the start of the first element past
+ * {@link ValidationBudget#getMaxElements()}.
+ */
+public class ElementCountExceededException extends XMLStreamException {
+    private static final long serialVersionUID = 1L;
+
+    public ElementCountExceededException(long maxElements) {
+        // Without a location, which would be added to the message; the reader has it
+        super("Maximum Element Count limit (" + maxElements + ") Exceeded");
+    }
+}
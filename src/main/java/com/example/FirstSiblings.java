@@ -0,0 +1,84 @@
+package com.example;
+
+import java.util.Arrays;
+
+/**
+ * First child of each name under the open elements of a location index, so it can be
+ * marked once a second sibling of that name turns up. Only the path of open elements needs
+ * it, so the children of the element open at each depth share one int table indexed by
+ * name id. An entry is stamped with its parent and is stale once another element opens at
+ * that depth, so nothing is cleared when an element ends.
+ */
+final class FirstSiblings {
+    private int[] open = new int[16];
+    private int depth = 0;
+    // By depth of the parent: ordinal of the first child with each name id
+    private int[][] firsts = new int[16][];
+    // By depth of the parent: the parent ordinal plus 2 for each entry, 0 if there is none
+    private int[][] stamps = new int[16][];
+
+    /**
+     * Records an element as the first child of its name under the parent, -1 for the document.
+     */
+    void first(int parent, int nameId, int ordinal) {
+        int level = level(parent);
+        if (level == firsts.length) {
+            firsts = Arrays.copyOf(firsts, level * 2);
+            stamps = Arrays.copyOf(stamps, level * 2);
+        }
+        if (firsts[level] == null) {
+            firsts[level] = new int[Math.max(16, nameId + 1)];
+            stamps[level] = new int[firsts[level].length];
+        } else if (nameId >= firsts[level].length) {
+            int capacity = Math.max(nameId + 1, firsts[level].length * 2);
+            firsts[level] = Arrays.copyOf(firsts[level], capacity);
+            stamps[level] = Arrays.copyOf(stamps[level], capacity);
+        }
+        firsts[level][nameId] = ordinal;
+        stamps[level][nameId] = parent + 2;
+        push(ordinal);
+    }
+
+    /**
+     * Records an element that has earlier siblings of its name.
+     */
+    void next(int parent, int ordinal) {
+        level(parent);
+        push(ordinal);
+    }
+
+    /**
+     * Returns the first child of the name under the parent and forgets it, or -1 if it is
+     * not known or was already taken.
+     */
+    int take(int parent, int nameId) {
+        int level = level(parent);
+        if (level >= stamps.length) {
+            return -1;
+        }
+        int[] levelStamps = stamps[level];
+        if (levelStamps == null || nameId >= levelStamps.length || levelStamps[nameId] != parent + 2) {
+            return -1;
+        }
+        levelStamps[nameId] = 0;
+        return firsts[level][nameId];
+    }
+
+    /**
+     * Depth of the children of the parent. Elements that ended are popped on the way, as
+     * the parent is always open.
+     */
+    private int level(int parent) {
+        while (depth > 0 && open[depth - 1] != parent) {
+            depth--;
+        }
+        return depth;
+    }
+
+    private void push(int ordinal) {
+        if (depth == open.length) {
+            open = Arrays.copyOf(open, depth * 2);
+        }
+        open[depth++] = ordinal;
+    }
+}
@@ -0,0 +1,326 @@
+package com.example;
+
+import com.google.common.io.ByteSource;
+import org.opendaylight.yangtools.yang.model.api.EffectiveModelContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Validates a continuous stream of NETCONF framed messages (RFC 6242) against a warm schema,
+ * answering each with {@link ValidationResult#toJson()} in the same framing. The framing is
+ * taken from the start of the stream: chunked if it starts with a chunk header, otherwise
+ * end-of-message, where each message is followed by ]]&gt;]]&gt;.
+ * Each stream keeps its message buffer and readers from one message to the next. A message
+ * larger than the budget's document size is answered with an error without being buffered,
+ * and malformed framing ends the stream, as the start of the next message cannot be found.
+ */
+public class FramedMessageValidator {
+    private static final Logger LOG = LoggerFactory.getLogger(FramedMessageValidator.class);
+    private static final byte[] END_OF_MESSAGE = "]]>]]>".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] END_OF_CHUNKS = "\n##\n".getBytes(StandardCharsets.US_ASCII);
+    // Largest chunk-size RFC 6242 allows
+    private static final long MAX_CHUNK_SIZE = 4294967295L;
+    private static final int BUFFER_SIZE = 8192;
+
+    private enum Framing {
+        END_OF_MESSAGE,
+        CHUNKED
+    }
+
+    private final YangValidatorEngine engine;
+    private final EffectiveModelContext context;
+    private final ValidationBudget budget;
+    private final int maxMessageSize;
+
+    public FramedMessageValidator(YangValidatorEngine engine, EffectiveModelContext context,
+                                  ValidationBudget budget) {
+        this.engine = engine;
+        this.context = context;
+        this.budget = budget;
+        // Room for the delimiter, which is read into the buffer before it is recognized
+        this.maxMessageSize = (int) Math.min(budget.getMaxDocumentSize(),
+                Integer.MAX_VALUE - 16 - END_OF_MESSAGE.length);
+    }
+
+    /**
+     * Validates the messages read from in until it ends, writing the reply to each to out
+     * as soon as it is validated.
+     *
+     * @return the number of messages validated
+     * @throws IOException if reading or writing fails, or the framing is malformed
+     */
+    public long validate(InputStream in, OutputStream out) throws IOException {
+        MessageStream stream = new MessageStream(in, out, maxMessageSize);
+        long start = System.nanoTime();
+        long messages = 0;
+        try {
+            while (stream.readMessage()) {
+                stream.reply(validateMessage(stream).toJson());
+                messages++;
+            }
+        } finally {
+            long elapsed = Math.max(System.nanoTime() - start, 1);
+            LOG.info("Validated {} framed messages in {} ms, {} messages/s", messages, elapsed / 1_000_000,
+                    messages * 1_000_000_000L / elapsed);
+        }
+        return messages;
+    }
+
+    /**
+     * Accepts connections on a Unix domain socket created at the given path, validating the
+     * stream of each connection on its own virtual thread, until the thread is interrupted.
+     * The socket file is removed when the JVM exits.
+     */
+    public void serve(Path socketPath) throws IOException {
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            server.bind(UnixDomainSocketAddress.of(socketPath));
+            socketPath.toFile().deleteOnExit();
+            LOG.info("Validating framed messages on {}", socketPath);
+            while (!Thread.currentThread().isInterrupted()) {
+                SocketChannel channel = server.accept();
+                executor.submit(() -> handleConnection(channel));
+            }
+        }
+    }
+
+    private void handleConnection(SocketChannel channel) {
+        try (channel) {
+            validate(Channels.newInputStream(channel), Channels.newOutputStream(channel));
+        } catch (IOException e) {
+            LOG.warn("Closed framed message stream: {}", e.getMessage());
+        }
+    }
+
+    private ValidationResult validateMessage(MessageStream stream) {
+        if (stream.tooLarge) {
+            return new ValidationResult(List.of(new ValidationError(0, 0, "/",
+                    "Message larger than " + budget.getMaxDocumentSize() + " bytes")));
+        }
+        try {
+            XmlSource source = XmlSource.of(ByteSource.wrap(stream.message).slice(0, stream.length));
+            return engine.validate(context, source, budget, stream.readers);
+        } catch (Exception e) {
+            LOG.debug("Failed to read message", e);
+            return new ValidationResult(List.of(new ValidationError(0, 0, "/",
+                    "Failed to read message: " + e.getMessage())));
+        }
+    }
+
+    /**
+     * Framing state and buffers of one stream.
+     */
+    private static class MessageStream {
+        private final InputStream in;
+        private final OutputStream out;
+        private final int maxMessageSize;
+        private final byte[] input = new byte[BUFFER_SIZE];
+        private int position;
+        private int limit;
+        private Framing framing;
+        // The current message, without its framing
+        private byte[] message = new byte[BUFFER_SIZE];
+        private int length;
+        private boolean tooLarge;
+        private final YangValidatorEngine.ReusableReaders readers = new YangValidatorEngine.ReusableReaders();
+
+        MessageStream(InputStream in, OutputStream out, int maxMessageSize) {
+            this.in = in;
+            this.out = out;
+            this.maxMessageSize = maxMessageSize;
+        }
+
+        /**
+         * @return false if the stream ended before another message started
+         */
+        boolean readMessage() throws IOException {
+            length = 0;
+            tooLarge = false;
+            if (framing == null) {
+                if (!fill(1)) {
+                    return false;
+                }
+                // A chunked message starts with LF # and no XML document starts with #
+                framing = input[position] == '\n' && fill(2) && input[position + 1] == '#'
+                        ? Framing.CHUNKED : Framing.END_OF_MESSAGE;
+                LOG.debug("Reading {} framed messages", framing);
+            }
+            return framing == Framing.CHUNKED ? readChunkedMessage() : readDelimitedMessage();
+        }
+
+        private boolean readDelimitedMessage() throws IOException {
+            // Whitespace around the delimiter is not part of any message
+            boolean content = false;
+            while (position < limit || fill(1)) {
+                byte b = input[position++];
+                if (!content) {
+                    if (isWhiteSpace(b)) {
+                        continue;
+                    }
+                    content = true;
+                }
+                append(b);
+                if (b == '>' && endsWithDelimiter()) {
+                    length -= END_OF_MESSAGE.length;
+                    tooLarge |= length > maxMessageSize;
+                    return true;
+                }
+            }
+            if (content) {
+                throw new IOException("Stream ended inside a message, without " + new String(END_OF_MESSAGE,
+                        StandardCharsets.US_ASCII));
+            }
+            return false;
+        }
+
+        private boolean readChunkedMessage() throws IOException {
+            if (!fill(1)) {
+                return false;
+            }
+            while (true) {
+                expect('\n');
+                expect('#');
+                int c = read();
+                if (c == '#') {
+                    expect('\n');
+                    if (length == 0 && !tooLarge) {
+                        throw new IOException("Chunked message without chunks");
+                    }
+                    return true;
+                }
+                if (c < '1' || c > '9') {
+                    throw new IOException("Invalid chunk size");
+                }
+                long size = c - '0';
+                for (c = read(); c >= '0' && c <= '9'; c = read()) {
+                    size = size * 10 + c - '0';
+                    if (size > MAX_CHUNK_SIZE) {
+                        throw new IOException("Chunk size over " + MAX_CHUNK_SIZE);
+                    }
+                }
+                if (c != '\n') {
+                    throw new IOException("Invalid chunk size");
+                }
+                while (size > 0) {
+                    if (position == limit && !fill(1)) {
+                        throw new IOException("Stream ended inside a chunk");
+                    }
+                    int count = (int) Math.min(size, limit - position);
+                    append(input, position, count);
+                    position += count;
+                    size -= count;
+                }
+            }
+        }
+
+        void reply(String json) throws IOException {
+            byte[] payload = json.getBytes(StandardCharsets.UTF_8);
+            if (framing == Framing.CHUNKED) {
+                out.write(("\n#" + payload.length + "\n").getBytes(StandardCharsets.US_ASCII));
+                out.write(payload);
+                out.write(END_OF_CHUNKS);
+            } else {
+                out.write(payload);
+                out.write(END_OF_MESSAGE);
+                out.write('\n');
+            }
+            out.flush();
+        }
+
+        private void append(byte b) {
+            if (length == message.length) {
+                if (length >= maxMessageSize + END_OF_MESSAGE.length) {
+                    // Over the limit: only keep what may be the start of the delimiter
+                    int kept = END_OF_MESSAGE.length - 1;
+                    System.arraycopy(message, length - kept, message, 0, kept);
+                    length = kept;
+                    tooLarge = true;
+                } else {
+                    grow(length + 1);
+                }
+            }
+            message[length++] = b;
+        }
+
+        private void append(byte[] bytes, int offset, int count) {
+            if (tooLarge || count > maxMessageSize - length) {
+                tooLarge = true;
+                return;
+            }
+            if (length + count > message.length) {
+                grow(length + count);
+            }
+            System.arraycopy(bytes, offset, message, length, count);
+            length += count;
+        }
+
+        private void grow(int minLength) {
+            long doubled = Math.max(2L * message.length, minLength);
+            message = Arrays.copyOf(message, (int) Math.min(doubled, maxMessageSize + END_OF_MESSAGE.length));
+        }
+
+        private boolean endsWithDelimiter() {
+            if (length < END_OF_MESSAGE.length) {
+                return false;
+            }
+            return Arrays.equals(message, length - END_OF_MESSAGE.length, length,
+                    END_OF_MESSAGE, 0, END_OF_MESSAGE.length);
+        }
+
+        private void expect(char expected) throws IOException {
+            if (read() != expected) {
+                throw new IOException("Malformed chunked framing, expected " + (expected == '\n' ? "LF" : expected));
+            }
+        }
+
+        private int read() throws IOException {
+            if (position == limit && !fill(1)) {
+                return -1;
+            }
+            return input[position++] & 0xff;
+        }
+
+        /**
+         * Makes at least count bytes available from position.
+         *
+         * @return false if the stream ended first
+         */
+        private boolean fill(int count) throws IOException {
+            if (limit - position >= count) {
+                return true;
+            }
+            if (position > 0) {
+                System.arraycopy(input, position, input, 0, limit - position);
+                limit -= position;
+                position = 0;
+            }
+            while (limit < count) {
+                int read = in.read(input, limit, input.length - limit);
+                if (read < 0) {
+                    return false;
+                }
+                limit += read;
+            }
+            return true;
+        }
+
+        private static boolean isWhiteSpace(byte b) {
+            return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.example;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Location index kept on the heap in parallel int arrays, with the same fields per element
+ * as {@link MappedXPathLocationIndex}: start and end location, parent ordinal, name id,
+ * sibling index and flags. Key predicates are appended to a shared char buffer. XPaths are
+ * rebuilt on lookup by walking the parent ordinals, so no object is kept per element.
+ */
+public class HeapXPathLocationIndex implements XPathLocationIndex {
+    private static final int OPEN = Integer.MAX_VALUE;
+
+    private static final int POSITIONAL = 1;
+    // Set on the first sibling of a name once a second one is seen
+    private static final int MULTIPLE = 2;
+
+    private final Map<String, Integer> nameIds = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private final FirstSiblings firstSiblings = new FirstSiblings();
+    private int size = 0;
+    private int[] startLines = new int[64];
+    private int[] startColumns = new int[64];
+    private int[] endLines = new int[64];
+    private int[] endColumns = new int[64];
+    private int[] parents = new int[64];
+    private int[] nameIndex = new int[64];
+    private int[] indices = new int[64];
+    private int[] flags = new int[64];
+    // Offset of the key predicate in predicateChars, -1 if there is none
+    private int[] predicateStarts = new int[64];
+    private int[] predicateLengths = new int[64];
+    private char[] predicateChars = new char[256];
+    private int predicatesEnd = 0;
+    // Predicate written last, which can be extended in place
+    private int lastPredicateOrdinal = -1;
+
+    @Override
+    public int startElement(int parent, String name, int index, int line, int column) {
+        if (size == startLines.length) {
+            int capacity = size * 2;
+            startLines = Arrays.copyOf(startLines, capacity);
+            startColumns = Arrays.copyOf(startColumns, capacity);
+            endLines = Arrays.copyOf(endLines, capacity);
+            endColumns = Arrays.copyOf(endColumns, capacity);
+            parents = Arrays.copyOf(parents, capacity);
+            nameIndex = Arrays.copyOf(nameIndex, capacity);
+            indices = Arrays.copyOf(indices, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+            predicateStarts = Arrays.copyOf(predicateStarts, capacity);
+            predicateLengths = Arrays.copyOf(predicateLengths, capacity);
+        }
+        int ordinal = size++;
+        startLines[ordinal] = line;
+        startColumns[ordinal] = column;
+        endLines[ordinal] = OPEN;
+        endColumns[ordinal] = OPEN;
+        parents[ordinal] = parent;
+        int nameId = nameId(name);
+        nameIndex[ordinal] = nameId;
+        indices[ordinal] = index;
+        flags[ordinal] = 0;
+        predicateStarts[ordinal] = -1;
+        if (index == 0) {
+            firstSiblings.first(parent, nameId, ordinal);
+        } else {
+            markMultiple(parent, nameId, index);
+            firstSiblings.next(parent, ordinal);
+        }
+        return ordinal;
+    }
+
+    @Override
+    public void skipElement(int parent, String name, int index) {
+        markMultiple(parent, nameId(name), index);
+    }
+
+    @Override
+    public void setPositional(int ordinal) {
+        flags[ordinal] |= POSITIONAL;
+    }
+
+    @Override
+    public void appendPredicate(int ordinal, String keyPredicate) {
+        int start = predicateStarts[ordinal];
+        int length = predicateLengths[ordinal];
+        if (start >= 0 && ordinal == lastPredicateOrdinal) {
+            // Extend in place, the predicate is at the end of the buffer
+            writePredicateChars(keyPredicate);
+            predicateLengths[ordinal] = length + keyPredicate.length();
+            return;
+        }
+        int offset = predicatesEnd;
+        if (start >= 0) {
+            writePredicateChars(new String(predicateChars, start, length));
+        }
+        writePredicateChars(keyPredicate);
+        predicateStarts[ordinal] = offset;
+        predicateLengths[ordinal] = predicatesEnd - offset;
+        lastPredicateOrdinal = ordinal;
+    }
+
+    @Override
+    public void endElement(int ordinal, int line, int column) {
+        endLines[ordinal] = line;
+        endColumns[ordinal] = column;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int getLine(int ordinal) {
+        return startLines[ordinal];
+    }
+
+    @Override
+    public int getColumn(int ordinal) {
+        return startColumns[ordinal];
+    }
+
+    @Override
+    public int getEndLine(int ordinal) {
+        return endLines[ordinal];
+    }
+
+    @Override
+    public int getEndColumn(int ordinal) {
+        return endColumns[ordinal];
+    }
+
+    @Override
+    public int getParent(int ordinal) {
+        return parents[ordinal];
+    }
+
+    @Override
+    public String getName(int ordinal) {
+        return names.get(nameIndex[ordinal]);
+    }
+
+    @Override
+    public String getXPath(int ordinal) {
+        int depth = 0;
+        for (int element = ordinal; element >= 0; element = parents[element]) {
+            depth++;
+        }
+        int[] path = new int[depth];
+        for (int element = ordinal; element >= 0; element = parents[element]) {
+            path[--depth] = element;
+        }
+
+        StringBuilder xpath = new StringBuilder();
+        for (int element : path) {
+            xpath.append('/').append(getName(element));
+            if (predicateStarts[element] >= 0) {
+                xpath.append(predicateChars, predicateStarts[element], predicateLengths[element]);
+            } else if (indices[element] > 0 || (flags[element] & (POSITIONAL | MULTIPLE)) != 0) {
+                xpath.append('[').append(indices[element]).append(']');
+            }
+        }
+        return xpath.length() == 0 ? "/" : xpath.toString();
+    }
+
+    private void markMultiple(int parent, int nameId, int index) {
+        if (index != 1) {
+            return;
+        }
+        int first = firstSiblings.take(parent, nameId);
+        if (first >= 0) {
+            flags[first] |= MULTIPLE;
+        }
+    }
+
+    private int nameId(String name) {
+        Integer id = nameIds.get(name);
+        if (id == null) {
+            id = names.size();
+            names.add(name);
+            nameIds.put(name, id);
+        }
+        return id;
+    }
+
+    private void writePredicateChars(String chars) {
+        int end = predicatesEnd + chars.length();
+        if (end > predicateChars.length) {
+            predicateChars = Arrays.copyOf(predicateChars, Math.max(end, predicateChars.length * 2));
+        }
+        chars.getChars(0, chars.length(), predicateChars, predicatesEnd);
+        predicatesEnd = end;
+    }
+}
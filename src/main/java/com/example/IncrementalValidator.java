@@ -0,0 +1,412 @@
+package com.example;
+
+import com.google.common.hash.HashCode;
+import org.opendaylight.yangtools.yang.common.QName;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeIdentifier;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeIdentifierWithPredicates;
+import org.opendaylight.yangtools.yang.data.api.schema.ContainerNode;
+import org.opendaylight.yangtools.yang.data.api.schema.DataContainerChild;
+import org.opendaylight.yangtools.yang.data.api.schema.DataContainerNode;
+import org.opendaylight.yangtools.yang.data.api.schema.MapEntryNode;
+import org.opendaylight.yangtools.yang.data.api.schema.MapNode;
+import org.opendaylight.yangtools.yang.data.api.schema.NormalizedNode;
+import org.opendaylight.yangtools.yang.data.api.schema.SystemMapNode;
+import org.opendaylight.yangtools.yang.data.api.schema.UserMapNode;
+import org.opendaylight.yangtools.yang.data.api.schema.builder.DataContainerNodeBuilder;
+import org.opendaylight.yangtools.yang.data.spi.node.ImmutableNodes;
+import org.opendaylight.yangtools.yang.model.api.EffectiveModelContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Revalidates new versions of a document, only parsing the subtrees that changed.
+ * The subtrees are the children of the top level data nodes that are containers or entries
+ * of keyed lists, e.g. /interfaces/interface[name='eth0']. The parse reads each subtree ahead
+ * to digest it, see {@link SubtreeDigestingXMLStreamReader}; a subtree whose digest and
+ * parent match one that validated before is then skipped by the parser and its data is taken
+ * from the previous tree, otherwise its events are handed to the parser, so each version is
+ * read once. A subtree that had errors is always parsed again, as are entries of ordered-by
+ * user lists so their order is kept. A version that repeats a subtree taken from the
+ * previous one is validated again in full, as only the parser reports repeated entries.
+ * The data tree constraints of the schema are checked on the merged tree of every version.
+ */
+public class IncrementalValidator {
+    private static final Logger LOG = LoggerFactory.getLogger(IncrementalValidator.class);
+    // Children of the top level data nodes, below the synthetic root element
+    private static final int SUBTREE_DEPTH = 3;
+
+    private final YangValidatorEngine engine;
+    private final EffectiveModelContext context;
+    private final ValidationBudget budget;
+
+    // Subtrees of the last version that validated, by parent XPath and digest
+    private Map<SubtreeKey, Subtree> subtrees = Map.of();
+    private ContainerNode data;
+    private int reusedCount;
+    private int parsedCount;
+
+    /**
+     * Where a subtree is and what it holds, which identifies it across versions.
+     */
+    private static class SubtreeKey {
+        final String parentXPath;
+        final HashCode digest;
+
+        SubtreeKey(String parentXPath, HashCode digest) {
+            this.parentXPath = parentXPath;
+            this.digest = digest;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof SubtreeKey other && parentXPath.equals(other.parentXPath)
+                    && digest.equals(other.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(parentXPath, digest);
+        }
+    }
+
+    private static class Subtree {
+        final String xpath;
+        // A ContainerNode or a MapEntryNode of a SystemMapNode
+        final NormalizedNode node;
+
+        Subtree(String xpath, NormalizedNode node) {
+            this.xpath = xpath;
+            this.node = node;
+        }
+    }
+
+    /**
+     * A subtree of the version being validated.
+     */
+    private static class ReadSubtree {
+        final SubtreeKey key;
+        // Taken from the previous version, null if parsed
+        final Subtree reused;
+        // Null until a parsed subtree has ended
+        String xpath;
+
+        ReadSubtree(SubtreeKey key, Subtree reused) {
+            this.key = key;
+            this.reused = reused;
+            this.xpath = reused == null ? null : reused.xpath;
+        }
+    }
+
+    /**
+     * Takes the subtrees of one version that validated before from the previous version,
+     * and records every subtree the parse reads.
+     */
+    private static class VersionFilter implements XPathXMLStreamReader.SubtreeFilter {
+        private final Map<SubtreeKey, Subtree> previous;
+        // By document order number, which stays the same when the document is read again
+        final Map<Integer, ReadSubtree> read = new TreeMap<>();
+        // Document order number of the subtree each previous one was taken for
+        private final Map<SubtreeKey, Integer> taken = new HashMap<>();
+        private ReadSubtree open;
+
+        VersionFilter(Map<SubtreeKey, Subtree> previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public boolean skip(String parentXPath, HashCode digest, int elementNumber) {
+            SubtreeKey key = new SubtreeKey(YangValidatorEngine.stripRootElement(parentXPath), digest);
+            Subtree subtree = previous.get(key);
+            // A copy of a subtree taken already is parsed
+            if (subtree != null && taken.computeIfAbsent(key, k -> elementNumber) == elementNumber) {
+                read.put(elementNumber, new ReadSubtree(key, subtree));
+                return true;
+            }
+            open = new ReadSubtree(key, null);
+            read.put(elementNumber, open);
+            return false;
+        }
+
+        @Override
+        public void ended(String xpath) {
+            open.xpath = YangValidatorEngine.stripRootElement(xpath);
+            open = null;
+        }
+
+        /**
+         * Subtrees taken from the previous version, by XPath.
+         */
+        Map<String, NormalizedNode> getReused() {
+            Map<String, NormalizedNode> reused = new HashMap<>();
+            for (ReadSubtree subtree : read.values()) {
+                if (subtree.reused != null) {
+                    reused.put(subtree.xpath, subtree.reused.node);
+                }
+            }
+            return reused;
+        }
+    }
+
+    public IncrementalValidator(YangValidatorEngine engine, EffectiveModelContext context) {
+        this(engine, context, ValidationBudget.DEFAULT);
+    }
+
+    /**
+     * @param budget limits applied to each read of a version; its maxErrors is replaced by
+     *               the one given to {@link #validate}
+     */
+    public IncrementalValidator(YangValidatorEngine engine, EffectiveModelContext context, ValidationBudget budget) {
+        this.engine = engine;
+        this.context = context;
+        this.budget = budget;
+    }
+
+    /**
+     * Validates the next version of the document. The source is read once, and again to
+     * locate constraint violations, to collect further errors or when the version repeats
+     * a subtree taken from the previous one, so it has to be repeatable.
+     */
+    public synchronized ValidationResult validate(XmlSource source, int maxErrors)
+            throws IOException, XMLStreamException {
+        if (!source.isRepeatable()) {
+            throw new IllegalArgumentException("Incremental validation needs a repeatable source");
+        }
+        ValidationBudget versionBudget = budget.withMaxErrors(maxErrors);
+        VersionFilter filter = new VersionFilter(subtrees);
+        ValidationResult result = engine.validate(context, source, versionBudget, SUBTREE_DEPTH, filter);
+        Map<String, NormalizedNode> reused = filter.getReused();
+        if (result.getData() != null && !reused.isEmpty()) {
+            Map<String, NormalizedNode> parsed = new HashMap<>();
+            forEachSubtree((ContainerNode) result.getData(), parsed::put);
+            if (parsed.keySet().stream().anyMatch(reused::containsKey)) {
+                LOG.debug("A subtree taken from the previous version is repeated, validating in full");
+                filter = new VersionFilter(Map.of());
+                result = engine.validate(context, source, versionBudget, SUBTREE_DEPTH, filter);
+                reused = Map.of();
+            }
+        }
+        reusedCount = reused.size();
+        parsedCount = filter.read.size() - reused.size();
+
+        if (result.getData() == null) {
+            // Nothing to build on, the next version is validated in full
+            data = null;
+            subtrees = Map.of();
+            return new ValidationResult(result.getErrors(), List.of(), null, false, result.isIncomplete());
+        }
+        data = merge((ContainerNode) result.getData(), reused);
+
+        Map<String, NormalizedNode> nodes = HashMap.newHashMap(filter.read.size());
+        forEachSubtree(data, nodes::put);
+        Set<String> duplicates = new HashSet<>();
+        Set<String> seen = HashSet.newHashSet(filter.read.size());
+        for (ReadSubtree subtree : filter.read.values()) {
+            if (subtree.xpath != null && !seen.add(subtree.xpath)) {
+                duplicates.add(subtree.xpath);
+            }
+        }
+        Map<SubtreeKey, Subtree> validated = HashMap.newHashMap(filter.read.size());
+        for (ReadSubtree subtree : filter.read.values()) {
+            NormalizedNode node = subtree.xpath == null ? null : nodes.get(subtree.xpath);
+            if (node != null && !duplicates.contains(subtree.xpath)
+                    && !hasErrors(subtree.xpath, result.getErrors())) {
+                validated.put(subtree.key, new Subtree(subtree.xpath, node));
+            }
+        }
+        subtrees = validated;
+        // Constraints span the whole tree, so they are checked on the merged one
+        if (!result.getErrors().isEmpty()) {
+            return new ValidationResult(result.getErrors(), data, false);
+        }
+        ValidationResult checked = engine.checkConstraints(context, data, source, maxErrors);
+        return new ValidationResult(checked.getErrors(), checked.getWarnings(), data, false, false);
+    }
+
+    /**
+     * Data of the last version, without the subtrees that failed, or null if it could not
+     * be read to the end.
+     */
+    public synchronized ContainerNode getData() {
+        return data;
+    }
+
+    /**
+     * Number of subtrees the last validation took from the previous version.
+     */
+    public synchronized int getReusedCount() {
+        return reusedCount;
+    }
+
+    /**
+     * Number of subtrees the last validation parsed.
+     */
+    public synchronized int getParsedCount() {
+        return parsedCount;
+    }
+
+
+    /**
+     * Adds the reused subtrees to the freshly parsed top level nodes they belong to.
+     */
+    private static ContainerNode merge(ContainerNode parsed, Map<String, NormalizedNode> reused) {
+        if (reused.isEmpty()) {
+            return parsed;
+        }
+        Map<String, List<NormalizedNode>> reusedByParent = new HashMap<>();
+        for (Map.Entry<String, NormalizedNode> entry : reused.entrySet()) {
+            String xpath = entry.getKey();
+            reusedByParent.computeIfAbsent(xpath.substring(0, parentLength(xpath)), k -> new ArrayList<>())
+                    .add(entry.getValue());
+        }
+
+        ContainerNode.Builder root = ImmutableNodes.builderFactory().newContainerBuilder(parsed);
+        for (DataContainerChild child : parsed.body()) {
+            if (child instanceof ContainerNode container) {
+                List<NormalizedNode> children = reusedByParent.get("/" + container.name().getNodeType().getLocalName());
+                if (children != null) {
+                    root.withChild(addChildren(ImmutableNodes.builderFactory().newContainerBuilder(container),
+                            container, children));
+                }
+            } else if (child instanceof MapNode map) {
+                MapNode.Builder<?> entries = null;
+                for (MapEntryNode entry : map.body()) {
+                    List<NormalizedNode> children = reusedByParent.get("/" + entryXPath(entry));
+                    if (children != null) {
+                        if (entries == null) {
+                            entries = copyOf(map);
+                        }
+                        entries.withChild(addChildren(ImmutableNodes.builderFactory().newMapEntryBuilder(entry),
+                                entry, children));
+                    }
+                }
+                if (entries != null) {
+                    root.withChild(entries.build());
+                }
+            }
+        }
+        return root.build();
+    }
+
+    private static <R extends DataContainerNode> R addChildren(DataContainerNodeBuilder<?, R> builder,
+                                                               DataContainerNode parsed,
+                                                               List<NormalizedNode> children) {
+        Map<NodeIdentifier, MapNode.Builder<?>> lists = new LinkedHashMap<>();
+        for (NormalizedNode child : children) {
+            if (child instanceof MapEntryNode entry) {
+                NodeIdentifier listName = new NodeIdentifier(entry.name().getNodeType());
+                lists.computeIfAbsent(listName, name -> {
+                    if (parsed.childByArg(name) instanceof MapNode map) {
+                        return copyOf(map);
+                    }
+                    MapNode.Builder<?> list = ImmutableNodes.newSystemMapBuilder();
+                    list.withNodeIdentifier(name);
+                    return list;
+                }).withChild(entry);
+            } else {
+                builder.withChild((DataContainerChild) child);
+            }
+        }
+        for (MapNode.Builder<?> list : lists.values()) {
+            builder.withChild(list.build());
+        }
+        return builder.build();
+    }
+
+    private static MapNode.Builder<?> copyOf(MapNode map) {
+        return map instanceof SystemMapNode systemMap
+                ? ImmutableNodes.builderFactory().newSystemMapBuilder(systemMap)
+                : ImmutableNodes.builderFactory().newUserMapBuilder((UserMapNode) map);
+    }
+
+    /**
+     * Calls the consumer with the XPath and node of every subtree that can be reused.
+     */
+    private static void forEachSubtree(ContainerNode root,
+                                       BiConsumer<String, NormalizedNode> consumer) {
+        for (DataContainerChild child : root.body()) {
+            if (child instanceof ContainerNode container) {
+                forEachChild("/" + container.name().getNodeType().getLocalName(), container, consumer);
+            } else if (child instanceof MapNode map) {
+                for (MapEntryNode entry : map.body()) {
+                    forEachChild("/" + entryXPath(entry), entry, consumer);
+                }
+            }
+        }
+    }
+
+    private static void forEachChild(String parentXPath, DataContainerNode parent,
+                                     BiConsumer<String, NormalizedNode> consumer) {
+        for (DataContainerChild child : parent.body()) {
+            if (child instanceof ContainerNode container) {
+                consumer.accept(parentXPath + "/" + container.name().getNodeType().getLocalName(), container);
+            } else if (child instanceof SystemMapNode map) {
+                for (MapEntryNode entry : map.body()) {
+                    consumer.accept(parentXPath + "/" + entryXPath(entry), entry);
+                }
+            }
+        }
+    }
+
+    /**
+     * XPath step of a list entry the way {@link XPathXMLStreamReader} writes it, e.g.
+     * interface[name='eth0']. Key values whose text form differs from the document, such as
+     * identityrefs, do not match, so those entries are simply never reused.
+     */
+    private static String entryXPath(MapEntryNode entry) {
+        NodeIdentifierWithPredicates name = entry.name();
+        StringBuilder xpath = new StringBuilder(name.getNodeType().getLocalName());
+        for (Map.Entry<QName, Object> key : name.entrySet()) {
+            String value = String.valueOf(key.getValue());
+            char quote = value.indexOf('\'') < 0 ? '\'' : '"';
+            xpath.append('[').append(key.getKey().getLocalName()).append('=')
+                    .append(quote).append(value).append(quote).append(']');
+        }
+        return xpath.toString();
+    }
+
+    /**
+     * Length of the parent's part of a subtree XPath, which ends at the last '/' outside
+     * of predicates.
+     */
+    private static int parentLength(String xpath) {
+        int parentLength = 0;
+        char quote = 0;
+        for (int i = 0; i < xpath.length(); i++) {
+            char c = xpath.charAt(i);
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+            } else if (c == '/') {
+                parentLength = i;
+            }
+        }
+        return parentLength;
+    }
+
+    private static boolean hasErrors(String xpath, List<ValidationError> errors) {
+        for (ValidationError error : errors) {
+            String errorXPath = error.getXpath();
+            if (errorXPath != null && errorXPath.startsWith(xpath)
+                    && (errorXPath.length() == xpath.length() || errorXPath.charAt(xpath.length()) == '/')) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free latency histogram with power of two nanosecond buckets.
+ * Recording is a few adder increments, cheap enough to leave on in production.
+ */
+public class LatencyHistogram implements LatencyHistogramMXBean {
+    // Bucket i counts latencies in [2^(i-1), 2^i) nanoseconds
+    private static final int BUCKETS = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets[BUCKETS - Long.numberOfLeadingZeros(nanos)].increment();
+        count.increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        long n = count.sum();
+        return n == 0 ? 0 : totalNanos.sum() / (n * 1000.0);
+    }
+
+    @Override
+    public double getMaxMicros() {
+        return maxNanos.get() / 1000.0;
+    }
+
+    @Override
+    public double getP50Micros() {
+        return percentileMicros(0.50);
+    }
+
+    @Override
+    public double getP90Micros() {
+        return percentileMicros(0.90);
+    }
+
+    @Override
+    public double getP99Micros() {
+        return percentileMicros(0.99);
+    }
+
+    @Override
+    public Map<String, Long> getBuckets() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (int i = 0; i < BUCKETS - 1; i++) {
+            long bucketCount = buckets[i].sum();
+            if (bucketCount > 0) {
+                counts.put("<" + upperBoundMicros(i) + "us", bucketCount);
+            }
+        }
+        return counts;
+    }
+
+    private double percentileMicros(double quantile) {
+        long n = count.sum();
+        if (n == 0) {
+            return 0;
+        }
+        long target = (long) Math.ceil(quantile * n);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets[i].sum();
+            if (seen >= target) {
+                return Math.min(upperBoundMicros(i), getMaxMicros());
+            }
+        }
+        return getMaxMicros();
+    }
+
+    private static double upperBoundMicros(int bucket) {
+        return (1L << bucket) / 1000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.1fus p50=%.1fus p99=%.1fus max=%.1fus",
+                getCount(), getMeanMicros(), getP50Micros(), getP99Micros(), getMaxMicros());
+    }
+}
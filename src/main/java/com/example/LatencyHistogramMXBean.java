@@ -0,0 +1,27 @@
+package com.example;
+
+import java.util.Map;
+
+/**
+ * JMX view of a {@link LatencyHistogram}. Percentiles are the upper bound of the
+ * power of two bucket they fall in.
+ */
+public interface LatencyHistogramMXBean {
+
+    long getCount();
+
+    double getMeanMicros();
+
+    double getMaxMicros();
+
+    double getP50Micros();
+
+    double getP90Micros();
+
+    double getP99Micros();
+
+    /**
+     * Number of recordings per bucket, keyed by the bucket's upper bound.
+     */
+    Map<String, Long> getBuckets();
+}
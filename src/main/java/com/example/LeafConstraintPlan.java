@@ -0,0 +1,144 @@
+package com.example;
+
+import org.opendaylight.yangtools.yang.data.codec.xml.XmlCodec;
+import org.opendaylight.yangtools.yang.data.codec.xml.XmlCodecFactory;
+import org.opendaylight.yangtools.yang.model.api.CaseSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.ChoiceSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.DataNodeContainer;
+import org.opendaylight.yangtools.yang.model.api.DataSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.EffectiveModelContext;
+import org.opendaylight.yangtools.yang.model.api.EffectiveStatementInference;
+import org.opendaylight.yangtools.yang.model.api.TypeDefinition;
+import org.opendaylight.yangtools.yang.model.api.TypedDataSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.type.LeafrefTypeDefinition;
+import org.opendaylight.yangtools.yang.model.api.type.UnionTypeDefinition;
+import org.opendaylight.yangtools.yang.model.util.LeafrefResolver;
+import org.opendaylight.yangtools.yang.model.util.SchemaInferenceStack;
+
+import javax.xml.namespace.NamespaceContext;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * How leaf values of a schema are read, built once and shared by every document validated
+ * against it: the XML codec factory the YANG parser decodes values with, which would
+ * otherwise be created again for each document, and a checker per leaf and leaf-list
+ * holding the codec of its type. The checkers let a reader collecting several errors
+ * leave out invalid values as it reads them, see
+ * {@link XPathXMLStreamReader#setLeafConstraints}. They decode with the same codecs as the
+ * YANG parser, so a value is rejected with the message the parser would give, but a
+ * valid value read ahead is decoded twice: once by its checker and once by the parser.
+ * Leafref types, whose codecs need the leaf's position in the data, have no checker.
+ */
+public class LeafConstraintPlan {
+    // Checkers are never built for leafref types
+    private static final LeafrefResolver NO_LEAFREFS = type -> {
+        throw new IllegalStateException("Leafref types are not checked: " + type);
+    };
+
+    private final XmlCodecFactory codecFactory;
+    private final EffectiveStatementInference inference;
+    private final Map<DataSchemaNode, LeafChecker> checkers;
+
+    private LeafConstraintPlan(XmlCodecFactory codecFactory, EffectiveStatementInference inference,
+                               Map<DataSchemaNode, LeafChecker> checkers) {
+        this.codecFactory = codecFactory;
+        this.inference = inference;
+        this.checkers = checkers;
+    }
+
+    public static LeafConstraintPlan compile(EffectiveModelContext context) {
+        long start = System.nanoTime();
+        XmlCodecFactory codecFactory = XmlCodecFactory.create(context);
+        Map<DataSchemaNode, LeafChecker> checkers = new IdentityHashMap<>();
+        // Leaves of the same type share a checker
+        Map<TypeDefinition<?>, LeafChecker> checkersByType = new IdentityHashMap<>();
+        collectCheckers(context, codecFactory, checkers, checkersByType);
+        ValidationMetrics.get().recordPhase(ValidationPhase.PLAN_COMPILE, start);
+        return new LeafConstraintPlan(codecFactory, SchemaInferenceStack.of(context).toInference(), checkers);
+    }
+
+    /**
+     * Codecs of the schema, for the YANG parser.
+     */
+    public XmlCodecFactory getCodecFactory() {
+        return codecFactory;
+    }
+
+    /**
+     * Position of the document root in the schema, for the YANG parser.
+     */
+    public EffectiveStatementInference getInference() {
+        return inference;
+    }
+
+    /**
+     * @return the checker of a leaf or leaf-list, or null if its type is not checked
+     */
+    LeafChecker getChecker(DataSchemaNode node) {
+        return checkers.get(node);
+    }
+
+    /**
+     * Number of leaves and leaf-lists with a checker.
+     */
+    public int size() {
+        return checkers.size();
+    }
+
+    private static void collectCheckers(DataNodeContainer container, XmlCodecFactory codecFactory,
+                                        Map<DataSchemaNode, LeafChecker> checkers,
+                                        Map<TypeDefinition<?>, LeafChecker> checkersByType) {
+        for (DataSchemaNode child : container.getChildNodes()) {
+            if (child instanceof TypedDataSchemaNode typed) {
+                if (!containsLeafref(typed.getType())) {
+                    checkers.put(child, checkersByType.computeIfAbsent(typed.getType(),
+                            type -> new LeafChecker(codecFactory.codecFor(typed, NO_LEAFREFS))));
+                }
+            } else if (child instanceof ChoiceSchemaNode choice) {
+                for (CaseSchemaNode caseNode : choice.getCases()) {
+                    collectCheckers(caseNode, codecFactory, checkers, checkersByType);
+                }
+            } else if (child instanceof DataNodeContainer childContainer) {
+                collectCheckers(childContainer, codecFactory, checkers, checkersByType);
+            }
+        }
+    }
+
+    private static boolean containsLeafref(TypeDefinition<?> type) {
+        if (type instanceof LeafrefTypeDefinition) {
+            return true;
+        }
+        if (type instanceof UnionTypeDefinition union) {
+            for (TypeDefinition<?> member : union.getTypes()) {
+                if (containsLeafref(member)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks the values of one leaf type with its codec.
+     */
+    static final class LeafChecker {
+        private final XmlCodec<?> codec;
+
+        LeafChecker(XmlCodec<?> codec) {
+            this.codec = codec;
+        }
+
+        /**
+         * @return the message the YANG parser rejects the value with, or null if it is valid
+         */
+        String check(String value, NamespaceContext namespaceContext) {
+            try {
+                codec.parseValue(namespaceContext, value);
+                return null;
+            } catch (RuntimeException e) {
+                return e.getMessage() == null ? e.toString() : e.getMessage();
+            }
+        }
+    }
+}
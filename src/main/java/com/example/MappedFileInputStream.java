@@ -0,0 +1,94 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * InputStream over a file mapped into memory one window at a time, so files larger than
+ * a single mapping can be read.
+ */
+public class MappedFileInputStream extends InputStream {
+    private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+    private long windowStart = 0;
+    private MappedByteBuffer window;
+
+    public MappedFileInputStream(Path path) throws IOException {
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.window = map(0);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextWindowIfNeeded()) {
+            return -1;
+        }
+        return window.get() & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextWindowIfNeeded()) {
+            return -1;
+        }
+        int count = Math.min(len, window.remaining());
+        window.get(b, off, count);
+        return count;
+    }
+
+    /**
+     * Moves within the current window, or maps a new one at the target, so reading a slice
+     * of a large file does not page in everything before it.
+     */
+    @Override
+    public long skip(long n) throws IOException {
+        if (n <= 0) {
+            return 0;
+        }
+        long position = windowStart + window.position();
+        long target = Math.min(size, position + n);
+        if (target < windowStart + window.capacity()) {
+            window.position((int) (target - windowStart));
+        } else {
+            window = map(target);
+        }
+        return target - position;
+    }
+
+    @Override
+    public int available() {
+        return window.remaining();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private boolean nextWindowIfNeeded() throws IOException {
+        if (window.hasRemaining()) {
+            return true;
+        }
+        long nextStart = windowStart + window.capacity();
+        if (nextStart >= size) {
+            return false;
+        }
+        window = map(nextStart);
+        return true;
+    }
+
+    private MappedByteBuffer map(long start) throws IOException {
+        windowStart = start;
+        return channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_SIZE, size - start));
+    }
+}
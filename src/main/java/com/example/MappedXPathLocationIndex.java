@@ -0,0 +1,313 @@
+package com.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Location index stored off the heap in memory mapped temporary files, so its heap use does
+ * not grow with the document. Each element is a fixed size record of its start and end
+ * location, parent ordinal, name id, sibling index and flags; key predicates are appended
+ * to a second file. XPaths are rebuilt on lookup by walking the parent ordinals. Only the
+ * distinct element names and the first child of each name under the open elements are
+ * kept on the heap. The files are deleted on {@link #close()}, after which the index can no
+ * longer be read.
+ */
+public class MappedXPathLocationIndex implements XPathLocationIndex, Closeable {
+    private static final int OPEN = Integer.MAX_VALUE;
+
+    // Record layout, in bytes
+    private static final int START_LINE = 0;
+    private static final int START_COLUMN = 4;
+    private static final int END_LINE = 8;
+    private static final int END_COLUMN = 12;
+    private static final int PARENT = 16;
+    private static final int NAME = 20;
+    private static final int INDEX = 24;
+    private static final int FLAGS = 28;
+    // Offset of the key predicate in the predicate file, -1 if there is none
+    private static final int PREDICATE = 32;
+    private static final int RECORD_SIZE = 40;
+    private static final long RECORD_SEGMENT_SIZE = (long) RECORD_SIZE << 20;
+    // A predicate is never split over two segments, so this also limits its length
+    private static final long PREDICATE_SEGMENT_SIZE = 16L << 20;
+
+    private static final int POSITIONAL = 1;
+    // Set on the first sibling of a name once a second one is seen
+    private static final int MULTIPLE = 2;
+
+    private final MappedSegments records;
+    private final MappedSegments predicates;
+    private final Map<String, Integer> nameIds = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private final FirstSiblings firstSiblings = new FirstSiblings();
+    private int size = 0;
+    private long predicatesEnd = 0;
+    // Predicate written last, which can be extended by writing it again in place
+    private int lastPredicateOrdinal = -1;
+
+    /**
+     * Creates the index in the default temporary directory.
+     */
+    public MappedXPathLocationIndex() throws IOException {
+        this(Path.of(System.getProperty("java.io.tmpdir")));
+    }
+
+    public MappedXPathLocationIndex(Path directory) throws IOException {
+        this.records = new MappedSegments(directory, RECORD_SEGMENT_SIZE);
+        try {
+            this.predicates = new MappedSegments(directory, PREDICATE_SEGMENT_SIZE);
+        } catch (IOException e) {
+            records.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int startElement(int parent, String name, int index, int line, int column) {
+        int ordinal = size++;
+        long position = recordOffset(ordinal);
+        MappedByteBuffer segment = records.segment(position);
+        int offset = (int) (position % RECORD_SEGMENT_SIZE);
+        segment.putInt(offset + START_LINE, line);
+        segment.putInt(offset + START_COLUMN, column);
+        segment.putInt(offset + END_LINE, OPEN);
+        segment.putInt(offset + END_COLUMN, OPEN);
+        segment.putInt(offset + PARENT, parent);
+        int nameId = nameId(name);
+        segment.putInt(offset + NAME, nameId);
+        segment.putInt(offset + INDEX, index);
+        segment.putInt(offset + FLAGS, 0);
+        segment.putLong(offset + PREDICATE, -1);
+        if (index == 0) {
+            firstSiblings.first(parent, nameId, ordinal);
+        } else {
+            markMultiple(parent, nameId, index);
+            firstSiblings.next(parent, ordinal);
+        }
+        return ordinal;
+    }
+
+    @Override
+    public void skipElement(int parent, String name, int index) {
+        markMultiple(parent, nameId(name), index);
+    }
+
+    @Override
+    public void setPositional(int ordinal) {
+        putInt(ordinal, FLAGS, getInt(ordinal, FLAGS) | POSITIONAL);
+    }
+
+    @Override
+    public void appendPredicate(int ordinal, String keyPredicate) {
+        String predicate = keyPredicate;
+        long offset = getLong(ordinal, PREDICATE);
+        if (offset >= 0) {
+            predicate = readPredicate(offset) + keyPredicate;
+            if (ordinal == lastPredicateOrdinal) {
+                predicatesEnd = offset;
+            }
+        }
+        putLong(ordinal, PREDICATE, writePredicate(predicate));
+        lastPredicateOrdinal = ordinal;
+    }
+
+    @Override
+    public void endElement(int ordinal, int line, int column) {
+        putInt(ordinal, END_LINE, line);
+        putInt(ordinal, END_COLUMN, column);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int getLine(int ordinal) {
+        return getInt(ordinal, START_LINE);
+    }
+
+    @Override
+    public int getColumn(int ordinal) {
+        return getInt(ordinal, START_COLUMN);
+    }
+
+    @Override
+    public int getEndLine(int ordinal) {
+        return getInt(ordinal, END_LINE);
+    }
+
+    @Override
+    public int getEndColumn(int ordinal) {
+        return getInt(ordinal, END_COLUMN);
+    }
+
+    @Override
+    public int getParent(int ordinal) {
+        return getInt(ordinal, PARENT);
+    }
+
+    @Override
+    public String getName(int ordinal) {
+        return names.get(getInt(ordinal, NAME));
+    }
+
+    @Override
+    public String getXPath(int ordinal) {
+        int depth = 0;
+        for (int element = ordinal; element >= 0; element = getParent(element)) {
+            depth++;
+        }
+        int[] path = new int[depth];
+        for (int element = ordinal; element >= 0; element = getParent(element)) {
+            path[--depth] = element;
+        }
+
+        StringBuilder xpath = new StringBuilder();
+        for (int element : path) {
+            xpath.append('/').append(getName(element));
+            long predicate = getLong(element, PREDICATE);
+            int index = getInt(element, INDEX);
+            if (predicate >= 0) {
+                xpath.append(readPredicate(predicate));
+            } else if (index > 0 || (getInt(element, FLAGS) & (POSITIONAL | MULTIPLE)) != 0) {
+                xpath.append('[').append(index).append(']');
+            }
+        }
+        return xpath.length() == 0 ? "/" : xpath.toString();
+    }
+
+    /**
+     * Deletes the files backing the index.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            records.close();
+        } finally {
+            predicates.close();
+        }
+    }
+
+    private void markMultiple(int parent, int nameId, int index) {
+        if (index != 1) {
+            return;
+        }
+        int first = firstSiblings.take(parent, nameId);
+        if (first >= 0) {
+            putInt(first, FLAGS, getInt(first, FLAGS) | MULTIPLE);
+        }
+    }
+
+    private int nameId(String name) {
+        Integer id = nameIds.get(name);
+        if (id == null) {
+            id = names.size();
+            names.add(name);
+            nameIds.put(name, id);
+        }
+        return id;
+    }
+
+    private long writePredicate(String predicate) {
+        long length = 4 + 2L * predicate.length();
+        if (length > PREDICATE_SEGMENT_SIZE) {
+            throw new IllegalArgumentException("Key predicate too long: " + predicate.length() + " characters");
+        }
+        long offset = predicatesEnd;
+        if (offset / PREDICATE_SEGMENT_SIZE != (offset + length - 1) / PREDICATE_SEGMENT_SIZE) {
+            // Continue at the start of the next segment
+            offset = (offset / PREDICATE_SEGMENT_SIZE + 1) * PREDICATE_SEGMENT_SIZE;
+        }
+        MappedByteBuffer segment = predicates.segment(offset);
+        int position = (int) (offset % PREDICATE_SEGMENT_SIZE);
+        segment.putInt(position, predicate.length());
+        for (int i = 0; i < predicate.length(); i++) {
+            segment.putChar(position + 4 + 2 * i, predicate.charAt(i));
+        }
+        predicatesEnd = offset + length;
+        return offset;
+    }
+
+    private String readPredicate(long offset) {
+        MappedByteBuffer segment = predicates.segment(offset);
+        int position = (int) (offset % PREDICATE_SEGMENT_SIZE);
+        char[] chars = new char[segment.getInt(position)];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = segment.getChar(position + 4 + 2 * i);
+        }
+        return new String(chars);
+    }
+
+    private static long recordOffset(int ordinal) {
+        return (long) ordinal * RECORD_SIZE;
+    }
+
+    private int getInt(int ordinal, int field) {
+        long offset = recordOffset(ordinal);
+        return records.segment(offset).getInt((int) (offset % RECORD_SEGMENT_SIZE) + field);
+    }
+
+    private void putInt(int ordinal, int field, int value) {
+        long offset = recordOffset(ordinal);
+        records.segment(offset).putInt((int) (offset % RECORD_SEGMENT_SIZE) + field, value);
+    }
+
+    private long getLong(int ordinal, int field) {
+        long offset = recordOffset(ordinal);
+        return records.segment(offset).getLong((int) (offset % RECORD_SEGMENT_SIZE) + field);
+    }
+
+    private void putLong(int ordinal, int field, long value) {
+        long offset = recordOffset(ordinal);
+        records.segment(offset).putLong((int) (offset % RECORD_SEGMENT_SIZE) + field, value);
+    }
+
+    /**
+     * Temporary file mapped in fixed size segments, which are added as it grows.
+     */
+    private static class MappedSegments implements Closeable {
+        private final FileChannel channel;
+        private final long segmentSize;
+        private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+        MappedSegments(Path directory, long segmentSize) throws IOException {
+            Path file = Files.createTempFile(directory, "xpath-index", ".tmp");
+            this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+            this.segmentSize = segmentSize;
+        }
+
+        /**
+         * @return the segment holding the given offset of the file
+         */
+        MappedByteBuffer segment(long offset) {
+            int segment = (int) (offset / segmentSize);
+            try {
+                while (segments.size() <= segment) {
+                    // Mapping past the end grows the file
+                    segments.add(channel.map(FileChannel.MapMode.READ_WRITE,
+                            segments.size() * segmentSize, segmentSize));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to grow the location index", e);
+            }
+            return segments.get(segment);
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
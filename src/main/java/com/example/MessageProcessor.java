@@ -1,127 +1,295 @@
 package com.example;
 
-import java.util.HashMap;
-import java.util.Map;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Translates parser error messages into operator friendly ones.
+ * Rules are applied in the order they are declared, so more specific patterns must come
+ * first. Patterns are compiled once and translated messages are cached.
+ * A message not in the cache goes through every rule in turn, each applied to what the
+ * ones before it left, as a later rule may rewrite the output of an earlier one. This
+ * ordered pass is kept on purpose over a single combined alternation, which would stop
+ * at the first rule that matches; a literal prefix check skips the regex of a rule whose
+ * text is not in the message, and parser messages repeat, so misses are rare.
+ */
 public class MessageProcessor {
-    private static Map<String, String> replacementsMap = createReplacementsMap();
+    private static final int CACHE_SIZE = 1024;
+    public static final String UNCLASSIFIED = "Unclassified";
+
+    private static final List<Rule> rules = createRules();
+    private static final Cache<String, Translation> translationCache = CacheBuilder.newBuilder()
+            .maximumSize(CACHE_SIZE)
+            .build();
+
+    private static class Translation {
+        final String message;
+        // Replacement of the last rule that changed the message
+        final String category;
+
+        Translation(String message, String category) {
+            this.message = message;
+            this.category = category;
+        }
+    }
+
+    private static class Rule {
+        final Pattern pattern;
+        final String replacement;
+        // Text every match starts with, checked before running the regex
+        final String literalPrefix;
+
+        Rule(String regex, String replacement) {
+            this.pattern = Pattern.compile(regex);
+            this.replacement = replacement;
+            this.literalPrefix = literalPrefix(regex);
+        }
+
+        String apply(String message) {
+            if (!literalPrefix.isEmpty() && !message.contains(literalPrefix)) {
+                return message;
+            }
+            Matcher matcher = pattern.matcher(message);
+            return matcher.find() ? matcher.replaceAll(replacement) : message;
+        }
+
+        private static String literalPrefix(String regex) {
+            int end = 0;
+            while (end < regex.length() && "\\.[]()*+?{}|^$".indexOf(regex.charAt(end)) < 0) {
+                end++;
+            }
+            return regex.substring(0, end);
+        }
+    }
 
     public static String processMessage(String message) {
-        for (Map.Entry<String, String> entry : replacementsMap.entrySet()) {
-            message = message.replaceAll(entry.getKey(), entry.getValue());
+        return message == null ? null : translate(message).message;
+    }
+
+    /**
+     * Groups messages by the rule that translated them, for counting errors by kind.
+     *
+     * @return the translated message of the deciding rule, or {@link #UNCLASSIFIED}
+     */
+    public static String categorize(String message) {
+        return message == null ? UNCLASSIFIED : translate(message).category;
+    }
+
+    private static Translation translate(String message) {
+        Translation translation = translationCache.getIfPresent(message);
+        if (translation == null) {
+            String translated = message;
+            String category = UNCLASSIFIED;
+            for (Rule rule : rules) {
+                String applied = rule.apply(translated);
+                if (!applied.equals(translated)) {
+                    category = rule.replacement;
+                }
+                translated = applied;
+            }
+            translation = new Translation(translated, category);
+            translationCache.put(message, translation);
         }
-        return message;
+        return translation;
     }
 
-    private static Map<String, String> createReplacementsMap() {
-        replacementsMap = new HashMap<>();
+    private static List<Rule> createRules() {
+        List<Rule> rules = new ArrayList<>();
         
         // Value validation patterns
-        replacementsMap.put("regular expression \\'\\[0-9\\]\\[0-9\\]\\'", "XX");
-        replacementsMap.put("Value '.*' does not match .*", "Invalid value format");
+        rules.add(new Rule("regular expression \\'\\[0-9\\]\\[0-9\\]\\'", "XX"));
+        rules.add(new Rule("Value '.*' does not match .*", "Invalid value format"));
         
         // Element/Content validation patterns - more specific patterns first
-        replacementsMap.put(
+        rules.add(new Rule(
             "ParseError at \\[row,col\\]:\\[\\d+,\\d+\\]\\s*Message: Element content can not contain child START_ELEMENT when using Typed Access methods",
             "Invalid element content - expected simple text value but found nested XML elements"
-        );
+        ));
         
-        replacementsMap.put(
+        rules.add(new Rule(
             "Element content can not contain child START_ELEMENT when using Typed Access methods", 
             "Invalid element content - expected simple value but found nested elements"
-        );
+        ));
         
         // Schema validation patterns
-        replacementsMap.put(
+        rules.add(new Rule(
             "Schema for node with name .* and namespace .* does not exist in parent .*",
             "Unknown element - not defined in the YANG schema"
-        );
+        ));
         
-        replacementsMap.put(
+        rules.add(new Rule(
             "Schema node with name .* was not found under .*",
             "Element not found in schema definition"
-        );
+        ));
         
         // Duplicate element patterns
-        replacementsMap.put(
+        rules.add(new Rule(
             "Duplicate element \".*\" in namespace \".*\" with parent \".*\" in XML input",
             "Duplicate element found - only one instance allowed"
-        );
+        ));
         
+        // Raised by the stream writer with the offending keys or value left after the match
+        rules.add(new Rule(
+            "Duplicate entry in list \\S+: ",
+            "Duplicate list entry - key values must be unique: "
+        ));
+
+        rules.add(new Rule(
+            "Duplicate value in leaf-list \\S+: ",
+            "Duplicate leaf-list value - values must be unique: "
+        ));
+
+        // Raised by the data tree constraint checks, with the qualified name of the node
+        rules.add(new Rule(
+            "Must condition violated in \\S+: ",
+            "Must condition not satisfied: "
+        ));
+
+        rules.add(new Rule(
+            "When condition false for \\S+: ",
+            "Element present although its when condition is false: "
+        ));
+
+        rules.add(new Rule(
+            "Missing mandatory node \\([^)]*\\)",
+            "Missing mandatory element: "
+        ));
+
+        rules.add(new Rule(
+            "Missing mandatory choice \\([^)]*\\)",
+            "Missing mandatory choice - one of its cases must be present: "
+        ));
+
+        rules.add(new Rule(
+            "Too few entries in \\S+: ",
+            "Too few entries - below min-elements: "
+        ));
+
+        rules.add(new Rule(
+            "Too many entries in \\S+: ",
+            "Too many entries - above max-elements: "
+        ));
+
+        rules.add(new Rule(
+            "Unique constraint violated in \\S+: ",
+            "Unique constraint violated - values must differ between list entries: "
+        ));
+
         // Namespace patterns
-        replacementsMap.put(
+        rules.add(new Rule(
             "Failed to convert namespace .*",
             "Invalid XML namespace"
-        );
+        ));
         
-        replacementsMap.put(
+        rules.add(new Rule(
             "Choose suitable module name for element .*:",
             "Ambiguous element name - multiple modules define this element"
-        );
+        ));
         
         // Mount point patterns
-        replacementsMap.put(
+        rules.add(new Rule(
             "Mount point .* not attached",
             "Mount point configuration missing"
-        );
+        ));
         
-        replacementsMap.put(
+        rules.add(new Rule(
             "Unhandled mount-aware schema .*",
             "Unsupported mount point schema type"
-        );
+        ));
         
         // Type conversion patterns
-        replacementsMap.put(
+        rules.add(new Rule(
             "Unexpected value while expecting a .*",
             "Invalid data type - value does not match expected type"
-        );
+        ));
         
+        // Resource budget patterns, raised by the XML parser or on timeout
+        rules.add(new Rule(
+            "Maximum Element Depth limit \\(\\d+\\) Exceeded",
+            "Document too deeply nested - element depth limit exceeded"
+        ));
+
+        rules.add(new Rule(
+            "Maximum Element Count limit \\(\\d+\\) Exceeded",
+            "Document too large - element count limit exceeded"
+        ));
+
+        rules.add(new Rule(
+            "Maximum attribute size limit \\(\\d+\\) exceeded",
+            "Attribute value too long - attribute length limit exceeded"
+        ));
+
+        rules.add(new Rule(
+            "Text size limit \\(\\d+\\) exceeded",
+            "Element text too long - text length limit exceeded"
+        ));
+
+        rules.add(new Rule(
+            "Maximum document (?:characters|size) limit \\(\\d+\\) exceeded",
+            "Document too large - document size limit exceeded"
+        ));
+
+        rules.add(new Rule(
+            "Maximum entity expansion count limit \\(\\d+\\) exceeded",
+            "Too many entity expansions - entity expansion limit exceeded"
+        ));
+
+        rules.add(new Rule(
+            "Validation timed out",
+            "Validation timed out - document could not be validated within the time limit"
+        ));
+
         // XML parsing patterns - more specific first
-        replacementsMap.put(
+        rules.add(new Rule(
             "ParseError at \\[row,col\\]:\\[\\d+,\\d+\\]\\s*Message: .*",
             "XML structure error - invalid element nesting or content"
-        );
+        ));
         
-        replacementsMap.put(
+        rules.add(new Rule(
             "Unable to read anyxml value",
             "Failed to parse XML content"
-        );
+        ));
         
         // Value assignment patterns
-        replacementsMap.put(
+        rules.add(new Rule(
             "Node '.*' has already set its value to '.*'",
             "Duplicate value assignment - element value already set"
-        );
+        ));
         
         // Transformer patterns
-        replacementsMap.put(
+        rules.add(new Rule(
             "No TransformerFactory supporting StAXResult found",
             "XML processing configuration error"
-        );
+        ));
         
         // JSON parsing patterns (if used)
-        replacementsMap.put(
+        rules.add(new Rule(
             "Failed parsing JSON source: .* to Json",
             "JSON parsing failed"
-        );
+        ));
         
         // General patterns
-        replacementsMap.put(
+        rules.add(new Rule(
             "Illegal parent node .*",
             "Invalid parent element for this context"
-        );
+        ));
         
-        replacementsMap.put(
+        rules.add(new Rule(
             "Unexpected parent .*",
             "Element found in unexpected location"
-        );
+        ));
         
         // Codec patterns
-        replacementsMap.put(
+        rules.add(new Rule(
             "Codec for .* is not available",
             "Data type codec not available"
-        );
+        ));
         
-        return replacementsMap;
+        return List.copyOf(rules);
     }
 }
@@ -0,0 +1,389 @@
+package com.example;
+
+import com.google.common.io.ByteSource;
+import org.opendaylight.yangtools.yang.model.api.DataSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.EffectiveModelContext;
+import org.opendaylight.yangtools.yang.model.api.ListSchemaNode;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Validates the top level data nodes of one large document in parallel.
+ * The document is first scanned for where its top level elements start and end, then cut
+ * into chunks of whole elements that are validated on a fork-join pool against the shared
+ * schema. Each error is moved back to its place in the whole document: lines and columns
+ * are offset by where its chunk starts, and the position index of its top level element
+ * counts the elements of the same name in earlier chunks. Errors are reported in document
+ * order, and chunks after one that alone found maxErrors errors are skipped. The timeout of
+ * a {@link ValidationBudget} covers all chunks and its other limits apply to each chunk, so
+ * documents larger than its document size, or with an element count limit, are validated
+ * sequentially for those limits to count the whole document.
+ * Documents that cannot be scanned, or have a single top level element, are validated
+ * sequentially. Since chunks are parsed on their own, the keyed list entries and single
+ * instance elements at the top level of each chunk are compared with those of earlier
+ * chunks afterwards, and one repeated in a later chunk is reported there as the parser
+ * would. Documents of a schema with data tree constraints, such as must or unique, are
+ * validated sequentially, as those span the whole tree. A document validated in chunks
+ * counts as one document in the {@link ValidationMetrics}.
+ */
+public class ParallelDocumentValidator {
+    private static final long MIN_CHUNK_SIZE = 1024 * 1024;
+    // More chunks than workers, so one slow chunk does not hold up the rest
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    private final YangValidatorEngine engine;
+    private final EffectiveModelContext context;
+    private final ForkJoinPool pool;
+    private final long minChunkSize;
+    // Top level keyed lists, whose entries are named by their keys and never by position
+    private final Set<String> keyedLists = new HashSet<>();
+
+    public ParallelDocumentValidator(YangValidatorEngine engine, EffectiveModelContext context, ForkJoinPool pool) {
+        this(engine, context, pool, MIN_CHUNK_SIZE);
+    }
+
+    /**
+     * @param minChunkSize bytes below which a document is not cut further, lowered by tests
+     *                     so that small documents are cut into several chunks
+     */
+    ParallelDocumentValidator(YangValidatorEngine engine, EffectiveModelContext context, ForkJoinPool pool,
+                              long minChunkSize) {
+        this.engine = engine;
+        this.context = context;
+        this.pool = pool;
+        this.minChunkSize = minChunkSize;
+        for (DataSchemaNode node : context.getChildNodes()) {
+            if (node instanceof ListSchemaNode list && !list.getKeyDefinition().isEmpty()) {
+                keyedLists.add(node.getQName().getLocalName());
+            }
+        }
+    }
+
+    /**
+     * Validates the document, collecting up to maxErrors errors over all chunks.
+     */
+    public ValidationResult validate(XmlSource source, int maxErrors) throws IOException, XMLStreamException {
+        return validate(source, ValidationBudget.DEFAULT.withMaxErrors(maxErrors));
+    }
+
+    /**
+     * Validates the document within the budget, collecting up to its maxErrors errors over
+     * all chunks.
+     */
+    public ValidationResult validate(XmlSource source, ValidationBudget budget) throws IOException, XMLStreamException {
+        long deadline = budget.getTimeout() == null ? 0 : System.nanoTime() + budget.getTimeout().toNanos();
+        ByteSource bytes = source.asByteSource();
+        if (bytes == null || bytes.size() > budget.getMaxDocumentSize()
+                || budget.getMaxElements() != ValidationBudget.DEFAULT.getMaxElements()
+                || !engine.getDataTreePlan(context).isEmpty()) {
+            return engine.validate(context, source, budget);
+        }
+        List<TopLevelElementScanner.TopLevelElement> elements;
+        try (InputStream in = bytes.openBufferedStream()) {
+            elements = TopLevelElementScanner.scan(in);
+        }
+        if (elements == null || elements.size() < 2) {
+            return engine.validate(context, source, remaining(budget, deadline));
+        }
+
+        List<Chunk> chunks = split(elements, bytes.size());
+        if (chunks.size() < 2) {
+            return engine.validate(context, source, remaining(budget, deadline));
+        }
+        int maxErrors = budget.getMaxErrors();
+        AtomicBoolean timedOut = new AtomicBoolean();
+        AtomicInteger lastNeededChunk = new AtomicInteger(chunks.size() - 1);
+        ValidationResult[] results = new ValidationResult[chunks.size()];
+        YangValidatorEngine.PartReport[] reports = new YangValidatorEngine.PartReport[chunks.size()];
+        try {
+            pool.invoke(new ChunkTask(bytes, chunks, 0, chunks.size(), lastNeededChunk, budget, deadline, timedOut,
+                    results, reports));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (ChunkFailure e) {
+            throw e.getCause();
+        }
+
+        List<ValidationError> errors = new ArrayList<>();
+        // The chunk each unique top level element was first found in
+        Map<String, Integer> firstChunks = new HashMap<>();
+        boolean incomplete = false;
+        for (int i = 0; i <= lastNeededChunk.get() && errors.size() < maxErrors; i++) {
+            errors.addAll(collectErrors(chunks.get(i), i, results[i], reports[i], firstChunks));
+            incomplete |= results[i].isIncomplete();
+        }
+        if (errors.size() > maxErrors) {
+            errors = errors.subList(0, maxErrors);
+        }
+        engine.recordPartedDocument(errors.isEmpty(), Arrays.asList(reports));
+        return new ValidationResult(errors, List.of(), null, timedOut.get(), incomplete && errors.size() < maxErrors);
+    }
+
+    /**
+     * @return the errors of a chunk and its top level elements found in an earlier chunk,
+     * moved to their place in the document
+     */
+    private List<ValidationError> collectErrors(Chunk chunk, int chunkIndex, ValidationResult result,
+                                                YangValidatorEngine.PartReport report,
+                                                Map<String, Integer> firstChunks) {
+        List<ValidationError> errors = new ArrayList<>(result.getErrors());
+        for (XPathXMLStreamReader.TopLevelElement element : report.topLevelElements) {
+            Integer firstChunk = firstChunks.putIfAbsent(element.xpath, chunkIndex);
+            // Repeats within the chunk were reported by the parser
+            if (firstChunk != null && firstChunk != chunkIndex) {
+                errors.add(engine.translateError(element.line, element.column,
+                        YangValidatorEngine.stripRootElement(element.xpath), element.duplicateMessage));
+            }
+        }
+        if (errors.size() > result.getErrors().size()) {
+            // Errors without a location stay last, as they came at the end of the chunk
+            errors.sort(Comparator.comparingInt((ValidationError error) ->
+                            error.getLineNumber() > 0 ? error.getLineNumber() : Integer.MAX_VALUE)
+                    .thenComparingInt(ValidationError::getColumnNumber));
+        }
+        errors.replaceAll(error -> relocate(error, chunk));
+        return errors;
+    }
+
+    /**
+     * @return the budget with what is left of its timeout, at least a nanosecond so that a
+     * validation started after the deadline fails at once
+     */
+    private static ValidationBudget remaining(ValidationBudget budget, long deadline) {
+        return budget.getTimeout() == null ? budget
+                : budget.withTimeout(Duration.ofNanos(Math.max(1, deadline - System.nanoTime())));
+    }
+
+    private List<Chunk> split(List<TopLevelElementScanner.TopLevelElement> elements, long size) {
+        long targetSize = Math.max(minChunkSize, size / ((long) pool.getParallelism() * CHUNKS_PER_WORKER));
+        List<Chunk> chunks = new ArrayList<>();
+        // Elements of each name in the chunks so far
+        Map<String, Integer> counts = new HashMap<>();
+        int first = 0;
+        for (int i = 0; i < elements.size(); i++) {
+            boolean last = i == elements.size() - 1;
+            if (last || elements.get(i).getEnd() - elements.get(first).getStart() >= targetSize) {
+                chunks.add(new Chunk(elements.get(first), elements.get(i).getEnd(), Map.copyOf(counts)));
+                for (int j = first; j <= i; j++) {
+                    String name = elements.get(j).getLocalName();
+                    if (!keyedLists.contains(name)) {
+                        counts.merge(name, 1, Integer::sum);
+                    }
+                }
+                first = i + 1;
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * Consecutive top level elements, and how many of each name come before them.
+     */
+    private static class Chunk {
+        private final TopLevelElementScanner.TopLevelElement first;
+        private final long end;
+        private final Map<String, Integer> precedingCounts;
+
+        Chunk(TopLevelElementScanner.TopLevelElement first, long end, Map<String, Integer> precedingCounts) {
+            this.first = first;
+            this.end = end;
+            this.precedingCounts = precedingCounts;
+        }
+    }
+
+    private static class ChunkFailure extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ChunkFailure(XMLStreamException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized XMLStreamException getCause() {
+            return (XMLStreamException) super.getCause();
+        }
+    }
+
+    /**
+     * Validates a range of chunks, halving it until a single chunk is left, and puts the
+     * result and report of each chunk at its index.
+     */
+    // Serializable through ForkJoinTask, but tasks never leave the pool they run on
+    @SuppressWarnings("serial")
+    private class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final ByteSource bytes;
+        private final List<Chunk> chunks;
+        private final int from;
+        private final int to;
+        private final AtomicInteger lastNeededChunk;
+        private final ValidationBudget budget;
+        private final long deadline;
+        private final AtomicBoolean timedOut;
+        private final ValidationResult[] results;
+        private final YangValidatorEngine.PartReport[] reports;
+
+        ChunkTask(ByteSource bytes, List<Chunk> chunks, int from, int to, AtomicInteger lastNeededChunk,
+                  ValidationBudget budget, long deadline, AtomicBoolean timedOut, ValidationResult[] results,
+                  YangValidatorEngine.PartReport[] reports) {
+            this.bytes = bytes;
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+            this.lastNeededChunk = lastNeededChunk;
+            this.budget = budget;
+            this.deadline = deadline;
+            this.timedOut = timedOut;
+            this.results = results;
+            this.reports = reports;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                validate(from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            // This thread carries on in document order, idle workers take the later chunks
+            ChunkTask right = new ChunkTask(bytes, chunks, middle, to, lastNeededChunk, budget, deadline, timedOut,
+                    results, reports);
+            right.fork();
+            new ChunkTask(bytes, chunks, from, middle, lastNeededChunk, budget, deadline, timedOut, results, reports)
+                    .compute();
+            right.join();
+        }
+
+        private void validate(int chunkIndex) {
+            // Errors after maxErrors found in an earlier chunk would be dropped anyway
+            if (chunkIndex > lastNeededChunk.get()) {
+                return;
+            }
+            Chunk chunk = chunks.get(chunkIndex);
+            long start = chunk.first.getStart();
+            YangValidatorEngine.PartReport report = new YangValidatorEngine.PartReport();
+            ValidationResult result;
+            try {
+                result = engine.validatePart(context, XmlSource.of(new CancellableByteSource(
+                        bytes.slice(start, chunk.end - start), () -> chunkIndex > lastNeededChunk.get())),
+                        remaining(budget, deadline), report);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } catch (XMLStreamException e) {
+                throw new ChunkFailure(e);
+            }
+            // Later chunks would time out too
+            if (result.isTimedOut()) {
+                timedOut.set(true);
+            }
+            if (result.getErrors().size() >= budget.getMaxErrors() || result.isTimedOut()) {
+                lastNeededChunk.accumulateAndGet(chunkIndex, Math::min);
+            }
+            results[chunkIndex] = result;
+            reports[chunkIndex] = report;
+        }
+    }
+
+    /**
+     * Stops a chunk that is already being read once its errors are no longer needed, by
+     * failing its reads.
+     */
+    private static class CancellableByteSource extends ByteSource {
+        private final ByteSource bytes;
+        private final BooleanSupplier cancelled;
+
+        CancellableByteSource(ByteSource bytes, BooleanSupplier cancelled) {
+            this.bytes = bytes;
+            this.cancelled = cancelled;
+        }
+
+        @Override
+        public InputStream openStream() throws IOException {
+            return new FilterInputStream(bytes.openStream()) {
+                @Override
+                public int read() throws IOException {
+                    checkCancelled();
+                    return super.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    checkCancelled();
+                    return super.read(b, off, len);
+                }
+            };
+        }
+
+        private void checkCancelled() throws InterruptedIOException {
+            if (cancelled.getAsBoolean()) {
+                throw new InterruptedIOException("Chunk no longer needed");
+            }
+        }
+    }
+
+    private static ValidationError relocate(ValidationError error, Chunk chunk) {
+        int line = error.getLineNumber();
+        int column = error.getColumnNumber();
+        if (line <= 0) {
+            return error;
+        }
+        // Only the chunk's first line shares its start with a line of the document
+        if (line == 1) {
+            column += chunk.first.getColumn() - 1;
+        }
+        line += chunk.first.getLine() - 1;
+        return new ValidationError(line, column, relocate(error.getXpath(), chunk.precedingCounts), error.getMessage());
+    }
+
+    /**
+     * Renumbers the first step of the XPath as if the earlier chunks were part of the document.
+     * Key predicates identify the element wherever it is and are kept as they are, and
+     * entries of keyed lists are not counted, so one whose keys were not read stays unnumbered.
+     */
+    static String relocate(String xpath, Map<String, Integer> precedingCounts) {
+        if (xpath == null || !xpath.startsWith("/") || xpath.length() == 1) {
+            return xpath;
+        }
+        int nameEnd = 1;
+        while (nameEnd < xpath.length() && xpath.charAt(nameEnd) != '[' && xpath.charAt(nameEnd) != '/') {
+            nameEnd++;
+        }
+        String name = xpath.substring(1, nameEnd);
+        int preceding = precedingCounts.getOrDefault(name, 0);
+        if (preceding == 0) {
+            return xpath;
+        }
+
+        int index = 0;
+        int stepEnd = nameEnd;
+        if (nameEnd < xpath.length() && xpath.charAt(nameEnd) == '[') {
+            stepEnd = xpath.indexOf(']', nameEnd) + 1;
+            String predicate = xpath.substring(nameEnd + 1, stepEnd - 1);
+            if (predicate.isEmpty() || !predicate.chars().allMatch(Character::isDigit)) {
+                return xpath;
+            }
+            index = Integer.parseInt(predicate);
+        }
+        return "/" + name + "[" + (preceding + index) + "]" + xpath.substring(stepEnd);
+    }
+}
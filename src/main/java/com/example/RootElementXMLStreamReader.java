@@ -0,0 +1,196 @@
+package com.example;
+
+import com.ctc.wstx.api.WstxInputProperties;
+import com.ctc.wstx.stax.WstxInputFactory;
+import org.codehaus.stax2.XMLInputFactory2;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+
+/**
+ * XMLStreamReader that wraps the top level elements of a fragment in a synthetic
+ * &lt;root&gt; element, as the YANG parser needs a single root element.
+ * This replaces concatenating "&lt;root&gt;" around the document text, so the document is
+ * never held in memory, and lines and columns are those of the original input.
+ * The delegate must be created by a factory from {@link #createInputFactory()}.
+ */
+public class RootElementXMLStreamReader extends StreamReaderDelegate {
+    public static final String ROOT_ELEMENT = "root";
+
+    private static final QName ROOT_NAME = new QName(ROOT_ELEMENT);
+
+    private int eventType = XMLStreamConstants.START_DOCUMENT;
+    // True while the delegate's own events are being passed through
+    private boolean inContent = false;
+
+    public RootElementXMLStreamReader(XMLStreamReader delegate) {
+        super(delegate);
+    }
+
+    /**
+     * Starts over on another document, so one wrapper can be kept for a sequence of documents.
+     */
+    public void reset(XMLStreamReader delegate) {
+        setParent(delegate);
+        eventType = XMLStreamConstants.START_DOCUMENT;
+        inContent = false;
+    }
+
+    /**
+     * Creates a factory that accepts several top level elements, closing the input
+     * once the reader is closed.
+     */
+    public static XMLInputFactory createInputFactory() {
+        XMLInputFactory factory = new WstxInputFactory();
+        factory.setProperty(WstxInputProperties.P_INPUT_PARSING_MODE, WstxInputProperties.PARSING_MODE_FRAGMENT);
+        factory.setProperty(XMLInputFactory2.P_AUTO_CLOSE_INPUT, true);
+        return factory;
+    }
+
+    @Override
+    public int next() throws XMLStreamException {
+        if (inContent) {
+            int event = super.next();
+            if (event != XMLStreamConstants.END_DOCUMENT) {
+                eventType = event;
+                return event;
+            }
+            inContent = false;
+            eventType = XMLStreamConstants.END_ELEMENT;
+        } else if (eventType == XMLStreamConstants.START_DOCUMENT) {
+            eventType = XMLStreamConstants.START_ELEMENT;
+        } else if (eventType == XMLStreamConstants.START_ELEMENT) {
+            inContent = true;
+            return next();
+        } else if (eventType == XMLStreamConstants.END_ELEMENT) {
+            eventType = XMLStreamConstants.END_DOCUMENT;
+        } else {
+            throw new IllegalStateException("No more events after END_DOCUMENT");
+        }
+        return eventType;
+    }
+
+    @Override
+    public int nextTag() throws XMLStreamException {
+        // The delegate's nextTag() would fail on reaching its END_DOCUMENT
+        int event = next();
+        while ((event == XMLStreamConstants.CHARACTERS && isWhiteSpace())
+                || (event == XMLStreamConstants.CDATA && isWhiteSpace())
+                || event == XMLStreamConstants.SPACE
+                || event == XMLStreamConstants.PROCESSING_INSTRUCTION
+                || event == XMLStreamConstants.COMMENT) {
+            event = next();
+        }
+        if (event != XMLStreamConstants.START_ELEMENT && event != XMLStreamConstants.END_ELEMENT) {
+            throw new XMLStreamException("Expected a start or end tag", getLocation());
+        }
+        return event;
+    }
+
+    @Override
+    public boolean hasNext() throws XMLStreamException {
+        return eventType != XMLStreamConstants.END_DOCUMENT;
+    }
+
+    @Override
+    public int getEventType() {
+        return eventType;
+    }
+
+    /**
+     * True while positioned on the start or end of the synthetic root element.
+     */
+    private boolean onRoot() {
+        return !inContent && (eventType == XMLStreamConstants.START_ELEMENT
+                || eventType == XMLStreamConstants.END_ELEMENT);
+    }
+
+    @Override
+    public String getElementText() throws XMLStreamException {
+        if (onRoot()) {
+            throw new XMLStreamException("Root element has no text content", getLocation());
+        }
+        String text = super.getElementText();
+        eventType = XMLStreamConstants.END_ELEMENT;
+        return text;
+    }
+
+    @Override
+    public void require(int type, String namespaceURI, String localName) throws XMLStreamException {
+        if (inContent) {
+            super.require(type, namespaceURI, localName);
+        } else if (type != eventType || (namespaceURI != null && !namespaceURI.isEmpty())
+                || (localName != null && !(onRoot() && localName.equals(ROOT_ELEMENT)))) {
+            throw new XMLStreamException("Required event " + type + " does not match", getLocation());
+        }
+    }
+
+    @Override
+    public QName getName() {
+        return onRoot() ? ROOT_NAME : super.getName();
+    }
+
+    @Override
+    public String getLocalName() {
+        return onRoot() ? ROOT_ELEMENT : super.getLocalName();
+    }
+
+    @Override
+    public boolean hasName() {
+        return onRoot() || (inContent && super.hasName());
+    }
+
+    @Override
+    public String getNamespaceURI() {
+        return onRoot() ? null : super.getNamespaceURI();
+    }
+
+    @Override
+    public String getPrefix() {
+        return onRoot() ? "" : super.getPrefix();
+    }
+
+    @Override
+    public boolean isStartElement() {
+        return eventType == XMLStreamConstants.START_ELEMENT;
+    }
+
+    @Override
+    public boolean isEndElement() {
+        return eventType == XMLStreamConstants.END_ELEMENT;
+    }
+
+    @Override
+    public boolean isCharacters() {
+        return inContent && super.isCharacters();
+    }
+
+    @Override
+    public boolean isWhiteSpace() {
+        return inContent && super.isWhiteSpace();
+    }
+
+    @Override
+    public boolean hasText() {
+        return inContent && super.hasText();
+    }
+
+    @Override
+    public String getAttributeValue(String namespaceURI, String localName) {
+        return onRoot() ? null : super.getAttributeValue(namespaceURI, localName);
+    }
+
+    @Override
+    public int getAttributeCount() {
+        return onRoot() ? 0 : super.getAttributeCount();
+    }
+
+    @Override
+    public int getNamespaceCount() {
+        return onRoot() ? 0 : super.getNamespaceCount();
+    }
+}
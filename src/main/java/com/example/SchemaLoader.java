@@ -0,0 +1,375 @@
+package com.example;
+
+import org.opendaylight.yangtools.yang.common.Revision;
+import org.opendaylight.yangtools.yang.model.api.EffectiveModelContext;
+import org.opendaylight.yangtools.yang.model.api.source.SourceDependency;
+import org.opendaylight.yangtools.yang.model.spi.source.FileYangTextSource;
+import org.opendaylight.yangtools.yang.model.spi.source.SourceInfo;
+import org.opendaylight.yangtools.yang.model.spi.source.YangIRSource;
+import org.opendaylight.yangtools.yang.parser.api.YangParser;
+import org.opendaylight.yangtools.yang.parser.api.YangParserConfiguration;
+import org.opendaylight.yangtools.yang.parser.api.YangParserException;
+import org.opendaylight.yangtools.yang.parser.api.YangParserFactory;
+import org.opendaylight.yangtools.yang.parser.api.YangSyntaxErrorException;
+import org.opendaylight.yangtools.yang.parser.rfc7950.repo.TextToIRTransformer;
+import org.opendaylight.yangtools.yang.parser.rfc7950.repo.YangIRSourceInfoExtractor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * Loads a schema of many YANG modules in three stages: the files are read and parsed into
+ * yangtools' intermediate statement trees in parallel, the imports, includes and revisions
+ * between them are resolved, and the modules left are assembled into the effective model.
+ * Every module that fails is reported with the stage it failed in, along with the modules
+ * that depend on it, instead of only the first failure of the parser; each stage is timed.
+ */
+public class SchemaLoader {
+    private static final Logger LOG = LoggerFactory.getLogger(SchemaLoader.class);
+
+    public enum Stage {
+        READ,
+        PARSE,
+        RESOLVE
+    }
+
+    /**
+     * A module left out of the schema.
+     */
+    public static class ModuleFailure {
+        private final String source;
+        private final Stage stage;
+        private final String message;
+
+        ModuleFailure(String source, Stage stage, String message) {
+            this.source = source;
+            this.stage = stage;
+            this.message = message;
+        }
+
+        /**
+         * The file of the module, or its name and revision once it has been parsed.
+         */
+        public String getSource() {
+            return source;
+        }
+
+        public Stage getStage() {
+            return stage;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        @Override
+        public String toString() {
+            return source + ": " + stage.name().toLowerCase() + " failed: " + message;
+        }
+    }
+
+    /**
+     * Sources parsed into statement trees, and the files that could not be.
+     */
+    public static class ParsedSources {
+        private final List<YangIRSource> sources;
+        private final List<ModuleFailure> failures;
+
+        ParsedSources(List<YangIRSource> sources, List<ModuleFailure> failures) {
+            this.sources = sources;
+            this.failures = failures;
+        }
+
+        public List<YangIRSource> getSources() {
+            return sources;
+        }
+
+        public List<ModuleFailure> getFailures() {
+            return failures;
+        }
+    }
+
+    /**
+     * The effective model of the modules that could be loaded, and the ones that could not.
+     */
+    public static class Result {
+        private final EffectiveModelContext context;
+        private final List<ModuleFailure> failures;
+        private final int moduleCount;
+
+        Result(EffectiveModelContext context, List<ModuleFailure> failures, int moduleCount) {
+            this.context = context;
+            this.failures = failures;
+            this.moduleCount = moduleCount;
+        }
+
+        public EffectiveModelContext getContext() {
+            return context;
+        }
+
+        public List<ModuleFailure> getFailures() {
+            return failures;
+        }
+
+        /**
+         * Number of modules and submodules assembled.
+         */
+        public int getModuleCount() {
+            return moduleCount;
+        }
+    }
+
+    private final YangParserFactory parserFactory;
+    private final int threads;
+    private final boolean leaveOutFailed;
+    private final ValidationMetrics metrics = ValidationMetrics.get();
+
+    /**
+     * @param threads        number of files read and parsed at the same time
+     * @param leaveOutFailed true to assemble the modules left when some fail, false to fail
+     *                       the whole schema, reporting every module that failed
+     */
+    public SchemaLoader(YangParserFactory parserFactory, int threads, boolean leaveOutFailed) {
+        this.parserFactory = parserFactory;
+        this.threads = threads;
+        this.leaveOutFailed = leaveOutFailed;
+    }
+
+    /**
+     * Expands the paths into the YANG files to load: a file is taken as is, and a directory
+     * stands for all the .yang files below it, in name order.
+     */
+    public static List<Path> findYangFiles(List<Path> paths) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (Path path : paths) {
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> found = Files.walk(path)) {
+                    found.filter(Files::isRegularFile)
+                            .filter(file -> file.getFileName().toString().endsWith(".yang"))
+                            .sorted()
+                            .forEach(files::add);
+                }
+            } else {
+                files.add(path);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Reads, parses, resolves and assembles the YANG files.
+     *
+     * @throws IllegalArgumentException if a module failed and failed ones are not left out
+     * @throws IllegalStateException    if the modules left after resolving fail to assemble
+     */
+    public Result load(List<Path> yangFiles) {
+        ParsedSources parsed = parse(yangFiles);
+        return assemble(parsed.getSources(), parsed.getFailures());
+    }
+
+    /**
+     * Reads and parses the files in parallel, without resolving or assembling them.
+     */
+    public ParsedSources parse(List<Path> yangFiles) {
+        long start = System.nanoTime();
+        AtomicLong busyNanos = new AtomicLong();
+        List<CompletableFuture<Object>> parsing = new ArrayList<>(yangFiles.size());
+        // Parsing is all CPU work, so more threads than files or CPUs gain nothing
+        try (ExecutorService executor = Executors.newFixedThreadPool(Math.max(Math.min(threads, yangFiles.size()),
+                1))) {
+            for (Path yangFile : yangFiles) {
+                parsing.add(CompletableFuture.supplyAsync(() -> {
+                    long fileStart = System.nanoTime();
+                    try {
+                        return parseFile(yangFile);
+                    } finally {
+                        busyNanos.addAndGet(System.nanoTime() - fileStart);
+                    }
+                }, executor));
+            }
+        }
+        List<YangIRSource> sources = new ArrayList<>(yangFiles.size());
+        List<ModuleFailure> failures = new ArrayList<>();
+        // In the order of the files, whichever finished first
+        for (CompletableFuture<Object> future : parsing) {
+            Object parsedFile = future.join();
+            if (parsedFile instanceof YangIRSource source) {
+                sources.add(source);
+            } else {
+                failures.add((ModuleFailure) parsedFile);
+            }
+        }
+        metrics.recordPhase(ValidationPhase.SCHEMA_PARSE, start);
+        LOG.debug("Read and parsed {} YANG files in {} ms, {} ms of work", yangFiles.size(),
+                (System.nanoTime() - start) / 1_000_000, busyNanos.get() / 1_000_000);
+        return new ParsedSources(sources, failures);
+    }
+
+    /**
+     * @return the parsed source, or the failure to read or parse it
+     */
+    private static Object parseFile(Path yangFile) {
+        try {
+            return TextToIRTransformer.transformText(new FileYangTextSource(yangFile));
+        } catch (IOException e) {
+            return new ModuleFailure(yangFile.toString(), Stage.READ, e.toString());
+        } catch (YangSyntaxErrorException e) {
+            return new ModuleFailure(yangFile.toString(), Stage.PARSE,
+                    "line " + e.getLine() + ":" + e.getCharPositionInLine() + " " + e.getMessage());
+        } catch (RuntimeException e) {
+            return new ModuleFailure(yangFile.toString(), Stage.PARSE, e.getMessage());
+        }
+    }
+
+    /**
+     * Resolves the dependencies between the parsed sources, leaving out those with a
+     * dependency that is missing or failed, and assembles the others.
+     *
+     * @param failures failures of earlier stages, reported along with those of this one
+     * @throws IllegalArgumentException if a module failed and failed ones are not left out
+     * @throws IllegalStateException    if the sources left fail to assemble
+     */
+    public Result assemble(List<YangIRSource> sources, List<ModuleFailure> failures) {
+        List<ModuleFailure> allFailures = new ArrayList<>(failures);
+        long start = System.nanoTime();
+        List<YangIRSource> resolved = resolve(sources, allFailures);
+        metrics.recordPhase(ValidationPhase.SCHEMA_RESOLVE, start);
+        long resolveNanos = System.nanoTime() - start;
+        if (!leaveOutFailed) {
+            checkNoFailures(allFailures);
+        }
+
+        start = System.nanoTime();
+        YangParser parser = parserFactory.createParser(YangParserConfiguration.DEFAULT);
+        EffectiveModelContext context;
+        try {
+            for (YangIRSource source : resolved) {
+                parser.addSource(source);
+            }
+            context = parser.buildEffectiveModel();
+        } catch (IOException | YangParserException e) {
+            throw new IllegalStateException("Failed to assemble SchemaContext", e);
+        } finally {
+            metrics.recordPhase(ValidationPhase.SCHEMA_ASSEMBLE, start);
+        }
+        LOG.debug("Resolved {} YANG sources in {} ms and assembled them in {} ms, {} left out", resolved.size(),
+                resolveNanos / 1_000_000, (System.nanoTime() - start) / 1_000_000, allFailures.size());
+        for (ModuleFailure failure : allFailures) {
+            LOG.warn("Left out of the schema: {}", failure);
+        }
+        return new Result(context, allFailures, resolved.size());
+    }
+
+    /**
+     * @throws IllegalArgumentException listing the failures, if there are any
+     */
+    static void checkNoFailures(List<ModuleFailure> failures) {
+        if (failures.isEmpty()) {
+            return;
+        }
+        StringBuilder message = new StringBuilder("Failed to load ").append(failures.size())
+                .append(failures.size() == 1 ? " YANG module:" : " YANG modules:");
+        for (ModuleFailure failure : failures) {
+            message.append("\n  ").append(failure);
+        }
+        throw new IllegalArgumentException(message.toString());
+    }
+
+    private static List<YangIRSource> resolve(List<YangIRSource> sources, List<ModuleFailure> failures) {
+        // Sources still in the schema, with their dependencies, and by name
+        Map<YangIRSource, SourceInfo> infos = new LinkedHashMap<>();
+        Map<String, List<SourceInfo>> byName = new HashMap<>();
+        for (YangIRSource source : sources) {
+            SourceInfo info;
+            try {
+                info = YangIRSourceInfoExtractor.forIR(source);
+            } catch (RuntimeException e) {
+                failures.add(new ModuleFailure(describe(source, null), Stage.RESOLVE, e.getMessage()));
+                continue;
+            }
+            List<SourceInfo> sameName = byName.computeIfAbsent(info.sourceId().name().getLocalName(),
+                    name -> new ArrayList<>());
+            if (sameName.stream().anyMatch(loaded -> loaded.sourceId().equals(info.sourceId()))) {
+                failures.add(new ModuleFailure(describe(source, info), Stage.RESOLVE,
+                        "Another file has the same module name and revision"));
+                continue;
+            }
+            sameName.add(info);
+            infos.put(source, info);
+        }
+        // Leaving out a source can leave its dependents without a dependency in turn
+        boolean removed = true;
+        while (removed) {
+            removed = false;
+            for (var iterator = infos.entrySet().iterator(); iterator.hasNext(); ) {
+                Map.Entry<YangIRSource, SourceInfo> entry = iterator.next();
+                String missing = findMissingDependency(entry.getValue(), byName);
+                if (missing != null) {
+                    iterator.remove();
+                    byName.get(entry.getValue().sourceId().name().getLocalName()).remove(entry.getValue());
+                    failures.add(new ModuleFailure(describe(entry.getKey(), entry.getValue()), Stage.RESOLVE,
+                            missing));
+                    removed = true;
+                }
+            }
+        }
+        return List.copyOf(infos.keySet());
+    }
+
+    /**
+     * @return what the source depends on and no other source provides, or null
+     */
+    private static String findMissingDependency(SourceInfo info, Map<String, List<SourceInfo>> byName) {
+        for (SourceDependency.Import dependency : info.imports()) {
+            if (!isProvided(dependency, byName, true)) {
+                return "Missing import " + describe(dependency);
+            }
+        }
+        for (SourceDependency.Include dependency : info.includes()) {
+            if (!isProvided(dependency, byName, false)) {
+                return "Missing include " + describe(dependency);
+            }
+        }
+        if (info instanceof SourceInfo.Submodule submodule && !isProvided(submodule.belongsTo(), byName, true)) {
+            return "Missing module " + describe(submodule.belongsTo()) + " it belongs to";
+        }
+        return null;
+    }
+
+    private static boolean isProvided(SourceDependency dependency, Map<String, List<SourceInfo>> byName,
+                                      boolean module) {
+        for (SourceInfo candidate : byName.getOrDefault(dependency.name().getLocalName(), List.of())) {
+            if (candidate instanceof SourceInfo.Module == module && dependency.isSatisfiedBy(candidate.sourceId())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String describe(YangIRSource source, SourceInfo info) {
+        String file = String.valueOf(source.symbolicName());
+        if (info == null) {
+            return file;
+        }
+        Revision revision = info.sourceId().revision();
+        return file + " (" + info.sourceId().name().getLocalName() + (revision == null ? "" : "@" + revision) + ")";
+    }
+
+    private static String describe(SourceDependency dependency) {
+        return dependency.revision() == null ? dependency.name().getLocalName()
+                : dependency.name().getLocalName() + "@" + dependency.revision();
+    }
+}
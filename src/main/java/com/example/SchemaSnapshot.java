@@ -0,0 +1,110 @@
+package com.example;
+
+import org.opendaylight.yangtools.yang.common.Revision;
+import org.opendaylight.yangtools.yang.ir.IOSupport;
+import org.opendaylight.yangtools.yang.model.api.source.SourceIdentifier;
+import org.opendaylight.yangtools.yang.model.spi.source.YangIRSource;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * YANG sources in parsed form, stored so later runs can skip parsing the YANG text.
+ * Each module is kept as yangtools' intermediate statement tree in its compact binary
+ * format, along with the fingerprint of the text it was parsed from; assembling the
+ * effective model from it is left to {@link YangValidatorEngine}.
+ */
+public class SchemaSnapshot {
+    private static final int FORMAT_VERSION = 1;
+
+    private final String fingerprint;
+    private final List<YangIRSource> sources;
+
+    private SchemaSnapshot(String fingerprint, List<YangIRSource> sources) {
+        this.fingerprint = fingerprint;
+        this.sources = sources;
+    }
+
+    /**
+     * @param fingerprint of the YANG text the sources were parsed from
+     */
+    static SchemaSnapshot of(String fingerprint, List<YangIRSource> sources) {
+        return new SchemaSnapshot(fingerprint, sources);
+    }
+
+    /**
+     * @return the snapshot stored in the file, or null if there is none or it was written
+     * in another format
+     */
+    public static SchemaSnapshot read(Path file) throws IOException {
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            String fingerprint = in.readUTF();
+            int count = in.readInt();
+            List<YangIRSource> sources = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                String revision = in.readUTF();
+                String symbolicName = in.readUTF();
+                SourceIdentifier sourceId = revision.isEmpty() ? new SourceIdentifier(name)
+                        : new SourceIdentifier(name, Revision.of(revision));
+                sources.add(new YangIRSource(sourceId, IOSupport.readStatement(in), symbolicName));
+            }
+            return new SchemaSnapshot(fingerprint, sources);
+        }
+    }
+
+    /**
+     * Stores the snapshot, replacing the file atomically so a concurrent run never reads
+     * a partial one.
+     */
+    public void write(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temporary);
+                 DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out))) {
+                data.writeInt(FORMAT_VERSION);
+                data.writeUTF(fingerprint);
+                data.writeInt(sources.size());
+                for (YangIRSource source : sources) {
+                    Revision revision = source.sourceId().revision();
+                    data.writeUTF(source.sourceId().name().getLocalName());
+                    data.writeUTF(revision == null ? "" : revision.toString());
+                    data.writeUTF(String.valueOf(source.symbolicName()));
+                    IOSupport.writeStatement(data, source.statement());
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Fingerprint of the YANG text the snapshot was parsed from, as computed by
+     * {@link YangValidatorEngine#fingerprint(List)}.
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public List<YangIRSource> getSources() {
+        return sources;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * InputStream that fails once more than a given number of bytes are read from it. Reads are
+ * cut off at the limit, so a document of exactly the limit passes and the bytes beyond it
+ * are never handed to the parser, however large its buffer.
+ */
+public class SizeLimitedInputStream extends FilterInputStream {
+    private final long maxSize;
+    private long remaining;
+
+    public SizeLimitedInputStream(InputStream in, long maxSize) {
+        super(in);
+        this.maxSize = maxSize;
+        this.remaining = maxSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (remaining == 0) {
+            return checkEnd();
+        }
+        int b = super.read();
+        if (b >= 0) {
+            remaining--;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (remaining == 0) {
+            return checkEnd();
+        }
+        int read = super.read(b, off, (int) Math.min(len, remaining));
+        if (read > 0) {
+            remaining -= read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(Math.min(n, remaining));
+        remaining -= skipped;
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * @return -1 if the limit is where the stream ends
+     */
+    private int checkEnd() throws IOException {
+        if (super.read() < 0) {
+            return -1;
+        }
+        throw new IOException("Maximum document size limit (" + maxSize + ") exceeded");
+    }
+}
@@ -0,0 +1,649 @@
+package com.example;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.NamespaceContext;
+import javax.xml.namespace.QName;
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.util.StreamReaderDelegate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * XMLStreamReader that can read the element it is on ahead, digesting its subtree, and then
+ * replays the subtree's events, so that a caller can decide from the digest whether to read
+ * the subtree at all without reading the document twice. The digest covers the names,
+ * attributes, namespace declarations and text of the subtree, and the namespace bindings it
+ * inherits, as text values such as identityrefs are resolved with them.
+ */
+class SubtreeDigestingXMLStreamReader extends StreamReaderDelegate {
+    private static final HashFunction DIGEST = Hashing.murmur3_128();
+    private static final String[] NO_DECLARATIONS = new String[0];
+
+    // Namespace bindings in scope inside the element at each depth; scopes[0] is the document
+    private Bindings[] scopes = new Bindings[16];
+    // Namespace declarations of the element at each depth itself
+    private String[][] declared = new String[16][];
+    private int depth = 0;
+    // On an end tag, the element is only left on the next event so its bindings still apply
+    private boolean ended = false;
+    private final SubtreeContent content = new SubtreeContent();
+    // Events of the subtree being replayed, with the delegate on the last one
+    private final List<RecordedEvent> recorded = new ArrayList<>();
+    // Position in recorded while replaying, -1 when the delegate's events are passed through
+    private int replayed = -1;
+    // Where the delegate would be after reading the text of the replayed element, null otherwise
+    private Location elementTextLocation;
+
+    /**
+     * Namespace declarations of an element, chained to those of its ancestors.
+     */
+    private static class Bindings implements NamespaceContext {
+        final Bindings parent;
+        // Prefix and URI pairs
+        final String[] declarations;
+
+        Bindings(Bindings parent, String[] declarations) {
+            this.parent = parent;
+            this.declarations = declarations;
+        }
+
+        @Override
+        public String getNamespaceURI(String prefix) {
+            if (XMLConstants.XML_NS_PREFIX.equals(prefix)) {
+                return XMLConstants.XML_NS_URI;
+            }
+            if (XMLConstants.XMLNS_ATTRIBUTE.equals(prefix)) {
+                return XMLConstants.XMLNS_ATTRIBUTE_NS_URI;
+            }
+            for (Bindings bindings = this; bindings != null; bindings = bindings.parent) {
+                for (int i = 0; i < bindings.declarations.length; i += 2) {
+                    if (bindings.declarations[i].equals(prefix)) {
+                        return bindings.declarations[i + 1];
+                    }
+                }
+            }
+            return XMLConstants.NULL_NS_URI;
+        }
+
+        @Override
+        public String getPrefix(String namespaceURI) {
+            Iterator<String> prefixes = getPrefixes(namespaceURI);
+            return prefixes.hasNext() ? prefixes.next() : null;
+        }
+
+        @Override
+        public Iterator<String> getPrefixes(String namespaceURI) {
+            List<String> prefixes = new ArrayList<>();
+            for (Bindings bindings = this; bindings != null; bindings = bindings.parent) {
+                for (int i = 0; i < bindings.declarations.length; i += 2) {
+                    String prefix = bindings.declarations[i];
+                    if (bindings.declarations[i + 1].equals(namespaceURI) && !prefixes.contains(prefix)
+                            && getNamespaceURI(prefix).equals(namespaceURI)) {
+                        prefixes.add(prefix);
+                    }
+                }
+            }
+            return prefixes.iterator();
+        }
+    }
+
+    /**
+     * What the caller may ask about an event once the delegate has moved past it.
+     */
+    private static class RecordedEvent {
+        final int type;
+        final Location location;
+        final NamespaceContext namespaceContext;
+        String localName;
+        String namespaceURI;
+        String prefix;
+        // Namespace, local name, prefix and value of each attribute
+        String[] attributes;
+        // Prefix and URI pairs
+        String[] namespaces;
+        // Text, comment or processing instruction target
+        String text;
+        String data;
+
+        RecordedEvent(int type, Location location, NamespaceContext namespaceContext) {
+            this.type = type;
+            this.location = location;
+            this.namespaceContext = namespaceContext;
+        }
+    }
+
+    SubtreeDigestingXMLStreamReader(XMLStreamReader delegate) {
+        super(delegate);
+        scopes[0] = new Bindings(null, NO_DECLARATIONS);
+        declared[0] = NO_DECLARATIONS;
+    }
+
+    /**
+     * Reads the element the reader is on and its subtree, returning their digest; the
+     * events of the subtree, starting with the element's start tag, are then reported again.
+     */
+    HashCode digestSubtree() throws XMLStreamException {
+        if (replayed >= 0 || getEventType() != XMLStreamConstants.START_ELEMENT) {
+            throw new IllegalStateException("Not on a start tag read from the delegate");
+        }
+        List<RecordedEvent> events = new ArrayList<>();
+        content.clear();
+        // Bindings inherited from the ancestors, innermost first
+        for (Bindings bindings = scopes[depth - 1]; bindings != null; bindings = bindings.parent) {
+            for (String declaration : bindings.declarations) {
+                content.append(declaration);
+            }
+        }
+        int event = getEventType();
+        for (int level = 0; ; event = next()) {
+            RecordedEvent recordedEvent = record(event);
+            events.add(recordedEvent);
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                level++;
+                content.appendElement(recordedEvent);
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                content.appendMarker(event);
+                if (--level == 0) {
+                    break;
+                }
+            } else if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                    || event == XMLStreamConstants.SPACE) {
+                content.appendMarker(event);
+                content.append(recordedEvent.text);
+            }
+        }
+        recorded.clear();
+        recorded.addAll(events);
+        replayed = 0;
+        return content.hash();
+    }
+
+    private RecordedEvent record(int event) {
+        XMLStreamReader delegate = getParent();
+        RecordedEvent recordedEvent = new RecordedEvent(event, new XPathXMLStreamReader.FixedLocation(
+                delegate.getLocation()), scopes[depth]);
+        switch (event) {
+            case XMLStreamConstants.START_ELEMENT:
+                recordedEvent.attributes = new String[delegate.getAttributeCount() * 4];
+                for (int i = 0; i < delegate.getAttributeCount(); i++) {
+                    recordedEvent.attributes[i * 4] = delegate.getAttributeNamespace(i);
+                    recordedEvent.attributes[i * 4 + 1] = delegate.getAttributeLocalName(i);
+                    recordedEvent.attributes[i * 4 + 2] = delegate.getAttributePrefix(i);
+                    recordedEvent.attributes[i * 4 + 3] = delegate.getAttributeValue(i);
+                }
+                // Fall through for the name
+            case XMLStreamConstants.END_ELEMENT:
+                // An end tag reports the declarations of its start tag
+                recordedEvent.namespaces = declared[depth];
+                recordedEvent.localName = delegate.getLocalName();
+                recordedEvent.namespaceURI = delegate.getNamespaceURI();
+                recordedEvent.prefix = delegate.getPrefix();
+                break;
+
+            case XMLStreamConstants.PROCESSING_INSTRUCTION:
+                recordedEvent.text = delegate.getPITarget();
+                recordedEvent.data = delegate.getPIData();
+                break;
+
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+            case XMLStreamConstants.SPACE:
+            case XMLStreamConstants.COMMENT:
+                recordedEvent.text = delegate.getText();
+                break;
+        }
+        return recordedEvent;
+    }
+
+    /**
+     * The event being replayed, null when the delegate's events are passed through.
+     */
+    private RecordedEvent current() {
+        return replayed >= 0 ? recorded.get(replayed) : null;
+    }
+
+    @Override
+    public int next() throws XMLStreamException {
+        elementTextLocation = null;
+        if (replayed >= 0) {
+            if (++replayed < recorded.size()) {
+                return recorded.get(replayed).type;
+            }
+            // The delegate is on the last event replayed
+            replayed = -1;
+            recorded.clear();
+        }
+        if (ended) {
+            depth--;
+            ended = false;
+        }
+        int event = super.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+            startElement();
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+            ended = true;
+        }
+        return event;
+    }
+
+    private void startElement() {
+        XMLStreamReader delegate = getParent();
+        if (++depth == scopes.length) {
+            scopes = Arrays.copyOf(scopes, depth * 2);
+            declared = Arrays.copyOf(declared, depth * 2);
+        }
+        int count = delegate.getNamespaceCount();
+        if (count == 0) {
+            scopes[depth] = scopes[depth - 1];
+            declared[depth] = NO_DECLARATIONS;
+            return;
+        }
+        String[] declarations = new String[count * 2];
+        for (int i = 0; i < count; i++) {
+            String prefix = delegate.getNamespacePrefix(i);
+            String namespace = delegate.getNamespaceURI(i);
+            declarations[i * 2] = prefix == null ? XMLConstants.DEFAULT_NS_PREFIX : prefix;
+            declarations[i * 2 + 1] = namespace == null ? XMLConstants.NULL_NS_URI : namespace;
+        }
+        scopes[depth] = new Bindings(scopes[depth - 1], declarations);
+        declared[depth] = declarations;
+    }
+
+    @Override
+    public int nextTag() throws XMLStreamException {
+        int event = next();
+        while ((event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) && isWhiteSpace()
+                || event == XMLStreamConstants.SPACE || event == XMLStreamConstants.PROCESSING_INSTRUCTION
+                || event == XMLStreamConstants.COMMENT) {
+            event = next();
+        }
+        if (event != XMLStreamConstants.START_ELEMENT && event != XMLStreamConstants.END_ELEMENT) {
+            throw new XMLStreamException("Expected a start or end tag", getLocation());
+        }
+        return event;
+    }
+
+    @Override
+    public String getElementText() throws XMLStreamException {
+        if (replayed < 0) {
+            String text = super.getElementText();
+            ended = true;
+            return text;
+        }
+        if (getEventType() != XMLStreamConstants.START_ELEMENT) {
+            throw new XMLStreamException("Not on a start tag", getLocation());
+        }
+        StringBuilder text = new StringBuilder();
+        // The delegate stays at a text that is all there is to the element instead of the end tag
+        Location location = null;
+        int events = 0;
+        for (int event = next(); event != XMLStreamConstants.END_ELEMENT; event = next()) {
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                throw new XMLStreamException("Element text expected, found a start tag", getLocation());
+            }
+            if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA
+                    || event == XMLStreamConstants.SPACE) {
+                text.append(getText());
+                location = getLocation();
+            }
+            events++;
+        }
+        elementTextLocation = events == 1 ? location : null;
+        return text.toString();
+    }
+
+    @Override
+    public boolean hasNext() throws XMLStreamException {
+        return replayed >= 0 || super.hasNext();
+    }
+
+    @Override
+    public void require(int type, String namespaceURI, String localName) throws XMLStreamException {
+        if (replayed < 0) {
+            super.require(type, namespaceURI, localName);
+        } else if (type != getEventType() || (namespaceURI != null && !namespaceURI.equals(getNamespaceURI()))
+                || (localName != null && !localName.equals(getLocalName()))) {
+            throw new XMLStreamException("Required event " + type + " does not match", getLocation());
+        }
+    }
+
+    @Override
+    public int getEventType() {
+        RecordedEvent event = current();
+        return event != null ? event.type : super.getEventType();
+    }
+
+    @Override
+    public Location getLocation() {
+        if (elementTextLocation != null) {
+            return elementTextLocation;
+        }
+        RecordedEvent event = current();
+        return event != null ? event.location : super.getLocation();
+    }
+
+    @Override
+    public NamespaceContext getNamespaceContext() {
+        RecordedEvent event = current();
+        return event != null ? event.namespaceContext : super.getNamespaceContext();
+    }
+
+    @Override
+    public String getNamespaceURI(String prefix) {
+        return getNamespaceContext().getNamespaceURI(prefix);
+    }
+
+    @Override
+    public QName getName() {
+        RecordedEvent event = current();
+        if (event == null) {
+            return super.getName();
+        }
+        return new QName(event.namespaceURI == null ? XMLConstants.NULL_NS_URI : event.namespaceURI,
+                event.localName, event.prefix == null ? XMLConstants.DEFAULT_NS_PREFIX : event.prefix);
+    }
+
+    @Override
+    public String getLocalName() {
+        RecordedEvent event = current();
+        return event != null ? event.localName : super.getLocalName();
+    }
+
+    @Override
+    public String getNamespaceURI() {
+        RecordedEvent event = current();
+        return event != null ? event.namespaceURI : super.getNamespaceURI();
+    }
+
+    @Override
+    public String getPrefix() {
+        RecordedEvent event = current();
+        return event != null ? event.prefix : super.getPrefix();
+    }
+
+    @Override
+    public boolean hasName() {
+        RecordedEvent event = current();
+        return event != null ? event.localName != null : super.hasName();
+    }
+
+    @Override
+    public boolean isStartElement() {
+        return getEventType() == XMLStreamConstants.START_ELEMENT;
+    }
+
+    @Override
+    public boolean isEndElement() {
+        return getEventType() == XMLStreamConstants.END_ELEMENT;
+    }
+
+    @Override
+    public boolean isCharacters() {
+        return getEventType() == XMLStreamConstants.CHARACTERS;
+    }
+
+    @Override
+    public boolean isWhiteSpace() {
+        RecordedEvent event = current();
+        if (event == null) {
+            return super.isWhiteSpace();
+        }
+        if (event.type == XMLStreamConstants.SPACE) {
+            return true;
+        }
+        if (event.type != XMLStreamConstants.CHARACTERS && event.type != XMLStreamConstants.CDATA) {
+            return false;
+        }
+        for (int i = 0; i < event.text.length(); i++) {
+            char c = event.text.charAt(i);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int getAttributeCount() {
+        RecordedEvent event = current();
+        return event != null ? attributes(event).length / 4 : super.getAttributeCount();
+    }
+
+    @Override
+    public QName getAttributeName(int index) {
+        RecordedEvent event = current();
+        if (event == null) {
+            return super.getAttributeName(index);
+        }
+        String namespace = attributes(event)[index * 4];
+        String prefix = attributes(event)[index * 4 + 2];
+        return new QName(namespace == null ? XMLConstants.NULL_NS_URI : namespace, attributes(event)[index * 4 + 1],
+                prefix == null ? XMLConstants.DEFAULT_NS_PREFIX : prefix);
+    }
+
+    @Override
+    public String getAttributeNamespace(int index) {
+        RecordedEvent event = current();
+        return event != null ? attributes(event)[index * 4] : super.getAttributeNamespace(index);
+    }
+
+    @Override
+    public String getAttributeLocalName(int index) {
+        RecordedEvent event = current();
+        return event != null ? attributes(event)[index * 4 + 1] : super.getAttributeLocalName(index);
+    }
+
+    @Override
+    public String getAttributePrefix(int index) {
+        RecordedEvent event = current();
+        return event != null ? attributes(event)[index * 4 + 2] : super.getAttributePrefix(index);
+    }
+
+    @Override
+    public String getAttributeValue(int index) {
+        RecordedEvent event = current();
+        return event != null ? attributes(event)[index * 4 + 3] : super.getAttributeValue(index);
+    }
+
+    @Override
+    public String getAttributeValue(String namespaceURI, String localName) {
+        RecordedEvent event = current();
+        if (event == null) {
+            return super.getAttributeValue(namespaceURI, localName);
+        }
+        String[] attributes = attributes(event);
+        for (int i = 0; i < attributes.length; i += 4) {
+            String namespace = attributes[i] == null ? XMLConstants.NULL_NS_URI : attributes[i];
+            if (attributes[i + 1].equals(localName) && (namespaceURI == null || namespaceURI.equals(namespace))) {
+                return attributes[i + 3];
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String getAttributeType(int index) {
+        return current() != null ? "CDATA" : super.getAttributeType(index);
+    }
+
+    @Override
+    public boolean isAttributeSpecified(int index) {
+        return current() != null || super.isAttributeSpecified(index);
+    }
+
+    private static String[] attributes(RecordedEvent event) {
+        if (event.type != XMLStreamConstants.START_ELEMENT) {
+            throw new IllegalStateException("Not on a start tag");
+        }
+        return event.attributes;
+    }
+
+    @Override
+    public int getNamespaceCount() {
+        RecordedEvent event = current();
+        return event != null ? namespaces(event).length / 2 : super.getNamespaceCount();
+    }
+
+    @Override
+    public String getNamespacePrefix(int index) {
+        RecordedEvent event = current();
+        return event != null ? namespaces(event)[index * 2] : super.getNamespacePrefix(index);
+    }
+
+    @Override
+    public String getNamespaceURI(int index) {
+        RecordedEvent event = current();
+        return event != null ? namespaces(event)[index * 2 + 1] : super.getNamespaceURI(index);
+    }
+
+    private static String[] namespaces(RecordedEvent event) {
+        if (event.type != XMLStreamConstants.START_ELEMENT && event.type != XMLStreamConstants.END_ELEMENT) {
+            throw new IllegalStateException("Not on a start or end tag");
+        }
+        return event.namespaces;
+    }
+
+    @Override
+    public boolean hasText() {
+        RecordedEvent event = current();
+        if (event == null) {
+            return super.hasText();
+        }
+        return event.type == XMLStreamConstants.CHARACTERS || event.type == XMLStreamConstants.CDATA
+                || event.type == XMLStreamConstants.SPACE || event.type == XMLStreamConstants.COMMENT;
+    }
+
+    @Override
+    public String getText() {
+        RecordedEvent event = current();
+        if (event == null) {
+            return super.getText();
+        }
+        if (!hasText()) {
+            throw new IllegalStateException("No text on event " + event.type);
+        }
+        return event.text;
+    }
+
+    @Override
+    public char[] getTextCharacters() {
+        return current() != null ? getText().toCharArray() : super.getTextCharacters();
+    }
+
+    @Override
+    public int getTextCharacters(int sourceStart, char[] target, int targetStart, int length)
+            throws XMLStreamException {
+        if (current() == null) {
+            return super.getTextCharacters(sourceStart, target, targetStart, length);
+        }
+        String text = getText();
+        int count = Math.max(0, Math.min(length, text.length() - sourceStart));
+        text.getChars(sourceStart, sourceStart + count, target, targetStart);
+        return count;
+    }
+
+    @Override
+    public int getTextStart() {
+        return current() != null ? 0 : super.getTextStart();
+    }
+
+    @Override
+    public int getTextLength() {
+        return current() != null ? getText().length() : super.getTextLength();
+    }
+
+    @Override
+    public String getPITarget() {
+        RecordedEvent event = current();
+        if (event == null) {
+            return super.getPITarget();
+        }
+        return event.type == XMLStreamConstants.PROCESSING_INSTRUCTION ? event.text : null;
+    }
+
+    @Override
+    public String getPIData() {
+        RecordedEvent event = current();
+        if (event == null) {
+            return super.getPIData();
+        }
+        return event.type == XMLStreamConstants.PROCESSING_INSTRUCTION ? event.data : null;
+    }
+
+    /**
+     * Names, attributes and text of a subtree, hashed in one go once the subtree ends, which
+     * is much cheaper than feeding a streaming hasher char by char.
+     */
+    private static class SubtreeContent {
+        // U+FFFF cannot appear in XML, so it separates the parts unambiguously
+        private static final char MARKER = '\uFFFF';
+
+        private byte[] bytes = new byte[4096];
+        private int length;
+
+        void clear() {
+            length = 0;
+        }
+
+        void appendMarker(int event) {
+            append(MARKER);
+            append((char) event);
+        }
+
+        void appendElement(RecordedEvent event) {
+            appendMarker(XMLStreamConstants.START_ELEMENT);
+            append(event.namespaceURI);
+            append(event.localName);
+            for (int i = 0; i < event.attributes.length; i += 4) {
+                appendMarker(XMLStreamConstants.ATTRIBUTE);
+                append(event.attributes[i]);
+                append(event.attributes[i + 1]);
+                append(event.attributes[i + 3]);
+            }
+            // Prefixes resolve text values such as identityrefs
+            for (String declaration : event.namespaces) {
+                appendMarker(XMLStreamConstants.NAMESPACE);
+                append(declaration);
+            }
+        }
+
+        void append(String text) {
+            append(MARKER);
+            if (text != null) {
+                ensureCapacity(text.length());
+                for (int i = 0; i < text.length(); i++) {
+                    put(text.charAt(i));
+                }
+            }
+        }
+
+        private void append(char c) {
+            ensureCapacity(1);
+            put(c);
+        }
+
+        private void put(char c) {
+            bytes[length++] = (byte) (c >> 8);
+            bytes[length++] = (byte) c;
+        }
+
+        private void ensureCapacity(int chars) {
+            if (length + chars * 2 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + chars * 2));
+            }
+        }
+
+        HashCode hash() {
+            return DIGEST.hashBytes(bytes, 0, length);
+        }
+    }
+}
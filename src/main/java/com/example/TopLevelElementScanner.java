@@ -0,0 +1,316 @@
+package com.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Finds where each top level element of a document starts and ends without parsing it.
+ * Only the markup needed to track element depth is recognized: tags, with quoted attribute
+ * values, comments, CDATA sections and processing instructions. Markup is ASCII, so the
+ * bytes of UTF-8 documents can be scanned directly; other encodings and documents with a
+ * DOCTYPE, whose entities could expand into markup, are not scanned. An encoding is told
+ * from the XML declaration, or from a byte order mark or the zero bytes of a UTF-16 or
+ * UTF-32 document, since chunks cut from the document are read without its declaration
+ * and would be decoded as UTF-8.
+ */
+public class TopLevelElementScanner {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferLength = 0;
+    private int bufferPosition = 0;
+    // Offset of the next byte, and the line and column of the character it starts
+    private long offset = 0;
+    private int line = 1;
+    private int column = 1;
+    private boolean afterCarriageReturn = false;
+
+    /**
+     * Byte range of a top level element, with the line and column of its '&lt;'.
+     */
+    public static class TopLevelElement {
+        private final long start;
+        private final long end;
+        private final int line;
+        private final int column;
+        private final String localName;
+
+        TopLevelElement(long start, long end, int line, int column, String localName) {
+            this.start = start;
+            this.end = end;
+            this.line = line;
+            this.column = column;
+            this.localName = localName;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        /**
+         * Offset just after the element's last '&gt;'.
+         */
+        public long getEnd() {
+            return end;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public int getColumn() {
+            return column;
+        }
+
+        public String getLocalName() {
+            return localName;
+        }
+    }
+
+    private TopLevelElementScanner(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * @return the top level elements in document order, or null if the document cannot be
+     * scanned or is not well-formed as far as the scan can tell
+     */
+    public static List<TopLevelElement> scan(InputStream in) throws IOException {
+        return new TopLevelElementScanner(in).scan();
+    }
+
+    private List<TopLevelElement> scan() throws IOException {
+        List<TopLevelElement> elements = new ArrayList<>();
+        int depth = 0;
+        long elementStart = 0;
+        int elementLine = 0;
+        int elementColumn = 0;
+        String elementName = null;
+        if (!skipByteOrderMark()) {
+            return null;
+        }
+
+        int b;
+        while ((b = next()) >= 0) {
+            if (b != '<') {
+                continue;
+            }
+            long tagStart = offset - 1;
+            int tagLine = line;
+            int tagColumn = column - 1;
+            b = next();
+            if (b == '?') {
+                String instruction = skipTo("?>", true);
+                if (instruction == null || (isXmlDeclaration(instruction) && !isUtf8(instruction))) {
+                    return null;
+                }
+            } else if (b == '!') {
+                if (!skipMarkupDeclaration()) {
+                    return null;
+                }
+            } else if (b == '/') {
+                if (skipTag() < 0 || --depth < 0) {
+                    return null;
+                }
+                if (depth == 0) {
+                    elements.add(new TopLevelElement(elementStart, offset, elementLine, elementColumn, elementName));
+                }
+            } else if (b >= 0) {
+                StringBuilder name = depth == 0 ? new StringBuilder() : null;
+                int last = skipTag(b, name);
+                if (last < 0) {
+                    return null;
+                }
+                boolean empty = last == '/';
+                if (depth == 0) {
+                    elementStart = tagStart;
+                    elementLine = tagLine;
+                    elementColumn = tagColumn;
+                    elementName = localName(name);
+                    if (empty) {
+                        elements.add(new TopLevelElement(elementStart, offset, elementLine, elementColumn, elementName));
+                    }
+                }
+                if (!empty) {
+                    depth++;
+                }
+            }
+        }
+        return depth == 0 ? elements : null;
+    }
+
+    private int next() throws IOException {
+        if (bufferPosition == bufferLength) {
+            bufferLength = in.read(buffer, 0, BUFFER_SIZE);
+            bufferPosition = 0;
+            if (bufferLength <= 0) {
+                bufferLength = 0;
+                return -1;
+            }
+        }
+        int b = buffer[bufferPosition++] & 0xff;
+        offset++;
+        // Lines and columns count characters the way the parser does: \r\n is one line break,
+        // and UTF-8 continuation bytes are not columns
+        if (b == '\n') {
+            if (!afterCarriageReturn) {
+                line++;
+            }
+            column = 1;
+        } else if (b == '\r') {
+            line++;
+            column = 1;
+        } else if ((b & 0xc0) != 0x80) {
+            column++;
+        }
+        afterCarriageReturn = b == '\r';
+        return b;
+    }
+
+    /**
+     * Skips to the end of a tag whose first byte after '&lt;' was already read, collecting its
+     * name if asked to.
+     *
+     * @return the byte before the closing '&gt;', '/' for an empty element, or -1 at the end
+     * of the input
+     */
+    private int skipTag(int first, StringBuilder name) throws IOException {
+        int previous = first;
+        boolean inName = name != null;
+        if (inName) {
+            name.append((char) first);
+        }
+        int b;
+        while ((b = next()) >= 0) {
+            if (b == '"' || b == '\'') {
+                int quote = b;
+                while ((b = next()) >= 0 && b != quote) {
+                    // Attribute values may contain '>'
+                }
+                if (b < 0) {
+                    return -1;
+                }
+                inName = false;
+            } else if (b == '>') {
+                return previous;
+            } else if (inName) {
+                if (b == '/' || b <= ' ') {
+                    inName = false;
+                } else {
+                    name.append((char) b);
+                }
+            }
+            previous = b;
+        }
+        return -1;
+    }
+
+    private int skipTag() throws IOException {
+        int b;
+        while ((b = next()) >= 0 && b != '>') {
+            // End tags have no attributes
+        }
+        return b;
+    }
+
+    /**
+     * Skips a comment or CDATA section after "&lt;!".
+     *
+     * @return false for a DOCTYPE or anything else that cannot be skipped safely
+     */
+    private boolean skipMarkupDeclaration() throws IOException {
+        int b = next();
+        if (b == '-') {
+            return next() == '-' && skipTo("-->", false) != null;
+        }
+        if (b == '[') {
+            for (char c : "CDATA[".toCharArray()) {
+                if (next() != c) {
+                    return false;
+                }
+            }
+            return skipTo("]]>", false) != null;
+        }
+        return false;
+    }
+
+    /**
+     * Skips past the terminator.
+     *
+     * @return what was skipped if asked to keep it, else an empty string, or null at the end
+     * of the input
+     */
+    private String skipTo(String terminator, boolean keep) throws IOException {
+        StringBuilder skipped = keep ? new StringBuilder() : null;
+        int matched = 0;
+        int b;
+        while ((b = next()) >= 0) {
+            if (keep) {
+                skipped.append((char) b);
+            }
+            if (b == terminator.charAt(matched)) {
+                if (++matched == terminator.length()) {
+                    return keep ? skipped.substring(0, skipped.length() - terminator.length()) : "";
+                }
+            } else {
+                matched = b == terminator.charAt(0) ? 1 : 0;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Skips a UTF-8 byte order mark, which the parser does not count as a column.
+     *
+     * @return false if the first bytes show an encoding that is not ASCII compatible: a
+     * UTF-16 or UTF-32 byte order mark, a zero byte around the first character, or EBCDIC
+     */
+    private boolean skipByteOrderMark() throws IOException {
+        while (bufferLength < 4) {
+            int read = in.read(buffer, bufferLength, BUFFER_SIZE - bufferLength);
+            if (read < 0) {
+                break;
+            }
+            bufferLength += read;
+        }
+        int first = bufferLength > 0 ? buffer[0] & 0xff : -1;
+        int second = bufferLength > 1 ? buffer[1] & 0xff : -1;
+        if (first == 0 || second == 0 || (first == 0xfe && second == 0xff) || (first == 0xff && second == 0xfe)
+                || (first == 0x4c && second == 0x6f)) {
+            return false;
+        }
+        if (bufferLength > 2 && first == 0xef && second == 0xbb && (buffer[2] & 0xff) == 0xbf) {
+            bufferPosition = 3;
+            offset = 3;
+        }
+        return true;
+    }
+
+    private static boolean isXmlDeclaration(String instruction) {
+        return instruction.startsWith("xml") && instruction.length() > 3 && Character.isWhitespace(instruction.charAt(3));
+    }
+
+    private static boolean isUtf8(String declaration) {
+        int encoding = declaration.indexOf("encoding");
+        if (encoding < 0) {
+            return true;
+        }
+        String value = declaration.substring(encoding + "encoding".length())
+                .replaceAll("^\\s*=\\s*['\"]([^'\"]*).*$", "$1")
+                .trim()
+                .toUpperCase(Locale.ROOT);
+        return value.equals("UTF-8") || value.equals("UTF8") || value.equals("US-ASCII") || value.equals("ASCII");
+    }
+
+    private static String localName(StringBuilder name) {
+        int colon = name.indexOf(":");
+        String localName = colon < 0 ? name.toString() : name.substring(colon + 1);
+        // Names are ASCII in practice, anything else is decoded properly
+        return new String(localName.getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8);
+    }
+}
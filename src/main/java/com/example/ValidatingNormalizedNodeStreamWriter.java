@@ -0,0 +1,409 @@
+package com.example;
+
+import org.opendaylight.yangtools.yang.common.QName;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeIdentifier;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeIdentifierWithPredicates;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.NodeWithValue;
+import org.opendaylight.yangtools.yang.data.api.YangInstanceIdentifier.PathArgument;
+import org.opendaylight.yangtools.yang.data.api.schema.stream.NormalizedNodeStreamWriter;
+import org.opendaylight.yangtools.yang.model.api.DataSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.LeafListSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.SchemaContext;
+
+import javax.xml.transform.dom.DOMSource;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stream writer for documents that are only validated. The YANG parser has already checked
+ * structure and values when it writes, so the data is dropped instead of being built into a
+ * NormalizedNode tree; only what the immutable writer would silently merge is checked:
+ * entries of a list with the same keys, and repeated values of a configuration leaf-list.
+ * Given a delegate, every event is also forwarded to it, so the data can be kept and is
+ * checked the same way. A repeated entry or value is recorded in {@link #getDuplicates()}
+ * and left out with its subtree, and writing carries on, so all of them are found at once.
+ * <p>
+ * Constraints on the data tree are checked on a NormalizedNode tree, so a schema with any
+ * of them, a single mandatory leaf or must condition included, gets the tree built behind
+ * this writer, as if the data were kept; see {@link DataTreeConstraintPlan#isEmpty()}. One
+ * must condition per list entry measured about three times the allocation and under half
+ * the throughput of the same document without it, see ConstrainedValidationBenchmark.
+ */
+public class ValidatingNormalizedNodeStreamWriter implements NormalizedNodeStreamWriter {
+    private final NormalizedNodeStreamWriter delegate;
+    // Keys or values seen in each open node and how often, null for nodes whose children need no check
+    private final List<Map<Object, Integer>> openNodes = new ArrayList<>();
+    // Step each open node adds to the XPath, null if it adds none, and its position among
+    // its siblings if the step is positional, -1 otherwise
+    private final List<PathArgument> openSteps = new ArrayList<>();
+    private int[] positions = new int[16];
+    // Children written so far to each open node, for the positions of theirs
+    private int[] childCounts = new int[16];
+    private final List<Duplicate> duplicates = new ArrayList<>();
+    // Nodes open within a left out duplicate, 0 if none is being left out
+    private int skipDepth;
+    private DataSchemaNode nextSchemaNode;
+
+    /**
+     * A list entry or leaf-list value repeated in the data. Its XPath is the one
+     * {@link XPathXMLStreamReader} gives the element, with key predicates for list entries
+     * and the position for leaf-list values; several entries of a list can have the same one.
+     */
+    public static class Duplicate {
+        private final String xpath;
+        private final int occurrence;
+        private final String message;
+
+        Duplicate(String xpath, int occurrence, String message) {
+            this.xpath = xpath;
+            this.occurrence = occurrence;
+            this.message = message;
+        }
+
+        public String getXPath() {
+            return xpath;
+        }
+
+        /**
+         * Number of earlier elements with the same XPath.
+         */
+        public int getOccurrence() {
+            return occurrence;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+
+    private ValidatingNormalizedNodeStreamWriter(NormalizedNodeStreamWriter delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * @return a writer that keeps no data
+     */
+    public static ValidatingNormalizedNodeStreamWriter create() {
+        return new ValidatingNormalizedNodeStreamWriter(null);
+    }
+
+    /**
+     * @return a writer passing the data on to the given writer once checked
+     */
+    public static ValidatingNormalizedNodeStreamWriter forwardingTo(NormalizedNodeStreamWriter delegate) {
+        return new ValidatingNormalizedNodeStreamWriter(delegate);
+    }
+
+    /**
+     * Repeated list entries and leaf-list values found so far, in the order they were written.
+     */
+    public List<Duplicate> getDuplicates() {
+        return duplicates;
+    }
+
+    @Override
+    public void nextDataSchemaNode(DataSchemaNode schema) {
+        if (skipDepth > 0) {
+            return;
+        }
+        nextSchemaNode = schema;
+        if (delegate != null) {
+            delegate.nextDataSchemaNode(schema);
+        }
+    }
+
+    @Override
+    public void startLeafNode(NodeIdentifier name) throws IOException {
+        if (skip()) {
+            return;
+        }
+        enter(null, name, false);
+        if (delegate != null) {
+            delegate.startLeafNode(name);
+        }
+    }
+
+    @Override
+    public void startLeafSet(NodeIdentifier name, int childSizeHint) throws IOException {
+        if (skip()) {
+            return;
+        }
+        enterLeafSet();
+        if (delegate != null) {
+            delegate.startLeafSet(name, childSizeHint);
+        }
+    }
+
+    @Override
+    public void startOrderedLeafSet(NodeIdentifier name, int childSizeHint) throws IOException {
+        if (skip()) {
+            return;
+        }
+        enterLeafSet();
+        if (delegate != null) {
+            delegate.startOrderedLeafSet(name, childSizeHint);
+        }
+    }
+
+    @Override
+    public void startLeafSetEntryNode(NodeWithValue<?> name) throws IOException {
+        if (skip()) {
+            return;
+        }
+        Map<Object, Integer> values = current();
+        // byte[] values of binary leaf-lists only compare equal by content when wrapped
+        byte[] binary = name.getValue() instanceof byte[] bytes ? bytes : null;
+        if (values != null && values.merge(binary != null ? ByteBuffer.wrap(binary) : name.getValue(), 1,
+                Integer::sum) > 1) {
+            // Values are located by their position, which no other element has
+            leaveOut(name, true, 0, "Duplicate value in leaf-list " + name.getNodeType() + ": "
+                    + name.getNodeType().getLocalName() + "[.='"
+                    + (binary != null ? Base64.getEncoder().encodeToString(binary) : name.getValue()) + "']");
+            return;
+        }
+        enter(null, name, true);
+        if (delegate != null) {
+            delegate.startLeafSetEntryNode(name);
+        }
+    }
+
+    @Override
+    public void startContainerNode(NodeIdentifier name, int childSizeHint) throws IOException {
+        if (skip()) {
+            return;
+        }
+        // The schema's root container, which data is written to, is not in the document
+        enter(null, openNodes.isEmpty() && name.getNodeType().equals(SchemaContext.NAME) ? null : name, false);
+        if (delegate != null) {
+            delegate.startContainerNode(name, childSizeHint);
+        }
+    }
+
+    @Override
+    public void startUnkeyedList(NodeIdentifier name, int childSizeHint) throws IOException {
+        if (skip()) {
+            return;
+        }
+        enter(null, null, false);
+        if (delegate != null) {
+            delegate.startUnkeyedList(name, childSizeHint);
+        }
+    }
+
+    @Override
+    public void startUnkeyedListItem(NodeIdentifier name, int childSizeHint) throws IOException {
+        if (skip()) {
+            return;
+        }
+        enter(null, name, true);
+        if (delegate != null) {
+            delegate.startUnkeyedListItem(name, childSizeHint);
+        }
+    }
+
+    @Override
+    public void startMapNode(NodeIdentifier name, int childSizeHint) throws IOException {
+        if (skip()) {
+            return;
+        }
+        enter(new HashMap<>(), null, false);
+        if (delegate != null) {
+            delegate.startMapNode(name, childSizeHint);
+        }
+    }
+
+    @Override
+    public void startOrderedMapNode(NodeIdentifier name, int childSizeHint) throws IOException {
+        if (skip()) {
+            return;
+        }
+        enter(new HashMap<>(), null, false);
+        if (delegate != null) {
+            delegate.startOrderedMapNode(name, childSizeHint);
+        }
+    }
+
+    @Override
+    public void startMapEntryNode(NodeIdentifierWithPredicates identifier, int childSizeHint) throws IOException {
+        if (skip()) {
+            return;
+        }
+        Map<Object, Integer> keys = current();
+        int count = keys == null ? 1 : keys.merge(identifier, 1, Integer::sum);
+        if (count > 1) {
+            leaveOut(identifier, false, count - 1, "Duplicate entry in list " + identifier.getNodeType() + ": "
+                    + toPredicates(identifier));
+            return;
+        }
+        enter(null, identifier, false);
+        if (delegate != null) {
+            delegate.startMapEntryNode(identifier, childSizeHint);
+        }
+    }
+
+    @Override
+    public void startChoiceNode(NodeIdentifier name, int childSizeHint) throws IOException {
+        if (skip()) {
+            return;
+        }
+        enter(null, null, false);
+        if (delegate != null) {
+            delegate.startChoiceNode(name, childSizeHint);
+        }
+    }
+
+    @Override
+    public boolean startAnydataNode(NodeIdentifier name, Class<?> objectModel) throws IOException {
+        if (skip()) {
+            return true;
+        }
+        // A delegate refusing the node gets neither its value nor its end
+        if (delegate != null && !delegate.startAnydataNode(name, objectModel)) {
+            return false;
+        }
+        enter(null, name, false);
+        return true;
+    }
+
+    @Override
+    public boolean startAnyxmlNode(NodeIdentifier name, Class<?> objectModel) throws IOException {
+        if (skip()) {
+            return true;
+        }
+        if (delegate != null && !delegate.startAnyxmlNode(name, objectModel)) {
+            return false;
+        }
+        enter(null, name, false);
+        return true;
+    }
+
+    @Override
+    public void domSourceValue(DOMSource value) throws IOException {
+        if (skipDepth == 0 && delegate != null) {
+            delegate.domSourceValue(value);
+        }
+    }
+
+    @Override
+    public void scalarValue(Object value) throws IOException {
+        if (skipDepth == 0 && delegate != null) {
+            delegate.scalarValue(value);
+        }
+    }
+
+    @Override
+    public void endNode() throws IOException {
+        if (skipDepth > 0) {
+            skipDepth--;
+            return;
+        }
+        if (openNodes.isEmpty()) {
+            throw new IllegalStateException("No open node to end");
+        }
+        openNodes.remove(openNodes.size() - 1);
+        openSteps.remove(openSteps.size() - 1);
+        if (delegate != null) {
+            delegate.endNode();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (delegate != null) {
+            delegate.close();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (delegate != null) {
+            delegate.flush();
+        }
+    }
+
+    /**
+     * Counts a node started within a left out duplicate.
+     *
+     * @return true if the node is to be left out too
+     */
+    private boolean skip() {
+        if (skipDepth == 0) {
+            return false;
+        }
+        skipDepth++;
+        return true;
+    }
+
+    private void enterLeafSet() {
+        // Leaf-lists of state data may repeat values since YANG 1.1
+        enter(nextSchemaNode instanceof LeafListSchemaNode leafList && leafList.effectiveConfig().orElse(true)
+                ? new HashMap<>() : null, null, false);
+    }
+
+    private void enter(Map<Object, Integer> seen, PathArgument step, boolean positional) {
+        int depth = openNodes.size();
+        if (depth == positions.length) {
+            positions = Arrays.copyOf(positions, depth * 2);
+            childCounts = Arrays.copyOf(childCounts, depth * 2);
+        }
+        positions[depth] = positional ? nextPosition() : -1;
+        childCounts[depth] = 0;
+        openNodes.add(seen);
+        openSteps.add(step);
+        nextSchemaNode = null;
+    }
+
+    /**
+     * Records a duplicate and leaves it out, with everything written to it up to its end.
+     */
+    private void leaveOut(PathArgument step, boolean positional, int occurrence, String message) {
+        StringBuilder xpath = new StringBuilder();
+        for (int i = 0; i < openSteps.size(); i++) {
+            appendStep(xpath, openSteps.get(i), positions[i]);
+        }
+        appendStep(xpath, step, positional ? nextPosition() : -1);
+        duplicates.add(new Duplicate(xpath.toString(), occurrence, message));
+        skipDepth = 1;
+        nextSchemaNode = null;
+    }
+
+    private int nextPosition() {
+        int depth = openNodes.size();
+        return depth == 0 ? 0 : childCounts[depth - 1]++;
+    }
+
+    private static void appendStep(StringBuilder xpath, PathArgument step, int position) {
+        if (step == null) {
+            return;
+        }
+        xpath.append('/').append(step.getNodeType().getLocalName());
+        if (position >= 0) {
+            xpath.append('[').append(position).append(']');
+        } else if (step instanceof NodeIdentifierWithPredicates entry) {
+            for (Map.Entry<QName, Object> key : entry.entrySet()) {
+                String value = String.valueOf(key.getValue());
+                char quote = value.indexOf('\'') < 0 ? '\'' : '"';
+                xpath.append('[').append(key.getKey().getLocalName()).append('=')
+                        .append(quote).append(value).append(quote).append(']');
+            }
+        }
+    }
+
+    private Map<Object, Integer> current() {
+        return openNodes.isEmpty() ? null : openNodes.get(openNodes.size() - 1);
+    }
+
+    private static String toPredicates(NodeIdentifierWithPredicates identifier) {
+        StringBuilder predicates = new StringBuilder(identifier.getNodeType().getLocalName());
+        for (Map.Entry<QName, Object> key : identifier.entrySet()) {
+            predicates.append('[').append(key.getKey().getLocalName()).append("='").append(key.getValue()).append("']");
+        }
+        return predicates.toString();
+    }
+}
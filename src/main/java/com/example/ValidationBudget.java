@@ -0,0 +1,241 @@
+package com.example;
+
+import com.ctc.wstx.api.WstxInputProperties;
+
+import javax.xml.stream.XMLInputFactory;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Limits on the work a single document can cause, so a hostile or broken document fails
+ * fast instead of stalling the validator or exhausting its heap. Structural limits are
+ * enforced by the XML parser as it reads, the timeout is checked between elements, and
+ * exceeding any of them stops validation with an error at the element where it happened.
+ * The defaults are those of the parser, with no timeout.
+ */
+public class ValidationBudget {
+    public static final ValidationBudget DEFAULT = builder().build();
+
+    private final int maxDepth;
+    private final long maxElements;
+    private final int maxAttributeLength;
+    private final int maxTextLength;
+    private final long maxDocumentSize;
+    private final long maxEntityExpansions;
+    private final Duration timeout;
+    private final int maxErrors;
+    // Shared by copies that only differ in maxErrors or timeout, as creating a factory is not cheap
+    private final AtomicReference<XMLInputFactory> inputFactory;
+
+    private ValidationBudget(Builder builder, AtomicReference<XMLInputFactory> inputFactory) {
+        this.maxDepth = builder.maxDepth;
+        this.maxElements = builder.maxElements;
+        this.maxAttributeLength = builder.maxAttributeLength;
+        this.maxTextLength = builder.maxTextLength;
+        this.maxDocumentSize = builder.maxDocumentSize;
+        this.maxEntityExpansions = builder.maxEntityExpansions;
+        this.timeout = builder.timeout;
+        this.maxErrors = builder.maxErrors;
+        this.inputFactory = inputFactory;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return a builder starting from this budget's limits
+     */
+    public Builder toBuilder() {
+        return new Builder()
+                .maxDepth(maxDepth)
+                .maxElements(maxElements)
+                .maxAttributeLength(maxAttributeLength)
+                .maxTextLength(maxTextLength)
+                .maxDocumentSize(maxDocumentSize)
+                .maxEntityExpansions(maxEntityExpansions)
+                .timeout(timeout)
+                .maxErrors(maxErrors);
+    }
+
+    /**
+     * @return this budget collecting up to maxErrors errors
+     */
+    public ValidationBudget withMaxErrors(int maxErrors) {
+        return maxErrors == this.maxErrors ? this
+                : new ValidationBudget(toBuilder().maxErrors(maxErrors), inputFactory);
+    }
+
+    /**
+     * @return this budget with the given timeout, or none if null
+     */
+    public ValidationBudget withTimeout(Duration timeout) {
+        return new ValidationBudget(toBuilder().timeout(timeout), inputFactory);
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public long getMaxElements() {
+        return maxElements;
+    }
+
+    public int getMaxAttributeLength() {
+        return maxAttributeLength;
+    }
+
+    public int getMaxTextLength() {
+        return maxTextLength;
+    }
+
+    /**
+     * Bytes of the document, counted as they are read, so reading stops at the limit. For a
+     * document given as characters it is the characters, which the parser checks as it fills
+     * its input buffer, so such a document just over the limit may still pass.
+     */
+    public long getMaxDocumentSize() {
+        return maxDocumentSize;
+    }
+
+    public long getMaxEntityExpansions() {
+        return maxEntityExpansions;
+    }
+
+    /**
+     * @return the wall clock time a validation may take, including reading the document
+     * again to collect more errors, or null for no limit
+     */
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    public int getMaxErrors() {
+        return maxErrors;
+    }
+
+    /**
+     * Factory for readers enforcing the structural limits, in the fragment mode of
+     * {@link RootElementXMLStreamReader#createInputFactory()}. Its depth and element count
+     * limits are one over the budget's, which {@link XPathXMLStreamReader#setMaxDepth} and
+     * {@link XPathXMLStreamReader#setMaxElements} enforce at the element that exceeds them,
+     * and the document size is limited by the source, see
+     * {@link XmlSource#createReader(XMLInputFactory, long)}.
+     */
+    XMLInputFactory getInputFactory() {
+        XMLInputFactory factory = inputFactory.get();
+        if (factory == null) {
+            factory = RootElementXMLStreamReader.createInputFactory();
+            factory.setProperty(WstxInputProperties.P_MAX_ELEMENT_DEPTH, maxDepth == Integer.MAX_VALUE
+                    ? maxDepth : maxDepth + 1);
+            factory.setProperty(WstxInputProperties.P_MAX_ELEMENT_COUNT, maxElements == Long.MAX_VALUE
+                    ? maxElements : maxElements + 1);
+            factory.setProperty(WstxInputProperties.P_MAX_ATTRIBUTE_SIZE, maxAttributeLength);
+            factory.setProperty(WstxInputProperties.P_MAX_TEXT_LENGTH, maxTextLength);
+            factory.setProperty(WstxInputProperties.P_MAX_CHARACTERS, maxDocumentSize);
+            factory.setProperty(WstxInputProperties.P_MAX_ENTITY_COUNT, maxEntityExpansions);
+            // Never read files or URLs named by the document
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            if (!inputFactory.compareAndSet(null, factory)) {
+                factory = inputFactory.get();
+            }
+        }
+        return factory;
+    }
+
+    /**
+     * The structural limits, which decide the outcome of a validation that did not time out.
+     */
+    String getLimits() {
+        return "maxDepth=" + maxDepth
+                + ", maxElements=" + maxElements
+                + ", maxAttributeLength=" + maxAttributeLength
+                + ", maxTextLength=" + maxTextLength
+                + ", maxDocumentSize=" + maxDocumentSize
+                + ", maxEntityExpansions=" + maxEntityExpansions;
+    }
+
+    @Override
+    public String toString() {
+        return "ValidationBudget{" + getLimits()
+                + ", timeout=" + timeout
+                + ", maxErrors=" + maxErrors + "}";
+    }
+
+    public static class Builder {
+        private int maxDepth = 1000;
+        private long maxElements = Long.MAX_VALUE;
+        private int maxAttributeLength = 512 * 1024;
+        private int maxTextLength = Integer.MAX_VALUE;
+        private long maxDocumentSize = Long.MAX_VALUE;
+        private long maxEntityExpansions = 100_000;
+        private Duration timeout;
+        private int maxErrors = 1;
+
+        private Builder() {
+        }
+
+        /**
+         * Nesting depth of elements, not counting the synthetic root element.
+         */
+        public Builder maxDepth(int maxDepth) {
+            this.maxDepth = positive(maxDepth, "maxDepth");
+            return this;
+        }
+
+        public Builder maxElements(long maxElements) {
+            this.maxElements = positive(maxElements, "maxElements");
+            return this;
+        }
+
+        public Builder maxAttributeLength(int maxAttributeLength) {
+            this.maxAttributeLength = positive(maxAttributeLength, "maxAttributeLength");
+            return this;
+        }
+
+        /**
+         * Length of a single text node, which the parser would otherwise buffer whole.
+         */
+        public Builder maxTextLength(int maxTextLength) {
+            this.maxTextLength = positive(maxTextLength, "maxTextLength");
+            return this;
+        }
+
+        public Builder maxDocumentSize(long maxDocumentSize) {
+            this.maxDocumentSize = positive(maxDocumentSize, "maxDocumentSize");
+            return this;
+        }
+
+        public Builder maxEntityExpansions(long maxEntityExpansions) {
+            this.maxEntityExpansions = positive(maxEntityExpansions, "maxEntityExpansions");
+            return this;
+        }
+
+        /**
+         * @param timeout the wall clock limit, or null for none
+         */
+        public Builder timeout(Duration timeout) {
+            if (timeout != null && (timeout.isNegative() || timeout.isZero())) {
+                throw new IllegalArgumentException("timeout must be positive: " + timeout);
+            }
+            this.timeout = timeout;
+            return this;
+        }
+
+        public Builder maxErrors(int maxErrors) {
+            this.maxErrors = positive(maxErrors, "maxErrors");
+            return this;
+        }
+
+        public ValidationBudget build() {
+            return new ValidationBudget(this, new AtomicReference<>());
+        }
+
+        private static <T extends Number> T positive(T value, String name) {
+            if (value.longValue() <= 0) {
+                throw new IllegalArgumentException(name + " must be positive: " + value);
+            }
+            return value;
+        }
+    }
+}
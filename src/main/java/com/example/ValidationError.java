@@ -0,0 +1,87 @@
+package com.example;
+
+/**
+ * Validation failure with the location and XPath of the element it was raised for.
+ */
+public class ValidationError {
+    private final int lineNumber;
+    private final int columnNumber;
+    private final String xpath;
+    private final String message;
+
+    public ValidationError(int lineNumber, int columnNumber, String xpath, String message) {
+        this.lineNumber = lineNumber;
+        this.columnNumber = columnNumber;
+        this.xpath = xpath;
+        this.message = message;
+    }
+
+    public int getLineNumber() {
+        return lineNumber;
+    }
+
+    public int getColumnNumber() {
+        return columnNumber;
+    }
+
+    public String getXpath() {
+        return xpath;
+    }
+
+    /**
+     * Message as translated by {@link MessageProcessor}.
+     */
+    public String getMessage() {
+        return message;
+    }
+
+    void appendJson(StringBuilder json) {
+        json.append("{\"line\":").append(lineNumber)
+                .append(",\"column\":").append(columnNumber)
+                .append(",\"xpath\":");
+        appendJsonString(json, xpath);
+        json.append(",\"message\":");
+        appendJsonString(json, message);
+        json.append('}');
+    }
+
+    private static void appendJsonString(StringBuilder json, String value) {
+        if (value == null) {
+            json.append("null");
+            return;
+        }
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        json.append('"');
+    }
+
+    @Override
+    public String toString() {
+        return toString("Error");
+    }
+
+    /**
+     * @param severity what the message is labelled as, e.g. Warning
+     */
+    String toString(String severity) {
+        return "Line " + lineNumber + ", Column " + columnNumber
+                + "\nFor XPath: " + xpath
+                + "\n" + severity + ": " + message;
+    }
+}
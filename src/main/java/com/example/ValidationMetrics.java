@@ -0,0 +1,148 @@
+package com.example;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process wide validation metrics: latency per {@link ValidationPhase}, document size
+ * and element counters and error counts by category.
+ */
+public class ValidationMetrics implements ValidationMetricsMXBean {
+    private static final Logger LOG = LoggerFactory.getLogger(ValidationMetrics.class);
+    private static final String DOMAIN = "com.example";
+    private static final ValidationMetrics INSTANCE = new ValidationMetrics();
+
+    private final Map<ValidationPhase, LatencyHistogram> phaseLatencies = new EnumMap<>(ValidationPhase.class);
+    private final LongAdder documents = new LongAdder();
+    private final LongAdder invalidDocuments = new LongAdder();
+    private final LongAdder elements = new LongAdder();
+    private final LongAdder characters = new LongAdder();
+    private final Map<String, LongAdder> errorCounts = new ConcurrentHashMap<>();
+    private boolean registered = false;
+    private ScheduledExecutorService logExecutor;
+
+    private ValidationMetrics() {
+        for (ValidationPhase phase : ValidationPhase.values()) {
+            phaseLatencies.put(phase, new LatencyHistogram());
+        }
+    }
+
+    public static ValidationMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Records the time since startNanos, a value of System.nanoTime(), for a phase.
+     */
+    public void recordPhase(ValidationPhase phase, long startNanos) {
+        phaseLatencies.get(phase).record(System.nanoTime() - startNanos);
+    }
+
+    public void recordDocument(boolean valid, long elementCount, long characterCount) {
+        documents.increment();
+        if (!valid) {
+            invalidDocuments.increment();
+        }
+        elements.add(elementCount);
+        characters.add(characterCount);
+    }
+
+    public void recordError(String category) {
+        errorCounts.computeIfAbsent(category, k -> new LongAdder()).increment();
+    }
+
+    public LatencyHistogram getPhaseLatency(ValidationPhase phase) {
+        return phaseLatencies.get(phase);
+    }
+
+    @Override
+    public long getDocumentCount() {
+        return documents.sum();
+    }
+
+    @Override
+    public long getInvalidDocumentCount() {
+        return invalidDocuments.sum();
+    }
+
+    @Override
+    public long getElementCount() {
+        return elements.sum();
+    }
+
+    @Override
+    public long getCharacterCount() {
+        return characters.sum();
+    }
+
+    @Override
+    public Map<String, Long> getErrorCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        errorCounts.forEach((category, count) -> counts.put(category, count.sum()));
+        return counts;
+    }
+
+    /**
+     * Registers these metrics and one latency histogram per phase with the platform MBean server.
+     */
+    public synchronized void registerMBeans() {
+        if (registered) {
+            return;
+        }
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(this, new ObjectName(DOMAIN + ":type=ValidationMetrics"));
+            for (ValidationPhase phase : ValidationPhase.values()) {
+                server.registerMBean(phaseLatencies.get(phase),
+                        new ObjectName(DOMAIN + ":type=ValidationPhase,name=" + phase.getDisplayName()));
+            }
+        } catch (JMException e) {
+            throw new IllegalStateException("Failed to register validation MBeans", e);
+        }
+        registered = true;
+    }
+
+    /**
+     * Logs a summary of the metrics at the given interval, from a daemon thread.
+     */
+    public synchronized void startPeriodicLog(Duration interval) {
+        if (logExecutor != null) {
+            return;
+        }
+        logExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "validation-metrics-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+        logExecutor.scheduleAtFixedRate(() -> LOG.info("{}", this),
+                interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder summary = new StringBuilder("Validation metrics: documents=").append(getDocumentCount())
+                .append(" invalid=").append(getInvalidDocumentCount())
+                .append(" elements=").append(getElementCount())
+                .append(" characters=").append(getCharacterCount());
+        for (ValidationPhase phase : ValidationPhase.values()) {
+            summary.append("\n  ").append(phase.getDisplayName()).append(": ").append(phaseLatencies.get(phase));
+        }
+        getErrorCounts().forEach((category, count) ->
+                summary.append("\n  errors[").append(category).append("]: ").append(count));
+        return summary.toString();
+    }
+}
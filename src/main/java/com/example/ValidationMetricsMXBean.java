@@ -0,0 +1,23 @@
+package com.example;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link ValidationMetrics}. Per phase latencies are separate
+ * {@link LatencyHistogramMXBean}s.
+ */
+public interface ValidationMetricsMXBean {
+
+    long getDocumentCount();
+
+    long getInvalidDocumentCount();
+
+    long getElementCount();
+
+    long getCharacterCount();
+
+    /**
+     * Number of errors per {@link MessageProcessor#categorize(String) message category}.
+     */
+    Map<String, Long> getErrorCounts();
+}
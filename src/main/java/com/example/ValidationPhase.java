@@ -0,0 +1,27 @@
+package com.example;
+
+/**
+ * Timed stages of validating a document.
+ */
+public enum ValidationPhase {
+    SCHEMA_BUILD("SchemaBuild"),
+    // Stages of loading the modules, within the schema build
+    SCHEMA_PARSE("SchemaParse"),
+    SCHEMA_RESOLVE("SchemaResolve"),
+    SCHEMA_ASSEMBLE("SchemaAssemble"),
+    PLAN_COMPILE("PlanCompile"),
+    XPATH_INDEX("XPathIndex"),
+    PARSE("Parse"),
+    CONSTRAINT_CHECK("ConstraintCheck"),
+    MESSAGE_TRANSLATION("MessageTranslation");
+
+    private final String displayName;
+
+    ValidationPhase(String displayName) {
+        this.displayName = displayName;
+    }
+
+    public String getDisplayName() {
+        return displayName;
+    }
+}
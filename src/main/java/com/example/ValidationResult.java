@@ -0,0 +1,111 @@
+package com.example;
+
+import org.opendaylight.yangtools.yang.data.api.schema.NormalizedNode;
+
+import java.util.List;
+
+/**
+ * Outcome of validating one document.
+ */
+public class ValidationResult {
+    private final List<ValidationError> errors;
+    private final List<ValidationError> warnings;
+    private final NormalizedNode data;
+    private final boolean timedOut;
+    private final boolean incomplete;
+
+    public ValidationResult(List<ValidationError> errors) {
+        this(errors, null, false);
+    }
+
+    public ValidationResult(List<ValidationError> errors, List<ValidationError> warnings) {
+        this(errors, warnings, null, false, false);
+    }
+
+    ValidationResult(List<ValidationError> errors, NormalizedNode data, boolean timedOut) {
+        this(errors, List.of(), data, timedOut, false);
+    }
+
+    ValidationResult(List<ValidationError> errors, List<ValidationError> warnings, NormalizedNode data,
+                     boolean timedOut, boolean incomplete) {
+        this.errors = List.copyOf(errors);
+        this.warnings = List.copyOf(warnings);
+        this.data = data;
+        this.timedOut = timedOut;
+        this.incomplete = incomplete;
+    }
+
+    public static ValidationResult valid() {
+        return new ValidationResult(List.of());
+    }
+
+    public boolean isValid() {
+        return errors.isEmpty();
+    }
+
+    public List<ValidationError> getErrors() {
+        return errors;
+    }
+
+    /**
+     * Constraints of the schema that apply to the document but could not be checked, which
+     * do not make it invalid.
+     */
+    public List<ValidationError> getWarnings() {
+        return warnings;
+    }
+
+    /**
+     * Data read from the document, under the synthetic root container, or null unless the
+     * tree was asked to be kept.
+     */
+    public NormalizedNode getData() {
+        return data;
+    }
+
+    /**
+     * True if validation was stopped by its budget's timeout, so the result depends on
+     * more than the document.
+     */
+    boolean isTimedOut() {
+        return timedOut;
+    }
+
+    /**
+     * True if validation stopped at an error short of the number of errors it was asked to
+     * collect, as it could not carry on past it, e.g. in malformed XML or in a source that
+     * cannot be read again; the rest of the document may have more errors.
+     */
+    public boolean isIncomplete() {
+        return incomplete;
+    }
+
+    /**
+     * Renders the result as {"valid":false,"errors":[{"line":7,"column":17,"xpath":"...","message":"..."}]},
+     * followed by "incomplete":true if the result is, and "warnings" in the same form as the
+     * errors if there are any.
+     */
+    public String toJson() {
+        StringBuilder json = new StringBuilder("{\"valid\":").append(isValid()).append(",\"errors\":");
+        appendJson(json, errors);
+        if (incomplete) {
+            json.append(",\"incomplete\":true");
+        }
+        if (!warnings.isEmpty()) {
+            json.append(",\"warnings\":");
+            appendJson(json, warnings);
+        }
+        return json.append('}').toString();
+    }
+
+    private static void appendJson(StringBuilder json, List<ValidationError> errors) {
+        json.append('[');
+        for (int i = 0; i < errors.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            errors.get(i).appendJson(json);
+        }
+        json.append(']');
+    }
+}
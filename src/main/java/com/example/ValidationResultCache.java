@@ -0,0 +1,330 @@
+package com.example;
+
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.opendaylight.yangtools.yang.model.api.EffectiveModelContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.xml.stream.XMLStreamException;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Validation results keyed by the schema fingerprint and a SHA-256 digest of the document,
+ * so a byte-identical document is not parsed again. The document is read once: its bytes
+ * are digested as they are read into memory, and on a miss they are validated from there,
+ * so the result is that of exactly the bytes the key names. Documents larger than
+ * {@link #MAX_BUFFERED_SIZE} are digested without being kept and read again to validate.
+ * Results are kept in memory with least recently used eviction and, given a directory,
+ * also stored on disk, where they survive restarts. The directory holds a bounded number
+ * of results; once over it, the least recently used ones are deleted.
+ */
+public class ValidationResultCache implements ValidationResultCacheMXBean {
+    public static final int MAX_BUFFERED_SIZE = 16 * 1024 * 1024;
+    public static final int DEFAULT_MAX_STORED_RESULTS = 100_000;
+
+    private static final Logger LOG = LoggerFactory.getLogger(ValidationResultCache.class);
+    // Raised when stored results would differ, e.g. after new checks were added
+    private static final int FORMAT_VERSION = 5;
+    private static final String SUFFIX = ".result";
+
+    private final YangValidatorEngine engine;
+    private final Cache<String, ValidationResult> results;
+    private final Path directory;
+    private final int maxStoredResults;
+    // Results in the directory, recounted whenever it is pruned
+    private final AtomicInteger storedResults = new AtomicInteger();
+    private final LongAdder diskHits = new LongAdder();
+    private final LongAdder uncacheable = new LongAdder();
+
+    /**
+     * @param directory where results are stored on disk, or null to keep them in memory only
+     */
+    public ValidationResultCache(YangValidatorEngine engine, int maxEntries, Path directory) throws IOException {
+        this(engine, maxEntries, directory, DEFAULT_MAX_STORED_RESULTS);
+    }
+
+    /**
+     * @param directory        where results are stored on disk, or null to keep them in
+     *                         memory only
+     * @param maxStoredResults results kept in the directory
+     */
+    public ValidationResultCache(YangValidatorEngine engine, int maxEntries, Path directory, int maxStoredResults)
+            throws IOException {
+        this.engine = engine;
+        this.results = CacheBuilder.newBuilder()
+                .maximumSize(maxEntries)
+                .recordStats()
+                .build();
+        this.directory = directory;
+        this.maxStoredResults = maxStoredResults;
+        if (directory != null) {
+            Files.createDirectories(directory);
+            prune();
+        }
+    }
+
+    /**
+     * Returns the cached result for the document, validating it only if there is none.
+     * Documents that cannot be read more than once are validated without caching.
+     */
+    public ValidationResult validate(EffectiveModelContext context, XmlSource source, int maxErrors)
+            throws IOException, XMLStreamException {
+        return validate(context, source, ValidationBudget.DEFAULT.withMaxErrors(maxErrors));
+    }
+
+    /**
+     * Returns the cached result for the document validated within the budget. Results of
+     * validations that timed out are not cached, as they depend on how busy the machine was.
+     */
+    public ValidationResult validate(EffectiveModelContext context, XmlSource source, ValidationBudget budget)
+            throws IOException, XMLStreamException {
+        String fingerprint = engine.getFingerprint(context);
+        ByteSource bytes = source.asByteSource();
+        if (fingerprint == null || bytes == null) {
+            uncacheable.increment();
+            return engine.validate(context, source, budget);
+        }
+        // Digested as it is buffered, and validated from the buffer on a miss
+        HashCode digest;
+        XmlSource document = source;
+        try (HashingInputStream in = new HashingInputStream(Hashing.sha256(), bytes.openBufferedStream())) {
+            if (bytes.sizeIfKnown().or(0L) <= MAX_BUFFERED_SIZE) {
+                byte[] buffered = ByteStreams.toByteArray(ByteStreams.limit(in, MAX_BUFFERED_SIZE + 1));
+                if (buffered.length <= MAX_BUFFERED_SIZE) {
+                    document = XmlSource.of(buffered);
+                }
+            }
+            ByteStreams.exhaust(in);
+            digest = in.hash();
+        }
+        // The result depends on how many errors were collected and on the limits, but a
+        // result that did not time out is the same for any timeout
+        String key = fingerprint + "-" + digest + "-" + budget.getMaxErrors()
+                + "-" + Hashing.murmur3_32_fixed().hashUnencodedChars(budget.getLimits());
+        XmlSource validated = document;
+
+        try {
+            // Concurrent requests for the same document wait for one validation
+            ValidationResult result = results.get(key, () -> {
+                ValidationResult loaded = load(key);
+                if (loaded != null) {
+                    diskHits.increment();
+                    return loaded;
+                }
+                loaded = engine.validate(context, validated, budget);
+                if (!loaded.isTimedOut()) {
+                    store(key, loaded);
+                }
+                return loaded;
+            });
+            if (result.isTimedOut()) {
+                results.invalidate(key);
+            }
+            return result;
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            Throwables.throwIfInstanceOf(e.getCause(), IOException.class);
+            Throwables.throwIfInstanceOf(e.getCause(), XMLStreamException.class);
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IllegalStateException("Validation failed", e.getCause());
+        }
+    }
+
+    /**
+     * Registers the cache statistics with the platform MBean server.
+     */
+    public void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this,
+                    new ObjectName("com.example:type=ValidationResultCache"));
+        } catch (JMException e) {
+            throw new IllegalStateException("Failed to register the result cache MBean", e);
+        }
+    }
+
+    @Override
+    public long getSize() {
+        return results.size();
+    }
+
+    @Override
+    public long getHitCount() {
+        return results.stats().hitCount();
+    }
+
+    @Override
+    public long getMissCount() {
+        return results.stats().missCount();
+    }
+
+    @Override
+    public long getEvictionCount() {
+        return results.stats().evictionCount();
+    }
+
+    @Override
+    public long getDiskHitCount() {
+        return diskHits.sum();
+    }
+
+    @Override
+    public long getUncacheableCount() {
+        return uncacheable.sum();
+    }
+
+    private ValidationResult load(String key) {
+        if (directory == null) {
+            return null;
+        }
+        Path file = file(key);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+            List<ValidationError> errors = readErrors(in);
+            List<ValidationError> warnings = readErrors(in);
+            boolean incomplete = in.readBoolean();
+            if (in.read() >= 0) {
+                throw new IOException("Trailing bytes");
+            }
+            // Pruning goes by modification time, so a result read is kept as if just stored
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return new ValidationResult(errors, warnings, null, false, incomplete);
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            LOG.warn("Ignoring unreadable cached result {}", file(key), e);
+            return null;
+        }
+    }
+
+    private static List<ValidationError> readErrors(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        List<ValidationError> errors = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            errors.add(new ValidationError(in.readInt(), in.readInt(), in.readUTF(), in.readUTF()));
+        }
+        return errors;
+    }
+
+    private void store(String key, ValidationResult result) {
+        if (directory == null) {
+            return;
+        }
+        Path file = file(key);
+        Path temporary = null;
+        try {
+            // Written aside and moved in place, so readers never see a partial file
+            temporary = Files.createTempFile(directory, key, ".tmp");
+            try (OutputStream out = Files.newOutputStream(temporary);
+                 DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out))) {
+                data.writeInt(FORMAT_VERSION);
+                writeErrors(data, result.getErrors());
+                writeErrors(data, result.getWarnings());
+                data.writeBoolean(result.isIncomplete());
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (storedResults.incrementAndGet() > maxStoredResults) {
+                prune();
+            }
+        } catch (IOException e) {
+            LOG.warn("Failed to store cached result {}", file, e);
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException ignored) {
+                    // Left for the next cleanup of the directory
+                }
+            }
+        }
+    }
+
+    private static void writeErrors(DataOutputStream data, List<ValidationError> errors) throws IOException {
+        data.writeInt(errors.size());
+        for (ValidationError error : errors) {
+            data.writeInt(error.getLineNumber());
+            data.writeInt(error.getColumnNumber());
+            data.writeUTF(String.valueOf(error.getXpath()));
+            data.writeUTF(error.getMessage());
+        }
+    }
+
+    /**
+     * Deletes the least recently used results in the directory down to three quarters of
+     * the limit, so that pruning does not run again on the next store, and recounts them.
+     */
+    private synchronized void prune() throws IOException {
+        List<Path> files;
+        try (Stream<Path> listed = Files.list(directory)) {
+            files = listed.filter(file -> file.getFileName().toString().endsWith(SUFFIX)).toList();
+        }
+        if (files.size() <= maxStoredResults) {
+            storedResults.set(files.size());
+            return;
+        }
+        List<Path> oldestFirst = new ArrayList<>(files);
+        oldestFirst.sort(Comparator.comparing(ValidationResultCache::lastModified));
+        int kept = oldestFirst.size();
+        for (Path file : oldestFirst) {
+            if (kept <= maxStoredResults * 3L / 4) {
+                break;
+            }
+            Files.deleteIfExists(file);
+            kept--;
+        }
+        LOG.debug("Pruned the result cache directory from {} to {} results", files.size(), kept);
+        storedResults.set(kept);
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            // Deleted meanwhile, so first to go
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private Path file(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+
+    @Override
+    public String toString() {
+        CacheStats stats = results.stats();
+        return "Result cache: size=" + results.size()
+                + " hits=" + stats.hitCount()
+                + " misses=" + stats.missCount()
+                + " evictions=" + stats.evictionCount()
+                + " diskHits=" + diskHits.sum()
+                + " uncacheable=" + uncacheable.sum();
+    }
+}
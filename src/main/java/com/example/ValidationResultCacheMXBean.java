@@ -0,0 +1,25 @@
+package com.example;
+
+/**
+ * JMX view of a {@link ValidationResultCache}.
+ */
+public interface ValidationResultCacheMXBean {
+
+    long getSize();
+
+    long getHitCount();
+
+    long getMissCount();
+
+    long getEvictionCount();
+
+    /**
+     * Memory misses answered from the on-disk store.
+     */
+    long getDiskHitCount();
+
+    /**
+     * Documents that could not be digested, e.g. one-shot streams, and were validated uncached.
+     */
+    long getUncacheableCount();
+}
@@ -0,0 +1,255 @@
+package com.example;
+
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.opendaylight.yangtools.yang.model.api.EffectiveModelContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Stream;
+
+/**
+ * Long running validation service, so the YANG parser, the compiled schema and the JIT
+ * compiled code are reused across documents instead of paid for by every call.
+ * <ul>
+ *     <li>POST /validate[?maxErrors=N]: validates the request body, answering with
+ *     {@link ValidationResult#toJson()}. N is capped at {@link #MAX_REQUEST_ERRORS}, or
+ *     the budget's maxErrors if that is higher.</li>
+ *     <li>GET /health: answers 200 once a schema is loaded</li>
+ *     <li>GET /metrics: the {@link ValidationMetrics} summary</li>
+ * </ul>
+ * Requests are handled on virtual threads. The YANG files and directories are watched and
+ * the schema is rebuilt when a file in them is added, changed or removed; requests in flight
+ * finish against the schema they started with, and a schema that fails to build is logged
+ * and the previous one kept. Each request is validated within the server's
+ * {@link ValidationBudget}; bodies larger than its document size are refused with 413 rather
+ * than buffered.
+ */
+public class ValidationServer {
+    private static final Logger LOG = LoggerFactory.getLogger(ValidationServer.class);
+    /**
+     * Most errors a request may ask for, as each one can cost another read of the document.
+     */
+    public static final int MAX_REQUEST_ERRORS = 1000;
+
+    private final YangValidatorEngine engine;
+    private final List<Path> yangPaths;
+    private final ValidationBudget budget;
+    private volatile EffectiveModelContext context;
+    private HttpServer server;
+    private ExecutorService executor;
+    private WatchService watchService;
+
+    public ValidationServer(YangValidatorEngine engine, List<Path> yangPaths, int defaultMaxErrors) {
+        this(engine, yangPaths, ValidationBudget.DEFAULT.withMaxErrors(defaultMaxErrors));
+    }
+
+    /**
+     * @param yangPaths YANG files and directories of them, see {@link SchemaLoader#findYangFiles}
+     * @param budget    limits of each request, whose maxErrors applies when a request does not
+     *                  give one
+     */
+    public ValidationServer(YangValidatorEngine engine, List<Path> yangPaths, ValidationBudget budget) {
+        this.engine = engine;
+        this.yangPaths = List.copyOf(yangPaths);
+        this.budget = budget;
+    }
+
+    /**
+     * Loads the schema, starts watching its files and starts listening on the given address.
+     * Requests are not authenticated, so callers should pass a loopback address unless told otherwise.
+     */
+    public synchronized void start(InetSocketAddress address) throws IOException {
+        context = engine.loadSchema(SchemaLoader.findYangFiles(yangPaths));
+        startWatching();
+
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/validate", this::handleValidate);
+        server.createContext("/health", exchange -> respond(exchange, 200, "text/plain", "OK"));
+        server.createContext("/metrics", exchange ->
+                respond(exchange, 200, "text/plain", ValidationMetrics.get().toString()));
+        server.start();
+        LOG.info("Validation server listening on {}", server.getAddress());
+    }
+
+    public synchronized void stop() {
+        if (server != null) {
+            // Let requests in flight finish
+            server.stop(1);
+            executor.shutdown();
+            server = null;
+        }
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to stop watching the schema files", e);
+            }
+            watchService = null;
+        }
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    private void handleValidate(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                respond(exchange, 405, "text/plain", "Use POST");
+                return;
+            }
+            int maxErrors;
+            try {
+                maxErrors = maxErrors(exchange.getRequestURI());
+            } catch (NumberFormatException e) {
+                respond(exchange, 400, "text/plain", "Invalid maxErrors");
+                return;
+            }
+
+            ValidationResult result;
+            try (InputStream body = exchange.getRequestBody()) {
+                // Collecting several errors reads the document again, so it has to be kept
+                XmlSource source;
+                if (maxErrors > 1) {
+                    byte[] document = readBody(body);
+                    if (document == null) {
+                        respond(exchange, 413, "text/plain",
+                                "Document larger than " + budget.getMaxDocumentSize() + " bytes");
+                        return;
+                    }
+                    source = XmlSource.of(document);
+                } else {
+                    // Read as it is parsed, which enforces the document size
+                    source = XmlSource.of(body);
+                }
+                result = engine.validate(context, source, budget.withMaxErrors(maxErrors));
+            } catch (Exception e) {
+                LOG.debug("Failed to read document", e);
+                result = new ValidationResult(List.of(new ValidationError(0, 0, "/",
+                        "Failed to read document: " + e.getMessage())));
+            }
+            respond(exchange, 200, "application/json", result.toJson());
+        }
+    }
+
+    private int maxErrors(URI uri) {
+        String query = uri.getRawQuery();
+        if (query != null) {
+            for (String parameter : query.split("&")) {
+                if (parameter.startsWith("maxErrors=")) {
+                    int maxErrors = Integer.parseInt(parameter.substring("maxErrors=".length()));
+                    return Math.clamp(maxErrors, 1, Math.max(MAX_REQUEST_ERRORS, budget.getMaxErrors()));
+                }
+            }
+        }
+        return budget.getMaxErrors();
+    }
+
+    /**
+     * @return the whole body, or null if it is larger than the budget's document size
+     */
+    private byte[] readBody(InputStream body) throws IOException {
+        long maxSize = budget.getMaxDocumentSize();
+        if (maxSize >= Integer.MAX_VALUE) {
+            return body.readAllBytes();
+        }
+        byte[] document = ByteStreams.toByteArray(ByteStreams.limit(body, maxSize + 1));
+        return document.length > maxSize ? null : document;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String contentType, String body)
+            throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private void startWatching() throws IOException {
+        watchService = FileSystems.getDefault().newWatchService();
+        register(watchService);
+        WatchService watcher = watchService;
+        Thread.ofPlatform().daemon().name("yang-schema-watcher").start(() -> watch(watcher));
+    }
+
+    /**
+     * Watches the directories given and every directory below them, which may have been
+     * created since the last call, and the directories of the files given.
+     */
+    private void register(WatchService watcher) throws IOException {
+        Set<Path> directories = new LinkedHashSet<>();
+        for (Path yangPath : yangPaths) {
+            if (Files.isDirectory(yangPath)) {
+                try (Stream<Path> found = Files.walk(yangPath)) {
+                    found.filter(Files::isDirectory).forEach(directories::add);
+                }
+            } else {
+                directories.add(yangPath.toAbsolutePath().getParent());
+            }
+        }
+        // Registering a directory again returns its existing key
+        for (Path directory : directories) {
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        }
+    }
+
+    private void watch(WatchService watcher) {
+        try {
+            while (true) {
+                WatchKey key = watcher.take();
+                // Editors write a file in several steps, wait for them to settle
+                Thread.sleep(200);
+                key.pollEvents();
+                for (WatchKey pending = watcher.poll(); pending != null; pending = watcher.poll()) {
+                    pending.pollEvents();
+                    pending.reset();
+                }
+                key.reset();
+                reload(watcher);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Stopped
+        }
+    }
+
+    private void reload(WatchService watcher) {
+        try {
+            register(watcher);
+            // Files may have been added to or removed from the directories
+            List<Path> yangFiles = SchemaLoader.findYangFiles(yangPaths);
+            // Unchanged sources have the same fingerprint and come straight from the cache
+            EffectiveModelContext reloaded = engine.loadSchema(yangFiles);
+            if (reloaded != context) {
+                context = reloaded;
+                LOG.info("Reloaded YANG schema from {}", yangFiles);
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Keeping the current schema, the changed YANG files failed to load", e);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.example;
+
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Thrown by {@link XPathXMLStreamReader} once validation has run past its
+ * {@link ValidationBudget#getTimeout() timeout}.
+ */
+public class ValidationTimeoutException extends XMLStreamException {
+    private static final long serialVersionUID = 1L;
+
+    public ValidationTimeoutException(String message) {
+        // Without a location, which would be added to the message; the reader has it
+        super(message);
+    }
+}
@@ -1,22 +1,66 @@
 package com.example;
 
 import com.ctc.wstx.stax.WstxInputFactory;
+import org.opendaylight.yangtools.yang.model.api.EffectiveModelContext;
 
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
-import java.util.Map;
 
 public class XPathCreator {
-    public static Map<String, String> createXPathMap(String xmlText) throws
+    // Factories are thread safe once configured, creating one is not cheap
+    private static final XMLInputFactory factory = new WstxInputFactory();
+    private static final XMLInputFactory fragmentFactory = RootElementXMLStreamReader.createInputFactory();
+
+    public static XPathLocationIndex createLocationIndex(String xmlText) throws
             XMLStreamException {
-        XMLInputFactory factory = new WstxInputFactory();
+        long start = System.nanoTime();
         ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(xmlText.getBytes(StandardCharsets.UTF_8));
         XPathXMLStreamReader reader = new XPathXMLStreamReader(factory.createXMLStreamReader(byteArrayInputStream));
         while (reader.hasNext()) {
             reader.next();
         }
-        return reader.getXpathMap();
+        ValidationMetrics.get().recordPhase(ValidationPhase.XPATH_INDEX, start);
+        return reader.getLocationIndex();
+    }
+
+    /**
+     * Indexes a document the way it is validated, wrapped in a synthetic root element.
+     */
+    public static XPathLocationIndex createLocationIndex(XmlSource source) throws
+            IOException, XMLStreamException {
+        return createLocationIndex(source, null);
+    }
+
+    /**
+     * Indexes a document the way it is validated, naming list entries by their keys
+     * as defined in the given schema.
+     */
+    public static XPathLocationIndex createLocationIndex(XmlSource source, EffectiveModelContext context) throws
+            IOException, XMLStreamException {
+        return createLocationIndex(source, context, new HeapXPathLocationIndex());
+    }
+
+    /**
+     * Indexes a document into the given index, e.g. a {@link MappedXPathLocationIndex} for
+     * documents too large to index on the heap.
+     */
+    public static <T extends XPathLocationIndex> T createLocationIndex(XmlSource source, EffectiveModelContext context,
+                                                                       T locationIndex)
+            throws IOException, XMLStreamException {
+        long start = System.nanoTime();
+        XPathXMLStreamReader reader = new XPathXMLStreamReader(
+                new RootElementXMLStreamReader(source.createReader(fragmentFactory)), locationIndex, context);
+        try {
+            while (reader.hasNext()) {
+                reader.next();
+            }
+        } finally {
+            reader.close();
+        }
+        ValidationMetrics.get().recordPhase(ValidationPhase.XPATH_INDEX, start);
+        return locationIndex;
     }
 }
@@ -0,0 +1,98 @@
+package com.example;
+
+/**
+ * Location of every element read by {@link XPathXMLStreamReader}, in document order.
+ * Elements are identified by their ordinal, so finding the element at a line and column is
+ * a binary search instead of a scan. {@link HeapXPathLocationIndex} keeps the index in
+ * arrays on the heap, {@link MappedXPathLocationIndex} in fixed size records off the heap
+ * for documents with more elements than the heap can hold.
+ */
+public interface XPathLocationIndex {
+
+    /**
+     * Records the start of an element and returns its ordinal.
+     *
+     * @param parent ordinal of the enclosing element, or -1 for the root element
+     * @param index  number of earlier siblings with the same name
+     */
+    int startElement(int parent, String name, int index, int line, int column);
+
+    /**
+     * Counts an element left out of the index towards the indices of its siblings.
+     */
+    void skipElement(int parent, String name, int index);
+
+    /**
+     * Identifies the element by its position, as entries of keyless lists and leaf-lists are.
+     */
+    void setPositional(int ordinal);
+
+    /**
+     * Adds a key predicate such as [name='eth0'] identifying the element.
+     */
+    void appendPredicate(int ordinal, String keyPredicate);
+
+    /**
+     * Records the location of the end tag of an element.
+     */
+    void endElement(int ordinal, int line, int column);
+
+    int size();
+
+    int getLine(int ordinal);
+
+    int getColumn(int ordinal);
+
+    /**
+     * @return the line of the end tag, or Integer.MAX_VALUE if the element was never closed
+     */
+    int getEndLine(int ordinal);
+
+    int getEndColumn(int ordinal);
+
+    int getParent(int ordinal);
+
+    String getName(int ordinal);
+
+    String getXPath(int ordinal);
+
+    /**
+     * Finds the innermost element whose start tag begins at or before the given location
+     * and whose end tag has not begun before it. Elements that were never closed, e.g.
+     * because parsing failed inside them, cover everything after their start.
+     *
+     * @return the element ordinal, or -1 if no element covers the location
+     */
+    default int findElement(int line, int column) {
+        // Last element starting at or before the location
+        int low = 0;
+        int high = size() - 1;
+        int found = -1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (compare(getLine(mid), getColumn(mid), line, column) <= 0) {
+                found = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        // Any element covering the location encloses that one, so walk up until one does
+        while (found >= 0 && compare(getEndLine(found), getEndColumn(found), line, column) < 0) {
+            found = getParent(found);
+        }
+        return found;
+    }
+
+    /**
+     * @return the XPath of the innermost element covering the location, or null
+     */
+    default String findXPath(int line, int column) {
+        int ordinal = findElement(line, column);
+        return ordinal < 0 ? null : getXPath(ordinal);
+    }
+
+    private static int compare(int line1, int column1, int line2, int column2) {
+        return line1 != line2 ? Integer.compare(line1, line2) : Integer.compare(column1, column2);
+    }
+}
@@ -1,46 +1,510 @@
 package com.example;
 
+import com.google.common.hash.HashCode;
+import org.opendaylight.yangtools.yang.common.QNameModule;
+import org.opendaylight.yangtools.yang.common.XMLNamespace;
+import org.opendaylight.yangtools.yang.model.api.DataNodeContainer;
+import org.opendaylight.yangtools.yang.model.api.DataSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.EffectiveModelContext;
+import org.opendaylight.yangtools.yang.model.api.LeafListSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.ListSchemaNode;
+import org.opendaylight.yangtools.yang.model.api.stmt.ModuleEffectiveStatement;
+
 import javax.xml.namespace.NamespaceContext;
 import javax.xml.namespace.QName;
 import javax.xml.stream.Location;
 import javax.xml.stream.XMLStreamConstants;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
-import java.util.Stack;
 
 /**
- * XMLStreamReader that tracks the XPath of elements
+ * XMLStreamReader that tracks the XPath of elements.
+ * Given the schema, list entries are identified by their keys, e.g. interface[name='eth0'],
+ * and keyless list and leaf-list entries always carry their position, so paths are decided
+ * without waiting for a second sibling. Without it, or for elements the schema does not
+ * know, an element is indexed from the second occurrence of its name on.
  */
 public class XPathXMLStreamReader implements XMLStreamReader {
+    // A power of two, so reading the clock costs little per element
+    private static final int DEADLINE_CHECK_INTERVAL = 64;
+
     private final XMLStreamReader delegate;
-    private final Stack<ElementInfo> elementStack = new Stack<>();
-    private final Stack<Map<String, Integer>> elementCountStack = new Stack<>();
-    private String currentXPath = "/";
-    private final Map<String, String> xpathMap = new HashMap<>();
-    private int elementCounter = 0; // Counter to ensure unique keys
-    
-    private static class ElementInfo {
-        String name;
+    private final XPathLocationIndex locationIndex;
+
+    // Per-depth frames are reused as the reader goes up and down the tree; frames[0] is the document
+    private ElementFrame[] frames = new ElementFrame[16];
+    private int depth = 0;
+    // The current XPath is appended to on start and truncated on end
+    private char[] pathBuffer = new char[256];
+    private int pathLength = 0;
+    private int lastElementLength = 0;
+    // Path of the last element once its own segment has been overwritten, null otherwise
+    private String lastElementPath;
+    // Elements are numbered in document order, including skipped ones, so the numbers stay
+    // the same when the same document is read again with more elements skipped
+    private int elementCount = 0;
+    private int lastElementNumber = -1;
+    // List entry of the last element if that is one of its keys, -1 otherwise
+    private int lastKeyedEntryNumber = -1;
+    private BitSet skippedElements;
+    // Decides which elements at filterDepth are left out, see setSubtreeFilter
+    private SubtreeFilter subtreeFilter;
+    private int filterDepth;
+    // Set while the element just started was offered to the filter and is being read
+    private boolean filtered;
+    // System.nanoTime() after which reading fails, checked every DEADLINE_CHECK_INTERVAL elements
+    private boolean hasDeadline = false;
+    // Deepest level of elements allowed below the synthetic root
+    private int maxDepth = Integer.MAX_VALUE;
+    private long maxElements = Long.MAX_VALUE;
+    private long deadline;
+    private final EffectiveModelContext schemaContext;
+    private final Map<String, QNameModule> modulesByNamespace = new HashMap<>();
+    // Elements checked ahead of the caller, see setLeafConstraints
+    private LeafConstraintPlan constraintPlan;
+    private int maxRejectedElements;
+    private final List<RejectedElement> rejectedElements = new ArrayList<>();
+    // Why the element just started is to be left out, null if it is not
+    private String rejection;
+    // Text of a checked leaf whose start tag the caller is on, null otherwise
+    private String pendingText;
+    private Location pendingLocation;
+    // Unique top level elements read so far, null unless they are recorded
+    private List<TopLevelElement> topLevelElements;
+    // Schema and start of the open top level element, while they are recorded
+    private SchemaChild topLevelSchema;
+    private int topLevelLine;
+    private int topLevelColumn;
+
+    /**
+     * An element left out for a failure the YANG parser would raise on it, located where
+     * the parser would: a leaf with an invalid value at its end tag, an element the schema
+     * does not allow at its start tag.
+     */
+    static class RejectedElement {
+        final int line;
+        final int column;
+        final String xpath;
+        final int elementNumber;
+        final String message;
+
+        RejectedElement(int line, int column, String xpath, int elementNumber, String message) {
+            this.line = line;
+            this.column = column;
+            this.xpath = xpath;
+            this.elementNumber = elementNumber;
+            this.message = message;
+        }
+    }
+
+    static class FixedLocation implements Location {
+        private final int line;
+        private final int column;
+        private final int characterOffset;
+        private final String publicId;
+        private final String systemId;
+
+        FixedLocation(Location location) {
+            this.line = location.getLineNumber();
+            this.column = location.getColumnNumber();
+            this.characterOffset = location.getCharacterOffset();
+            this.publicId = location.getPublicId();
+            this.systemId = location.getSystemId();
+        }
+
+        @Override
+        public int getLineNumber() {
+            return line;
+        }
+
+        @Override
+        public int getColumnNumber() {
+            return column;
+        }
+
+        @Override
+        public int getCharacterOffset() {
+            return characterOffset;
+        }
+
+        @Override
+        public String getPublicId() {
+            return publicId;
+        }
+
+        @Override
+        public String getSystemId() {
+            return systemId;
+        }
+    }
+
+    /**
+     * Decides from their digests which elements at some depth to leave out, see
+     * {@link #setSubtreeFilter}.
+     */
+    interface SubtreeFilter {
+        /**
+         * @param parentXPath   XPath of the element's parent
+         * @param digest        digest of the element and its subtree
+         * @param elementNumber document order number of the element
+         * @return true to leave the element out
+         */
+        boolean skip(String parentXPath, HashCode digest, int elementNumber);
+
+        /**
+         * Called at the end of each element offered to {@link #skip} that was read, with its XPath.
+         */
+        void ended(String xpath);
+    }
+
+    /**
+     * A top level element that must be unique in the document, with the failure the YANG
+     * parser raises on a second one.
+     */
+    static class TopLevelElement {
+        final int line;
+        final int column;
+        final String xpath;
+        final String duplicateMessage;
+
+        TopLevelElement(int line, int column, String xpath, String duplicateMessage) {
+            this.line = line;
+            this.column = column;
+            this.xpath = xpath;
+            this.duplicateMessage = duplicateMessage;
+        }
+    }
+
+    /**
+     * What the tracker needs to know about the schema node of an element.
+     */
+    private static class SchemaChild {
+        final String namespace;
+        final DataSchemaNode node;
+        // Schema of the children, null if the element has none
+        final DataNodeContainer container;
+        // Key leaf names of a keyed list, null otherwise
+        final String[] keys;
+        // Entries of keyless lists and leaf-lists, always indexed by position
+        final boolean positional;
+        // Lists and leaf-lists, whose element may be repeated
+        final boolean repeatable;
+        final Map<String, SchemaChild> children = new HashMap<>();
+        // Check of a leaf or leaf-list value, null if none
+        LeafConstraintPlan.LeafChecker checker;
+
+        SchemaChild(String namespace, Object node) {
+            this.namespace = namespace;
+            this.node = node instanceof DataSchemaNode ? (DataSchemaNode) node : null;
+            this.container = node instanceof DataNodeContainer ? (DataNodeContainer) node : null;
+            if (node instanceof ListSchemaNode list && !list.getKeyDefinition().isEmpty()) {
+                keys = list.getKeyDefinition().stream().map(key -> key.getLocalName()).toArray(String[]::new);
+            } else {
+                keys = null;
+            }
+            positional = (node instanceof ListSchemaNode && keys == null) || node instanceof LeafListSchemaNode;
+            repeatable = node instanceof ListSchemaNode || node instanceof LeafListSchemaNode;
+        }
+
+        /**
+         * The node as the YANG parser names it in its messages.
+         */
+        String describe() {
+            return node != null ? node.getQName().toString() : "(root)";
+        }
+    }
+
+    private static class ElementFrame {
+        int pathLength;
+        // Ordinal in the location index, -1 if locations are not recorded or the element is closed
+        int ordinal;
+        int elementNumber;
         int index;
-        boolean hasMultipleOccurrences;
-        
-        ElementInfo(String name, int index, boolean hasMultipleOccurrences) {
-            this.name = name;
+        // Schema of the element, null if unknown
+        SchemaChild schema;
+        // Keys of a list entry whose predicate is still being read, null otherwise
+        String[] pendingKeys;
+        int keysRead;
+        // Set on a key leaf of a list entry, collecting its value
+        boolean keyLeaf;
+        StringBuilder keyValue = new StringBuilder();
+        LeafConstraintPlan.LeafChecker checker;
+        // Offered to the subtree filter and read
+        boolean filtered;
+        // Occurrences of each child name seen so far, searched linearly as elements rarely
+        // have many distinct child names. Woodstox interns names, so == usually matches.
+        String[] childNames = new String[8];
+        int[] childCounts = new int[8];
+        int childNameCount;
+        // Children seen so far that may only occur once, when elements are checked
+        SchemaChild[] singleChildren = new SchemaChild[8];
+        int singleChildCount;
+
+        void reset(int pathLength, int ordinal, int elementNumber, int index) {
+            this.pathLength = pathLength;
+            this.ordinal = ordinal;
+            this.elementNumber = elementNumber;
             this.index = index;
-            this.hasMultipleOccurrences = hasMultipleOccurrences;
+            this.childNameCount = 0;
+            this.singleChildCount = 0;
+            this.schema = null;
+            this.pendingKeys = null;
+            this.keysRead = 0;
+            this.keyLeaf = false;
+            this.keyValue.setLength(0);
+            this.checker = null;
+            this.filtered = false;
+        }
+
+        int nextIndex(String childName) {
+            for (int i = 0; i < childNameCount; i++) {
+                String name = childNames[i];
+                if (name == childName || name.equals(childName)) {
+                    return childCounts[i]++;
+                }
+            }
+            if (childNameCount == childNames.length) {
+                childNames = Arrays.copyOf(childNames, childNameCount * 2);
+                childCounts = Arrays.copyOf(childCounts, childNameCount * 2);
+            }
+            childNames[childNameCount] = childName;
+            childCounts[childNameCount++] = 1;
+            return 0;
+        }
+
+        /**
+         * Records a child that may only occur once.
+         *
+         * @return false if it occurred before
+         */
+        boolean addSingleChild(SchemaChild child) {
+            for (int i = 0; i < singleChildCount; i++) {
+                if (singleChildren[i] == child) {
+                    return false;
+                }
+            }
+            if (singleChildCount == singleChildren.length) {
+                singleChildren = Arrays.copyOf(singleChildren, singleChildCount * 2);
+            }
+            singleChildren[singleChildCount++] = child;
+            return true;
         }
     }
 
     public XPathXMLStreamReader(XMLStreamReader delegate) {
+        this(delegate, true);
+    }
+
+    /**
+     * @param recordLocations when false only the current position is tracked and no
+     *                        per-element index is kept, e.g. when this reader is handed
+     *                        directly to the YANG parser in a single pass
+     */
+    public XPathXMLStreamReader(XMLStreamReader delegate, boolean recordLocations) {
+        this(delegate, recordLocations, null);
+    }
+
+    /**
+     * @param schemaContext schema the document is read against, or null to track paths
+     *                      from element names only. A synthetic
+     *                      {@link RootElementXMLStreamReader root element} is recognized.
+     */
+    public XPathXMLStreamReader(XMLStreamReader delegate, boolean recordLocations,
+                                EffectiveModelContext schemaContext) {
+        this(delegate, recordLocations ? new HeapXPathLocationIndex() : null, schemaContext);
+    }
+
+    /**
+     * @param locationIndex where the location of every element is recorded, or null to
+     *                      only track the current position
+     */
+    public XPathXMLStreamReader(XMLStreamReader delegate, XPathLocationIndex locationIndex,
+                                EffectiveModelContext schemaContext) {
         this.delegate = delegate;
-        // Initialize with root level element count map
-        elementCountStack.push(new HashMap<>());
+        this.locationIndex = locationIndex;
+        this.schemaContext = schemaContext;
+        frames[0] = new ElementFrame();
+        frames[0].reset(0, -1, -1, 0);
+        frames[0].schema = schemaContext == null ? null : new SchemaChild(null, schemaContext);
+    }
+
+    /**
+     * Forgets the document read so far, so the next one can be read once the delegate has
+     * been reset to it. Frames, the path buffer and the namespaces and schema nodes resolved
+     * so far are kept; skipped elements, the deadline and the leaf constraints are cleared.
+     *
+     * @throws IllegalStateException if this reader records locations, which cannot be taken back
+     */
+    public void reset() {
+        if (locationIndex != null) {
+            throw new IllegalStateException("A reader recording locations cannot be reset");
+        }
+        depth = 0;
+        pathLength = 0;
+        lastElementLength = 0;
+        lastElementPath = null;
+        elementCount = 0;
+        lastElementNumber = -1;
+        lastKeyedEntryNumber = -1;
+        skippedElements = null;
+        subtreeFilter = null;
+        filtered = false;
+        hasDeadline = false;
+        maxDepth = Integer.MAX_VALUE;
+        maxElements = Long.MAX_VALUE;
+        constraintPlan = null;
+        maxRejectedElements = 0;
+        rejectedElements.clear();
+        rejection = null;
+        pendingText = null;
+        pendingLocation = null;
+        topLevelElements = null;
+        topLevelSchema = null;
+        SchemaChild rootSchema = frames[0].schema;
+        frames[0].reset(0, -1, -1, 0);
+        frames[0].schema = rootSchema;
+    }
+
+    /**
+     * Elements to leave out, identified by {@link #getLastElementNumber()} of an earlier read
+     * of the same document. A skipped element and its subtree are consumed from the delegate
+     * without being reported, but still count towards the indices of their siblings.
+     */
+    public void setSkippedElements(BitSet skippedElements) {
+        this.skippedElements = skippedElements;
+    }
+
+    /**
+     * Offers each element at the given depth below the document, whose parent's XPath is
+     * complete, to the filter with the digest of its subtree, and leaves it out the way
+     * skipped elements are if the filter says so. The subtree is digested as it is read
+     * ahead by the delegate, which has to be a {@link SubtreeDigestingXMLStreamReader}.
+     */
+    void setSubtreeFilter(int depth, SubtreeFilter filter) {
+        if (!(delegate instanceof SubtreeDigestingXMLStreamReader)) {
+            throw new IllegalStateException("Subtrees are only digested by a SubtreeDigestingXMLStreamReader");
+        }
+        this.filterDepth = depth;
+        this.subtreeFilter = filter;
+    }
+
+    /**
+     * Makes reading fail with a {@link ValidationTimeoutException} once {@link System#nanoTime()}
+     * has passed the deadline. The clock is read every few elements, so the deadline can be
+     * overrun by the time it takes to read that many elements.
+     */
+    public void setDeadline(long deadlineNanos) {
+        this.hasDeadline = true;
+        this.deadline = deadlineNanos;
+    }
+
+    /**
+     * Makes reading fail with a {@link DepthLimitExceededException} at the start of an element
+     * nested deeper than maxDepth below the synthetic root element, once its XPath is known.
+     */
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Makes reading fail with an {@link ElementCountExceededException} at the start of the
+     * first element past maxElements, not counting the synthetic root element, once its XPath
+     * is known.
+     */
+    public void setMaxElements(long maxElements) {
+        this.maxElements = maxElements;
+    }
+
+    /**
+     * Checks elements against the schema and leaf values with the codecs of the plan as they
+     * are read, before the caller gets to them. A leaf is read ahead when its start tag is
+     * reached; if its value is valid the reader stays on the start tag and hands the text out
+     * from {@link #getElementText()}, for the caller to decode again. Nothing is read ahead
+     * with a maxRejectedElements of 0. Up to maxRejectedElements leaves with an invalid value,
+     * elements the schema does not define and repeated elements that may only occur once
+     * are recorded in {@link #getRejectedElements()} and left out, the way skipped elements
+     * are, so a caller collecting several errors does not have to read the document again
+     * for each of them. Failures after those are passed on for the caller to reject. Leaves
+     * with attributes are not read ahead.
+     */
+    public void setLeafConstraints(LeafConstraintPlan plan, int maxRejectedElements) {
+        this.constraintPlan = plan;
+        this.maxRejectedElements = maxRejectedElements;
     }
 
-    public Map<String, String> getXpathMap() {
-        return xpathMap;
+    /**
+     * Records the top level elements that must be unique in the document, keyed list entries
+     * and elements that may only occur once, into the list as they end, so that a document
+     * read in parts can be checked for ones repeated in different parts. Elements left out
+     * are not recorded. Top level means below the synthetic root of a
+     * {@link RootElementXMLStreamReader}.
+     */
+    void recordTopLevelElements(List<TopLevelElement> elements) {
+        this.topLevelElements = elements;
+    }
+
+    /**
+     * Elements left out by the checks of {@link #setLeafConstraints}, in document order.
+     */
+    List<RejectedElement> getRejectedElements() {
+        return rejectedElements;
+    }
+
+    /**
+     * Location and XPath of every element read so far, or null if locations are not recorded.
+     * XPath indices reflect every sibling read so far.
+     */
+    public XPathLocationIndex getLocationIndex() {
+        return locationIndex;
+    }
+
+    /**
+     * XPath of the element the reader is currently inside of.
+     */
+    public String getCurrentXPath() {
+        return pathToString(pathLength);
+    }
+
+    /**
+     * XPath of the element most recently started or ended. After a leaf has been read
+     * with {@link #getElementText()} this is still the leaf, which is what a failure
+     * raised while decoding its value refers to.
+     */
+    public String getLastElementXPath() {
+        // Truncating only moves pathLength, so the closed element's path is still in the buffer
+        // unless a key predicate has been written over it
+        return lastElementPath != null ? lastElementPath : pathToString(lastElementLength);
+    }
+
+    /**
+     * Document order number of the element {@link #getLastElementXPath()} refers to, -1 before
+     * the first element. The root element is 0.
+     */
+    public int getLastElementNumber() {
+        return lastElementNumber;
+    }
+
+    /**
+     * Document order number of the element to skip for a failure at the last element: the
+     * list entry if the last element is one of its keys, as an entry missing a key cannot be
+     * read, otherwise the last element itself.
+     */
+    public int getFailedElementNumber() {
+        return lastKeyedEntryNumber >= 0 ? lastKeyedEntryNumber : lastElementNumber;
+    }
+
+    /**
+     * Number of elements read so far, including skipped ones.
+     */
+    public int getElementCount() {
+        return elementCount;
     }
 
     @Override
@@ -50,24 +514,50 @@ public class XPathXMLStreamReader implements XMLStreamReader {
 
     @Override
     public int next() throws XMLStreamException {
-        int result = delegate.next();
-        updateXPath(result);
-        return result;
+        if (pendingText != null) {
+            // The delegate is on the end tag already; the text is not reported separately
+            getElementText();
+            return XMLStreamConstants.END_ELEMENT;
+        }
+        return track(delegate.next(), false);
     }
 
     @Override
     public void require(int type, String namespaceURI, String localName) throws XMLStreamException {
+        if (pendingText != null) {
+            if (type != XMLStreamConstants.START_ELEMENT) {
+                throw new XMLStreamException("Expected event " + type + " but the current event is START_ELEMENT",
+                        pendingLocation);
+            }
+            return;
+        }
         delegate.require(type, namespaceURI, localName);
     }
 
     @Override
     public String getElementText() throws XMLStreamException {
-        return delegate.getElementText();
+        String text;
+        if (pendingText != null) {
+            text = pendingText;
+            pendingText = null;
+        } else {
+            text = delegate.getElementText();
+        }
+        if (frames[depth].keyLeaf) {
+            frames[depth].keyValue.append(text);
+        }
+        // The delegate has consumed everything up to and including the END_ELEMENT
+        updateXPath(XMLStreamConstants.END_ELEMENT);
+        return text;
     }
 
     @Override
     public int nextTag() throws XMLStreamException {
-        return delegate.nextTag();
+        if (pendingText != null) {
+            getElementText();
+            return XMLStreamConstants.END_ELEMENT;
+        }
+        return track(delegate.nextTag(), true);
     }
 
     @Override
@@ -87,32 +577,33 @@ public class XPathXMLStreamReader implements XMLStreamReader {
 
     @Override
     public boolean isStartElement() {
-        return delegate.isStartElement();
+        return pendingText != null || delegate.isStartElement();
     }
 
     @Override
     public boolean isEndElement() {
-        return delegate.isEndElement();
+        return pendingText == null && delegate.isEndElement();
     }
 
     @Override
     public boolean isCharacters() {
-        return delegate.isCharacters();
+        return pendingText == null && delegate.isCharacters();
     }
 
     @Override
     public boolean isWhiteSpace() {
-        return delegate.isWhiteSpace();
+        return pendingText == null && delegate.isWhiteSpace();
     }
 
     @Override
     public String getAttributeValue(String namespaceURI, String localName) {
-        return delegate.getAttributeValue(namespaceURI, localName);
+        // Leaves with attributes are not read ahead
+        return pendingText != null ? null : delegate.getAttributeValue(namespaceURI, localName);
     }
 
     @Override
     public int getAttributeCount() {
-        return delegate.getAttributeCount();
+        return pendingText != null ? 0 : delegate.getAttributeCount();
     }
 
     @Override
@@ -172,7 +663,7 @@ public class XPathXMLStreamReader implements XMLStreamReader {
 
     @Override
     public int getEventType() {
-        return delegate.getEventType();
+        return pendingText != null ? XMLStreamConstants.START_ELEMENT : delegate.getEventType();
     }
 
     @Override
@@ -207,12 +698,12 @@ public class XPathXMLStreamReader implements XMLStreamReader {
 
     @Override
     public boolean hasText() {
-        return delegate.hasText();
+        return pendingText == null && delegate.hasText();
     }
 
     @Override
     public Location getLocation() {
-        return delegate.getLocation();
+        return pendingText != null ? pendingLocation : delegate.getLocation();
     }
 
     @Override
@@ -270,108 +761,405 @@ public class XPathXMLStreamReader implements XMLStreamReader {
         return delegate.getPIData();
     }
 
+    private int track(int event, boolean tagsOnly) throws XMLStreamException {
+        while (true) {
+            if (hasDeadline && event == XMLStreamConstants.START_ELEMENT
+                    && (elementCount & (DEADLINE_CHECK_INTERVAL - 1)) == 0 && System.nanoTime() - deadline > 0) {
+                throw new ValidationTimeoutException("Validation timed out");
+            }
+            while (event == XMLStreamConstants.START_ELEMENT && (skippedElements != null
+                    && skippedElements.get(elementCount) || filterSubtree())) {
+                skipElement();
+                event = tagsOnly ? delegate.nextTag() : delegate.next();
+            }
+            updateXPath(event);
+            if (event == XMLStreamConstants.START_ELEMENT && depth - 1 > maxDepth) {
+                throw new DepthLimitExceededException(maxDepth);
+            }
+            if (event == XMLStreamConstants.START_ELEMENT && elementCount - 1 > maxElements) {
+                throw new ElementCountExceededException(maxElements);
+            }
+            if (event != XMLStreamConstants.START_ELEMENT || !(rejectElement() || checkLeaf())) {
+                return event;
+            }
+            // The element was rejected and has been consumed
+            event = tagsOnly ? delegate.nextTag() : delegate.next();
+        }
+    }
+
+    /**
+     * Reads the value of the leaf just started ahead of the caller and checks it.
+     *
+     * @return true if the value was invalid, in which case the leaf has been recorded and
+     * consumed, false if the reader is still on the start tag
+     */
+    private boolean checkLeaf() throws XMLStreamException {
+        ElementFrame frame = frames[depth];
+        // Keys are left to the caller: leaving out an invalid one would leave its entry
+        // without a key, a failure of its own, so the whole entry has to be skipped instead
+        if (frame.checker == null || frame.keyLeaf || rejectedElements.size() >= maxRejectedElements
+                || delegate.getAttributeCount() > 0) {
+            return false;
+        }
+        Location start = new FixedLocation(delegate.getLocation());
+        String text = delegate.getElementText();
+        String message = frame.checker.check(text, delegate.getNamespaceContext());
+        if (message == null) {
+            pendingText = text;
+            pendingLocation = start;
+            return false;
+        }
+        Location end = delegate.getLocation();
+        rejectedElements.add(new RejectedElement(end.getLineNumber(), end.getColumnNumber(),
+                pathToString(frame.pathLength), frame.elementNumber, message));
+        if (depth == 2) {
+            topLevelSchema = null;
+        }
+        endElement();
+        return true;
+    }
+
+    /**
+     * Leaves out the element just started if the schema does not allow it there.
+     *
+     * @return true if it was recorded and consumed with its subtree
+     */
+    private boolean rejectElement() throws XMLStreamException {
+        if (rejection == null || rejectedElements.size() >= maxRejectedElements) {
+            return false;
+        }
+        ElementFrame frame = frames[depth];
+        Location start = delegate.getLocation();
+        rejectedElements.add(new RejectedElement(start.getLineNumber(), start.getColumnNumber(),
+                pathToString(frame.pathLength), frame.elementNumber, rejection));
+        rejection = null;
+        if (depth == 2) {
+            topLevelSchema = null;
+        }
+        for (int level = 1; level > 0; ) {
+            int event = delegate.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                elementCount++;
+                level++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                level--;
+            }
+        }
+        frame.keyLeaf = false;
+        endElement();
+        return true;
+    }
+
+    /**
+     * Offers the element just started to the subtree filter if it is at its depth.
+     *
+     * @return true if the filter leaves it out
+     */
+    private boolean filterSubtree() throws XMLStreamException {
+        ElementFrame parent = frames[depth];
+        if (subtreeFilter == null || depth != filterDepth - 1 || parent.pendingKeys != null) {
+            return false;
+        }
+        HashCode digest = ((SubtreeDigestingXMLStreamReader) delegate).digestSubtree();
+        if (subtreeFilter.skip(pathToString(parent.pathLength), digest, elementCount)) {
+            return true;
+        }
+        filtered = true;
+        return false;
+    }
+
+    private void skipElement() throws XMLStreamException {
+        ElementFrame parent = frames[depth];
+        String elementName = delegate.getLocalName();
+        int index = parent.nextIndex(elementName);
+        if (locationIndex != null) {
+            locationIndex.skipElement(parent.ordinal, elementName, index);
+        }
+        elementCount++;
+        for (int level = 1; level > 0; ) {
+            int event = delegate.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                elementCount++;
+                level++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                level--;
+            }
+        }
+    }
+
     private void updateXPath(int event) {
         switch (event) {
             case XMLStreamConstants.START_ELEMENT:
-                String elementName = delegate.getLocalName();
-                
-                // Get current level element counts
-                Map<String, Integer> currentCounts = elementCountStack.peek();
-                
-                // Update count for this element
-                int count = currentCounts.getOrDefault(elementName, 0);
-                currentCounts.put(elementName, count + 1);
-                
-                // If this is the second occurrence, we need to retroactively update previous entries
-                if (count == 1) {
-                    // This is the second occurrence, so now we know there are multiple
-                    updatePreviousXPathsForElement(elementName);
-                }
-                
-                // Determine if this element has multiple occurrences
-                boolean hasMultiple = count > 0; // If count > 0, we've seen this element before
-                
-                // Push element info to the stack
-                elementStack.push(new ElementInfo(elementName, count, hasMultiple));
-                
-                // Create new level for child elements
-                elementCountStack.push(new HashMap<>());
+                startElement(delegate.getLocalName());
                 break;
-                
+
             case XMLStreamConstants.END_ELEMENT:
-                if (!elementStack.isEmpty()) {
-                    elementStack.pop();
-                    elementCountStack.pop();
+                endElement();
+                break;
+
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+                if (frames[depth].keyLeaf) {
+                    frames[depth].keyValue.append(delegate.getTextCharacters(),
+                            delegate.getTextStart(), delegate.getTextLength());
                 }
                 break;
         }
-        buildXPath();
-        
-        // Create a unique key: lineNumber + elementCounter + elementName (for START_ELEMENT only)
-        if (event == XMLStreamConstants.START_ELEMENT) {
-            elementCounter++;
-            String elementName = delegate.getLocalName();
-            Integer lineNumber = delegate.getLocation().getLineNumber();
-            String uniqueKey = lineNumber + ":" + elementCounter + ":" + elementName;
-            xpathMap.put(uniqueKey, currentXPath);
-        }
-    }
-    
-    private void updatePreviousXPathsForElement(String elementName) {
-        // When we encounter the second occurrence of an element, 
-        // retroactively update all previous XPath entries to add [0] to the first occurrence
-        String currentPath = getCurrentPathWithoutIndices();
-        
-        for (Map.Entry<String, String> entry : xpathMap.entrySet()) {
-            String xpath = entry.getValue();
-            if (xpath.contains(currentPath + elementName)) {
-                // Check if this xpath refers to the first occurrence (without index)
-                String pattern = currentPath + elementName;
-                if (xpath.equals(pattern) || xpath.startsWith(pattern + "/")) {
-                    // Replace the element name with element name + [0]
-                    String updatedXPath = xpath.replace(pattern, pattern + "[0]");
-                    xpathMap.put(entry.getKey(), updatedXPath);
-                }
+    }
+
+    private void startElement(String elementName) {
+        ElementFrame parent = frames[depth];
+        int index = parent.nextIndex(elementName);
+
+        SchemaChild schema = resolveChild(parent.schema, elementName);
+        rejection = constraintPlan != null && depth > 0 && parent.schema != null && parent.schema.container != null
+                ? checkAllowed(parent, schema, elementName) : null;
+        boolean keyLeaf = parent.pendingKeys != null && isKey(parent.pendingKeys, elementName);
+        if (parent.pendingKeys != null && !keyLeaf) {
+            // Keys come first, anything else means the entry is missing some
+            completeListPredicate(parent);
+        }
+        String[] keys = schema == null ? null : schema.keys;
+        boolean indexed = schema != null && schema.positional || (index > 0 && keys == null);
+
+        pathLength = parent.pathLength;
+        appendToPath('/');
+        appendToPath(elementName);
+        if (indexed) {
+            appendToPath('[');
+            appendIndexToPath(index);
+            appendToPath(']');
+        }
+        lastElementLength = pathLength;
+        lastElementPath = null;
+        lastElementNumber = elementCount++;
+        lastKeyedEntryNumber = -1;
+
+        if (depth == 1 && topLevelElements != null) {
+            Location location = delegate.getLocation();
+            topLevelSchema = schema;
+            topLevelLine = location.getLineNumber();
+            topLevelColumn = location.getColumnNumber();
+        }
+
+        int ordinal = -1;
+        if (locationIndex != null) {
+            Location location = delegate.getLocation();
+            ordinal = locationIndex.startElement(parent.ordinal, elementName, index,
+                    location.getLineNumber(), location.getColumnNumber());
+        }
+
+        if (++depth == frames.length) {
+            frames = Arrays.copyOf(frames, depth * 2);
+        }
+        ElementFrame frame = frames[depth];
+        if (frame == null) {
+            frame = new ElementFrame();
+            frames[depth] = frame;
+        }
+        frame.reset(pathLength, ordinal, lastElementNumber, index);
+        if (schema != null && schema.container != null) {
+            frame.schema = schema;
+        } else if (schema == null && depth == 1 && schemaContext != null
+                && elementName.equals(RootElementXMLStreamReader.ROOT_ELEMENT)) {
+            frame.schema = frames[0].schema;
+        }
+        frame.pendingKeys = keys;
+        frame.keyLeaf = keyLeaf;
+        frame.checker = schema == null ? null : schema.checker;
+        frame.filtered = filtered;
+        filtered = false;
+        if (ordinal >= 0 && indexed) {
+            locationIndex.setPositional(ordinal);
+        }
+    }
+
+    /**
+     * Looks up the schema of a child element, remembering it in the parent for the next
+     * element of the same name.
+     */
+    private SchemaChild resolveChild(SchemaChild parent, String elementName) {
+        if (parent == null || parent.container == null) {
+            return null;
+        }
+        String namespace = delegate.getNamespaceURI();
+        if (namespace == null || namespace.isEmpty()) {
+            return null;
+        }
+        SchemaChild child = parent.children.get(elementName);
+        if (child != null && namespace.equals(child.namespace)) {
+            return child.node == null ? null : child;
+        }
+        QNameModule module = modulesByNamespace.computeIfAbsent(namespace, ns -> {
+            Iterator<ModuleEffectiveStatement> modules =
+                    schemaContext.findModuleStatements(XMLNamespace.of(ns)).iterator();
+            return modules.hasNext() ? modules.next().localQNameModule() : null;
+        });
+        DataSchemaNode node = module == null ? null : parent.container.findDataTreeChild(
+                org.opendaylight.yangtools.yang.common.QName.create(module, elementName)).orElse(null);
+        SchemaChild resolved = new SchemaChild(namespace, node);
+        if (constraintPlan != null && node != null) {
+            resolved.checker = constraintPlan.getChecker(node);
+        }
+        if (child == null) {
+            // An element of the same name from another namespace is looked up every time
+            parent.children.put(elementName, resolved);
+        }
+        return node == null ? null : resolved;
+    }
+
+    /**
+     * @return the failure the YANG parser raises for the element, with its message, or null
+     * if the schema allows it under the parent
+     */
+    private String checkAllowed(ElementFrame parent, SchemaChild schema, String elementName) {
+        if (schema == null) {
+            String namespace = delegate.getNamespaceURI();
+            // Without a namespace the element is left for the parser to reject
+            return namespace == null || namespace.isEmpty() ? null : "Schema for node with name " + elementName
+                    + " and namespace " + namespace + " does not exist in parent " + parent.schema.describe();
+        }
+        if (!schema.repeatable && !parent.addSingleChild(schema)) {
+            return "Duplicate element \"" + elementName + "\" in namespace \"" + schema.namespace
+                    + "\" with parent \"" + parent.schema.describe() + "\" in XML input";
+        }
+        return null;
+    }
+
+    private static boolean isKey(String[] keys, String elementName) {
+        for (String key : keys) {
+            if (key.equals(elementName)) {
+                return true;
             }
         }
+        return false;
     }
-    
-    private String getCurrentPathWithoutIndices() {
-        if (elementStack.isEmpty()) {
-            return "/";
-        } else {
-            StringBuilder xpath = new StringBuilder("/");
-            for (int i = 0; i < elementStack.size(); i++) {
-                if (i > 0) {
-                    xpath.append("/");
-                }
-                ElementInfo element = elementStack.get(i);
-                xpath.append(element.name);
-                // Don't add indices here, we want the raw path
+
+    /**
+     * Appends the value of a key leaf that just ended to its list entry, e.g. [name='eth0'].
+     * The path is at the end of the entry's segment at this point.
+     */
+    private void appendKeyPredicate(ElementFrame entry, String keyName, CharSequence value) {
+        int start = pathLength;
+        char quote = value.toString().indexOf('\'') < 0 ? '\'' : '"';
+        appendToPath('[');
+        appendToPath(keyName);
+        appendToPath('=');
+        appendToPath(quote);
+        appendToPath(value.toString());
+        appendToPath(quote);
+        appendToPath(']');
+        entry.pathLength = pathLength;
+        if (entry.ordinal >= 0) {
+            locationIndex.appendPredicate(entry.ordinal, new String(pathBuffer, start, pathLength - start));
+        }
+        if (++entry.keysRead == entry.pendingKeys.length) {
+            entry.pendingKeys = null;
+        }
+    }
+
+    /**
+     * Ends the predicate of a list entry whose keys were not all present, falling back to
+     * its position if none was.
+     */
+    private void completeListPredicate(ElementFrame entry) {
+        if (entry.keysRead == 0) {
+            pathLength = entry.pathLength;
+            appendToPath('[');
+            appendIndexToPath(entry.index);
+            appendToPath(']');
+            entry.pathLength = pathLength;
+            if (entry.ordinal >= 0) {
+                locationIndex.setPositional(entry.ordinal);
             }
-            return xpath.toString() + "/";
         }
+        entry.pendingKeys = null;
     }
 
-    private void buildXPath() {
-        if (elementStack.isEmpty()) {
-            currentXPath = "/";
+    private void endElement() {
+        if (depth == 0) {
+            return;
+        }
+        ElementFrame frame = frames[depth];
+        if (frame.pendingKeys != null) {
+            pathLength = frame.pathLength;
+            completeListPredicate(frame);
+        }
+        if (frame.ordinal >= 0) {
+            Location location = delegate.getLocation();
+            locationIndex.endElement(frame.ordinal, location.getLineNumber(), location.getColumnNumber());
+            frame.ordinal = -1;
+        }
+        lastElementLength = frame.pathLength;
+        lastElementPath = null;
+        lastElementNumber = frame.elementNumber;
+        lastKeyedEntryNumber = frame.keyLeaf ? frames[depth - 1].elementNumber : -1;
+        if (depth == 2 && topLevelSchema != null) {
+            recordTopLevelElement(frame);
+        }
+        if (frame.filtered) {
+            subtreeFilter.ended(pathToString(frame.pathLength));
+        }
+        ElementFrame parent = frames[--depth];
+        pathLength = parent.pathLength;
+        if (frame.keyLeaf && parent.pendingKeys != null) {
+            // The predicate goes where the key leaf's segment is
+            lastElementPath = pathToString(lastElementLength);
+            appendKeyPredicate(parent, delegate.getLocalName(), frame.keyValue);
+        }
+    }
+
+    private void recordTopLevelElement(ElementFrame frame) {
+        SchemaChild schema = topLevelSchema;
+        topLevelSchema = null;
+        String message;
+        if (schema.keys != null && frame.keysRead == schema.keys.length) {
+            // The entry's step with its key predicates, e.g. iface[name='eth0']
+            int stepStart = frames[1].pathLength + 1;
+            message = "Duplicate entry in list " + schema.node.getQName() + ": "
+                    + new String(pathBuffer, stepStart, frame.pathLength - stepStart);
+        } else if (!schema.repeatable) {
+            message = "Duplicate element \"" + schema.node.getQName().getLocalName() + "\" in namespace \""
+                    + schema.namespace + "\" with parent \"" + frames[1].schema.describe() + "\" in XML input";
         } else {
-            StringBuilder xpath = new StringBuilder("/");
-            for (int i = 0; i < elementStack.size(); i++) {
-                if (i > 0) {
-                    xpath.append("/");
-                }
-                ElementInfo element = elementStack.get(i);
-                xpath.append(element.name);
-                
-                // Add index if this element has multiple occurrences OR if it's the current element being processed
-                // and we know it will have siblings (count > 0)
-                if (element.hasMultipleOccurrences || element.index > 0) {
-                    xpath.append("[").append(element.index).append("]");
-                }
-            }
-            currentXPath = xpath.toString();
+            return;
+        }
+        topLevelElements.add(new TopLevelElement(topLevelLine, topLevelColumn, pathToString(frame.pathLength),
+                message));
+    }
+
+    private void appendToPath(char c) {
+        ensurePathCapacity(1);
+        pathBuffer[pathLength++] = c;
+    }
+
+    private void appendToPath(String text) {
+        int length = text.length();
+        ensurePathCapacity(length);
+        text.getChars(0, length, pathBuffer, pathLength);
+        pathLength += length;
+    }
+
+    private void appendIndexToPath(int index) {
+        int digits = 1;
+        for (int n = index; n >= 10; n /= 10) {
+            digits++;
+        }
+        ensurePathCapacity(digits);
+        for (int pos = pathLength + digits - 1; pos >= pathLength; pos--) {
+            pathBuffer[pos] = (char) ('0' + index % 10);
+            index /= 10;
         }
+        pathLength += digits;
+    }
+
+    private void ensurePathCapacity(int extra) {
+        if (pathLength + extra > pathBuffer.length) {
+            pathBuffer = Arrays.copyOf(pathBuffer, Math.max(pathBuffer.length * 2, pathLength + extra));
+        }
+    }
+
+    private String pathToString(int length) {
+        return length == 0 ? "/" : new String(pathBuffer, 0, length);
     }
 }
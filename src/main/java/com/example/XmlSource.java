@@ -0,0 +1,136 @@
+package com.example;
+
+import com.google.common.io.ByteSource;
+import com.google.common.io.CharSource;
+import com.google.common.io.MoreFiles;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+/**
+ * Document to validate, read as a stream rather than loaded into memory.
+ * All sources except plain input streams can be read more than once, which collecting
+ * errors past a failure only the YANG parser finds relies on.
+ */
+public interface XmlSource {
+
+    XMLStreamReader createReader(XMLInputFactory factory) throws IOException, XMLStreamException;
+
+    /**
+     * Creates a reader that fails once the document turns out to be larger than maxSize
+     * bytes. Documents given as characters are left to the factory's own limit.
+     */
+    default XMLStreamReader createReader(XMLInputFactory factory, long maxSize)
+            throws IOException, XMLStreamException {
+        return createReader(factory);
+    }
+
+    default boolean isRepeatable() {
+        return true;
+    }
+
+    /**
+     * Raw bytes of the document, e.g. to digest it without parsing, or null if the source
+     * can only be read once.
+     */
+    default ByteSource asByteSource() {
+        return null;
+    }
+
+    static XmlSource of(String xmlText) {
+        return new XmlSource() {
+            @Override
+            public XMLStreamReader createReader(XMLInputFactory factory) throws XMLStreamException {
+                return factory.createXMLStreamReader(new StringReader(xmlText));
+            }
+
+            @Override
+            public ByteSource asByteSource() {
+                // Encoded as it is read
+                return CharSource.wrap(xmlText).asByteSource(StandardCharsets.UTF_8);
+            }
+        };
+    }
+
+    static XmlSource of(byte[] xmlBytes) {
+        return of(ByteSource.wrap(xmlBytes));
+    }
+
+    static XmlSource of(Path path) {
+        return of(MoreFiles.asByteSource(path));
+    }
+
+    /**
+     * Reads the file through memory mapped windows, avoiding copies into the Java heap.
+     */
+    static XmlSource mapped(Path path) {
+        return of(new ByteSource() {
+            @Override
+            public InputStream openStream() throws IOException {
+                return new MappedFileInputStream(path);
+            }
+        });
+    }
+
+    static XmlSource of(ByteSource bytes) {
+        return new XmlSource() {
+            @Override
+            public XMLStreamReader createReader(XMLInputFactory factory) throws IOException, XMLStreamException {
+                return XmlSource.createReader(factory, bytes.openStream());
+            }
+
+            @Override
+            public XMLStreamReader createReader(XMLInputFactory factory, long maxSize)
+                    throws IOException, XMLStreamException {
+                return XmlSource.createReader(factory, limit(bytes.openStream(), maxSize));
+            }
+
+            @Override
+            public ByteSource asByteSource() {
+                return bytes;
+            }
+        };
+    }
+
+    /**
+     * A source that can only be read once.
+     */
+    static XmlSource of(InputStream inputStream) {
+        return new XmlSource() {
+            @Override
+            public XMLStreamReader createReader(XMLInputFactory factory) throws XMLStreamException {
+                return factory.createXMLStreamReader(inputStream);
+            }
+
+            @Override
+            public XMLStreamReader createReader(XMLInputFactory factory, long maxSize) throws XMLStreamException {
+                return factory.createXMLStreamReader(limit(inputStream, maxSize));
+            }
+
+            @Override
+            public boolean isRepeatable() {
+                return false;
+            }
+        };
+    }
+
+    private static InputStream limit(InputStream inputStream, long maxSize) {
+        return maxSize == Long.MAX_VALUE ? inputStream : new SizeLimitedInputStream(inputStream, maxSize);
+    }
+
+    private static XMLStreamReader createReader(XMLInputFactory factory, InputStream inputStream)
+            throws IOException, XMLStreamException {
+        try {
+            return factory.createXMLStreamReader(inputStream);
+        } catch (XMLStreamException | RuntimeException e) {
+            inputStream.close();
+            throw e;
+        }
+    }
+}
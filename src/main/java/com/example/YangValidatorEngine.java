@@ -0,0 +1,721 @@
+package com.example;
+
+import com.ctc.wstx.exc.WstxException;
+import com.ctc.wstx.exc.WstxLazyException;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.opendaylight.yangtools.yang.data.api.schema.NormalizedNode;
+import org.opendaylight.yangtools.yang.data.api.schema.stream.NormalizedNodeStreamWriter;
+import org.opendaylight.yangtools.yang.data.codec.xml.XmlParserStream;
+import org.opendaylight.yangtools.yang.data.impl.schema.ImmutableNormalizedNodeStreamWriter;
+import org.opendaylight.yangtools.yang.data.impl.schema.NormalizationResultHolder;
+import org.opendaylight.yangtools.yang.model.api.EffectiveModelContext;
+import org.opendaylight.yangtools.yang.model.api.Module;
+import org.opendaylight.yangtools.yang.parser.api.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.stream.Location;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Validates XML documents against YANG schemas.
+ * Compiled schemas are cached by a hash of their sources, so a schema is only assembled
+ * once and every later document is validated against the already built context.
+ * Documents are validated without building their data tree unless the schema has
+ * constraints on it, see {@link ValidatingNormalizedNodeStreamWriter}.
+ */
+public class YangValidatorEngine {
+    public static final int DEFAULT_MAX_CONTEXTS = 8;
+
+    private static final Logger LOG = LoggerFactory.getLogger(YangValidatorEngine.class);
+    private static final YangParserFactory PARSER_FACTORY;
+
+    static {
+        final var it = ServiceLoader.load(YangParserFactory.class).iterator();
+        if (!it.hasNext()) {
+            throw new IllegalStateException("No YangParserFactory found");
+        }
+        PARSER_FACTORY = it.next();
+    }
+
+    private final XMLInputFactory inputFactory = ValidationBudget.DEFAULT.getInputFactory();
+    private final Cache<String, EffectiveModelContext> contexts;
+    private final Map<String, String> fingerprintsByNamespace = new ConcurrentHashMap<>();
+    // Weak keys compare by identity, and do not keep evicted schemas alive
+    private final Cache<EffectiveModelContext, String> fingerprintsByContext = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+    private final Cache<EffectiveModelContext, LeafConstraintPlan> constraintPlans = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+    private final Cache<EffectiveModelContext, DataTreeConstraintPlan> dataTreePlans = CacheBuilder.newBuilder()
+            .weakKeys()
+            .build();
+    private final SchemaLoader schemaLoader = new SchemaLoader(PARSER_FACTORY,
+            Runtime.getRuntime().availableProcessors(), false);
+    private final ValidationMetrics metrics = ValidationMetrics.get();
+
+    public YangValidatorEngine() {
+        this(DEFAULT_MAX_CONTEXTS);
+    }
+
+    /**
+     * @param maxContexts number of compiled schemas kept, least recently used ones are evicted
+     */
+    public YangValidatorEngine(int maxContexts) {
+        this.contexts = CacheBuilder.newBuilder()
+                .maximumSize(maxContexts)
+                .build();
+    }
+
+    /**
+     * Returns the compiled schema for the given YANG files, assembling it only if no schema
+     * with the same source content is cached. The files are parsed in parallel, and if any
+     * fails to load, the exception lists every module that failed.
+     *
+     * @throws IllegalArgumentException if a module cannot be read, parsed or resolved
+     * @throws IllegalStateException    if the modules fail to assemble
+     */
+    public EffectiveModelContext loadSchema(List<Path> yangFiles) {
+        return loadSchema(yangFiles, null);
+    }
+
+    /**
+     * Like {@link #loadSchema(List)}, but takes the parsed sources from the snapshot file if
+     * it was written for the same YANG text, and otherwise parses the text and writes it.
+     *
+     * @param snapshotFile where the parsed sources are kept between runs, or null to always
+     *                     parse the YANG text
+     */
+    public EffectiveModelContext loadSchema(List<Path> yangFiles, Path snapshotFile) {
+        String fingerprint = fingerprint(yangFiles);
+        EffectiveModelContext context;
+        try {
+            context = contexts.get(fingerprint, () -> {
+                long start = System.nanoTime();
+                SchemaLoader.Result loaded = snapshotFile == null ? schemaLoader.load(yangFiles)
+                        : schemaLoader.assemble(loadSnapshot(snapshotFile, fingerprint, yangFiles).getSources(),
+                                List.of());
+                metrics.recordPhase(ValidationPhase.SCHEMA_BUILD, start);
+                return loaded.getContext();
+            });
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Failed to assemble SchemaContext", e.getCause());
+        }
+        for (Module module : context.getModules()) {
+            fingerprintsByNamespace.put(module.getNamespace().toString(), fingerprint);
+        }
+        fingerprintsByContext.put(context, fingerprint);
+        return context;
+    }
+
+    /**
+     * @return the fingerprint of the sources the schema was assembled from, or null if it was
+     * not loaded by this engine
+     */
+    public String getFingerprint(EffectiveModelContext context) {
+        return fingerprintsByContext.getIfPresent(context);
+    }
+
+    /**
+     * @return the cached schema defining the given namespace, or null if none is loaded
+     */
+    public EffectiveModelContext findContextForNamespace(String namespace) {
+        String fingerprint = fingerprintsByNamespace.get(namespace);
+        return fingerprint == null ? null : contexts.getIfPresent(fingerprint);
+    }
+
+    /**
+     * Validates a document against the loaded schema matching the namespace of its first element.
+     */
+    public ValidationResult validate(String xmlText) throws IOException, XMLStreamException {
+        return validate(XmlSource.of(xmlText), 1);
+    }
+
+    /**
+     * Validates a document against the loaded schema matching the namespace of its first element.
+     * The source is read once to find that element, so it has to be repeatable.
+     */
+    public ValidationResult validate(XmlSource source, int maxErrors) throws IOException, XMLStreamException {
+        if (!source.isRepeatable()) {
+            throw new IllegalArgumentException("Finding the schema by namespace needs a repeatable source");
+        }
+        XMLStreamReader reader = source.createReader(inputFactory);
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+                    EffectiveModelContext context = findContextForNamespace(reader.getNamespaceURI());
+                    if (context != null) {
+                        return validate(context, source, maxErrors);
+                    }
+                    Location location = reader.getLocation();
+                    return new ValidationResult(List.of(new ValidationError(location.getLineNumber(),
+                            location.getColumnNumber(), "/" + reader.getLocalName(),
+                            "No schema loaded for namespace " + reader.getNamespaceURI())));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return ValidationResult.valid();
+    }
+
+    /**
+     * Validates a document, which may hold several top level data nodes, against a schema
+     * and stops at the first error.
+     */
+    public ValidationResult validate(EffectiveModelContext context, String xmlText)
+            throws IOException, XMLStreamException {
+        return validate(context, XmlSource.of(xmlText), 1);
+    }
+
+    public ValidationResult validate(EffectiveModelContext context, String xmlText, int maxErrors)
+            throws IOException, XMLStreamException {
+        return validate(context, XmlSource.of(xmlText), maxErrors);
+    }
+
+    /**
+     * Validates a document against a schema, collecting up to maxErrors errors. Invalid leaf
+     * values, unknown and repeated elements, repeated list entries and leaf-list values and
+     * constraint violations are collected in a single read. The parser cannot continue after
+     * any other failure, e.g. an invalid list key, so the document is then read again with
+     * the failing element's subtree skipped, carrying on with its next sibling. If an error
+     * cannot be skipped, e.g. in malformed XML or in a source that cannot be read again,
+     * collection stops there and the result is {@link ValidationResult#isIncomplete()
+     * incomplete}.
+     */
+    public ValidationResult validate(EffectiveModelContext context, XmlSource source, int maxErrors)
+            throws IOException, XMLStreamException {
+        return validate(context, source, ValidationBudget.DEFAULT.withMaxErrors(maxErrors));
+    }
+
+    /**
+     * Validates a document within the given budget. Exceeding one of its limits ends
+     * validation with an error at the element where it happened.
+     */
+    public ValidationResult validate(EffectiveModelContext context, XmlSource source, ValidationBudget budget)
+            throws IOException, XMLStreamException {
+        return validate(context, source, budget, new BitSet(), false, true, null, null, 0, null);
+    }
+
+    /**
+     * Like {@link #validate(EffectiveModelContext, XmlSource, ValidationBudget)}, reading through
+     * readers kept by the caller instead of new ones.
+     */
+    ValidationResult validate(EffectiveModelContext context, XmlSource source, ValidationBudget budget,
+                              ReusableReaders readers) throws IOException, XMLStreamException {
+        return validate(context, source, budget, new BitSet(), false, true, readers, null, 0, null);
+    }
+
+    /**
+     * Validates one part of a larger document, made of whole top level elements, for
+     * {@link ParallelDocumentValidator}. The part is not counted as a document in the
+     * metrics; what it adds to the document is put in the report instead, along with its
+     * top level elements that must be unique in the whole document. Data tree constraints
+     * are not checked.
+     */
+    ValidationResult validatePart(EffectiveModelContext context, XmlSource source, ValidationBudget budget,
+                                  PartReport report) throws IOException, XMLStreamException {
+        return validate(context, source, budget, new BitSet(), false, false, null, report, 0, null);
+    }
+
+    /**
+     * What reading a part of a document found besides its errors, see {@link #validatePart}.
+     * Lines and columns are those in the part.
+     */
+    static class PartReport {
+        final List<XPathXMLStreamReader.TopLevelElement> topLevelElements = new ArrayList<>();
+        long elementCount;
+        long characterCount;
+    }
+
+    /**
+     * Validates a document, leaving out the subtrees at filterDepth below the synthetic root
+     * element that the filter skips, and returns the data tree of what was read along with
+     * the errors. The tree is missing the subtrees of failing elements, and is null if the
+     * last read did not get to the end of the document. As the tree may be missing the
+     * skipped elements, its constraints are not checked, see {@link #checkConstraints}.
+     * The filter is asked again for each read of the document.
+     */
+    ValidationResult validate(EffectiveModelContext context, XmlSource source, ValidationBudget budget,
+                              int filterDepth, XPathXMLStreamReader.SubtreeFilter subtreeFilter)
+            throws IOException, XMLStreamException {
+        return validate(context, source, budget, new BitSet(), true, false, null, null, filterDepth, subtreeFilter);
+    }
+
+    private ValidationResult validate(EffectiveModelContext context, XmlSource source, ValidationBudget budget,
+                                      BitSet skippedElements, boolean keepData, boolean checkConstraints,
+                                      ReusableReaders readers, PartReport report, int filterDepth,
+                                      XPathXMLStreamReader.SubtreeFilter subtreeFilter)
+            throws IOException, XMLStreamException {
+        List<ValidationError> errors = new ArrayList<>();
+        List<ValidationError> warnings = new ArrayList<>();
+        LeafConstraintPlan plan = getConstraintPlan(context);
+        DataTreeConstraintPlan treePlan = checkConstraints ? getDataTreePlan(context) : null;
+        // The tree is only built if it is wanted or has constraints to check
+        boolean buildTree = keepData || (treePlan != null && !treePlan.isEmpty());
+        // Repeated entries and constraint violations are only found once the document has been
+        // read. They are located from the elements the read recorded when several errors are
+        // collected, or when the source cannot be read again; otherwise, as they are rare, by
+        // reading it again, sparing the common single error validation the recording
+        boolean recordLocations = budget.getMaxErrors() > 1 || !source.isRepeatable();
+        // The timeout covers every read of the document
+        long deadline = budget.getTimeout() == null ? 0 : System.nanoTime() + budget.getTimeout().toNanos();
+        while (true) {
+            // Single pass: the XPath tracking reader is handed straight to the YANG parser, so the
+            // XPath, line and column of the failing element are known when an exception is thrown.
+            // The YANG parser needs a root element, which the root element reader adds.
+            XMLStreamReader xmlReader = source.createReader(budget.getInputFactory(), budget.getMaxDocumentSize());
+            XPathLocationIndex locationIndex = recordLocations ? new HeapXPathLocationIndex() : null;
+            XPathXMLStreamReader reader;
+            if (readers != null && locationIndex == null) {
+                reader = readers.open(xmlReader, context);
+            } else if (subtreeFilter != null) {
+                reader = new XPathXMLStreamReader(new SubtreeDigestingXMLStreamReader(
+                        new RootElementXMLStreamReader(xmlReader)), locationIndex, context);
+                reader.setSubtreeFilter(filterDepth, subtreeFilter);
+            } else {
+                reader = new XPathXMLStreamReader(new RootElementXMLStreamReader(xmlReader), locationIndex, context);
+            }
+            reader.setSkippedElements(skippedElements);
+            // Invalid leaf values, unknown and repeated elements are collected in the same read,
+            // except the last error wanted, which ends the read when the YANG parser rejects it.
+            // With one error wanted, leaf values are not read ahead and decoded twice.
+            reader.setLeafConstraints(plan, budget.getMaxErrors() - errors.size() - 1);
+            reader.setMaxDepth(budget.getMaxDepth());
+            reader.setMaxElements(budget.getMaxElements());
+            if (budget.getTimeout() != null) {
+                reader.setDeadline(deadline);
+            }
+            if (report != null) {
+                // Only the last read, which gets furthest, is reported
+                report.topLevelElements.clear();
+                reader.recordTopLevelElements(report.topLevelElements);
+            }
+            long start = System.nanoTime();
+            try {
+                // Unless the data is wanted, nothing is built from it
+                NormalizationResultHolder result = buildTree ? new NormalizationResultHolder() : null;
+                ValidatingNormalizedNodeStreamWriter streamWriter = buildTree
+                        ? ValidatingNormalizedNodeStreamWriter.forwardingTo(
+                                ImmutableNormalizedNodeStreamWriter.from(result))
+                        : ValidatingNormalizedNodeStreamWriter.create();
+                XmlParserStream xmlParser = XmlParserStream.create(streamWriter, plan.getCodecFactory(),
+                        plan.getInference());
+                xmlParser.parse(reader);
+                metrics.recordPhase(ValidationPhase.PARSE, start);
+                addRejectedElements(reader, errors, skippedElements);
+                addDuplicates(context, streamWriter.getDuplicates(), source, locationIndex, budget.getMaxErrors(),
+                        errors);
+                NormalizedNode data = buildTree ? result.getResult().data() : null;
+                // Constraints are checked on a complete tree only
+                boolean timedOut = errors.isEmpty() && treePlan != null && !treePlan.isEmpty()
+                        && !checkConstraints(context, treePlan, data, source, locationIndex, budget.getMaxErrors(),
+                        deadline, errors, warnings);
+                return finish(reader, errors, warnings, keepData ? data : null, timedOut, timedOut, report);
+            } catch (Exception e) {
+                metrics.recordPhase(ValidationPhase.PARSE, start);
+                addRejectedElements(reader, errors, skippedElements);
+                errors.add(createError(reader, e));
+
+                // A failure the reader did not foresee, e.g. an invalid key, which takes its list
+                // entry with it, ends the read; the document is read again with the failing
+                // element or entry skipped. Malformed XML or an exceeded budget cannot be skipped,
+                // and neither can the synthetic root, nor anything in a source that cannot be read
+                // again: short of the errors wanted, the result is then incomplete.
+                int elementNumber = reader.getFailedElementNumber();
+                if (errors.size() >= budget.getMaxErrors() || !source.isRepeatable() || isReaderFailure(e)
+                        || elementNumber <= 0 || skippedElements.get(elementNumber)) {
+                    return finish(reader, errors, warnings, null, isTimeout(e),
+                            errors.size() < budget.getMaxErrors(), report);
+                }
+                skippedElements.set(elementNumber);
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Readers kept by a caller validating one document after another on the same thread,
+     * e.g. the messages of a stream, so that each read resets them instead of allocating
+     * new ones with their buffers.
+     */
+    static class ReusableReaders {
+        private final RootElementXMLStreamReader rootReader = new RootElementXMLStreamReader(null);
+        private XPathXMLStreamReader reader;
+        private EffectiveModelContext context;
+
+        XPathXMLStreamReader open(XMLStreamReader delegate, EffectiveModelContext context) {
+            rootReader.reset(delegate);
+            // What the tracking reader resolved from the schema is kept, unless it changed
+            if (reader == null || context != this.context) {
+                reader = new XPathXMLStreamReader(rootReader, false, context);
+                this.context = context;
+            } else {
+                reader.reset();
+            }
+            return reader;
+        }
+    }
+
+    /**
+     * Compiled leaf checks and codecs of a schema, built on first use.
+     */
+    public LeafConstraintPlan getConstraintPlan(EffectiveModelContext context) {
+        try {
+            return constraintPlans.get(context, () -> LeafConstraintPlan.compile(context));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Failed to compile the leaf checks", e.getCause());
+        }
+    }
+
+    /**
+     * Compiled data tree constraints of a schema, built on first use.
+     */
+    public DataTreeConstraintPlan getDataTreePlan(EffectiveModelContext context) {
+        try {
+            return dataTreePlans.get(context, () -> DataTreeConstraintPlan.compile(context));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Failed to compile the data tree constraints", e.getCause());
+        }
+    }
+
+    /**
+     * Checks the must, when, mandatory, element count and unique constraints of the schema on
+     * the data tree of a document, as read by {@link #validate(EffectiveModelContext, XmlSource,
+     * ValidationBudget, int, XPathXMLStreamReader.SubtreeFilter)}, adding up to maxErrors errors.
+     *
+     * @return the errors found, none if the data meets every constraint, and the warnings
+     * for the constraints that could not be checked, without the data
+     */
+    ValidationResult checkConstraints(EffectiveModelContext context, NormalizedNode data, XmlSource source,
+                                      int maxErrors) {
+        List<ValidationError> errors = new ArrayList<>();
+        List<ValidationError> warnings = new ArrayList<>();
+        DataTreeConstraintPlan treePlan = getDataTreePlan(context);
+        if (!treePlan.isEmpty()) {
+            checkConstraints(context, treePlan, data, source, null, maxErrors, 0, errors, warnings);
+        }
+        return new ValidationResult(errors, warnings);
+    }
+
+    /**
+     * Adds the constraint violations of the data to the errors, and the constraints that
+     * apply to it but could not be checked to the warnings. They are found in the tree, so
+     * they are located from the elements recorded by the read, see {@link #locate}.
+     *
+     * @param locationIndex the elements of the document as read, or null if not recorded
+     * @return false if checking ran past the deadline
+     */
+    private boolean checkConstraints(EffectiveModelContext context, DataTreeConstraintPlan treePlan,
+                                     NormalizedNode data, XmlSource source, XPathLocationIndex locationIndex,
+                                     int maxErrors, long deadline, List<ValidationError> errors,
+                                     List<ValidationError> warnings) {
+        long start = System.nanoTime();
+        List<DataTreeConstraintPlan.Violation> violations;
+        try {
+            violations = treePlan.check(data, maxErrors - errors.size(), deadline);
+        } catch (ValidationTimeoutException e) {
+            errors.add(translateError(0, 0, "/", e.getMessage()));
+            return false;
+        } finally {
+            metrics.recordPhase(ValidationPhase.CONSTRAINT_CHECK, start);
+        }
+        if (violations.isEmpty()) {
+            return true;
+        }
+        Set<String> xpaths = new HashSet<>();
+        for (DataTreeConstraintPlan.Violation violation : violations) {
+            xpaths.addAll(violation.getLocationXPaths());
+        }
+        ElementLocations locations = locate(context, source, locationIndex, xpaths);
+        List<ValidationError> located = new ArrayList<>(violations.size());
+        List<ValidationError> locatedWarnings = new ArrayList<>();
+        for (DataTreeConstraintPlan.Violation violation : violations) {
+            int ordinal = -1;
+            for (String xpath : violation.getLocationXPaths()) {
+                ordinal = locations.find(xpath, 0);
+                if (ordinal >= 0) {
+                    break;
+                }
+            }
+            if (violation.isUnchecked()) {
+                // Not an error, so not counted as one
+                locatedWarnings.add(new ValidationError(locations.getLine(ordinal), locations.getColumn(ordinal),
+                        violation.getXPath(), MessageProcessor.processMessage(violation.getMessage())));
+            } else {
+                located.add(translateError(locations.getLine(ordinal), locations.getColumn(ordinal),
+                        violation.getXPath(), violation.getMessage()));
+            }
+        }
+        // In document order, as errors of the parser are
+        located.sort(Comparator.comparingInt(ValidationError::getLineNumber));
+        locatedWarnings.sort(Comparator.comparingInt(ValidationError::getLineNumber));
+        errors.addAll(located);
+        warnings.addAll(locatedWarnings);
+        return true;
+    }
+
+    /**
+     * Adds the list entries and leaf-list values the writer found repeated, which it only
+     * knows by XPath, at the elements they were read from.
+     */
+    private void addDuplicates(EffectiveModelContext context,
+                               List<ValidatingNormalizedNodeStreamWriter.Duplicate> duplicates, XmlSource source,
+                               XPathLocationIndex locationIndex, int maxErrors, List<ValidationError> errors) {
+        if (duplicates.isEmpty() || errors.size() >= maxErrors) {
+            return;
+        }
+        duplicates = duplicates.subList(0, Math.min(duplicates.size(), maxErrors - errors.size()));
+        Set<String> xpaths = new HashSet<>();
+        for (ValidatingNormalizedNodeStreamWriter.Duplicate duplicate : duplicates) {
+            xpaths.add(duplicate.getXPath());
+        }
+        ElementLocations locations = locate(context, source, locationIndex, xpaths);
+        for (ValidatingNormalizedNodeStreamWriter.Duplicate duplicate : duplicates) {
+            int ordinal = locations.find(duplicate.getXPath(), duplicate.getOccurrence());
+            errors.add(translateError(locations.getLine(ordinal), locations.getColumn(ordinal),
+                    duplicate.getXPath(), duplicate.getMessage()));
+        }
+        // In document order with the errors of the read, ones that could not be located last
+        errors.sort(Comparator.comparingInt((ValidationError error) ->
+                        error.getLineNumber() > 0 ? error.getLineNumber() : Integer.MAX_VALUE)
+                .thenComparingInt(ValidationError::getColumnNumber));
+    }
+
+    /**
+     * Reads the document once more, if it can be, to find the elements with the given XPaths.
+     */
+    /**
+     * Finds the elements with the given XPaths among those recorded by the read, or if it
+     * recorded none, by reading the document again to index its elements. Elements of a
+     * source that cannot be read again are not found without a recording.
+     *
+     * @param locationIndex the elements of the document as read, or null if not recorded
+     */
+    private ElementLocations locate(EffectiveModelContext context, XmlSource source, XPathLocationIndex locationIndex,
+                                    Set<String> xpaths) {
+        Map<String, List<Integer>> ordinals = new HashMap<>();
+        if (locationIndex == null && source.isRepeatable()) {
+            try {
+                locationIndex = XPathCreator.createLocationIndex(source, context);
+            } catch (IOException | XMLStreamException e) {
+                LOG.debug("Failed to index the document to locate errors", e);
+            }
+        }
+        if (locationIndex != null) {
+            for (int ordinal = 0; ordinal < locationIndex.size(); ordinal++) {
+                String xpath = stripRootElement(locationIndex.getXPath(ordinal));
+                if (xpaths.contains(xpath)) {
+                    ordinals.computeIfAbsent(xpath, k -> new ArrayList<>()).add(ordinal);
+                }
+            }
+        }
+        return new ElementLocations(locationIndex, ordinals);
+    }
+
+    /**
+     * Where the elements with some XPaths are in a document.
+     */
+    private static class ElementLocations {
+        private final XPathLocationIndex locationIndex;
+        // Ordinals of the elements with each XPath, in document order
+        private final Map<String, List<Integer>> ordinals;
+
+        ElementLocations(XPathLocationIndex locationIndex, Map<String, List<Integer>> ordinals) {
+            this.locationIndex = locationIndex;
+            this.ordinals = ordinals;
+        }
+
+        /**
+         * @return the ordinal of the element after as many others with the XPath, or -1 if
+         * there is none
+         */
+        int find(String xpath, int occurrence) {
+            List<Integer> found = ordinals.get(xpath);
+            return found == null || occurrence >= found.size() ? -1 : found.get(occurrence);
+        }
+
+        int getLine(int ordinal) {
+            return ordinal < 0 ? 0 : locationIndex.getLine(ordinal);
+        }
+
+        int getColumn(int ordinal) {
+            return ordinal < 0 ? 0 : locationIndex.getColumn(ordinal);
+        }
+    }
+
+    /**
+     * Adds the elements the reader left out for failures it foresaw, which come before any
+     * failure of the read, and skips them when the document is read again.
+     */
+    private void addRejectedElements(XPathXMLStreamReader reader, List<ValidationError> errors,
+                                     BitSet skippedElements) {
+        for (XPathXMLStreamReader.RejectedElement element : reader.getRejectedElements()) {
+            errors.add(createError(element.line, element.column, element.xpath, element.message));
+            skippedElements.set(element.elementNumber);
+        }
+    }
+
+    private ValidationError createError(XPathXMLStreamReader reader, Exception e) {
+        Location location = reader.getLocation();
+        return createError(location.getLineNumber(), location.getColumnNumber(), reader.getLastElementXPath(),
+                e.getMessage());
+    }
+
+    private ValidationError createError(int line, int column, String xpath, String rawMessage) {
+        return translateError(line, column, stripRootElement(xpath), rawMessage);
+    }
+
+    /**
+     * @param xpath the XPath in the document, without the synthetic root element
+     */
+    ValidationError translateError(int line, int column, String xpath, String rawMessage) {
+        long start = System.nanoTime();
+        String message = MessageProcessor.processMessage(rawMessage);
+        metrics.recordError(MessageProcessor.categorize(rawMessage));
+        metrics.recordPhase(ValidationPhase.MESSAGE_TRANSLATION, start);
+        return new ValidationError(line, column, xpath, message);
+    }
+
+    private ValidationResult finish(XPathXMLStreamReader reader, List<ValidationError> errors,
+                                    List<ValidationError> warnings, NormalizedNode data, boolean timedOut,
+                                    boolean incomplete, PartReport report) {
+        // The last read got furthest into the document; the synthetic root is not counted
+        long elementCount = Math.max(reader.getElementCount() - 1, 0);
+        long characterCount = Math.max(reader.getLocation().getCharacterOffset(), 0);
+        if (report != null) {
+            report.elementCount = elementCount;
+            report.characterCount = characterCount;
+        } else {
+            metrics.recordDocument(errors.isEmpty(), elementCount, characterCount);
+        }
+        return new ValidationResult(errors, warnings, data, timedOut, incomplete);
+    }
+
+    /**
+     * Counts a document validated in parts, see {@link #validatePart}, in the metrics.
+     */
+    void recordPartedDocument(boolean valid, List<PartReport> reports) {
+        long elementCount = 0;
+        long characterCount = 0;
+        for (PartReport report : reports) {
+            if (report != null) {
+                elementCount += report.elementCount;
+                characterCount += report.characterCount;
+            }
+        }
+        metrics.recordDocument(valid, elementCount, characterCount);
+    }
+
+    /**
+     * True for failures of the XML reader itself, i.e. malformed XML, an exceeded limit or
+     * the deadline, after which it cannot read on. Schema failures the YANG parser raises as
+     * XMLStreamException are not among them.
+     */
+    private static boolean isReaderFailure(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof WstxException || cause instanceof WstxLazyException
+                    || cause instanceof ValidationTimeoutException || cause instanceof DepthLimitExceededException
+                    || cause instanceof ElementCountExceededException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isTimeout(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof ValidationTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static String stripRootElement(String xpath) {
+        if (xpath == null) {
+            return "Unknown";
+        }
+        // Remove the leading "/root"
+        int rootLength = RootElementXMLStreamReader.ROOT_ELEMENT.length() + 1;
+        return xpath.length() > rootLength ? xpath.substring(rootLength) : "/";
+    }
+
+    private SchemaSnapshot loadSnapshot(Path snapshotFile, String fingerprint, List<Path> yangFiles) {
+        try {
+            SchemaSnapshot snapshot = SchemaSnapshot.read(snapshotFile);
+            if (snapshot != null && snapshot.getFingerprint().equals(fingerprint)) {
+                return snapshot;
+            }
+        } catch (IOException e) {
+            LOG.warn("Ignoring unreadable schema snapshot {}", snapshotFile, e);
+        }
+        SchemaLoader.ParsedSources parsed = schemaLoader.parse(yangFiles);
+        SchemaLoader.checkNoFailures(parsed.getFailures());
+        SchemaSnapshot snapshot = SchemaSnapshot.of(fingerprint, parsed.getSources());
+        try {
+            snapshot.write(snapshotFile);
+        } catch (IOException e) {
+            LOG.warn("Failed to write schema snapshot {}", snapshotFile, e);
+        }
+        return snapshot;
+    }
+
+    /**
+     * SHA-256 over the per-file hashes in sorted order, so the same sources in any order
+     * give the same fingerprint.
+     */
+    static String fingerprint(List<Path> yangFiles) {
+        try {
+            List<String> fileHashes = new ArrayList<>();
+            for (Path yangFile : yangFiles) {
+                fileHashes.add(HexFormat.of().formatHex(
+                        MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(yangFile))));
+            }
+            fileHashes.sort(null);
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String fileHash : fileHashes) {
+                digest.update(fileHash.getBytes(StandardCharsets.US_ASCII));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Failed to read a source", e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+}
@@ -1,136 +1,215 @@
 package com.example;
 
-import com.ctc.wstx.stax.WstxInputFactory;
-import org.opendaylight.yangtools.yang.data.api.schema.stream.NormalizedNodeStreamWriter;
-import org.opendaylight.yangtools.yang.data.codec.xml.XmlParserStream;
-import org.opendaylight.yangtools.yang.data.impl.schema.ImmutableNormalizedNodeStreamWriter;
-import org.opendaylight.yangtools.yang.data.impl.schema.NormalizationResultHolder;
 import org.opendaylight.yangtools.yang.model.api.EffectiveModelContext;
-import org.opendaylight.yangtools.yang.model.spi.source.FileYangTextSource;
-import org.opendaylight.yangtools.yang.parser.api.*;
 
-import javax.xml.stream.XMLInputFactory;
-import javax.xml.stream.XMLStreamReader;
-import java.io.*;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
+import java.io.BufferedOutputStream;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
-import java.util.ServiceLoader;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 
 public class YangXmlDataValidator {
-
-    private static final YangParserFactory PARSER_FACTORY;
-
-    static {
-        final var it = ServiceLoader.load(YangParserFactory.class).iterator();
-        if (!it.hasNext()) {
-            throw new IllegalStateException("No YangParserFactory found");
-        }
-        PARSER_FACTORY = it.next();
-    }
-
+    private static final int DEFAULT_CACHE_SIZE = 10_000;
 
     public static void main(String[] args) throws Exception {
-        Path yangFile = Path.of("src/main/resources/module.yang");
-        final YangParser parser = PARSER_FACTORY.createParser(YangParserConfiguration.DEFAULT);
-        EffectiveModelContext context;
-
-        try {
-            // Create YANG source from file
-            FileYangTextSource yangSource = new FileYangTextSource(yangFile);
-            parser.addSource(yangSource);
-        } catch (YangSyntaxErrorException e) {
-            throw new IllegalArgumentException("Malformed source", e);
-        } catch (IOException e) {
-            throw new IllegalArgumentException("Failed to read a source", e);
+        YangValidatorEngine engine = new YangValidatorEngine();
+
+        List<Path> yangPaths = new ArrayList<>();
+        List<String> inputs = new ArrayList<>();
+        boolean dumpXPaths = false;
+        boolean memoryMapped = false;
+        boolean split = false;
+        ValidationBudget.Builder budgetBuilder = ValidationBudget.builder();
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean virtualThreads = false;
+        int serverPort = -1;
+        String bindAddress = null;
+        int cacheSize = 0;
+        Path cacheDirectory = null;
+        int maxStoredResults = ValidationResultCache.DEFAULT_MAX_STORED_RESULTS;
+        Path snapshotFile = null;
+        boolean stream = false;
+        Path streamSocket = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                // A YANG file, or a directory of them; repeatable
+                case "--yang" -> yangPaths.add(Path.of(args[++i]));
+                case "--dump-xpaths" -> dumpXPaths = true;
+                // Keep validating after an error, reporting up to this many
+                case "--max-errors" -> budgetBuilder.maxErrors(Integer.parseInt(args[++i]));
+                // Limits of each document, so a hostile one fails fast
+                case "--max-depth" -> budgetBuilder.maxDepth(Integer.parseInt(args[++i]));
+                case "--max-elements" -> budgetBuilder.maxElements(Long.parseLong(args[++i]));
+                case "--max-attribute-length" -> budgetBuilder.maxAttributeLength(Integer.parseInt(args[++i]));
+                case "--max-text-length" -> budgetBuilder.maxTextLength(Integer.parseInt(args[++i]));
+                case "--max-document-size" -> budgetBuilder.maxDocumentSize(Long.parseLong(args[++i]));
+                case "--max-entity-expansions" -> budgetBuilder.maxEntityExpansions(Long.parseLong(args[++i]));
+                case "--timeout" -> budgetBuilder.timeout(Duration.ofSeconds(Long.parseLong(args[++i])));
+                case "--mmap" -> memoryMapped = true;
+                // Validate the top level elements of a single document in parallel
+                case "--split" -> split = true;
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--virtual-threads" -> virtualThreads = true;
+                // Keep running and validate documents POSTed to /validate
+                case "--serve" -> serverPort = Integer.parseInt(args[++i]);
+                // Address the server listens on, loopback unless given
+                case "--bind" -> bindAddress = args[++i];
+                // Validate NETCONF framed messages from stdin, or from connections to a Unix socket
+                case "--stream" -> stream = true;
+                case "--stream-socket" -> streamSocket = Path.of(args[++i]);
+                // Reuse the results of byte-identical documents, optionally across runs
+                case "--cache" -> cacheSize = Integer.parseInt(args[++i]);
+                case "--cache-dir" -> cacheDirectory = Path.of(args[++i]);
+                case "--cache-dir-entries" -> maxStoredResults = Integer.parseInt(args[++i]);
+                // Keep the parsed schema in this file, so later runs skip parsing the YANG text
+                case "--snapshot" -> snapshotFile = Path.of(args[++i]);
+                case "--metrics-log" -> ValidationMetrics.get().startPeriodicLog(Duration.ofSeconds(Long.parseLong(args[++i])));
+                default -> {
+                    if (args[i].startsWith("--")) {
+                        throw new IllegalArgumentException("Unknown option " + args[i]);
+                    }
+                    // A file, a directory or a glob pattern
+                    inputs.add(args[i]);
+                }
+            }
         }
-
-        try {
-            context = parser.buildEffectiveModel();
-            System.out.println("Successfully loaded YANG schema: " + context.getModules().iterator().next().getName());
-        } catch (YangParserException e) {
-            throw new IllegalStateException("Failed to assemble SchemaContext", e);
+        ValidationBudget budget = budgetBuilder.build();
+        if (yangPaths.isEmpty()) {
+            yangPaths.add(Path.of("src/main/resources/module.yang"));
+        }
+        List<Path> yangFiles = SchemaLoader.findYangFiles(yangPaths);
+        EffectiveModelContext context = engine.loadSchema(yangFiles, snapshotFile);
+        // Replies to a stream on stdin go to stdout, which nothing else may write to
+        (stream ? System.err : System.out).println("Successfully loaded YANG schema: "
+                + context.getModules().iterator().next().getName());
+
+        if (stream || streamSocket != null) {
+            FramedMessageValidator validator = new FramedMessageValidator(engine, context, budget);
+            if (streamSocket != null) {
+                validator.serve(streamSocket);
+            } else {
+                validator.validate(System.in, new BufferedOutputStream(new FileOutputStream(FileDescriptor.out)));
+            }
+            return;
         }
 
-        XMLInputFactory factory = new WstxInputFactory();
-        File xmlFile = new File("src/main/resources/input.xml");
-
-        // Yang Parser needs a root element
-        String xmlText = "<root>" + Files.readString(xmlFile.toPath()) + "</root>";
+        if (serverPort >= 0) {
+            ValidationMetrics.get().registerMBeans();
+            ValidationServer server = new ValidationServer(engine, yangPaths, budget);
+            server.start(bindAddress == null
+                    ? new InetSocketAddress(InetAddress.getLoopbackAddress(), serverPort)
+                    : new InetSocketAddress(bindAddress, serverPort));
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+            System.out.println("Validation server listening on port " + server.getAddress().getPort());
+            return;
+        }
+        if (inputs.isEmpty()) {
+            inputs.add("src/main/resources/input.xml");
+        }
 
-        ByteArrayInputStream byteArrayInputStream = new ByteArrayInputStream(xmlText.getBytes(StandardCharsets.UTF_8));
+        ValidationResultCache cache = null;
+        if (cacheSize > 0 || cacheDirectory != null) {
+            cache = new ValidationResultCache(engine, cacheSize > 0 ? cacheSize : DEFAULT_CACHE_SIZE, cacheDirectory,
+                    maxStoredResults);
+        }
 
-        XMLStreamReader reader = factory.createXMLStreamReader(byteArrayInputStream);
-        Map<String, String> xpathMap = XPathCreator.createXPathMap(xmlText);
-        
-        // print the XPath map for debugging - sorted by line number then by element counter
-        xpathMap.entrySet().stream()
-            .sorted((e1, e2) -> {
-                String[] parts1 = e1.getKey().split(":");
-                String[] parts2 = e2.getKey().split(":");
-                if (parts1.length >= 2 && parts2.length >= 2) {
-                    try {
-                        int line1 = Integer.parseInt(parts1[0]);
-                        int line2 = Integer.parseInt(parts2[0]);
-                        if (line1 != line2) {
-                            return Integer.compare(line1, line2);
-                        }
-                        // Same line, sort by element counter
-                        int counter1 = Integer.parseInt(parts1[1]);
-                        int counter2 = Integer.parseInt(parts2[1]);
-                        return Integer.compare(counter1, counter2);
-                    } catch (NumberFormatException e) {
-                        return e1.getKey().compareTo(e2.getKey());
-                    }
-                }
-                return e1.getKey().compareTo(e2.getKey());
-            })
-            .forEach(entry -> {
-                String[] keyParts = entry.getKey().split(":");
-                if (keyParts.length >= 3) {
-                    String lineNumber = keyParts[0];
-                    String elementName = keyParts[2];
-                    System.out.println("Line " + lineNumber + " (" + elementName + "): " + entry.getValue());
-                }
-            });
+        List<Path> xmlFiles = BatchValidator.findFiles(inputs);
+        if (xmlFiles.size() != 1) {
+            // Starting the MBean server costs more than validating a small document, so a
+            // single file run, which is over before a JMX client could attach, skips it
+            ValidationMetrics.get().registerMBeans();
+            if (cache != null) {
+                cache.registerMBean();
+            }
+            ExecutorService executor = virtualThreads
+                    ? Executors.newVirtualThreadPerTaskExecutor()
+                    : Executors.newFixedThreadPool(threads);
+            try {
+                BatchValidator batchValidator = new BatchValidator(engine, context, budget, cache);
+                printBatchResults(batchValidator.validate(xmlFiles, executor));
+            } finally {
+                executor.shutdown();
+            }
+            return;
+        }
 
-        try {
-            NormalizationResultHolder result = new NormalizationResultHolder();
-            NormalizedNodeStreamWriter streamWriter = ImmutableNormalizedNodeStreamWriter.from(result);
+        Path xmlFile = xmlFiles.get(0);
+        // The document is streamed, never loaded into memory as a whole
+        XmlSource source = memoryMapped ? XmlSource.mapped(xmlFile) : XmlSource.of(xmlFile);
 
-            XmlParserStream xmlParser = XmlParserStream.create(streamWriter, context);
-            xmlParser.parse(reader);
+        if (dumpXPaths && memoryMapped) {
+            // Large documents are indexed off the heap as well
+            try (MappedXPathLocationIndex locationIndex = XPathCreator.createLocationIndex(source, context,
+                    new MappedXPathLocationIndex())) {
+                printLocationIndex(locationIndex);
+            }
+        } else if (dumpXPaths) {
+            printLocationIndex(XPathCreator.createLocationIndex(source, context));
+        }
 
+        ValidationResult result;
+        if (split) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                result = new ParallelDocumentValidator(engine, context, pool).validate(source, budget);
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            result = cache != null ? cache.validate(context, source, budget)
+                    : engine.validate(context, source, budget);
+        }
+        if (result.isValid()) {
             System.out.println("Yang data validation completed successfully!");
-        } catch (Exception e) {
-            String xpath = findXPathForLineNumber(xpathMap, reader.getLocation().getLineNumber());
-            System.err.println("\nLine " + reader.getLocation().getLineNumber() +
-                    ", Column " + reader.getLocation().getColumnNumber()
-                    + "\nFor XPath: " + (xpath != null ? xpath.substring(5) : "Unknown") // Remove the leading "/root"
-                    + "\nError: " + MessageProcessor.processMessage(e.getMessage()));
-        } finally {
-            reader.close();
+        } else {
+            for (ValidationError error : result.getErrors()) {
+                System.err.println("\n" + error);
+            }
+            if (result.isIncomplete()) {
+                System.err.println("\nValidation could not carry on past the last error; the rest of the document "
+                        + "was not checked");
+            }
+        }
+        for (ValidationError warning : result.getWarnings()) {
+            System.err.println("\n" + warning.toString("Warning"));
         }
     }
-    
-    private static String findXPathForLineNumber(Map<String, String> xpathMap, int lineNumber) {
-        // Look for entries that match the line number
-        // If multiple entries exist for the same line, return the last one (most likely the problematic element)
-        String result = null;
-        for (Map.Entry<String, String> entry : xpathMap.entrySet()) {
-            String[] keyParts = entry.getKey().split(":");
-            if (keyParts.length >= 1) {
-                try {
-                    int entryLineNumber = Integer.parseInt(keyParts[0]);
-                    if (entryLineNumber == lineNumber) {
-                        result = entry.getValue(); // Keep updating to get the last matching entry
-                    }
-                } catch (NumberFormatException e) {
-                    // Skip invalid entries
+
+    private static void printBatchResults(Map<Path, ValidationResult> results) {
+        int invalid = 0;
+        for (Map.Entry<Path, ValidationResult> entry : results.entrySet()) {
+            if (entry.getValue().isValid()) {
+                System.out.println(entry.getKey() + ": valid");
+            } else {
+                invalid++;
+                System.err.println(entry.getKey() + ":");
+                for (ValidationError error : entry.getValue().getErrors()) {
+                    System.err.println(error + "\n");
+                }
+                if (entry.getValue().isIncomplete()) {
+                    System.err.println("Validation could not carry on past the last error\n");
                 }
             }
+            for (ValidationError warning : entry.getValue().getWarnings()) {
+                System.err.println(entry.getKey() + ": " + warning.toString("Warning") + "\n");
+            }
+        }
+        System.out.println("Validated " + results.size() + " files, " + invalid + " with errors");
+    }
+
+    private static void printLocationIndex(XPathLocationIndex locationIndex) {
+        // print the XPath of every element for debugging, in document order
+        for (int ordinal = 0; ordinal < locationIndex.size(); ordinal++) {
+            System.out.println("Line " + locationIndex.getLine(ordinal) + " (" + locationIndex.getName(ordinal) + "): "
+                    + locationIndex.getXPath(ordinal));
         }
-        return result;
     }
 }
@@ -0,0 +1,100 @@
+package com.example;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.opendaylight.yangtools.yang.model.api.EffectiveModelContext;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ByteFeedValidationTest {
+    private static final String INVALID = """
+            <top xmlns="urn:example:interfaces">
+              <mtu>1500</mtu>
+              <iface><id>1</id><speed>999</speed></iface>
+            </top>
+            """;
+
+    private static YangValidatorEngine engine;
+    private static EffectiveModelContext context;
+
+    @BeforeAll
+    static void loadSchema() {
+        engine = new YangValidatorEngine();
+        context = engine.loadSchema(List.of(Path.of("src/test/resources/interfaces.yang")));
+    }
+
+    @Test
+    void validatesAsTheWholeDocumentWould() throws Exception {
+        byte[] bytes = INVALID.getBytes(StandardCharsets.UTF_8);
+        ByteFeedValidation validation = ByteFeedValidation.start(engine, context, ValidationBudget.DEFAULT, null);
+
+        // Chunks that end inside tags and values
+        for (int offset = 0; offset < bytes.length; offset += 7) {
+            assertTrue(validation.feed(ByteBuffer.wrap(bytes, offset, Math.min(7, bytes.length - offset))));
+        }
+        validation.endOfInput();
+
+        ValidationResult result = validation.getResult().get(10, TimeUnit.SECONDS);
+        assertEquals(engine.validate(context, INVALID).getErrors().toString(), result.getErrors().toString());
+        assertEquals(3, result.getErrors().get(0).getLineNumber());
+    }
+
+    @Test
+    void asksTheCallerToWaitUntilTheParserCatchesUp() throws Exception {
+        StringBuilder xml = new StringBuilder("<top xmlns=\"urn:example:interfaces\">");
+        while (xml.length() < 2 * ByteFeedValidation.MAX_PENDING_BYTES) {
+            xml.append("<tag>").append(xml.length()).append("</tag>\n");
+        }
+        xml.append("</top>");
+        byte[] bytes = xml.toString().getBytes(StandardCharsets.UTF_8);
+        CountDownLatch drained = new CountDownLatch(1);
+        ByteFeedValidation validation = ByteFeedValidation.start(engine, context, ValidationBudget.DEFAULT,
+                drained::countDown);
+
+        int half = bytes.length / 2;
+        assertFalse(validation.feed(ByteBuffer.wrap(bytes, 0, half)));
+        assertTrue(drained.await(10, TimeUnit.SECONDS));
+        assertTrue(validation.needsInput());
+        validation.feed(ByteBuffer.wrap(bytes, half, bytes.length - half));
+        validation.endOfInput();
+
+        ValidationResult result = validation.getResult().get(10, TimeUnit.SECONDS);
+        assertTrue(result.isValid(), result.getErrors().toString());
+    }
+
+    @Test
+    void failsWhenCancelled() throws Exception {
+        ByteFeedValidation validation = ByteFeedValidation.start(engine, context, ValidationBudget.DEFAULT, null);
+        validation.feed(ByteBuffer.wrap("<top xmlns=\"urn:example:interfaces\"><mtu>".getBytes(StandardCharsets.UTF_8)));
+
+        validation.cancel();
+
+        ValidationResult result = validation.getResult().get(10, TimeUnit.SECONDS);
+        assertFalse(result.isValid());
+        assertTrue(result.getErrors().get(0).getMessage().contains("cancelled"), result.getErrors().toString());
+        // Input fed after the parser stopped is dropped
+        assertTrue(validation.feed(ByteBuffer.wrap("1500</mtu></top>".getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    void completesBeforeTheEndOfInputWhenTheDocumentIsMalformed() throws Exception {
+        ByteFeedValidation validation = ByteFeedValidation.start(engine, context, ValidationBudget.DEFAULT, null);
+
+        validation.feed(ByteBuffer.wrap("<top xmlns=\"urn:example:interfaces\"><mtu></top>"
+                .getBytes(StandardCharsets.UTF_8)));
+
+        assertFalse(validation.getResult().get(10, TimeUnit.SECONDS).isValid());
+        validation.endOfInput();
+        assertThrows(IllegalStateException.class, () -> validation.feed(ByteBuffer.allocate(1)));
+    }
+}
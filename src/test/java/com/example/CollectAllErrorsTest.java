@@ -0,0 +1,189 @@
+package com.example;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.opendaylight.yangtools.yang.model.api.EffectiveModelContext;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Validation collecting more than one error, see
+ * {@link YangValidatorEngine#validate(EffectiveModelContext, XmlSource, int)}.
+ */
+class CollectAllErrorsTest {
+    private static final String MULTIPLE_ERRORS = """
+            <top xmlns="urn:example:interfaces">
+              <bogus/>
+              <mtu>x</mtu>
+              <iface><id>1</id></iface>
+              <iface><id>300</id><descr>a</descr></iface>
+              <iface><id>1</id></iface>
+              <tag>a</tag>
+              <tag>a</tag>
+              <name>n</name>
+              <name>n2</name>
+            </top>
+            """;
+    // The same errors, except the invalid key only the YANG parser finds
+    private static final String READER_ERRORS = MULTIPLE_ERRORS.replace("<id>300</id>", "<id>3</id>");
+
+    private static YangValidatorEngine engine;
+    private static EffectiveModelContext context;
+
+    @BeforeAll
+    static void loadSchema() {
+        engine = new YangValidatorEngine();
+        context = engine.loadSchema(List.of(Path.of("src/test/resources/interfaces.yang")));
+    }
+
+    @Test
+    void collectsEveryErrorInOnePass() throws Exception {
+        ValidationResult result = engine.validate(context, MULTIPLE_ERRORS, 10);
+
+        assertFalse(result.isValid());
+        assertFalse(result.isIncomplete());
+        List<ValidationError> errors = result.getErrors();
+        assertEquals(6, errors.size(), errors.toString());
+        assertError(errors.get(0), 2, 3, "/top/bogus", "Unknown element");
+        assertError(errors.get(1), 3, 8, "/top/mtu", "x");
+        assertError(errors.get(2), 5, 14, "/top/iface/id", "300");
+        assertError(errors.get(3), 6, 3, "/top/iface[id='1']", "Duplicate list entry");
+        assertError(errors.get(4), 8, 3, "/top/tag[1]", "Duplicate leaf-list value");
+        assertError(errors.get(5), 10, 3, "/top/name[1]", "Duplicate element");
+    }
+
+    @Test
+    void stopsCollectingAtMaxErrors() throws Exception {
+        ValidationResult result = engine.validate(context, MULTIPLE_ERRORS, 2);
+
+        List<ValidationError> errors = result.getErrors();
+        assertEquals(2, errors.size(), errors.toString());
+        assertEquals("/top/bogus", errors.get(0).getXpath());
+        assertEquals("/top/mtu", errors.get(1).getXpath());
+        assertFalse(result.isIncomplete());
+    }
+
+    @Test
+    void acceptsAValidDocument() throws Exception {
+        ValidationResult result = engine.validate(context, """
+                <top xmlns="urn:example:interfaces">
+                  <mtu>1500</mtu>
+                  <iface><id>1</id></iface>
+                  <iface><id>2</id></iface>
+                  <tag>a</tag>
+                  <tag>b</tag>
+                </top>
+                """, 10);
+
+        assertTrue(result.isValid(), result.getErrors().toString());
+    }
+
+    @Test
+    void readsTheDocumentOnceForErrorsTheReaderFinds() throws Exception {
+        CountingSource source = new CountingSource(READER_ERRORS);
+
+        List<ValidationError> errors = engine.validate(context, source, 10).getErrors();
+
+        assertEquals(5, errors.size(), errors.toString());
+        // Repeated entries and values too are located from the same read
+        assertError(errors.get(2), 6, 3, "/top/iface[id='1']", "Duplicate list entry");
+        assertError(errors.get(3), 8, 3, "/top/tag[1]", "Duplicate leaf-list value");
+        assertEquals(1, source.reads);
+    }
+
+    @Test
+    void readsTheDocumentAgainPastAFailureOnlyTheParserFinds() throws Exception {
+        CountingSource source = new CountingSource(MULTIPLE_ERRORS);
+
+        assertEquals(6, engine.validate(context, source, 10).getErrors().size());
+        assertEquals(2, source.reads);
+    }
+
+    @Test
+    void locatesRepeatedEntriesOfAStream() throws Exception {
+        ValidationResult result = engine.validate(context, stream(READER_ERRORS), 10);
+
+        assertEquals(5, result.getErrors().size(), result.getErrors().toString());
+        assertError(result.getErrors().get(2), 6, 3, "/top/iface[id='1']", "Duplicate list entry");
+        assertFalse(result.isIncomplete());
+    }
+
+    @Test
+    void locatesConstraintViolationsOfAStream() throws Exception {
+        YangValidatorEngine constrained = new YangValidatorEngine();
+        EffectiveModelContext constraints = constrained.loadSchema(
+                List.of(Path.of("src/test/resources/constraints.yang")));
+
+        ValidationResult result = constrained.validate(constraints, stream("""
+                <node-sets xmlns="urn:example:constraints">
+                  <port>80</port>
+                </node-sets>
+                """), 10);
+
+        assertEquals(1, result.getErrors().size(), result.getErrors().toString());
+        assertError(result.getErrors().get(0), 1, 1, "/node-sets", "privileged port");
+    }
+
+    @Test
+    void reportsAStreamStoppedByAFailureOnlyTheParserFindsAsIncomplete() throws Exception {
+        ValidationResult result = engine.validate(context, stream(MULTIPLE_ERRORS), 10);
+
+        List<ValidationError> errors = result.getErrors();
+        assertEquals(3, errors.size(), errors.toString());
+        assertError(errors.get(2), 5, 14, "/top/iface/id", "300");
+        assertTrue(result.isIncomplete());
+        assertTrue(result.toJson().contains("],\"incomplete\":true"), result.toJson());
+    }
+
+    @Test
+    void reportsMalformedXmlAsIncomplete() throws Exception {
+        String malformed = "<top xmlns=\"urn:example:interfaces\">\n  <mtu>x</mtu>\n  <name>n</top>";
+
+        ValidationResult result = engine.validate(context, malformed, 10);
+
+        assertEquals(2, result.getErrors().size(), result.getErrors().toString());
+        assertTrue(result.isIncomplete());
+        // Stopping at the only error wanted is not
+        assertFalse(engine.validate(context, malformed, 1).isIncomplete());
+    }
+
+    private static XmlSource stream(String xml) {
+        return XmlSource.of(new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void assertError(ValidationError error, int line, int column, String xpath, String message) {
+        assertEquals(line, error.getLineNumber(), error.toString());
+        assertEquals(column, error.getColumnNumber(), error.toString());
+        assertEquals(xpath, error.getXpath(), error.toString());
+        assertTrue(error.getMessage().contains(message), error.toString());
+    }
+
+    /**
+     * Counts the reads of a document.
+     */
+    private static class CountingSource implements XmlSource {
+        private final XmlSource source;
+        int reads;
+
+        CountingSource(String xml) {
+            this.source = XmlSource.of(xml);
+        }
+
+        @Override
+        public XMLStreamReader createReader(XMLInputFactory factory) throws IOException, XMLStreamException {
+            reads++;
+            return source.createReader(factory);
+        }
+    }
+}
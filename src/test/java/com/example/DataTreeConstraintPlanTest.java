@@ -0,0 +1,142 @@
+package com.example;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.opendaylight.yangtools.yang.model.api.EffectiveModelContext;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Each construct of constraints.yang is checked on a document that meets it and on one
+ * that does not.
+ */
+class DataTreeConstraintPlanTest {
+    private static YangValidatorEngine engine;
+    private static EffectiveModelContext context;
+
+    @BeforeAll
+    static void loadSchema() {
+        engine = new YangValidatorEngine();
+        context = engine.loadSchema(List.of(Path.of("src/test/resources/constraints.yang")));
+    }
+
+    @Test
+    void comparesNodeSetsByAnyPairOfValues() throws Exception {
+        assertErrors("node-sets", "<allowed>a</allowed><allowed>b</allowed><used>b</used><port>8080</port>");
+        assertErrors("node-sets", "<allowed>a</allowed><used>a</used><used>c</used>",
+                "/node-sets/used[.='c']: Must condition not satisfied: not allowed");
+        // Any port below 1024 makes the comparison true
+        assertErrors("node-sets", "<port>8080</port><port>80</port>",
+                "/node-sets: Must condition not satisfied: privileged port");
+    }
+
+    @Test
+    void comparesIdentitiesByDerivation() throws Exception {
+        assertErrors("identities", "<datagram>c:quic</datagram><udp-or-derived>c:udp</udp-or-derived>");
+        assertErrors("identities", "<datagram>c:udp</datagram><udp-or-derived>c:tcp</udp-or-derived>",
+                "/identities/datagram: Must condition not satisfied: derived-from(., 'c:udp')",
+                "/identities/udp-or-derived: Must condition not satisfied: derived-from-or-self(., 'udp')");
+    }
+
+    @Test
+    void matchesWholeValuesAgainstPatterns() throws Exception {
+        assertErrors("patterns", "<name>eth0</name>");
+        assertErrors("patterns", "<name>eth0.1</name>",
+                "/patterns/name: Must condition not satisfied: re-match(., '[a-z]+[0-9]*')");
+    }
+
+    @Test
+    void comparesEnumerationsByValue() throws Exception {
+        assertErrors("enums", "<color>green</color>");
+        assertErrors("enums", "<color>red</color>",
+                "/enums/color: Must condition not satisfied: enum-value(.) > 2");
+    }
+
+    @Test
+    void testsSingleBits() throws Exception {
+        assertErrors("bits", "<flags>up running</flags>");
+        assertErrors("bits", "<flags></flags>");
+        assertErrors("bits", "<flags>running</flags>",
+                "/bits/flags: Must condition not satisfied: bit-is-set(., 'up') or not(bit-is-set(., 'running'))");
+    }
+
+    @Test
+    void followsAxesAndPredicates() throws Exception {
+        assertErrors("axes", "<limit>10</limit>"
+                + "<item><id>1</id><weight>5</weight><primary>true</primary></item>"
+                + "<item><id>2</id><ref>1</ref><weight>6</weight><primary>false</primary></item>");
+        assertErrors("axes", "<limit>5</limit>"
+                + "<item><id>1</id><ref>4</ref><weight>5</weight><primary>true</primary></item>"
+                + "<item><id>2</id><weight>6</weight><primary>true</primary></item>"
+                + "<item><id>3</id><weight>5</weight></item>",
+                "/axes: Must condition not satisfied: more than one primary item",
+                "/axes/item[id='1']: Must condition not satisfied: same weight as a later item",
+                "/axes/item[id='1']/ref: Must condition not satisfied: no such item",
+                "/axes/item[id='2']/weight: Must condition not satisfied: "
+                        + "not(ancestor::axes/limit) or . <= ancestor::axes/limit");
+    }
+
+    @Test
+    void countsAndComparesEntries() throws Exception {
+        assertErrors("counts", "<tag>x</tag><required>r</required><a/>"
+                + "<entry><name>a</name><port>1</port></entry><entry><name>b</name><port>2</port></entry>");
+        assertErrors("counts", "<tag>x</tag><tag>y</tag><tag>z</tag><required>r</required><a/>"
+                + "<entry><name>a</name><port>1</port></entry><entry><name>b</name><port>1</port></entry>",
+                "/counts/tag: Too many entries - above max-elements: 3 of at most 2",
+                "/counts/entry[name='b']: Unique constraint violated - values must differ between list entries: port as in entry[name='a']");
+    }
+
+    @Test
+    void requiresMandatoryNodesOfPresentContainers() throws Exception {
+        assertErrors("counts", "",
+                "/counts/tag: Too few entries - below min-elements: 0 of at least 1",
+                "/counts/required: Missing mandatory element: required",
+                "/counts: Missing mandatory choice - one of its cases must be present: kind");
+    }
+
+    @Test
+    void checksWhenConditions() throws Exception {
+        assertErrors("counts", "<tag>x</tag><required>with-extra</required><b/><extra>e</extra>");
+        assertErrors("counts", "<tag>x</tag><required>r</required><b/><extra>e</extra>",
+                "/counts/extra: Element present although its when condition is false: ../required = 'with-extra'");
+    }
+
+    @Test
+    void warnsOfConstraintsThatCouldNotBeCompiled() throws Exception {
+        assertFalse(engine.getDataTreePlan(context).isEmpty());
+
+        ValidationResult result = validate("unchecked", "<language>en</language>");
+
+        assertTrue(result.isValid(), result.getErrors().toString());
+        assertEquals(List.of("/unchecked/language: Constraint not checked for language: "
+                + "must \"lang('en')\" (Unsupported function lang())"), describe(result.getWarnings()));
+        assertEquals(1, result.getWarnings().get(0).getLineNumber());
+        assertTrue(result.toJson().contains(",\"warnings\":[{\"line\":1,"), result.toJson());
+
+        // Only data the constraint applies to is warned of
+        ValidationResult without = validate("unchecked", "<other>x</other>");
+        assertEquals(List.of(), without.getWarnings());
+        assertEquals("{\"valid\":true,\"errors\":[]}", without.toJson());
+    }
+
+    private static void assertErrors(String container, String body, String... expected) throws Exception {
+        ValidationResult result = validate(container, body);
+
+        assertEquals(List.of(expected), describe(result.getErrors()));
+        assertEquals(List.of(), result.getWarnings());
+    }
+
+    private static ValidationResult validate(String container, String body) throws Exception {
+        return engine.validate(context, XmlSource.of("<" + container + " xmlns=\"urn:example:constraints\""
+                + " xmlns:c=\"urn:example:constraints\">" + body + "</" + container + ">"), 10);
+    }
+
+    private static List<String> describe(List<ValidationError> errors) {
+        return errors.stream().map(error -> error.getXpath() + ": " + error.getMessage()).toList();
+    }
+}
@@ -0,0 +1,120 @@
+package com.example;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.opendaylight.yangtools.yang.model.api.EffectiveModelContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FramedMessageValidatorTest {
+    private static final String VALID = "<top xmlns=\"urn:example:interfaces\"><mtu>1500</mtu></top>";
+    private static final String INVALID = "<top xmlns=\"urn:example:interfaces\"><mtu>x</mtu></top>";
+    private static final String VALID_REPLY = "{\"valid\":true,\"errors\":[]}";
+
+    private static YangValidatorEngine engine;
+    private static EffectiveModelContext context;
+
+    @BeforeAll
+    static void loadSchema() {
+        engine = new YangValidatorEngine();
+        context = engine.loadSchema(List.of(Path.of("src/test/resources/interfaces.yang")));
+    }
+
+    @Test
+    void answersEndOfMessageFramedMessages() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long messages = validator(ValidationBudget.DEFAULT).validate(
+                in("\n" + VALID + "]]>]]>\n" + INVALID + "\n]]>]]>  \n"), out);
+
+        assertEquals(2, messages);
+        String[] replies = out.toString(StandardCharsets.UTF_8).split("]]>]]>\n", -1);
+        assertEquals(3, replies.length, out.toString(StandardCharsets.UTF_8));
+        assertEquals(VALID_REPLY, replies[0]);
+        assertTrue(replies[1].startsWith("{\"valid\":false"), replies[1]);
+        assertEquals("", replies[2]);
+    }
+
+    @Test
+    void answersChunkedMessages() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // The first message is split over two chunks, in the middle of a tag
+        String first = VALID.substring(0, 20);
+        String rest = VALID.substring(20);
+
+        long messages = validator(ValidationBudget.DEFAULT).validate(in(
+                "\n#" + first.length() + "\n" + first + "\n#" + rest.length() + "\n" + rest + "\n##\n"
+                        + "\n#" + INVALID.length() + "\n" + INVALID + "\n##\n"), out);
+
+        assertEquals(2, messages);
+        String replies = out.toString(StandardCharsets.UTF_8);
+        String expected = "\n#" + VALID_REPLY.length() + "\n" + VALID_REPLY + "\n##\n";
+        assertTrue(replies.startsWith(expected), replies);
+        assertTrue(replies.substring(expected.length()).matches("\n#\\d+\n\\{\"valid\":false.*\n##\n"), replies);
+    }
+
+    @Test
+    void answersMessagesOverTheSizeLimitWithoutReadingThem() throws Exception {
+        ValidationBudget budget = ValidationBudget.builder().maxDocumentSize(VALID.length()).build();
+        String large = VALID.replace("1500", "15000");
+
+        ByteArrayOutputStream delimited = new ByteArrayOutputStream();
+        assertEquals(2, validator(budget).validate(in(large + "]]>]]>" + VALID + "]]>]]>"), delimited));
+        assertReplies(delimited.toString(StandardCharsets.UTF_8).split("]]>]]>\n"));
+
+        ByteArrayOutputStream chunked = new ByteArrayOutputStream();
+        assertEquals(2, validator(budget).validate(in("\n#" + large.length() + "\n" + large + "\n##\n"
+                + "\n#" + VALID.length() + "\n" + VALID + "\n##\n"), chunked));
+        assertReplies(chunked.toString(StandardCharsets.UTF_8).replaceAll("\n#\\d+\n", "").split("\n##\n"));
+    }
+
+    @Test
+    void endsTheStreamOnMalformedFraming() {
+        for (String stream : List.of(
+                // Chunk sizes start with 1 to 9
+                "\n#0\n\n##\n",
+                "\n#x\n" + VALID + "\n##\n",
+                // Fewer bytes than the chunk size
+                "\n#" + (VALID.length() + 10) + "\n" + VALID,
+                "\n#" + VALID.length() + "\n" + VALID + "\n#",
+                "\n##\n",
+                VALID + "]]>]]>" + VALID)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            assertThrows(IOException.class, () -> validator(ValidationBudget.DEFAULT).validate(in(stream), out),
+                    stream);
+        }
+    }
+
+    @Test
+    void repliesToMessagesBeforeTheMalformedOne() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertThrows(IOException.class, () -> validator(ValidationBudget.DEFAULT).validate(
+                in("\n#" + VALID.length() + "\n" + VALID + "\n##\n\n#-1\n"), out));
+
+        assertEquals("\n#" + VALID_REPLY.length() + "\n" + VALID_REPLY + "\n##\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    private static void assertReplies(String[] replies) {
+        assertEquals(2, replies.length, String.join("|", replies));
+        assertTrue(replies[0].contains("Message larger than"), replies[0]);
+        assertEquals(VALID_REPLY, replies[1]);
+    }
+
+    private static FramedMessageValidator validator(ValidationBudget budget) {
+        return new FramedMessageValidator(engine, context, budget);
+    }
+
+    private static ByteArrayInputStream in(String stream) {
+        return new ByteArrayInputStream(stream.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,134 @@
+package com.example;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.opendaylight.yangtools.yang.model.api.EffectiveModelContext;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Every version is checked against validating it in full with a validator of its own.
+ */
+class IncrementalValidatorTest {
+    private static final String INTERFACES = """
+            <interface><name>eth0</name><mtu>1500</mtu><type>inc:ethernet</type></interface>
+            <interface><name>eth1</name><mtu>1500</mtu></interface>
+            <interface><name>eth2</name><mtu>9000</mtu></interface>
+            """;
+
+    private static YangValidatorEngine engine;
+    private static EffectiveModelContext context;
+
+    private IncrementalValidator validator;
+
+    @BeforeAll
+    static void loadSchema() {
+        engine = new YangValidatorEngine();
+        context = engine.loadSchema(List.of(Path.of("src/test/resources/incremental.yang")));
+    }
+
+    @BeforeEach
+    void createValidator() {
+        validator = new IncrementalValidator(engine, context);
+    }
+
+    @Test
+    void takesUnchangedSubtreesFromThePreviousVersion() throws Exception {
+        String xml = config("<system><hostname>a</hostname></system>" + INTERFACES);
+
+        assertValid(xml);
+        assertEquals(0, validator.getReusedCount());
+        assertEquals(4, validator.getParsedCount());
+
+        assertValid(xml);
+        assertEquals(4, validator.getReusedCount());
+        assertEquals(0, validator.getParsedCount());
+    }
+
+    @Test
+    void parsesChangedSubtrees() throws Exception {
+        assertValid(config("<system><hostname>a</hostname></system>" + INTERFACES));
+
+        assertValid(config("<system><hostname>b</hostname></system>" + INTERFACES.replace("9000", "1400")));
+        assertEquals(2, validator.getReusedCount());
+        assertEquals(2, validator.getParsedCount());
+
+        // An entry that moved, even unchanged, is parsed again as its parent is another one
+        assertInvalid(config(INTERFACES.replace("9000", "x")));
+        assertEquals(2, validator.getReusedCount());
+        assertEquals(1, validator.getParsedCount());
+    }
+
+    @Test
+    void parsesEntriesOfListsOrderedByUser() throws Exception {
+        assertValid(config(INTERFACES + "<rule><id>1</id></rule><rule><id>2</id></rule>"));
+
+        assertValid(config(INTERFACES + "<rule><id>2</id></rule><rule><id>1</id></rule>"));
+        assertEquals(3, validator.getReusedCount());
+        assertEquals(2, validator.getParsedCount());
+        assertTrue(validator.getData().toString().matches("(?s).*id=2.*id=1.*"), validator.getData().toString());
+    }
+
+    @Test
+    void parsesSubtreesThatFailedBefore() throws Exception {
+        String invalid = config(INTERFACES.replace("9000", "x"));
+
+        assertInvalid(invalid);
+        assertInvalid(invalid);
+        assertEquals(2, validator.getReusedCount());
+        assertEquals(1, validator.getParsedCount());
+
+        assertValid(config(INTERFACES));
+        assertEquals(2, validator.getReusedCount());
+        assertEquals(1, validator.getParsedCount());
+    }
+
+    @Test
+    void digestsTheNamespaceBindingsASubtreeInherits() throws Exception {
+        assertValid("<config xmlns=\"urn:example:incremental\" xmlns:inc=\"urn:example:incremental\">"
+                + INTERFACES + "</config>");
+
+        // The same text, with the prefix of the identity bound to another namespace
+        assertInvalid("<config xmlns=\"urn:example:incremental\" xmlns:inc=\"urn:example:other\">"
+                + INTERFACES + "</config>");
+        // Every subtree inherits the binding, so none is taken
+        assertEquals(0, validator.getReusedCount());
+        assertEquals(3, validator.getParsedCount());
+    }
+
+    @Test
+    void validatesAVersionRepeatingATakenSubtreeInFull() throws Exception {
+        assertValid(config(INTERFACES));
+
+        assertInvalid(config(INTERFACES + "<interface><name>eth1</name><mtu>1500</mtu></interface>"));
+        assertEquals(0, validator.getReusedCount());
+        assertEquals(4, validator.getParsedCount());
+    }
+
+    private static String config(String body) {
+        return "<config xmlns=\"urn:example:incremental\" xmlns:inc=\"urn:example:incremental\">\n"
+                + body + "</config>";
+    }
+
+    private void assertValid(String xml) throws Exception {
+        ValidationResult result = validator.validate(XmlSource.of(xml), 10);
+
+        assertTrue(result.isValid(), result.getErrors().toString());
+        assertEquals(new IncrementalValidator(engine, context).validate(XmlSource.of(xml), 10).getData(),
+                validator.getData());
+    }
+
+    private void assertInvalid(String xml) throws Exception {
+        ValidationResult result = validator.validate(XmlSource.of(xml), 10);
+
+        assertFalse(result.isValid());
+        assertEquals(engine.validate(context, XmlSource.of(xml), 10).getErrors().toString(),
+                result.getErrors().toString());
+    }
+}
@@ -0,0 +1,102 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.opendaylight.yangtools.yang.model.api.EffectiveModelContext;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The mapped index answers every lookup as the heap index does for the same document.
+ */
+class MappedXPathLocationIndexTest {
+    private static final String INTERFACES = """
+            <top xmlns="urn:example:interfaces">
+              <mtu>1500</mtu>
+              <iface><id>1</id><speed>1</speed></iface>
+              <iface><id>2</id><descr>b</descr></iface>
+              <tag>a</tag>
+              <tag>b</tag>
+              <tag>c</tag>
+              <bogus><nested/></bogus>
+              <name>n</name>
+            </top>
+            """;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void matchesTheHeapIndexWithASchema() throws Exception {
+        EffectiveModelContext context = new YangValidatorEngine()
+                .loadSchema(List.of(Path.of("src/test/resources/interfaces.yang")));
+
+        assertParity(INTERFACES, context);
+    }
+
+    @Test
+    void matchesTheHeapIndexWithoutASchema() throws Exception {
+        // Random nesting, so names repeat at some depths and not at others
+        Random random = new Random(7);
+        StringBuilder xml = new StringBuilder("<root>\n");
+        appendChildren(xml, random, 0);
+        xml.append("</root>\n");
+
+        assertParity(xml.toString(), null);
+    }
+
+    @Test
+    void keepsNothingInTheDirectoryAfterClosing() throws Exception {
+        try (MappedXPathLocationIndex mapped = XPathCreator.createLocationIndex(XmlSource.of(INTERFACES), null,
+                new MappedXPathLocationIndex(directory))) {
+            assertEquals("/root/top/tag[2]", mapped.getXPath(mapped.findElement(7, 3)));
+        }
+
+        try (var files = Files.list(directory)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    private void assertParity(String xml, EffectiveModelContext context) throws Exception {
+        XPathLocationIndex heap = XPathCreator.createLocationIndex(XmlSource.of(xml), context);
+        try (MappedXPathLocationIndex mapped = XPathCreator.createLocationIndex(XmlSource.of(xml), context,
+                new MappedXPathLocationIndex(directory))) {
+            assertEquals(heap.size(), mapped.size());
+            for (int ordinal = 0; ordinal < heap.size(); ordinal++) {
+                assertEquals(heap.getXPath(ordinal), mapped.getXPath(ordinal));
+                assertEquals(heap.getName(ordinal), mapped.getName(ordinal));
+                assertEquals(heap.getParent(ordinal), mapped.getParent(ordinal));
+                assertEquals(heap.getLine(ordinal), mapped.getLine(ordinal));
+                assertEquals(heap.getColumn(ordinal), mapped.getColumn(ordinal));
+                assertEquals(heap.getEndLine(ordinal), mapped.getEndLine(ordinal));
+                assertEquals(heap.getEndColumn(ordinal), mapped.getEndColumn(ordinal));
+            }
+            String[] lines = xml.split("\n");
+            for (int line = 1; line <= lines.length; line++) {
+                for (int column = 1; column <= lines[line - 1].length() + 1; column++) {
+                    assertEquals(heap.findElement(line, column), mapped.findElement(line, column),
+                            "Line " + line + ", column " + column);
+                }
+            }
+        }
+    }
+
+    private static void appendChildren(StringBuilder xml, Random random, int depth) {
+        if (depth == 5) {
+            xml.append("text");
+            return;
+        }
+        int children = random.nextInt(5);
+        for (int i = 0; i < children; i++) {
+            String name = String.valueOf((char) ('a' + random.nextInt(3)));
+            xml.append('<').append(name).append('>');
+            appendChildren(xml, random, depth + 1);
+            xml.append("</").append(name).append(">\n");
+        }
+    }
+}
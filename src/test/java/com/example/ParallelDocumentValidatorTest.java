@@ -0,0 +1,122 @@
+package com.example;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.opendaylight.yangtools.yang.model.api.EffectiveModelContext;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParallelDocumentValidatorTest {
+    // Enough entries for the document to be cut into several chunks of the size below
+    private static final int ENTRIES = 2_000;
+    private static final long MIN_CHUNK_SIZE = 8 * 1024;
+
+    private static YangValidatorEngine engine;
+    private static EffectiveModelContext context;
+    private static ForkJoinPool pool;
+
+    @BeforeAll
+    static void setUp() {
+        engine = new YangValidatorEngine();
+        context = engine.loadSchema(List.of(Path.of("src/test/resources/entries.yang")));
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    static void tearDown() {
+        pool.shutdown();
+    }
+
+    @Test
+    void acceptsAValidDocument() throws Exception {
+        ValidationResult result = validator()
+                .validate(XmlSource.of(entries(new StringBuilder()).toString()), 10);
+
+        assertTrue(result.isValid(), result.getErrors().toString());
+    }
+
+    @Test
+    void reportsErrorsWhereTheWholeDocumentHasThem() throws Exception {
+        StringBuilder xml = entries(new StringBuilder());
+        xml.append("<entry xmlns=\"urn:example:entries\"><id>x</id></entry>\n");
+        XmlSource source = XmlSource.of(xml.toString());
+
+        List<ValidationError> errors = validator()
+                .validate(source, 10).getErrors();
+
+        assertEquals(1, errors.size(), errors.toString());
+        assertEquals(ENTRIES + 2, errors.get(0).getLineNumber(), errors.toString());
+        assertEquals(engine.validate(context, source, 10).getErrors().toString(), errors.toString());
+    }
+
+    @Test
+    void reportsTopLevelElementsRepeatedInALaterChunk() throws Exception {
+        StringBuilder xml = entries(new StringBuilder());
+        xml.append("<entry xmlns=\"urn:example:entries\"><id>7</id></entry>\n");
+        xml.append("<single xmlns=\"urn:example:entries\">b</single>\n");
+        XmlSource source = XmlSource.of(xml.toString());
+
+        List<ValidationError> errors = validator()
+                .validate(source, 10).getErrors();
+
+        assertEquals(2, errors.size(), errors.toString());
+        assertEquals(ENTRIES + 2, errors.get(0).getLineNumber(), errors.toString());
+        assertEquals("/entry[id='7']", errors.get(0).getXpath());
+        assertEquals(ENTRIES + 3, errors.get(1).getLineNumber(), errors.toString());
+        assertEquals(engine.validate(context, source, 10).getErrors().toString(), errors.toString());
+    }
+
+    @Test
+    void validatesOtherEncodingsWithoutCuttingThem() throws Exception {
+        for (Charset charset : List.of(StandardCharsets.ISO_8859_1, StandardCharsets.UTF_16)) {
+            // The declaration may break lines anywhere between its attributes
+            StringBuilder xml = new StringBuilder("<?xml\n  version=\"1.0\"\n  encoding=\"" + charset.name() + "\"?>\n");
+            entries(xml);
+            // Bytes that chunks decoded as UTF-8 would fail on
+            xml.append("<entry xmlns=\"urn:example:entries\"><id>x</id><value>caf\u00e9</value></entry>\n");
+            XmlSource source = XmlSource.of(xml.toString().getBytes(charset));
+
+            List<ValidationError> errors = validator().validate(source, 10).getErrors();
+
+            assertEquals(1, errors.size(), charset + " " + errors);
+            assertEquals(engine.validate(context, source, 10).getErrors().toString(), errors.toString());
+        }
+    }
+
+    @Test
+    void skipsAUtf8ByteOrderMark() throws Exception {
+        // Starts with an error, so its column counts
+        StringBuilder xml = new StringBuilder("\ufeff<entry xmlns=\"urn:example:entries\"><id>x</id></entry>\n");
+        entries(xml);
+        XmlSource source = XmlSource.of(xml.toString().getBytes(StandardCharsets.UTF_8));
+
+        List<ValidationError> errors = validator().validate(source, 10).getErrors();
+
+        assertEquals(1, errors.size(), errors.toString());
+        assertEquals(engine.validate(context, source, 10).getErrors().toString(), errors.toString());
+    }
+
+    private static ParallelDocumentValidator validator() {
+        return new ParallelDocumentValidator(engine, context, pool, MIN_CHUNK_SIZE);
+    }
+
+    /**
+     * Appends a single leaf followed by the list entries, one per line.
+     */
+    private static StringBuilder entries(StringBuilder xml) {
+        xml.append("<single xmlns=\"urn:example:entries\">a</single>\n");
+        for (int i = 0; i < ENTRIES; i++) {
+            xml.append("<entry xmlns=\"urn:example:entries\"><id>").append(i)
+                    .append("</id><value>value number ").append(i).append("</value></entry>\n");
+        }
+        return xml;
+    }
+}
@@ -0,0 +1,111 @@
+package com.example;
+
+/**
+ * Synthetic documents for the tests and benchmarks, which include the test classes.
+ */
+public class SampleDocuments {
+    public static final String MODULE_PATH = "src/main/resources/module.yang";
+    public static final String NESTED_NAMESPACE = "http://example.com/nested";
+
+    /**
+     * A valid document for the bundled module.yang, its size grows with the number of
+     * property list entries.
+     */
+    public static String network(int fanOut) {
+        StringBuilder xml = new StringBuilder("<network xmlns=\"http://example.com/sample\">\n");
+        xml.append("  <name>gNBCP</name>\n");
+        xml.append("  <type>LAN</type>\n");
+        for (int i = 0; i < fanOut; i++) {
+            xml.append("  <property><name>NetworkProperty").append(i).append("</name></property>\n");
+        }
+        xml.append("  <configuration>\n");
+        xml.append("    <ip-address>23</ip-address>\n");
+        xml.append("    <subnet>255.255.255.0</subnet>\n");
+        xml.append("    <enabled>true</enabled>\n");
+        xml.append("  </configuration>\n");
+        xml.append("</network>\n");
+        return xml.toString();
+    }
+
+    /**
+     * A schema-less document, wrapped in a root element: fanOut repeated items, each nested
+     * depth elements deep.
+     */
+    public static String nested(int depth, int fanOut) {
+        StringBuilder xml = new StringBuilder("<root>\n");
+        for (int i = 0; i < fanOut; i++) {
+            xml.append("  <item>");
+            for (int level = 0; level < depth; level++) {
+                xml.append("<level").append(level).append('>');
+            }
+            xml.append(i);
+            for (int level = depth - 1; level >= 0; level--) {
+                xml.append("</level").append(level).append('>');
+            }
+            xml.append("</item>\n");
+        }
+        xml.append("</root>\n");
+        return xml.toString();
+    }
+
+    /**
+     * A YANG module for {@link #nestedList}: containers level0 to level(depth - 1), nested
+     * in each other, holding a list keyed by its name.
+     */
+    public static String nestedModule(int depth) {
+        return nestedModule(depth, false);
+    }
+
+    /**
+     * Like {@link #nestedModule(int)}, with a must condition on each list entry if
+     * constrained, which every entry of {@link #nestedList} meets.
+     */
+    public static String nestedModule(int depth, boolean constrained) {
+        StringBuilder yang = new StringBuilder("module nested {\n");
+        yang.append("  namespace \"").append(NESTED_NAMESPACE).append("\";\n");
+        yang.append("  prefix n;\n");
+        for (int level = 0; level < depth; level++) {
+            yang.append("  ".repeat(level + 1)).append("container level").append(level).append(" {\n");
+        }
+        String indent = "  ".repeat(depth + 1);
+        yang.append(indent).append("list entry {\n");
+        yang.append(indent).append("  key name;\n");
+        if (constrained) {
+            yang.append(indent).append("  must \"count <= 1000\";\n");
+        }
+        yang.append(indent).append("  leaf name { type string; }\n");
+        yang.append(indent).append("  leaf value { type string { length \"0..65535\"; } }\n");
+        yang.append(indent).append("  leaf count { type uint32 { range \"0..1000000\"; } }\n");
+        yang.append(indent).append("}\n");
+        for (int level = depth - 1; level >= 0; level--) {
+            yang.append("  ".repeat(level + 1)).append("}\n");
+        }
+        yang.append("}\n");
+        return yang.toString();
+    }
+
+    /**
+     * A valid document for {@link #nestedModule}: fanOut list entries depth containers deep,
+     * each with a value of valueLength characters, which grows the document without adding
+     * elements.
+     */
+    public static String nestedList(int depth, int fanOut, int valueLength) {
+        StringBuilder xml = new StringBuilder();
+        for (int level = 0; level < depth; level++) {
+            xml.append("<level").append(level);
+            if (level == 0) {
+                xml.append(" xmlns=\"").append(NESTED_NAMESPACE).append('"');
+            }
+            xml.append(">\n");
+        }
+        String value = "v".repeat(valueLength);
+        for (int i = 0; i < fanOut; i++) {
+            xml.append("<entry><name>entry").append(i).append("</name><value>").append(value)
+                    .append("</value><count>").append(i % 1000).append("</count></entry>\n");
+        }
+        for (int level = depth - 1; level >= 0; level--) {
+            xml.append("</level").append(level).append(">\n");
+        }
+        return xml.toString();
+    }
+}
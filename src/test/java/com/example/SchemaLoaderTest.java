@@ -0,0 +1,112 @@
+package com.example;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.opendaylight.yangtools.yang.model.api.Module;
+import org.opendaylight.yangtools.yang.parser.api.YangParserFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SchemaLoaderTest {
+    private static final YangParserFactory PARSER_FACTORY = ServiceLoader.load(YangParserFactory.class)
+            .findFirst().orElseThrow();
+
+    @TempDir
+    Path directory;
+
+    @BeforeEach
+    void writeModules() throws Exception {
+        // a imports a module that is not there, b imports a and c imports b
+        writeModule("a", "import missing { prefix m; }");
+        writeModule("b", "import a { prefix a; }");
+        writeModule("c", "import b { prefix b; }");
+        writeModule("d", "leaf d { type string; }");
+        Files.writeString(directory.resolve("broken.yang"), "module broken {");
+        Files.writeString(directory.resolve("notes.txt"), "not a module");
+    }
+
+    @Test
+    void leavesOutTheDependentsOfAMissingImport() throws Exception {
+        SchemaLoader.Result result = new SchemaLoader(PARSER_FACTORY, 2, true)
+                .load(SchemaLoader.findYangFiles(List.of(directory)));
+
+        assertEquals(1, result.getModuleCount());
+        assertEquals(List.of("d"), result.getContext().getModules().stream()
+                .map(Module::getName).toList());
+        Map<String, SchemaLoader.ModuleFailure> failures = failuresByModule(result.getFailures());
+        assertEquals(List.of("a", "b", "broken", "c"), List.copyOf(failures.keySet()));
+        assertEquals(SchemaLoader.Stage.PARSE, failures.get("broken").getStage());
+        assertEquals(SchemaLoader.Stage.RESOLVE, failures.get("a").getStage());
+        assertTrue(failures.get("a").getMessage().contains("missing"), failures.get("a").toString());
+        assertTrue(failures.get("b").getMessage().contains("Missing import a"), failures.get("b").toString());
+        assertTrue(failures.get("c").getMessage().contains("Missing import b"), failures.get("c").toString());
+    }
+
+    @Test
+    void reportsEveryFailedModuleWhenNoneMayBeLeftOut() throws Exception {
+        SchemaLoader loader = new SchemaLoader(PARSER_FACTORY, 2, false);
+        List<Path> files = SchemaLoader.findYangFiles(List.of(directory));
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> loader.load(files));
+
+        assertTrue(e.getMessage().startsWith("Failed to load 4 YANG modules:"), e.getMessage());
+        for (String module : List.of("a.yang", "b.yang", "c.yang", "broken.yang")) {
+            assertTrue(e.getMessage().contains(module), e.getMessage());
+        }
+    }
+
+    @Test
+    void leavesOutASecondModuleWithTheSameNameAndRevision() throws Exception {
+        Path copy = Files.createDirectory(directory.resolve("copy"));
+        Files.copy(directory.resolve("d.yang"), copy.resolve("d.yang"));
+
+        SchemaLoader.Result result = new SchemaLoader(PARSER_FACTORY, 2, true)
+                .load(List.of(directory.resolve("d.yang"), copy.resolve("d.yang")));
+
+        assertEquals(1, result.getModuleCount());
+        assertEquals(1, result.getFailures().size(), result.getFailures().toString());
+        assertTrue(result.getFailures().get(0).getMessage().contains("same module name"));
+    }
+
+    @Test
+    void findsTheYangFilesBelowADirectoryInNameOrder() throws Exception {
+        Path nested = Files.createDirectory(directory.resolve("nested"));
+        writeModule(nested, "e", "");
+
+        List<Path> files = SchemaLoader.findYangFiles(List.of(directory));
+
+        assertEquals(List.of("a.yang", "b.yang", "broken.yang", "c.yang", "d.yang", "nested/e.yang"),
+                files.stream().map(file -> directory.relativize(file).toString()).toList());
+    }
+
+    private void writeModule(String name, String body) throws Exception {
+        writeModule(directory, name, body);
+    }
+
+    private static void writeModule(Path directory, String name, String body) throws Exception {
+        Files.writeString(directory.resolve(name + ".yang"), "module " + name + " { namespace \"urn:example:" + name
+                + "\"; prefix " + name + "; " + body + " }");
+    }
+
+    /**
+     * @return the failures by the name of their file, without the .yang extension
+     */
+    private static Map<String, SchemaLoader.ModuleFailure> failuresByModule(List<SchemaLoader.ModuleFailure> failures) {
+        Map<String, SchemaLoader.ModuleFailure> byModule = new TreeMap<>();
+        for (SchemaLoader.ModuleFailure failure : failures) {
+            String file = Path.of(failure.getSource().split(" ")[0]).getFileName().toString();
+            byModule.put(file.substring(0, file.indexOf(".yang")), failure);
+        }
+        return byModule;
+    }
+}
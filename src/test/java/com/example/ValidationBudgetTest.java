@@ -0,0 +1,128 @@
+package com.example;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.opendaylight.yangtools.yang.model.api.EffectiveModelContext;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Each limit accepts a document right at it and stops one just over it, at the element
+ * where it was exceeded.
+ */
+class ValidationBudgetTest {
+    private static final String TOP = "<top xmlns=\"urn:example:interfaces\">";
+
+    private static YangValidatorEngine engine;
+    private static EffectiveModelContext context;
+
+    @BeforeAll
+    static void loadSchema() {
+        engine = new YangValidatorEngine();
+        context = engine.loadSchema(List.of(Path.of("src/test/resources/interfaces.yang")));
+    }
+
+    @Test
+    void limitsTheDepth() throws Exception {
+        String xml = TOP + "<iface><id>1</id></iface></top>";
+
+        assertValid(xml, ValidationBudget.builder().maxDepth(3).build());
+        assertStopped(xml, ValidationBudget.builder().maxDepth(2).build(), "/top/iface/id", "depth limit");
+    }
+
+    @Test
+    void limitsTheElementCount() throws Exception {
+        String xml = TOP + "<tag>a</tag><tag>b</tag><tag>c</tag></top>";
+
+        assertValid(xml, ValidationBudget.builder().maxElements(4).build());
+        assertStopped(xml, ValidationBudget.builder().maxElements(3).build(), "/top/tag[2]",
+                "element count limit");
+    }
+
+    @Test
+    void limitsTheAttributeLength() throws Exception {
+        String xml = "<top xmlns=\"urn:example:interfaces\" xmlns:a=\"urn:a\" a:note=\"12345\"/>";
+
+        // Namespace declarations count as attributes
+        assertValid(xml, ValidationBudget.builder().maxAttributeLength(22).build());
+        assertStopped(xml, ValidationBudget.builder().maxAttributeLength(21).build(), "/", "attribute length limit");
+    }
+
+    @Test
+    void limitsTheTextLength() throws Exception {
+        String xml = TOP + "<name>0123456789</name></top>";
+
+        assertValid(xml, ValidationBudget.builder().maxTextLength(10).build());
+        assertStopped(xml, ValidationBudget.builder().maxTextLength(9).build(), "/top/name", "text length limit");
+    }
+
+    @Test
+    void limitsTheDocumentSizeInBytes() throws Exception {
+        // Two bytes for the last character, so a limit in characters would let it through
+        byte[] xml = (TOP + "<name>café</name></top>").getBytes(StandardCharsets.UTF_8);
+
+        assertTrue(engine.validate(context, XmlSource.of(xml),
+                ValidationBudget.builder().maxDocumentSize(xml.length).build()).isValid());
+        List<ValidationError> errors = engine.validate(context, XmlSource.of(xml),
+                ValidationBudget.builder().maxDocumentSize(xml.length - 1).build()).getErrors();
+        assertEquals(1, errors.size(), errors.toString());
+        assertTrue(errors.get(0).getMessage().contains("document size limit"), errors.toString());
+    }
+
+    @Test
+    void refusesEntityDeclarationsBeforeExpandingThem() throws Exception {
+        // Documents are read as fragments, so a DOCTYPE and its entities are never expanded
+        String xml = "<!DOCTYPE top [<!ENTITY a \"aaaaaaaaaa\"><!ENTITY b \"&a;&a;&a;&a;&a;&a;&a;&a;&a;&a;\">]>"
+                + TOP + "<name>&b;&b;&b;&b;&b;&b;&b;&b;&b;&b;</name></top>";
+
+        List<ValidationError> errors = engine.validate(context, XmlSource.of(xml), ValidationBudget.DEFAULT)
+                .getErrors();
+
+        assertEquals(1, errors.size(), errors.toString());
+        assertEquals(1, errors.get(0).getLineNumber());
+    }
+
+    @Test
+    void stopsAtTheTimeout() throws Exception {
+        StringBuilder xml = new StringBuilder(TOP);
+        for (int i = 0; i < 1000; i++) {
+            xml.append("<tag>").append(i).append("</tag>");
+        }
+        xml.append("</top>");
+
+        // Already over when validation starts
+        ValidationResult result = engine.validate(context, XmlSource.of(xml.toString()),
+                ValidationBudget.builder().timeout(Duration.ofNanos(1)).build());
+
+        assertTrue(result.isTimedOut());
+        assertEquals(1, result.getErrors().size(), result.getErrors().toString());
+        assertTrue(result.getErrors().get(0).getMessage().contains("time limit"), result.getErrors().toString());
+    }
+
+    @Test
+    void refusesLimitsThatAreNotPositive() {
+        assertThrows(IllegalArgumentException.class, () -> ValidationBudget.builder().maxDepth(0));
+        assertThrows(IllegalArgumentException.class, () -> ValidationBudget.builder().maxDocumentSize(-1));
+        assertThrows(IllegalArgumentException.class, () -> ValidationBudget.builder().timeout(Duration.ZERO));
+    }
+
+    private static void assertValid(String xml, ValidationBudget budget) throws Exception {
+        ValidationResult result = engine.validate(context, XmlSource.of(xml), budget);
+        assertTrue(result.isValid(), result.getErrors().toString());
+    }
+
+    private static void assertStopped(String xml, ValidationBudget budget, String xpath, String message)
+            throws Exception {
+        List<ValidationError> errors = engine.validate(context, XmlSource.of(xml), budget).getErrors();
+        assertEquals(1, errors.size(), errors.toString());
+        assertEquals(xpath, errors.get(0).getXpath(), errors.toString());
+        assertTrue(errors.get(0).getMessage().contains(message), errors.toString());
+    }
+}
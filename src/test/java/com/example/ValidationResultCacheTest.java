@@ -0,0 +1,147 @@
+package com.example;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.opendaylight.yangtools.yang.model.api.EffectiveModelContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ValidationResultCacheTest {
+    private static final String VALID = "<top xmlns=\"urn:example:interfaces\"><mtu>1500</mtu></top>";
+    private static final String INVALID = "<top xmlns=\"urn:example:interfaces\"><mtu>x</mtu></top>";
+
+    private static YangValidatorEngine engine;
+    private static EffectiveModelContext context;
+
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    static void loadSchema() {
+        engine = new YangValidatorEngine();
+        context = engine.loadSchema(List.of(Path.of("src/test/resources/interfaces.yang")));
+    }
+
+    @Test
+    void answersAByteIdenticalDocumentFromMemory() throws Exception {
+        ValidationResultCache cache = new ValidationResultCache(engine, 10, null);
+
+        ValidationResult first = cache.validate(context, XmlSource.of(INVALID), 1);
+        ValidationResult second = cache.validate(context, XmlSource.of(INVALID.getBytes()), 1);
+
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(first.getErrors().toString(), second.getErrors().toString());
+        assertEquals(engine.validate(context, INVALID).getErrors().toString(), first.getErrors().toString());
+    }
+
+    @Test
+    void validatesAnyOtherDocument() throws Exception {
+        ValidationResultCache cache = new ValidationResultCache(engine, 10, null);
+
+        assertFalse(cache.validate(context, XmlSource.of(INVALID), 1).isValid());
+        assertTrue(cache.validate(context, XmlSource.of(VALID), 1).isValid());
+        // One more trailing byte is another document
+        assertTrue(cache.validate(context, XmlSource.of(VALID + "\n"), 1).isValid());
+        // The same document collecting more errors is another result
+        assertFalse(cache.validate(context, XmlSource.of(INVALID), 10).isValid());
+
+        assertEquals(4, cache.getMissCount());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    void validatesStreamsWithoutCaching() throws Exception {
+        ValidationResultCache cache = new ValidationResultCache(engine, 10, null);
+
+        cache.validate(context, XmlSource.of(new ByteArrayInputStream(VALID.getBytes())), 1);
+
+        assertEquals(1, cache.getUncacheableCount());
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    void answersFromTheDirectoryAfterARestart() throws Exception {
+        ValidationResult first = new ValidationResultCache(engine, 10, directory)
+                .validate(context, XmlSource.of(INVALID), 1);
+
+        ValidationResultCache restarted = new ValidationResultCache(engine, 10, directory);
+        ValidationResult second = restarted.validate(context, XmlSource.of(INVALID), 1);
+
+        assertEquals(1, restarted.getDiskHitCount());
+        assertEquals(first.getErrors().toString(), second.getErrors().toString());
+    }
+
+    @Test
+    void ignoresResultsStoredInAnotherFormatVersion() throws Exception {
+        new ValidationResultCache(engine, 10, directory).validate(context, XmlSource.of(INVALID), 1);
+        Path stored = storedResult();
+        int version;
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(stored))) {
+            version = in.readInt();
+        }
+        // A result written before the format changed claims the document is valid
+        try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(stored))) {
+            out.writeInt(version - 1);
+            out.writeInt(0);
+        }
+
+        ValidationResultCache restarted = new ValidationResultCache(engine, 10, directory);
+        assertFalse(restarted.validate(context, XmlSource.of(INVALID), 1).isValid());
+        assertEquals(0, restarted.getDiskHitCount());
+
+        // And is replaced by one in the current version
+        ValidationResultCache again = new ValidationResultCache(engine, 10, directory);
+        assertFalse(again.validate(context, XmlSource.of(INVALID), 1).isValid());
+        assertEquals(1, again.getDiskHitCount());
+    }
+
+    @Test
+    void ignoresACorruptResult() throws Exception {
+        new ValidationResultCache(engine, 10, directory).validate(context, XmlSource.of(INVALID), 1);
+        Path stored = storedResult();
+        byte[] bytes = Files.readAllBytes(stored);
+        Files.write(stored, Arrays.copyOf(bytes, bytes.length - 3));
+
+        ValidationResultCache restarted = new ValidationResultCache(engine, 10, directory);
+        ValidationResult result = restarted.validate(context, XmlSource.of(INVALID), 1);
+
+        assertEquals(0, restarted.getDiskHitCount());
+        assertEquals(engine.validate(context, INVALID).getErrors().toString(), result.getErrors().toString());
+    }
+
+    @Test
+    void keepsTheDirectoryWithinItsLimit() throws Exception {
+        ValidationResultCache cache = new ValidationResultCache(engine, 10, directory, 4);
+
+        for (int i = 0; i < 10; i++) {
+            cache.validate(context, XmlSource.of("<top xmlns=\"urn:example:interfaces\"><mtu>" + i + "</mtu></top>"), 1);
+            try (var files = Files.list(directory)) {
+                assertTrue(files.count() <= 4);
+            }
+        }
+        // The latest result is kept
+        ValidationResultCache restarted = new ValidationResultCache(engine, 10, directory, 4);
+        restarted.validate(context, XmlSource.of("<top xmlns=\"urn:example:interfaces\"><mtu>9</mtu></top>"), 1);
+        assertEquals(1, restarted.getDiskHitCount());
+    }
+
+    private Path storedResult() throws Exception {
+        try (var files = Files.list(directory)) {
+            List<Path> stored = files.toList();
+            assertEquals(1, stored.size(), stored.toString());
+            return stored.get(0);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ValidationServerTest {
+    private static final String VALID = """
+            <top xmlns="urn:example:interfaces">
+              <mtu>1500</mtu>
+            </top>
+            """;
+    private static final String INVALID = """
+            <top xmlns="urn:example:interfaces">
+              <mtu>x</mtu>
+              <iface><id>300</id></iface>
+            </top>
+            """;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private ValidationServer server;
+
+    @AfterEach
+    void stopServer() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    void validatesPostedDocuments() throws Exception {
+        start(List.of(Path.of("src/test/resources/interfaces.yang")), ValidationBudget.DEFAULT);
+
+        HttpResponse<String> valid = post("/validate", VALID);
+        assertEquals(200, valid.statusCode());
+        assertEquals("{\"valid\":true,\"errors\":[]}", valid.body());
+
+        HttpResponse<String> invalid = post("/validate", INVALID);
+        assertEquals(200, invalid.statusCode());
+        assertEquals(1, count(invalid.body()), invalid.body());
+        assertTrue(invalid.body().contains("\"line\":2"), invalid.body());
+
+        assertEquals(2, count(post("/validate?maxErrors=10", INVALID).body()));
+        assertEquals(400, post("/validate?maxErrors=many", INVALID).statusCode());
+        assertEquals(405, client.send(HttpRequest.newBuilder(uri("/validate")).GET().build(),
+                HttpResponse.BodyHandlers.ofString()).statusCode());
+        assertEquals(200, client.send(HttpRequest.newBuilder(uri("/health")).GET().build(),
+                HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    @Test
+    void capsTheErrorsARequestAsksFor() throws Exception {
+        start(List.of(Path.of("src/test/resources/interfaces.yang")), ValidationBudget.DEFAULT);
+        StringBuilder document = new StringBuilder("<top xmlns=\"urn:example:interfaces\">\n");
+        for (int i = 0; i < ValidationServer.MAX_REQUEST_ERRORS + 200; i++) {
+            document.append("<tag>").append(i).append("</tag><tag>").append(i).append("</tag>\n");
+        }
+        document.append("</top>\n");
+
+        HttpResponse<String> response = post("/validate?maxErrors=1000000", document.toString());
+
+        assertEquals(ValidationServer.MAX_REQUEST_ERRORS, count(response.body()));
+    }
+
+    @Test
+    void refusesBodiesOverTheDocumentSize() throws Exception {
+        start(List.of(Path.of("src/test/resources/interfaces.yang")),
+                ValidationBudget.builder().maxDocumentSize(VALID.length() - 1).build());
+
+        // Collecting several errors buffers the body, which is refused up front
+        assertEquals(413, post("/validate?maxErrors=10", VALID).statusCode());
+        // A single error streams it, and the reader stops at the limit
+        HttpResponse<String> streamed = post("/validate", VALID);
+        assertEquals(200, streamed.statusCode());
+        assertTrue(streamed.body().contains("document size limit exceeded"), streamed.body());
+    }
+
+    @Test
+    void keepsTheSchemaWhenAChangedFileFailsToLoad(@TempDir Path directory) throws Exception {
+        Files.copy(Path.of("src/test/resources/interfaces.yang"), directory.resolve("interfaces.yang"));
+        start(List.of(directory), ValidationBudget.DEFAULT);
+        String extra = "<extra xmlns=\"urn:example:extra\"/>";
+        assertTrue(post("/validate", extra).body().contains("\"valid\":false"));
+
+        // A module added to the directory is picked up
+        Files.writeString(directory.resolve("extra.yang"),
+                "module extra { namespace \"urn:example:extra\"; prefix ex; container extra; }");
+        awaitValid(extra);
+
+        // A module that no longer parses leaves the schema as it was
+        Files.writeString(directory.resolve("extra.yang"), "module extra {");
+        Thread.sleep(1500);
+        assertEquals("{\"valid\":true,\"errors\":[]}", post("/validate", extra).body());
+        assertEquals("{\"valid\":true,\"errors\":[]}", post("/validate", VALID).body());
+    }
+
+    private void start(List<Path> yangPaths, ValidationBudget budget) throws Exception {
+        server = new ValidationServer(new YangValidatorEngine(), yangPaths, budget);
+        server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    }
+
+    private void awaitValid(String document) throws Exception {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (!post("/validate", document).body().contains("\"valid\":true")) {
+            assertTrue(System.nanoTime() < deadline, "Schema not reloaded");
+            Thread.sleep(100);
+        }
+    }
+
+    private HttpResponse<String> post(String path, String body) throws Exception {
+        return client.send(HttpRequest.newBuilder(uri(path)).POST(HttpRequest.BodyPublishers.ofString(body)).build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + server.getAddress().getPort() + path);
+    }
+
+    private static int count(String json) {
+        Matcher matcher = Pattern.compile("\"line\":").matcher(json);
+        int count = 0;
+        while (matcher.find()) {
+            count++;
+        }
+        return count;
+    }
+}
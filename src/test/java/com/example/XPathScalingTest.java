@@ -0,0 +1,72 @@
+package com.example;
+
+import org.junit.jupiter.api.Test;
+import org.opendaylight.yangtools.yang.model.api.EffectiveModelContext;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Work per list entry stays flat as the fan-out grows from 10 to 100k entries. It is
+ * measured as the bytes the thread allocates, which unlike time does not depend on what
+ * else runs on the machine; rewriting the XPaths of earlier siblings on every repeat would
+ * make it grow with the fan-out.
+ */
+class XPathScalingTest {
+    private static final int[] FAN_OUTS = {10, 100, 1_000, 10_000, 100_000};
+    // A quadratic cost grows 10 times with each step of the fan-out
+    private static final double MAX_GROWTH = 2;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    @Test
+    void indexingIsLinearInFanOut() throws Exception {
+        assertLinear(fanOut -> {
+            XPathLocationIndex locationIndex = XPathCreator.createLocationIndex(
+                    XmlSource.of(SampleDocuments.nested(1, fanOut)));
+            for (int ordinal = 0; ordinal < locationIndex.size(); ordinal++) {
+                locationIndex.getXPath(ordinal);
+            }
+            assertEquals("/root/root/item[" + (fanOut - 1) + "]/level0",
+                    locationIndex.getXPath(locationIndex.size() - 1));
+        });
+    }
+
+    @Test
+    void validationIsLinearInFanOut() throws Exception {
+        YangValidatorEngine engine = new YangValidatorEngine();
+        EffectiveModelContext context = engine.loadSchema(List.of(Path.of(SampleDocuments.MODULE_PATH)));
+        assertLinear(fanOut -> assertTrue(engine.validate(context, SampleDocuments.network(fanOut), 1).isValid()));
+    }
+
+    /**
+     * Runs each fan-out and checks that the bytes allocated per entry do not grow from one
+     * fan-out to the next. From 1000 entries on, so fixed costs do not dominate.
+     */
+    private static void assertLinear(Run run) throws Exception {
+        long thread = Thread.currentThread().threadId();
+        // Builds what is cached on first use
+        run.run(FAN_OUTS[0]);
+        double previous = 0;
+        for (int fanOut : FAN_OUTS) {
+            long start = THREADS.getThreadAllocatedBytes(thread);
+            run.run(fanOut);
+            double bytesPerEntry = (double) (THREADS.getThreadAllocatedBytes(thread) - start) / fanOut;
+            if (fanOut > 1_000) {
+                assertTrue(bytesPerEntry < previous * MAX_GROWTH, String.format(
+                        "%.0f bytes per entry at %d entries, %.0f at a tenth of that", bytesPerEntry, fanOut,
+                        previous));
+            }
+            previous = bytesPerEntry;
+        }
+    }
+
+    private interface Run {
+        void run(int fanOut) throws Exception;
+    }
+}
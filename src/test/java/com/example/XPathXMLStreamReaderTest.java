@@ -0,0 +1,103 @@
+package com.example;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.opendaylight.yangtools.yang.model.api.EffectiveModelContext;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class XPathXMLStreamReaderTest {
+    private static YangValidatorEngine engine;
+    private static EffectiveModelContext context;
+
+    @BeforeAll
+    static void loadSchema() {
+        engine = new YangValidatorEngine();
+        context = engine.loadSchema(List.of(Path.of("src/test/resources/interfaces.yang")));
+    }
+
+    @Test
+    void decidesListIndexingFromTheSchema() throws Exception {
+        List<String> xpaths = xpaths("""
+                <top xmlns="urn:example:interfaces">
+                  <mtu>1500</mtu>
+                  <iface><id>1</id></iface>
+                  <tag>a</tag>
+                  <route><dest>10.0.0.0</dest><len>8</len></route>
+                  <neighbor><addr>a</addr></neighbor>
+                  <unknown/>
+                  <unknown/>
+                </top>
+                """, context);
+
+        assertEquals(List.of(
+                "/top",
+                "/top/mtu",
+                "/top/iface[id='1']",
+                "/top/iface[id='1']/id",
+                "/top/tag[0]",
+                "/top/route[dest='10.0.0.0'][len='8']",
+                "/top/route[dest='10.0.0.0'][len='8']/dest",
+                "/top/route[dest='10.0.0.0'][len='8']/len",
+                "/top/neighbor[0]",
+                "/top/neighbor[0]/addr",
+                "/top/unknown[0]",
+                "/top/unknown[1]"), xpaths);
+    }
+
+    @Test
+    void indexesRepeatedNamesWithoutASchema() throws Exception {
+        List<String> xpaths = xpaths("<a><b/><c/><b/></a>", null);
+
+        assertEquals(List.of("/a", "/a/b[0]", "/a/c", "/a/b[1]"), xpaths);
+    }
+
+    @Test
+    void reportsAnInvalidKeyLeafAtItsOwnXPath() throws Exception {
+        ValidationResult result = engine.validate(context, """
+                <top xmlns="urn:example:interfaces">
+                  <iface><id>300</id><descr>a</descr></iface>
+                </top>
+                """, 1);
+
+        List<ValidationError> errors = result.getErrors();
+        assertEquals(1, errors.size(), errors.toString());
+        assertError(errors.get(0), 2, 14, "/top/iface/id", "300");
+    }
+
+    @Test
+    void namesListEntriesByTheirKeys() throws Exception {
+        ValidationResult result = engine.validate(context, """
+                <top xmlns="urn:example:interfaces">
+                  <iface><id>3</id><speed>1</speed></iface>
+                  <iface><id>4</id><speed>999</speed></iface>
+                </top>
+                """, 1);
+
+        List<ValidationError> errors = result.getErrors();
+        assertEquals(1, errors.size(), errors.toString());
+        assertError(errors.get(0), 3, 27, "/top/iface[id='4']/speed", "999");
+    }
+
+    private static List<String> xpaths(String xml, EffectiveModelContext context) throws Exception {
+        XPathLocationIndex locationIndex = XPathCreator.createLocationIndex(XmlSource.of(xml), context);
+        List<String> xpaths = new ArrayList<>();
+        // Leaves out the root element the fragment reader wraps the document in
+        for (int ordinal = 1; ordinal < locationIndex.size(); ordinal++) {
+            xpaths.add(locationIndex.getXPath(ordinal).substring("/root".length()));
+        }
+        return xpaths;
+    }
+
+    private static void assertError(ValidationError error, int line, int column, String xpath, String message) {
+        assertEquals(line, error.getLineNumber(), error.toString());
+        assertEquals(column, error.getColumnNumber(), error.toString());
+        assertEquals(xpath, error.getXpath(), error.toString());
+        assertTrue(error.getMessage().contains(message), error.toString());
+    }
+}
@@ -0,0 +1,78 @@
+package com.example;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.opendaylight.yangtools.yang.model.api.EffectiveModelContext;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class YangValidatorEngineTest {
+    private static YangValidatorEngine engine;
+    private static EffectiveModelContext context;
+
+    @BeforeAll
+    static void loadSchema() {
+        engine = new YangValidatorEngine();
+        context = engine.loadSchema(List.of(Path.of("src/test/resources/interfaces.yang")));
+    }
+
+    @Test
+    void reusesTheSchemaOfIdenticalSources(@TempDir Path directory) throws Exception {
+        Path copy = Files.copy(Path.of("src/test/resources/interfaces.yang"), directory.resolve("copy.yang"));
+
+        assertSame(context, engine.loadSchema(List.of(copy)));
+        assertEquals(engine.getFingerprint(context), YangValidatorEngine.fingerprint(List.of(copy)));
+    }
+
+    @Test
+    void assemblesAChangedSourceAgain(@TempDir Path directory) throws Exception {
+        Path changed = directory.resolve("interfaces.yang");
+        Files.writeString(changed, Files.readString(Path.of("src/test/resources/interfaces.yang"))
+                .replace("type uint16;", "type uint32;"));
+
+        EffectiveModelContext changedContext = engine.loadSchema(List.of(changed));
+
+        assertNotSame(context, changedContext);
+        assertNotEquals(engine.getFingerprint(context), engine.getFingerprint(changedContext));
+        assertTrue(engine.validate(changedContext, "<top xmlns=\"urn:example:interfaces\"><mtu>70000</mtu></top>")
+                .isValid());
+    }
+
+    @Test
+    void fingerprintsIgnoreTheOrderOfTheSources() {
+        Path interfaces = Path.of("src/test/resources/interfaces.yang");
+        Path entries = Path.of("src/test/resources/entries.yang");
+
+        assertEquals(YangValidatorEngine.fingerprint(List.of(interfaces, entries)),
+                YangValidatorEngine.fingerprint(List.of(entries, interfaces)));
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedSchema() {
+        YangValidatorEngine small = new YangValidatorEngine(1);
+        EffectiveModelContext interfaces = small.loadSchema(List.of(Path.of("src/test/resources/interfaces.yang")));
+        small.loadSchema(List.of(Path.of("src/test/resources/entries.yang")));
+
+        assertNotSame(interfaces, small.loadSchema(List.of(Path.of("src/test/resources/interfaces.yang"))));
+    }
+
+    @Test
+    void findsTheSchemaByTheNamespaceOfTheDocument() throws Exception {
+        YangValidatorEngine routing = new YangValidatorEngine();
+        routing.loadSchema(List.of(Path.of("src/test/resources/interfaces.yang")));
+
+        assertTrue(routing.validate("<top xmlns=\"urn:example:interfaces\"><mtu>1</mtu></top>").isValid());
+        List<ValidationError> errors = routing.validate("<entry xmlns=\"urn:example:entries\"/>").getErrors();
+        assertEquals(1, errors.size(), errors.toString());
+        assertTrue(errors.get(0).getMessage().contains("No schema loaded"), errors.toString());
+    }
+}